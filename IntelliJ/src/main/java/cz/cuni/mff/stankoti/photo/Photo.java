@@ -20,18 +20,20 @@ public class Photo {
       * This method is called when the program starts. 
       * It initializes the controller part of the application and passes control to the controller.
       * <br>
-      * Only one command line parameter is supported:
+      * Supported command line parameters:
+      * '-r' (optional), which opens the photo database in the read-only mode, and
       * 'db-file-name', which is the name of the file containing the photo database.
       *
       * @param args the command-line arguments passed to the program
       */
     public static void main(String[] args) {
-        if (args.length <= 1) {
+        int dbFilenameArgs = args.length > 0 && args[0].equals(Controller.READ_ONLY_OPTION) ? args.length - 1 : args.length;
+        if (dbFilenameArgs <= 1) {
             Controller controller = new Controller(args);
             controller.run();
         } else {
             System.err.println();
-            System.err.println("Usage: photo [db-file-name]");
+            System.err.println("Usage: photo [-r] [db-file-name]");
         }
     }
 }
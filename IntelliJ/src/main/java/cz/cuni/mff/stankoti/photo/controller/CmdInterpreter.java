@@ -3,13 +3,15 @@ package cz.cuni.mff.stankoti.photo.controller;
 import cz.cuni.mff.stankoti.photo.status.StatusCode;
 import cz.cuni.mff.stankoti.photo.db.*;
 import cz.cuni.mff.stankoti.photo.view.*;
+import cz.cuni.mff.stankoti.photo.util.DateRange;
 import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
 import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
 
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Set;
 
@@ -40,6 +42,35 @@ public class CmdInterpreter {
       * CLI instance used by the Command Interpreter for handling user input.
       */
     private CLI cli;
+    /**
+      * Checkpointer writing the database changes in the background (null if not used).
+      */
+    private DBCheckpointer checkpointer;
+    /**
+      * File system service reading the files from the disk.
+      */
+    private FileSystem fileSystem;
+    /**
+      * Pipeline reading the file information for the ADD and SCAN commands in parallel.
+      */
+    private FilePipeline filePipeline;
+    /**
+      * Names (glob patterns) of the files and directories skipped by the ADD TREE command.
+      */
+    private List<String> ignoreList;
+    /**
+      * The last query of the QUERY command (used by the other commands with the argument {@value #LAST_QUERY}), null if none.
+      */
+    private DBQuery lastQuery;
+
+    /**
+      * Argument of the commands referring to the files matching the last query.
+      */
+    private static final String LAST_QUERY = "@";
+    /**
+      * Default number of files (directories) listed by the LIST LARGEST, LIST SMALLEST and LIST SPACE commands.
+      */
+    private static final int DEFAULT_TOP_COUNT = 10;
 
     /**
       * Creates a new Command interpreter instance.
@@ -54,6 +85,11 @@ public class CmdInterpreter {
         statusCode = StatusCode.NO_ERROR;
         quitSignal = false;
         cli = null;
+        checkpointer = null;
+        fileSystem = new FileSystem();
+        filePipeline = new FilePipeline(fileSystem);
+        ignoreList = new ArrayList<>(FileSystem.DEFAULT_IGNORE_LIST);
+        lastQuery = null;
     }
 
     /**
@@ -101,6 +137,15 @@ public class CmdInterpreter {
         this.cli = cli;
     }
 
+    /**
+      * Sets the checkpointer which writes the database changes in the background.
+      *
+      * @param checkpointer the database checkpointer
+      */
+    public void setCheckpointer(DBCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
     /**
       * Entry point for command processing. Executes the specified command.
       *
@@ -111,12 +156,23 @@ public class CmdInterpreter {
 
         String command = cmd.command.toUpperCase();
 
+        if (db.isReadOnly() && isModifyingCommand(command)) {
+            setStatusCode(StatusCode.DB_READ_ONLY);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
         switch (command) {
             case "" -> {} // do nothing
             case "H", "HELP" -> help();
             case "AB", "ABOUT" -> about();
             case "E", "X", "EXIT" -> exit();
             case "SAVE" -> save(cmd.args);
+            case "COMPACT" -> compact(cmd.args);
+            case "CHECKPOINT" -> checkpoint(cmd.args);
+            case "THREADS" -> threads(cmd.args);
+            case "IGNORE" -> ignore(cmd.args);
+            case "HASH" -> hash(cmd.args);
             case "A", "ADD" -> add(cmd.args);
             case "AK" -> addKeyword(cmd.args);
             case "R", "REMOVE" -> remove(cmd.args);
@@ -127,6 +183,8 @@ public class CmdInterpreter {
             case "D", "DETAILS" -> details(cmd.args);
             case "DUP", "DD", "DUPLICATES" -> duplicates(cmd.args);
             case "S", "SCAN" -> scan(cmd.args);
+            case "DIFF" -> diff(cmd.args);
+            case "Q", "QUERY" -> query(cmd.args);
 
             default -> {
                 setStatusCode(StatusCode.UNKNOWN_COMMAND);
@@ -135,6 +193,19 @@ public class CmdInterpreter {
         }
     }
 
+    /**
+      * Checks whether the specified command can change the database (such commands are not available in the read-only mode).
+      *
+      * @param command the command (in upper case)
+      * @return true if the command can change the database, false otherwise
+      */
+    private boolean isModifyingCommand(String command) {
+        return switch (command) {
+            case "SAVE", "COMPACT", "CHECKPOINT", "A", "ADD", "AK", "R", "REMOVE", "RK", "DUP", "DD", "DUPLICATES", "S", "SCAN" -> true;
+            default -> false;
+        };
+    }
+
     /**
       * HELP command entry point. 
       * Displays the help information (short description) for each command.
@@ -153,10 +224,41 @@ public class CmdInterpreter {
         view.print("  Default name for this file: photo_db.pdb");
         view.print("  New filename can be specified as parameter.");
         view.print("  The name of the file can also be specified as a parameter when starting the program.");
+        view.print("  (If the program is started with the -r option, the database is opened in the read-only mode");
+        view.print("  and the commands that change the database are not available.)");
+        view.print("  Only the changes are saved (to the journal file <db-filename>.jnl), ");
+        view.print("  the whole file is written only when needed (new file, journal too large).");
+        view.print("- COMPACT [IDS]");
+        view.print("  Writes the whole database file and empties the journal file.");
+        view.print("  With IDS, the file IDs are renumbered first (the gaps after removed files are removed).");
+        view.print("  (The file IDs are also renumbered automatically when the database file is written and");
+        view.print("  more than a quarter of the file IDs belong to removed files.)");
+        view.print("- CHECKPOINT [<seconds>]");
+        view.print("  Without parameter, writes the unsaved changes to the journal file immediately.");
+        view.print("  With parameter, sets the interval of the automatic (background) checkpoints (0 = off).");
+        view.print("  The changes written by checkpoints are recovered after a crash, but they stay unsaved until SAVE.");
+        view.print("- THREADS [<count>]");
+        view.print("  Without parameter, displays the number of threads reading the files for the ADD, DUPLICATES and SCAN commands.");
+        view.print("  With parameter, sets the number of these threads (1 - " + FilePipeline.MAX_PARALLELISM + ").");
+        view.print("- IGNORE [<pattern> ...] or IGNORE NONE");
+        view.print("  Without parameter, displays the names of files and folders skipped by the ADD TREE command.");
+        view.print("  With parameters, sets these names (glob patterns, e.g. .* or *.tmp); NONE = nothing is skipped.");
+        view.print("  (Default: " + String.join(" ", FileSystem.DEFAULT_IGNORE_LIST) + ")");
+        view.print("- HASH [<algorithm>]");
+        view.print("  Without parameter, displays the algorithm used for the checksums of the added files.");
+        view.print("  With parameter, sets this algorithm (" + hashAlgorithmNames() + ").");
+        view.print("  The checksums of the files already in the database are recalculated only when needed");
+        view.print("  (when a file of the same size is added).");
         view.print("- ADD (A)");
         view.print("    - ADD <folder> or <filename>");
         view.print("      Adds all images from the specified <folder> or");
         view.print("      only the one specified by <filename> to the in-memory database.");
+        view.print("      Images already in the database whose size and modification time did not change");
+        view.print("      are skipped when adding a folder (they are not read again).");
+        view.print("    - ADD TREE <folder> [<max-depth>]");
+        view.print("      Adds all images from the specified <folder> and all its subfolders");
+        view.print("      (up to the <max-depth> level, 1 = the folder only). Symbolic links are followed,");
+        view.print("      each folder is processed only once. Names from the IGNORE list are skipped.");
         view.print("    - ADD KEYWORD <keyword> <folder> or <filename>");
         view.print("      All images from the specified folder <folder> or");
         view.print("      only the one specified by <filename> get the keyword specified by <keyword>.");
@@ -166,6 +268,8 @@ public class CmdInterpreter {
         view.print("    - REMOVE <folder> or <filename>");
         view.print("      Removes all images from the specified <folder> (including the folder) or");
         view.print("      only the one specified by <filename> from the in-memory database.");
+        view.print("    - REMOVE TREE <folder>");
+        view.print("      Removes all images from the specified <folder> and all its subfolders from the in-memory database.");
         view.print("    - REMOVE KEYWORD <keyword> <folder> or <filename>");
         view.print("      All images belonging to the folder <folder> or");
         view.print("      only the one specified by <filename> will have the specified <keyword> removed from them.");
@@ -174,10 +278,23 @@ public class CmdInterpreter {
         view.print("- LIST (L)");
         view.print("    - LIST <keyword> or <folder> or <file>");
         view.print("      Lists all images that have the specified keyword or belong to the specified folder.");
+        view.print("    - LIST TREE <folder>");
+        view.print("      Lists all images in the specified folder and all its subfolders.");
+        view.print("    - LIST DATE <from> [<to>]");
+        view.print("      Lists all images with the timestamp from <from> to <to> (inclusive), ordered by the timestamp.");
+        view.print("      The dates can be days (d.M.yyyy), months (M.yyyy) or years (yyyy), e.g. LIST DATE 7.2023.");
+        view.print("    - LIST SIZE <min> [<max>]");
+        view.print("      Lists all images with the size from <min> to <max> (inclusive), ordered by the size (e.g. LIST SIZE 1MB 5MB).");
+        view.print("    - LIST LARGEST [<count>] [<keyword> or <folder>] or LIST SMALLEST [<count>] [<keyword> or <folder>]");
+        view.print("      Lists the <count> (default " + DEFAULT_TOP_COUNT + ") largest or smallest images in the database");
+        view.print("      or in the specified set of images.");
+        view.print("    - LIST SPACE [<count>]");
+        view.print("      Lists the <count> (default " + DEFAULT_TOP_COUNT + ") directories with the largest total size of images.");
         view.print("    - LIST KEYWORDS (LIST KEYS)");
         view.print("      Lists all existing keywords in the database.");
-        view.print("    - LIST DIRECTORIES (LIST DIRS, LIST FOLDERS)");
-        view.print("      Lists all existing directories (folders) in the database.");
+        view.print("    - LIST DIRECTORIES [<folder>] (LIST DIRS, LIST FOLDERS)");
+        view.print("      Lists all existing directories (folders) in the database, or only the specified folder");
+        view.print("      and its subfolders (in the sorted order).");
         view.print("    - LIST");
         view.print("      Displays database statistics.");
         view.print("- LK");
@@ -185,15 +302,32 @@ public class CmdInterpreter {
         view.print("- LD (LF)");
         view.print("  Short form for LIST DIRECTORIES command. For details, see LIST command.");
         view.print("- DETAILS (D)");
-        view.print("  DETAILS <keyword> or <folder> or <file>");
+        view.print("  DETAILS <keyword> or <folder> or <file> (or DETAILS TREE, DATE, SIZE, LARGEST or SMALLEST, see LIST)");
         view.print("  Lists all images that have the given keyword or belong to the given folder or");
         view.print("  given file and displays detailed information about them.");
         view.print("- DUPLICATES (DUP, DD)");
         view.print("  DUPLICATES <keyword> or <folder> or <file>");
-        view.print("  Finds duplicates in a set of images determined by a given parameter (comparing files byte by byte).");
+        view.print("  Finds duplicates in a set of images determined by a given parameter (comparing files byte by byte");
+        view.print("  with all files of the same size in the database).");
         view.print("- SCAN (S)");
-        view.print("  SCAN <keyword> or <folder> or <file>");
+        view.print("  SCAN [DEEP] <keyword> or <folder> or <file>, or SCAN [DEEP] TREE <folder>");
         view.print("  Compares the set of images determined by the given parameter with the current state on the disk.");
+        view.print("  With TREE, the images in the specified folder and all its subfolders are compared.");
+        view.print("  Only the files with a different size or modification time are read (and compared in full);");
+        view.print("  with DEEP, the checksum and the metadata of all files are compared.");
+        view.print("- DIFF");
+        view.print("  DIFF <file>");
+        view.print("  Displays the differences between the database information of the image and the current state on the disk.");
+        view.print("- QUERY (Q)");
+        view.print("  QUERY <predicate> [[AND|OR] [NOT] <predicate> ...]");
+        view.print("  Lists all images matching the query. Predicates: KEY=<keyword>, DIR=<folder>,");
+        view.print("  TREE=<folder> (the folder and all its subfolders), EXT=<extension>,");
+        view.print("  NAME=<filename without extension>, SIZE<op><size> (e.g. SIZE>=2MB), DATE<op><date> (e.g. DATE<1.1.2020 or DATE=7.2023),");
+        view.print("  META=[<directory>:]<tag>=<value> (e.g. META=\"Model=Canon EOS R5\", the value as shown by DETAILS),");
+        view.print("  ISO<op><number>, FOCAL<op><mm>, EXPOSURE<op><seconds> (e.g. EXPOSURE<1/200), APERTURE<op><f-number>,");
+        view.print("  where <op> is =, !=, <, <=, > or >=. AND may be omitted, parentheses can be used (e.g. (EXT=jpg OR EXT=png)).");
+        view.print("  The files matching the last query can be used by the commands ADD KEYWORD, REMOVE, LIST, DETAILS,");
+        view.print("  DUPLICATES and SCAN with the argument " + LAST_QUERY + " instead of <keyword>, <folder> or <file>.");
     }
 
     /**
@@ -221,7 +355,13 @@ public class CmdInterpreter {
                         setQuitSignal(true);
                     }
                 }
-                case 'N' -> setQuitSignal(true);
+                case 'N' -> {
+                    if (checkpointer != null) {
+                        checkpointer.stop();
+                    }
+                    db.discardUnsavedChanges();
+                    setQuitSignal(true);
+                }
                 case 'C' -> { }
                 default -> { }
             }
@@ -259,15 +399,11 @@ public class CmdInterpreter {
       */
     private void save() {
         if (db.isChanged()) {
-            db.WriteDB();
+            db.SaveDB();
 
             switch (db.getStatusCode()) {
                 case StatusCode.NO_ERROR -> view.print("Changes saved successfully (DB filename: '" + db.getDbFilename() + "').");
-                case StatusCode.DB_FILE_NOT_SERIALIZABLE,
-                     StatusCode.DB_FILE_WRITE_ERROR -> {
-                        view.printStatus(db.getStatusCode());
-                        assert db.getStatusCode() != StatusCode.DB_FILE_NOT_SERIALIZABLE;
-                     }
+                case StatusCode.DB_FILE_WRITE_ERROR -> view.printStatus(db.getStatusCode());
                 default -> view.printStatus(StatusCode.UNEXPECTED_STATUS);
             }
         } else {
@@ -275,6 +411,188 @@ public class CmdInterpreter {
         }
     }
 
+    /**
+      * COMPACT command entry point. 
+      * Folds the journal into a new database file (writes the whole database).
+      * With the IDS parameter, the file IDs are renumbered first (the gaps after removed files are removed).
+      *
+      * @param args optional argument IDS
+      */
+    private void compact(String[] args) {
+        if (args.length > 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+        if (args.length == 1 && !args[0].toUpperCase().equals("IDS")) {
+            setStatusCode(StatusCode.INVALID_ARGUMENT);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        long journalSize = db.getJournalSize();
+        if (args.length == 1) {
+            db.CompactDB(true);
+        } else {
+            db.CompactDB();
+        }
+        if (db.getStatusCode() == StatusCode.NO_ERROR) {
+            view.print("Database compacted (DB filename: '" + db.getDbFilename() + "', journal size before: " + 
+                       FileSystem.formatFileSize(journalSize) + ").");
+        } else {
+            view.printStatus(db.getStatusCode());
+        }
+    }
+
+    /**
+      * CHECKPOINT command entry point. 
+      * Writes the unsaved changes to the journal file immediately, or
+      * sets the interval of the automatic checkpoints.
+      *
+      * @param args optional argument specifying the interval in seconds (0 = automatic checkpoints off)
+      */
+    private void checkpoint(String[] args) {
+        if (args.length > 1 || checkpointer == null) {
+            setStatusCode(args.length > 1 ? StatusCode.INVALID_NUMBER_OF_ARGUMENTS : StatusCode.UNEXPECTED_STATUS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        if (args.length == 1) {
+            int interval;
+            try {
+                interval = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                interval = -1;
+            }
+            if (interval < 0) {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            checkpointer.start(interval);
+            if (interval > 0) {
+                view.print("Automatic checkpoints every " + interval + " seconds.");
+            } else {
+                view.print("Automatic checkpoints are off.");
+            }
+            return;
+        }
+
+        setStatusCode(checkpointer.checkpoint());
+        if (getStatusCode() == StatusCode.NO_ERROR) {
+            view.print("Checkpoint written (unsaved changes in the journal file: " + db.getUnsavedChanges() + ").");
+        } else {
+            view.printStatus(getStatusCode());
+        }
+    }
+
+    /**
+      * THREADS command entry point. 
+      * Displays or sets the number of threads reading the files for the ADD, DUPLICATES and SCAN commands.
+      *
+      * @param args optional argument specifying the number of threads
+      */
+    private void threads(String[] args) {
+        if (args.length > 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        if (args.length == 1) {
+            int parallelism;
+            try {
+                parallelism = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                parallelism = 0;
+            }
+            if (parallelism < 1 || parallelism > FilePipeline.MAX_PARALLELISM) {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            filePipeline.setParallelism(parallelism);
+        }
+        view.print("Files are read by " + filePipeline.getParallelism() + " thread(s).");
+    }
+
+    /**
+      * IGNORE command entry point. 
+      * Displays or sets the names (glob patterns) of the files and directories skipped by the ADD TREE command.
+      *
+      * @param args optional list of patterns, or NONE for an empty list
+      */
+    private void ignore(String[] args) {
+        if (args.length == 1 && args[0].toUpperCase().equals("NONE")) {
+            ignoreList.clear();
+        } else if (args.length > 0) {
+            for (String pattern : args) {
+                if (!FileSystem.isValidIgnorePattern(pattern)) {
+                    setStatusCode(StatusCode.INVALID_ARGUMENT);
+                    view.printStatus(getStatusCode());
+                    return;
+                }
+            }
+            ignoreList = new ArrayList<>(Arrays.asList(args));
+        }
+
+        if (ignoreList.isEmpty()) {
+            view.print("No files or folders are skipped by the ADD TREE command.");
+        } else {
+            view.print("Skipped by the ADD TREE command: " + String.join(" ", ignoreList));
+        }
+    }
+
+    /**
+      * HASH command entry point. 
+      * Displays or sets the algorithm used for the checksums of the files added to the database.
+      *
+      * @param args optional argument specifying the algorithm
+      */
+    private void hash(String[] args) {
+        if (args.length > 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        if (args.length == 1) {
+            HashAlgorithm algorithm = HashAlgorithm.fromName(args[0]);
+            if (algorithm == null) {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            if (db.isReadOnly()) {
+                setStatusCode(StatusCode.DB_READ_ONLY);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            if (algorithm != db.getHashAlgorithm()) {
+                db.setHashAlgorithm(algorithm);
+            }
+        }
+        view.print("Checksum algorithm: " + db.getHashAlgorithm().getDisplayName());
+        int staleChecksums = db.getStaleChecksums();
+        if (staleChecksums > 0) {
+            view.print("(" + staleChecksums + " file(s) with a checksum of another algorithm will be rehashed when needed)");
+        }
+    }
+
+    /**
+      * Gets the names of all checksum algorithms (for the help page).
+      *
+      * @return the names of the algorithms separated by commas
+      */
+    private static String hashAlgorithmNames() {
+        List<String> names = new ArrayList<>();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            names.add(algorithm.getDisplayName());
+        }
+        return String.join(", ", names);
+    }
+
     /**
       * ADD command entry point. 
       * Adds a specified file or all files from the specified directory to the database, or 
@@ -289,6 +607,11 @@ public class CmdInterpreter {
             return;
         } 
 
+        if (args.length >= 1 && args[0].toUpperCase().equals("TREE")) {
+            addTree(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         if (args.length != 1) {
             setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
             view.printStatus(getStatusCode());
@@ -298,7 +621,7 @@ public class CmdInterpreter {
         String path = args[0];
         switch(FileSystem.checkPath(path)) {
             case 'F' -> addFile(path, false);
-            case 'D' -> addDirectory(path);
+            case 'D' -> addDirectory(path, 1);
             case 'E' -> {
                 setStatusCode(StatusCode.PATH_DOES_NOT_EXIST);
                 view.printStatus(getStatusCode());    
@@ -320,9 +643,18 @@ public class CmdInterpreter {
         }
         view.print("Processing file '" + filenameOnly + "'... ", false );
 
-        DBFile file = FileSystem.getFileInformation(filename);
+        FileSystem.FileResult result = fileSystem.getFileInformation(filename, db.getHashAlgorithm());
+        addFileInformation(result.file(), result.statusCode());
+    }
 
-        switch (FileSystem.getStatusCode()) {
+    /**
+      * Adds the information about a file read from the disk to the database and prints the result.
+      *
+      * @param file the file object containing the file information
+      * @param fileStatusCode the status code of reading the file information
+      */
+    private void addFileInformation(DBFile file, StatusCode fileStatusCode) {
+        switch (fileStatusCode) {
             case StatusCode.NO_ERROR -> {
                 if (db.addFile(file) == 0) {
                     view.print("Added.");
@@ -349,24 +681,99 @@ public class CmdInterpreter {
     }
 
     /**
-      * Adds all files in a directory to the database.
+      * ADD TREE command. 
+      * Adds all files from the specified directory and all its subdirectories to the database.
+      *
+      * @param args the directory and optionally the maximal depth
+      */
+    private void addTree(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        int maxDepth = Integer.MAX_VALUE;
+        if (args.length == 2) {
+            try {
+                maxDepth = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                maxDepth = 0;
+            }
+            if (maxDepth < 1) {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());
+                return;
+            }
+        }
+
+        String path = args[0];
+        switch(FileSystem.checkPath(path)) {
+            case 'D' -> addDirectory(path, maxDepth);
+            case 'F' -> {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());    
+            }
+            case 'E' -> {
+                setStatusCode(StatusCode.PATH_DOES_NOT_EXIST);
+                view.printStatus(getStatusCode());    
+            }
+            default -> { assert false : "Unknown FileSystem.checkPath() result!"; }
+        }
+    }
+
+    /**
+      * Adds all files in a directory (and its subdirectories up to the specified depth) to the database.
+      * The files are read in parallel (see {@link FilePipeline}), the database is changed on the current thread only.
+      * The files already in the database which are unchanged (same size, modification time and file key) are skipped.
       *
       * @param directory the path of the directory
+      * @param maxDepth the maximal depth of subdirectories (1 = the files in the directory only)
       */
-    private void addDirectory(String directory) {
-        view.print("Processing directory '" + directory + "'... ", false );
-        List<String> listOfFiles = FileSystem.filesInDirectory(directory);
-        if (listOfFiles.size() == 0 || FileSystem.getStatusCode() == StatusCode.FILE_SYSTEM_ERROR) {
+    private void addDirectory(String directory, int maxDepth) {
+        boolean tree = maxDepth > 1;
+        view.print("Processing directory " + (tree ? "tree " : "") + "'" + directory + "'... ", false );
+        FileSystem.DirectoryResult result = tree ? fileSystem.walkDirectory(directory, maxDepth, ignoreList)
+                                                 : fileSystem.filesInDirectory(directory);
+        if (result.statusCode() == StatusCode.FILE_SYSTEM_ERROR) {
             setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
             view.printStatus(getStatusCode());    
             return;
         }
 
-        view.print("(found " + (listOfFiles.size() - 1) + " file(s))");
-        view.print("Full path: " + listOfFiles.get(0));
-        for (int i = 1; i < listOfFiles.size(); i++) {
-            addFile(listOfFiles.get(i), true);
+        if (tree) {
+            view.print("(found " + result.files().size() + " file(s) in " + result.directories() + " folder(s))");
+        } else {
+            view.print("(found " + result.files().size() + " file(s))");
         }
+        view.print("Full path: " + result.directory());
+        if (result.unreadable() > 0) {
+            view.print("WARNING! " + result.unreadable() + " file(s) or folder(s) could not be read... Skipped.");
+        }
+        String root = result.directory().endsWith(File.separator) ? result.directory() : result.directory() + File.separator;
+        filePipeline.run(result.files(), db.getHashAlgorithm(), this::isFileUnchanged, fileInfo -> {
+            String name = FileSystem.extractFilename(fileInfo.path());
+            if (tree && fileInfo.path().startsWith(root)) {
+                name = fileInfo.path().substring(root.length());  // path relative to the directory
+            }
+            view.print("Processing file '" + name + "'... ", false );
+            if (fileInfo.unchanged()) {
+                view.print("Unchanged.");
+            } else {
+                addFileInformation(fileInfo.file(), fileInfo.statusCode());
+            }
+        });
+    }
+
+    /**
+      * Checks whether the file found in a directory is already in the database and unchanged since it was added.
+      *
+      * @param entry the file found in a directory
+      * @return true if the file is in the database and unchanged, false otherwise
+      */
+    private boolean isFileUnchanged(FileSystem.FileEntry entry) {
+        int fileID = db.getFileID(entry.path().toString());
+        return fileID != 0 && FileSystem.isUnchanged(entry, db.getFile(fileID));
     }
 
     /**
@@ -393,6 +800,12 @@ public class CmdInterpreter {
             if (fileIDs != null) {
                 view.print("Adding the keyword '" + keyword + "' to files in the specified directory.");
                 view.print("(found " + fileIDs.size() + " file(s))");
+            } else {
+                fileIDs = getLastQueryResult(path);
+                if (fileIDs != null) {
+                    view.print("Adding the keyword '" + keyword + "' to files matching the last query.");
+                    view.print("(found " + fileIDs.size() + " file(s))");
+                }
             }
         }
 
@@ -433,6 +846,11 @@ public class CmdInterpreter {
             return;
         } 
 
+        if (args.length == 2 && args[0].toUpperCase().equals("TREE")) {
+            removeTree(args[1]);
+            return;
+        }
+
         if (args.length != 1) {
             setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
             view.printStatus(getStatusCode());
@@ -447,8 +865,14 @@ public class CmdInterpreter {
                 view.print("Processing directory '" + path + "'... ", false );
                 view.print("(found " + fileIDs.size() + " file(s))");
             } else {
-                setStatusCode(StatusCode.DB_FILE_DIR_DOES_NOT_EXIST);
-                view.printStatus(getStatusCode());    
+                fileIDs = getLastQueryResult(path);
+                if (fileIDs != null) {
+                    view.print("Processing files matching the last query... ", false );
+                    view.print("(found " + fileIDs.size() + " file(s))");
+                } else {
+                    setStatusCode(StatusCode.DB_FILE_DIR_DOES_NOT_EXIST);
+                    view.printStatus(getStatusCode());    
+                }
             }
         }
 
@@ -459,6 +883,26 @@ public class CmdInterpreter {
         }
     }
 
+    /**
+      * Removes all files in the specified directory and all its subdirectories from the database.
+      *
+      * @param path the directory
+      */
+    private void removeTree(String path) {
+        Set<Integer> fileIDs = db.getFileIDs(path, 'T');
+        if (fileIDs == null) {
+            setStatusCode(StatusCode.DB_FILE_DIR_DOES_NOT_EXIST);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        view.print("Processing directory tree '" + path + "'... ", false );
+        view.print("(found " + fileIDs.size() + " file(s) in " + db.getDirectories(path).size() + " folder(s))");
+        for (Integer fileId : new ArrayList<>(fileIDs)) {
+            removeFile(fileId);
+        }
+    }
+
     /**
       * Removes a specified file from the database.
       *
@@ -495,6 +939,12 @@ public class CmdInterpreter {
             if (fileIDs != null) {
                 view.print("Removing the keyword '" + keyword + "' from files in the specified directory.");
                 view.print("(found " + fileIDs.size() + " file(s))");
+            } else {
+                fileIDs = getLastQueryResult(path);
+                if (fileIDs != null) {
+                    view.print("Removing the keyword '" + keyword + "' from files matching the last query.");
+                    view.print("(found " + fileIDs.size() + " file(s))");
+                }
             }
         }
 
@@ -543,6 +993,11 @@ public class CmdInterpreter {
             return;
         } 
 
+        if (args.length >= 1 && args[0].toUpperCase().equals("SPACE")) {
+            listSpace(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         list(args, false);
     }
 
@@ -554,6 +1009,27 @@ public class CmdInterpreter {
       * @param allDetails if true, print additional details
       */
     private void list(String[] args, Boolean allDetails) {
+        if (args.length >= 2 && args[0].toUpperCase().equals("DATE")) {
+            listDateRange(Arrays.copyOfRange(args, 1, args.length), allDetails);
+            return;
+        }
+
+        if (args.length >= 2 && args[0].toUpperCase().equals("SIZE")) {
+            listSizeRange(Arrays.copyOfRange(args, 1, args.length), allDetails);
+            return;
+        }
+
+        if (args.length == 2 && args[0].toUpperCase().equals("TREE")) {
+            listTree(args[1], allDetails);
+            return;
+        }
+
+        if (args.length >= 1 && (args[0].toUpperCase().equals("LARGEST") || 
+                                 args[0].toUpperCase().equals("SMALLEST"))) {
+            listBySize(Arrays.copyOfRange(args, 1, args.length), args[0].toUpperCase().equals("LARGEST"), allDetails);
+            return;
+        }
+
         if (args.length == 0) {
             view.printDBStatistics(db.getDBStatistics());
             return;
@@ -594,7 +1070,18 @@ public class CmdInterpreter {
                     }
                     view.print("The specified keyword exists in the database.");
                     view.print("(found " + fileIDs.size() + " file(s))");
-                }    
+                } else {
+                    fileIDs = getLastQueryResult(path);
+                    if (fileIDs != null) {
+                        if (allDetails) {
+                            detailsLevel = 'A'; // print all details
+                        } else {
+                            detailsLevel = 'D'; // print file info + directory name
+                        }
+                        view.print("Files matching the last query.");
+                        view.print("(found " + fileIDs.size() + " file(s))");
+                    }
+                }
             }
         }
 
@@ -608,6 +1095,167 @@ public class CmdInterpreter {
         } 
     }
 
+    /**
+      * Lists all files in the specified directory and all its subdirectories.
+      *
+      * @param path the directory
+      * @param allDetails if true, print additional details
+      */
+    private void listTree(String path, Boolean allDetails) {
+        Set<Integer> fileIDs = getTreeFileIDs(path);
+        if (fileIDs == null) {
+            setStatusCode(StatusCode.DB_FILE_DIR_DOES_NOT_EXIST);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        for (Integer fileId : fileIDs) {
+            listFileInfo(fileId, allDetails ? 'A' : 'D');
+        }
+    }
+
+    /**
+      * Gets the IDs of the files in the specified directory and all its subdirectories
+      * (and prints the number of the files and directories found).
+      *
+      * @param path the directory
+      * @return a set of file IDs, or null if there are no files in the directory and its subdirectories
+      */
+    private Set<Integer> getTreeFileIDs(String path) {
+        Set<Integer> fileIDs = db.getFileIDs(path, 'T');
+        if (fileIDs != null) {
+            view.print("The specified directory tree exists in the database.");
+            view.print("(found " + fileIDs.size() + " file(s) in " + db.getDirectories(path).size() + " folder(s))");
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Lists all files with the timestamp in the specified range, ordered by the timestamp.
+      *
+      * @param args the first and optionally the last day, month or year of the range (see {@link DateRange#parse})
+      * @param allDetails if true, print additional details
+      */
+    private void listDateRange(String[] args, Boolean allDetails) {
+        if (args.length > 2) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        DateRange first = DateRange.parse(args[0]);
+        DateRange last = DateRange.parse(args[args.length - 1]);
+        if (first == null || last == null) {
+            setStatusCode(StatusCode.INVALID_ARGUMENT);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        List<Integer> fileIDs = db.getFileIDsInDateRange(first.through(last));
+        view.print("Files with the timestamp in the specified range.");
+        view.print("(found " + fileIDs.size() + " file(s))");
+        for (Integer fileId : fileIDs) {
+            listFileInfo(fileId, allDetails ? 'A' : 'D');
+        }
+    }
+
+    /**
+      * Lists all files with the size in the specified range, ordered by the size.
+      *
+      * @param args the minimal and optionally the maximal size (see {@link FileSystem#parseFileSize})
+      * @param allDetails if true, print additional details
+      */
+    private void listSizeRange(String[] args, Boolean allDetails) {
+        if (args.length > 2) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        long min = FileSystem.parseFileSize(args[0]);
+        long max = args.length == 2 ? FileSystem.parseFileSize(args[1]) : Long.MAX_VALUE;
+        if (min < 0 || max < 0) {
+            setStatusCode(StatusCode.INVALID_ARGUMENT);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        List<Integer> fileIDs = db.getFileIDsInSizeRange(min, max);
+        view.print("Files with the size in the specified range.");
+        view.print("(found " + fileIDs.size() + " file(s))");
+        for (Integer fileId : fileIDs) {
+            listFileInfo(fileId, allDetails ? 'A' : 'D');
+        }
+    }
+
+    /**
+      * Lists the largest (or the smallest) files of the database, or of the files with the specified keyword,
+      * in the specified directory or matching the last query.
+      *
+      * @param args optionally the number of files (default {@value #DEFAULT_TOP_COUNT}) and the keyword, folder or {@value #LAST_QUERY}
+      * @param largest true to list the largest files, false to list the smallest files
+      * @param allDetails if true, print additional details
+      */
+    private void listBySize(String[] args, boolean largest, Boolean allDetails) {
+        int count = DEFAULT_TOP_COUNT;
+        if (args.length >= 1 && args[0].matches("\\d+")) {
+            try {
+                count = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                count = 0;
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length > 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+        if (count <= 0) {
+            setStatusCode(StatusCode.INVALID_ARGUMENT);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        Set<Integer> fileIDs = null;
+        if (args.length == 1) {
+            fileIDs = getFileIDs(args[0]);
+            if (fileIDs == null) {
+                setStatusCode(StatusCode.DB_FILE_DIR_KEYWORD_DOES_NOT_EXIST);
+                view.printStatus(getStatusCode());
+                return;
+            }
+        }
+
+        List<Integer> selectedIDs = db.getFileIDsBySize(count, largest, fileIDs);
+        view.print((largest ? "The largest files" : "The smallest files") + (fileIDs != null ? " of the specified files." : " in the database."));
+        view.print("(found " + selectedIDs.size() + " file(s))");
+        for (Integer fileId : selectedIDs) {
+            listFileInfo(fileId, allDetails ? 'A' : 'D');
+        }
+    }
+
+    /**
+      * Gets the IDs of the specified file, of the files in the specified directory, with the specified keyword,
+      * or matching the last query (in this order).
+      *
+      * @param path the file, directory, keyword or {@value #LAST_QUERY}
+      * @return a set of file IDs, or null if nothing is specified by the path
+      */
+    private Set<Integer> getFileIDs(String path) {
+        Set<Integer> fileIDs = db.getFileIDs(path, 'F');
+        if (fileIDs == null) {
+            fileIDs = db.getFileIDs(path, 'D');
+        }
+        if (fileIDs == null) {
+            fileIDs = db.getFileIDs(path.toUpperCase(), 'K');
+        }
+        if (fileIDs == null) {
+            fileIDs = getLastQueryResult(path);
+        }
+        return fileIDs;
+    }
+
     /**
       * Lists information about a specific file based on the details level.
       *
@@ -618,7 +1266,7 @@ public class CmdInterpreter {
         DBFile file = db.getFile(fileID);
 
         String filenameWithExtension = file.getFilename() + "." + file.getExtension();
-        String formattedTimestamp = formatedDateTime(file.getTimestamp());
+        String formattedTimestamp = formatedDateTime(file.getTimestampSeconds());
         String fileSize = FileSystem.formatFileSize(file.getSize());
         String formattedOutput;
 
@@ -642,11 +1290,11 @@ public class CmdInterpreter {
                 view.print(prefix + "in: " + file.getLocation());
             }
 
-            if (file.getDuplicates().size() > 0) {
-                view.print(prefix + "Duplicates: " + file.getDuplicates().size());
+            if (file.getDuplicatesCount() > 0) {
+                view.print(prefix + "Duplicates: " + file.getDuplicatesCount());
             }
-            if (file.getPotentialDuplicates().size() > 0) {
-                view.print(prefix + "Potential duplicates: " + file.getPotentialDuplicates().size());
+            if (file.getPotentialDuplicatesCount() > 0) {
+                view.print(prefix + "Potential duplicates: " + file.getPotentialDuplicatesCount());
             }
         } else if (detailsLevel == 'A') { // All info
             view.print(filenameWithExtension);
@@ -654,7 +1302,7 @@ public class CmdInterpreter {
             view.print(prefix + "ID: " + file.getID());
             view.print(prefix + "Timestamp: " + formattedTimestamp);
             view.print(prefix + "Size: " + fileSize + " (" + file.getSize() + "byte(s))");
-            view.print(prefix + "CRC32: " + file.getChecksum());
+            view.print(prefix + file.getChecksumAlgorithm().getDisplayName() + ": " + Long.toUnsignedString(file.getChecksum()));
 
             view.print(prefix + "Keywords: ", false);
             for (String keyword : file.getKeywords()) {
@@ -694,20 +1342,13 @@ public class CmdInterpreter {
     }
 
     /**
-      * Formats a date-time string into a more readable format.
+      * Formats a file timestamp into a more readable format (by the cached formatter, see {@link DateRange#format}).
       *
-      * @param dateTime the date-time string, in the format: 'yyyymmdd hh24miss'
+      * @param dateTime the file timestamp, in seconds since the epoch
       * @return the formatted date-time string, in the format: 'dd.mm.yyyy hh24:mi:ss'
       */
-    private String formatedDateTime(String dateTime) {
-        String year = dateTime.substring(0, 4);
-        String month = dateTime.substring(4, 6);
-        String day = dateTime.substring(6, 8);
-        String hour = dateTime.substring(9, 11);
-        String minute = dateTime.substring(11, 13);
-        String second = dateTime.substring(13, 15);
-        String formattedDateTime = day + "." + month + "." + year + " " + hour + ":" + minute + ":" + second;
-        return formattedDateTime;
+    private String formatedDateTime(long dateTime) {
+        return DateRange.format(dateTime);
     }
 
     /**
@@ -731,23 +1372,73 @@ public class CmdInterpreter {
 
     /**
       * LD command (LIST DIRECTORIES short form) entry point. 
-      * Lists all directories in the database.
+      * Lists all directories in the database, or the specified directory and all its subdirectories.
       *
       * @param args the arguments of the command (see 'HELP' command for details)
       */
     private void listDirectories(String[] args) {
-        if (args.length > 0) {
+        if (args.length > 1) {
             setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
             view.printStatus(getStatusCode());
             return;
         } 
 
-        view.print("List of directories in the database:");
-        for (String dir : db.getDirectories()) {
+        List<String> directories;
+        if (args.length == 1) {
+            directories = db.getDirectories(args[0]);
+            if (directories.isEmpty()) {
+                setStatusCode(StatusCode.DB_FILE_DIR_DOES_NOT_EXIST);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            view.print("List of directories in the directory tree '" + args[0] + "':");
+        } else {
+            directories = db.getDirectories();
+            view.print("List of directories in the database:");
+        }
+        for (String dir : directories) {
             view.print("   " + dir);
         }
     }
 
+    /**
+      * Lists the directories with the largest total size of their files (the totals are kept by the database,
+      * the disk is not read).
+      *
+      * @param args optionally the number of directories (default {@value #DEFAULT_TOP_COUNT})
+      */
+    private void listSpace(String[] args) {
+        if (args.length > 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+        int count = DEFAULT_TOP_COUNT;
+        if (args.length == 1) {
+            try {
+                count = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                count = 0;
+            }
+            if (count <= 0) {
+                setStatusCode(StatusCode.INVALID_ARGUMENT);
+                view.printStatus(getStatusCode());
+                return;
+            }
+        }
+
+        List<DBData.DirectoryTotal> totals = db.getDirectoryTotals();
+        long totalBytes = 0L;
+        for (DBData.DirectoryTotal total : totals) {
+            totalBytes += total.bytes();
+        }
+        view.print("Directories with the largest total size (" + totals.size() + " directories, " + 
+                   FileSystem.formatFileSize(totalBytes) + " in total):");
+        for (DBData.DirectoryTotal total : totals.subList(0, Math.min(count, totals.size()))) {
+            view.print(String.format("   %12s   %6d file(s)   %s", FileSystem.formatFileSize(total.bytes()), total.files(), total.directory()));
+        }
+    }
+
     /**
       * DETAILS command entry point. 
       * Based on the provided arguments, shows details of all files with specified keyword or in specified directory, or
@@ -788,14 +1479,21 @@ public class CmdInterpreter {
                 if (fileIDs != null) {
                     view.print("The specified keyword exists in the database.");
                     view.print("(found " + fileIDs.size() + " file(s))");
-                }    
+                } else {
+                    fileIDs = getLastQueryResult(path);
+                    if (fileIDs != null) {
+                        view.print("Files matching the last query.");
+                        view.print("(found " + fileIDs.size() + " file(s))");
+                    }
+                }
             }
         }
 
         if (fileIDs != null) {
-            Map<Integer, Integer> allDuplicatesFound = new HashMap<>();
-            for (Integer fileId : new ArrayList<>(fileIDs)) {
-                findDuplicates(fileId, allDuplicatesFound);
+            List<Integer> checkedIDs = new ArrayList<>(fileIDs);
+            Map<Integer, Integer> allDuplicatesFound = db.processDuplicates(fileIDs, filePipeline.getParallelism());
+            for (Integer fileId : checkedIDs) {
+                printDuplicates(fileId, allDuplicatesFound);
             }
             if (allDuplicatesFound.size() == 0) {
                 view.print("No duplicates found.");
@@ -807,23 +1505,16 @@ public class CmdInterpreter {
     }
 
     /**
-      * Finds and marks in the database duplicates of specified file.
+      * Prints the number of found duplicates of specified file.
       *
-      * @param fileID the ID of the file object whose duplicates it is looking for
+      * @param fileID the ID of the file object whose duplicates were looked for
       * @param allDuplicatesFound the map containing all found duplicates
       */
-    private void findDuplicates(int fileID, Map<Integer, Integer> allDuplicatesFound) {
+    private void printDuplicates(int fileID, Map<Integer, Integer> allDuplicatesFound) {
         DBFile file = db.getFile(fileID);
         view.print(file.getFullpath() + "... ", false );
 
-        // allDuplicatesFound contains all previously found duplicates,
-        // so, this allows to avoid processing already processed field IDs
         Integer numOfDuplicates = allDuplicatesFound.get(fileID); // get number of duplicates of fileID
-        if (numOfDuplicates == null) { // if fileID has not yet been processed
-            Map<Integer, Integer> newDuplicatesFound = db.processDuplicates(fileID); // finds and marks duplicates of fileID
-            allDuplicatesFound.putAll(newDuplicatesFound); // add found duplicates info to allDuplicatesFound
-            numOfDuplicates = allDuplicatesFound.get(fileID); // get number of duplicates of fileID
-        }
         if (numOfDuplicates != null) {
             view.print(numOfDuplicates + " duplicate(s)" );
         } else {
@@ -834,41 +1525,63 @@ public class CmdInterpreter {
     /**
       * SCAN command entry point.
       * Based on the provided arguments, compares information of all files with the specified keyword,
-      * in the specified directory, or the specified file only, with the current file information from the disk.
+      * in the specified directory (or directory tree), or the specified file only, with the current file information from the disk.
       * Changed files are marked as CHANGED or DELETED.
+      * By default, only the files whose size or last modification time differs from the database (and the files already
+      * marked as CHANGED) are read; with DEEP, the checksum and the metadata of all files are compared.
+      * The files are read in parallel (see {@link FilePipeline}), the database is changed on the current thread only.
       *
       * @param args the arguments of the command (see 'HELP' command for details)
       */
     private void scan(String[] args) {
-        if (args.length != 1) {
+        boolean deep = args.length >= 2 && args[0].toUpperCase().equals("DEEP");
+        if (deep) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        boolean tree = args.length == 2 && args[0].toUpperCase().equals("TREE");
+        if (args.length != 1 && !tree) {
             setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
             view.printStatus(getStatusCode());
             return;
         } 
 
-        String path = args[0];
-        Set<Integer> fileIDs = db.getFileIDs(path, 'F');
-        if (fileIDs != null) {
-            view.print("The specified file exists in the database.");
+        String path = args[args.length - 1];
+        Set<Integer> fileIDs;
+        if (tree) {
+            fileIDs = getTreeFileIDs(path);
         } else {
-            fileIDs = db.getFileIDs(path, 'D');
+            fileIDs = db.getFileIDs(path, 'F');
             if (fileIDs != null) {
-                view.print("The specified directory exists in the database.");
-                view.print("(found " + fileIDs.size() + " file(s))");
+                view.print("The specified file exists in the database.");
             } else {
-                String keyword = args[0].toUpperCase();
-                fileIDs = db.getFileIDs(keyword, 'K');
+                fileIDs = db.getFileIDs(path, 'D');
                 if (fileIDs != null) {
-                    view.print("The specified keyword exists in the database.");
+                    view.print("The specified directory exists in the database.");
                     view.print("(found " + fileIDs.size() + " file(s))");
-                }    
+                } else {
+                    String keyword = path.toUpperCase();
+                    fileIDs = db.getFileIDs(keyword, 'K');
+                    if (fileIDs != null) {
+                        view.print("The specified keyword exists in the database.");
+                        view.print("(found " + fileIDs.size() + " file(s))");
+                    } else {
+                        fileIDs = getLastQueryResult(path);
+                        if (fileIDs != null) {
+                            view.print("Files matching the last query.");
+                            view.print("(found " + fileIDs.size() + " file(s))");
+                        }
+                    }
+                }
             }
         }
 
         if (fileIDs != null) {
-            for (Integer fileId : new ArrayList<>(fileIDs)) {
-                scanFile(fileId);
+            List<DBFile> files = new ArrayList<>(fileIDs.size());
+            for (Integer fileID : fileIDs) {
+                files.add(db.getFile(fileID));
             }
+            // a file already marked as CHANGED is compared in full, its attributes may have been restored
+            filePipeline.scan(files, file -> deep || file.getKeywords().contains("CHANGED"), this::fileChanged, this::scanFile);
         } else {
             setStatusCode(StatusCode.DB_FILE_DIR_KEYWORD_DOES_NOT_EXIST);
             view.printStatus(getStatusCode());
@@ -876,26 +1589,30 @@ public class CmdInterpreter {
     }
 
     /**
-      * Compares the database information of the specified file with the current file information from the disk.
+      * Applies the result of comparing the database information of a file with the current file information from the disk.
       * The changed file is marked as CHANGED or DELETED.
+      * The results of all files are applied on the current thread, in the order of the scanned files.
       *
-      * @param fileID the ID of the file object to be compared
+      * @param scanInfo the result of the comparison (see {@link FilePipeline#scan})
       */
-    private void scanFile(int fileID) {
-        DBFile dbFileInfo = db.getFile(fileID);
+    private void scanFile(FilePipeline.ScanInfo scanInfo) {
+        DBFile dbFileInfo = scanInfo.file();
+        int fileID = dbFileInfo.getID();
         view.print(dbFileInfo.getFullpath() + "... ", false );
 
-        DBFile currentFileInfo = FileSystem.getFileInformation(dbFileInfo.getFullpath());
-
-        switch (FileSystem.getStatusCode()) {
+        switch (scanInfo.statusCode()) {
             case StatusCode.NO_ERROR -> {
-                if (fileChanged(dbFileInfo, currentFileInfo)) {
+                if (scanInfo.changed()) {
                     db.addKeyword("CHANGED", fileID);
                     db.removeKeyword("DELETED", fileID);
                     view.print("CHANGED.");
                 } else {
                     db.removeKeyword("CHANGED", fileID);
                     db.removeKeyword("DELETED", fileID);
+                    if (scanInfo.lastModified() != 0L && (scanInfo.lastModified() != dbFileInfo.getLastModified()
+                                                          || scanInfo.fileKey() != dbFileInfo.getFileKey())) {
+                        db.updateFileAttributes(fileID, scanInfo.lastModified(), scanInfo.fileKey());  // not read by the next SCAN
+                    }
                     view.print("ok.");
                 }
             }
@@ -921,40 +1638,131 @@ public class CmdInterpreter {
         }
     }
 
+    /**
+      * DIFF command entry point.
+      * Reads the current information of the specified file from the disk and displays what differs
+      * from the database information (the attributes and the added and removed metadata tags).
+      *
+      * @param args the arguments of the command (see 'HELP' command for details)
+      */
+    private void diff(String[] args) {
+        if (args.length != 1) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        } 
+
+        Set<Integer> fileIDs = db.getFileIDs(args[0], 'F');
+        if (fileIDs == null) {
+            setStatusCode(StatusCode.DB_FILE_DIR_KEYWORD_DOES_NOT_EXIST);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        DBFile dbFileInfo = db.getFile(fileIDs.iterator().next());
+        view.print(dbFileInfo.getFullpath());
+        FileSystem.FileResult result = fileSystem.getFileInformation(dbFileInfo.getFullpath(), dbFileInfo.getChecksumAlgorithm());
+        DBFile currentFileInfo = result.file();
+        switch (result.statusCode()) {
+            case StatusCode.FILE_SYSTEM_ERROR -> {
+                setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
+                view.printStatus(getStatusCode());
+                return;
+            }
+            case StatusCode.FILE_SYSTEM_NOT_FILE -> {
+                view.print("   The file does not exist on the disk (DELETED).");
+                return;
+            }
+            default -> {}  // the file was read (it may not be an image any more)
+        }
+
+        String prefix = "   ";
+        boolean changed = false;
+        if (!dbFileInfo.getTimestamp().equals(currentFileInfo.getTimestamp())) {
+            view.print(prefix + "Timestamp: " + formatedDateTime(dbFileInfo.getTimestampSeconds()) + " -> " + formatedDateTime(currentFileInfo.getTimestampSeconds()));
+            changed = true;
+        }
+        if (dbFileInfo.getSize() != currentFileInfo.getSize()) {
+            view.print(prefix + "Size: " + dbFileInfo.getSize() + " -> " + currentFileInfo.getSize() + " byte(s)");
+            changed = true;
+        }
+        if (dbFileInfo.getChecksum() != currentFileInfo.getChecksum()) {
+            view.print(prefix + dbFileInfo.getChecksumAlgorithm().getDisplayName() + ": " + Long.toUnsignedString(dbFileInfo.getChecksum()) + 
+                       " -> " + Long.toUnsignedString(currentFileInfo.getChecksum()));
+            changed = true;
+        }
+        if (dbFileInfo.getMetadataDigest() != currentFileInfo.getMetadataDigest()) {  // the tags are compared only if the digests differ
+            view.print(prefix + "Metadata:");
+            for (MetadataInfo metadataTag : MetadataInfo.difference(dbFileInfo.getMetadata(), currentFileInfo.getMetadata())) {
+                view.print(prefix + prefix + "- " + metadataTag.getDirectory() + " " + metadataTag.getTag() + " " + metadataTag.getDescription());
+            }
+            for (MetadataInfo metadataTag : MetadataInfo.difference(currentFileInfo.getMetadata(), dbFileInfo.getMetadata())) {
+                view.print(prefix + prefix + "+ " + metadataTag.getDirectory() + " " + metadataTag.getTag() + " " + metadataTag.getDescription());
+            }
+            changed = true;
+        }
+        if (!changed) {
+            view.print(prefix + "No changes.");
+        }
+    }
+
+    /**
+      * QUERY command entry point.
+      * Lists all files matching the query (a boolean combination of predicates, see {@link DBQuery}).
+      * The query is evaluated by the database indexes; it is remembered, so the other commands can be applied
+      * to the matching files by the argument {@value #LAST_QUERY}.
+      *
+      * @param args the arguments of the command (see 'HELP' command for details)
+      */
+    private void query(String[] args) {
+        if (args.length == 0) {
+            setStatusCode(StatusCode.INVALID_NUMBER_OF_ARGUMENTS);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        DBQuery query = DBQuery.parse(args);
+        if (query == null) {
+            setStatusCode(StatusCode.INVALID_ARGUMENT);
+            view.printStatus(getStatusCode());
+            return;
+        }
+
+        lastQuery = query;
+        Set<Integer> fileIDs = db.query(query);
+        view.print("(found " + fileIDs.size() + " file(s))");
+        for (Integer fileId : fileIDs) {
+            listFileInfo(fileId, 'D');
+        }
+    }
+
+    /**
+      * Gets the IDs of the files matching the last query, if the argument of a command refers to them.
+      * The query is evaluated again, so the result reflects the current state of the database.
+      *
+      * @param path the argument of the command
+      * @return a set of file IDs matching the last query, or null if the argument is not {@value #LAST_QUERY} or there is no query
+      */
+    private Set<Integer> getLastQueryResult(String path) {
+        if (!path.equals(LAST_QUERY) || lastQuery == null) {
+            return null;
+        }
+        return db.query(lastQuery);
+    }
+
     /**
       * Checks if a file has changed by comparing information in the database with 
       * the current file state on the disk.
+      * The method runs on the worker threads of the SCAN command (it uses only its parameters).
       *
       * @param dbFileInfo the file object containing information from the database
       * @param currentFileInfo the file object containing current information from the disk
       * @return true if the file has changed, false otherwise
       */
     Boolean fileChanged(DBFile dbFileInfo, DBFile currentFileInfo) {
-        Set<MetadataInfo> dbMetadata = dbFileInfo.getMetadata();
-        Set<MetadataInfo> currentMetadata = currentFileInfo.getMetadata();
-
-        if (!dbFileInfo.getTimestamp().equals(currentFileInfo.getTimestamp()) ||
-            dbFileInfo.getSize() != currentFileInfo.getSize() ||
-            dbFileInfo.getChecksum() != currentFileInfo.getChecksum() || 
-            dbMetadata.size() != currentMetadata.size()) {
-            return true;
-        }
-        
-        for (MetadataInfo dbMetadataInfo : dbMetadata) {
-            boolean found = false;
-            for (MetadataInfo currentMetadataInfo : currentMetadata) {
-                if (dbMetadataInfo.getDirectory().equals(currentMetadataInfo.getDirectory()) &&
-                    dbMetadataInfo.getTag().equals(currentMetadataInfo.getTag()) &&
-                    dbMetadataInfo.getDescription().equals(currentMetadataInfo.getDescription())) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                return true;
-            }
-        }
-        
-        return false;
+        return !dbFileInfo.getTimestamp().equals(currentFileInfo.getTimestamp()) ||
+               dbFileInfo.getSize() != currentFileInfo.getSize() ||
+               dbFileInfo.getChecksum() != currentFileInfo.getChecksum() || 
+               dbFileInfo.getMetadataDigest() != currentFileInfo.getMetadataDigest();  // the tags are not compared one by one
     }
 }
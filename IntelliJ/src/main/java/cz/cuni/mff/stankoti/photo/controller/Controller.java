@@ -4,6 +4,8 @@ import cz.cuni.mff.stankoti.photo.status.StatusCode;
 import cz.cuni.mff.stankoti.photo.db.*;
 import cz.cuni.mff.stankoti.photo.view.*;
 
+import java.util.Arrays;
+
 /**
   * The top-level class of the Controller.
   * <p>
@@ -11,23 +13,33 @@ import cz.cuni.mff.stankoti.photo.view.*;
   * </p>
   */
 public class Controller {
+    /**
+      * Command line option for opening the database in the read-only mode.
+      */
+    public static final String READ_ONLY_OPTION = "-r";
+
     private View view;
     private DB db;
     private CmdInterpreter interpreter;
+    private DBCheckpointer checkpointer;
 
     /**
       * Creates a new Controller instance.
       * Initializes the view, database, and command interpreter.
       * Displays the full program information and database statistics.
       *
-      * @param args can contain the name of the external file from which the database data is read
+      * @param args can contain the read-only option and the name of the external file from which the database data is read
       */
     public Controller(String[] args) {
         view = new View();
         view.fullProgramInfo();
 
+        boolean readOnly = args.length > 0 && args[0].equals(READ_ONLY_OPTION);
+        if (readOnly) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         String dbFilename = getFilename(args);
-        db = new DB(dbFilename);
+        db = new DB(dbFilename, readOnly);
         switch (db.getStatusCode()) {
             case StatusCode.NO_ERROR -> {} // do nothing
             case StatusCode.DB_FILE_DOES_NOT_EXIST,
@@ -35,11 +47,24 @@ public class Controller {
                  StatusCode.DB_FILE_READ_ERROR -> view.printStatus(db.getStatusCode());
             default -> view.printStatus(StatusCode.UNEXPECTED_STATUS);
         }
+        if (db.getRecoveredChanges() > 0) {
+            view.print(db.getRecoveredChanges() + " unsaved changes were recovered from the journal file (use SAVE to keep them).");
+        }
+        if (db.isReadOnly()) {
+            view.print("The database is opened in the read-only mode.");
+        } else if (db.isConverted()) {
+            view.print("The database file is in the old format. It will be stored in the new format on the next SAVE.");
+        }
 
         view.print("");
         view.printDBStatistics(db.getDBStatistics());
 
         interpreter = new CmdInterpreter(db, view);
+        if (!db.isReadOnly()) {
+            checkpointer = new DBCheckpointer(db);
+            checkpointer.start(DBCheckpointer.DEFAULT_INTERVAL);
+            interpreter.setCheckpointer(checkpointer);
+        }
     }
 
     /**
@@ -69,6 +94,7 @@ public class Controller {
     /**
       * Runs the main application loop.
       * Initializes the command-line interface and processes user commands until the quit signal is received.
+      * The background checkpoints are stopped when the loop ends.
       */
     public void run() {
         view.print("");
@@ -81,6 +107,10 @@ public class Controller {
                 interpreter.executeCommand(cmd);
                 quit = interpreter.getQuitSignal();
             }
+        } finally {
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
         }
     }
 }
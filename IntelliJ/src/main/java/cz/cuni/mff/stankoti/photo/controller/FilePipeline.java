@@ -0,0 +1,291 @@
+package cz.cuni.mff.stankoti.photo.controller;
+
+import cz.cuni.mff.stankoti.photo.db.DBFile;
+import cz.cuni.mff.stankoti.photo.status.StatusCode;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+  * This class reads the information about files (checksum, metadata) for the ADD and SCAN commands in parallel.
+  * <p>
+  * A command works in three stages: the list of files, a bounded pool of workers reading the file information,
+  * and one writer - the thread calling {@link #run(List, HashAlgorithm, Predicate, Consumer)} or {@link #scan(List, Predicate, BiPredicate, Consumer)} -
+  * which gets the results in the order of the list and applies them to the database. Only a limited number of files
+  * is read ahead of the writer, so the memory use does not depend on the number of files.
+  * </p>
+  * <p>
+  * The files which are unchanged since they were added (see {@link FileSystem#isUnchanged}) are not read at all by the ADD command,
+  * they are passed to the writer marked as unchanged. The SCAN command reads the content only of the files
+  * whose attributes differ from the database (unless the deep scan of the file is requested).
+  * </p>
+  */
+public class FilePipeline {
+    /**
+      * Default number of worker threads (number of available processors).
+      */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    /**
+      * Maximal number of worker threads.
+      */
+    public static final int MAX_PARALLELISM = 64;
+    /**
+      * Number of files read ahead of the writer per one worker thread.
+      */
+    private static final int READ_AHEAD_PER_WORKER = 4;
+
+    /**
+      * Information about one file read by a worker for the ADD command.
+      *
+      * @param path the path of the file
+      * @param file the file object containing the file information (null if the file is unchanged)
+      * @param statusCode the status code of reading the file information
+      * @param unchanged true if the file is unchanged and was not read, false otherwise
+      */
+    public record FileInfo(String path, DBFile file, StatusCode statusCode, boolean unchanged) {}
+
+    /**
+      * Result of comparing one database file with the file on the disk for the SCAN command.
+      *
+      * @param file the file object from the database
+      * @param statusCode the status code of reading the current file information
+      * @param changed true if the file has changed (valid only if the file was read without error)
+      * @param lastModified the current last modification time of the file (0 if not known)
+      * @param fileKey the current file key hash of the file (valid only if the last modification time is known)
+      */
+    public record ScanInfo(DBFile file, StatusCode statusCode, boolean changed, long lastModified, int fileKey) {}
+
+    /**
+      * File system service used by the workers.
+      */
+    private final FileSystem fileSystem;
+    /**
+      * Number of worker threads.
+      */
+    private int parallelism;
+
+    /**
+      * Creates a new pipeline with the default number of worker threads.
+      *
+      * @param fileSystem the file system service used by the workers
+      */
+    public FilePipeline(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        setParallelism(DEFAULT_PARALLELISM);
+    }
+
+    /**
+      * Gets the number of worker threads.
+      *
+      * @return the number of worker threads
+      */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+      * Sets the number of worker threads (1 = the file information is read on the writer thread).
+      *
+      * @param parallelism the number of worker threads (1 - {@link #MAX_PARALLELISM})
+      */
+    public void setParallelism(int parallelism) {
+        assert parallelism >= 1 && parallelism <= MAX_PARALLELISM : "Invalid number of worker threads!";
+        this.parallelism = parallelism;
+    }
+
+    /**
+      * Reads the information about the specified files and passes it to the writer in the order of the list (ADD command).
+      * The writer (and the test of unchanged files) is called on the current thread.
+      *
+      * @param files the files found in the directory
+      * @param algorithm the algorithm used for the checksums
+      * @param unchanged the test of the files which are unchanged (and need not be read)
+      * @param writer the consumer applying the file information to the database
+      */
+    public void run(List<FileSystem.FileEntry> files, HashAlgorithm algorithm,
+                    Predicate<FileSystem.FileEntry> unchanged, Consumer<FileInfo> writer) {
+        process(files, "photo-add-worker-",
+                file -> unchanged.test(file) ? unchangedFileInfo(file) : null,
+                file -> readFileInfo(file, algorithm),
+                file -> new FileInfo(file.path().toString(), new DBFile(), StatusCode.FILE_SYSTEM_ERROR, false),
+                writer);
+    }
+
+    /**
+      * Reads the current information about the specified database files, compares it with the database information
+      * and passes the results to the writer in the order of the list (SCAN command).
+      * The writer is called on the current thread, the comparison runs on the worker threads
+      * (the database information of the files must not be changed until their results are passed to the writer).
+      *
+      * @param files the file objects from the database
+      * @param deep the test of the files whose content is always read (the other files are read only if their attributes differ)
+      * @param changed the comparison of the database and the current file information (true = the file has changed)
+      * @param writer the consumer applying the results to the database
+      */
+    public void scan(List<DBFile> files, Predicate<DBFile> deep, BiPredicate<DBFile, DBFile> changed, Consumer<ScanInfo> writer) {
+        process(files, "photo-scan-worker-",
+                file -> null,
+                file -> deep.test(file) ? readScanInfo(file, changed) : statScanInfo(file, changed),
+                file -> new ScanInfo(file, StatusCode.FILE_SYSTEM_ERROR, false, 0L, 0),
+                writer);
+    }
+
+    /**
+      * Processes the items by the worker threads and passes the results to the writer in the order of the list.
+      *
+      * @param <T> the type of the items
+      * @param <R> the type of the results
+      * @param items the items to process
+      * @param threadName the name prefix of the worker threads
+      * @param immediate the result computed on the current thread without a worker (null = the item is passed to a worker)
+      * @param reader the processing of one item (runs on a worker thread)
+      * @param failed the result of an item whose worker failed
+      * @param writer the consumer of the results (runs on the current thread)
+      */
+    private <T, R> void process(List<T> items, String threadName, Function<T, R> immediate,
+                                Function<T, R> reader, Function<T, R> failed, Consumer<R> writer) {
+        if (parallelism == 1 || items.size() <= 1) {
+            for (T item : items) {
+                R result = immediate.apply(item);
+                writer.accept(result != null ? result : reader.apply(item));
+            }
+            return;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, threadName + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int readAhead = parallelism * READ_AHEAD_PER_WORKER;
+            Deque<Future<R>> pending = new ArrayDeque<>(readAhead);
+            int next = 0;     // next item to submit to the workers
+            int written = 0;  // next item to pass to the writer
+            while (written < items.size()) {
+                while (next < items.size() && pending.size() < readAhead) {
+                    T item = items.get(next++);
+                    R result = immediate.apply(item);
+                    if (result != null) {
+                        pending.addLast(CompletableFuture.completedFuture(result));
+                    } else {
+                        pending.addLast(workers.submit(() -> reader.apply(item)));
+                    }
+                }
+                T item = items.get(written++);
+                R result = takeResult(pending.removeFirst());
+                writer.accept(result != null ? result : failed.apply(item));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+      * Reads the information about one file (runs on a worker thread).
+      *
+      * @param file the file found in the directory
+      * @param algorithm the algorithm used for the checksum
+      * @return the file information
+      */
+    private FileInfo readFileInfo(FileSystem.FileEntry file, HashAlgorithm algorithm) {
+        FileSystem.FileResult result = fileSystem.getFileInformation(file, algorithm);
+        return new FileInfo(file.path().toString(), result.file(), result.statusCode(), false);
+    }
+
+    /**
+      * Reads the current information about one database file and compares it with the database information (runs on a worker thread).
+      * The checksum is calculated by the algorithm of the database file, so the checksums can be compared.
+      *
+      * @param file the file object from the database
+      * @param changed the comparison of the database and the current file information
+      * @return the result of the comparison
+      */
+    private ScanInfo readScanInfo(DBFile file, BiPredicate<DBFile, DBFile> changed) {
+        FileSystem.FileResult result = fileSystem.getFileInformation(file.getFullpath(), file.getChecksumAlgorithm());
+        return compareScanInfo(file, result, changed);
+    }
+
+    /**
+      * Compares the attributes of one database file with the file on the disk (runs on a worker thread).
+      * A file which cannot be found is reported at once; only a file whose size, last modification time or file key differs
+      * (see {@link FileSystem#isUnchanged}) is read and compared in full. The current last modification time and file key
+      * are passed to the writer in both cases, so the unchanged files read by older versions get them too.
+      *
+      * @param file the file object from the database
+      * @param changed the comparison of the database and the current file information
+      * @return the result of the comparison
+      */
+    private ScanInfo statScanInfo(DBFile file, BiPredicate<DBFile, DBFile> changed) {
+        FileSystem.EntryResult entry = fileSystem.getFileEntry(file.getFullpath());
+        if (entry.statusCode() != StatusCode.NO_ERROR) {
+            return new ScanInfo(file, entry.statusCode(), false, 0L, 0);
+        }
+        if (FileSystem.isUnchanged(entry.entry(), file)) {
+            BasicFileAttributes attributes = entry.entry().attributes();
+            return new ScanInfo(file, StatusCode.NO_ERROR, false,
+                                attributes.lastModifiedTime().toMillis(), FileSystem.fileKey(attributes));
+        }
+        FileSystem.FileResult result = fileSystem.getFileInformation(entry.entry(), file.getChecksumAlgorithm());
+        return compareScanInfo(file, result, changed);
+    }
+
+    /**
+      * Compares the database information of one file with the current file information read from the disk.
+      *
+      * @param file the file object from the database
+      * @param result the current file information
+      * @param changed the comparison of the database and the current file information
+      * @return the result of the comparison
+      */
+    private static ScanInfo compareScanInfo(DBFile file, FileSystem.FileResult result, BiPredicate<DBFile, DBFile> changed) {
+        if (result.statusCode() != StatusCode.NO_ERROR) {
+            return new ScanInfo(file, result.statusCode(), false, 0L, 0);
+        }
+        return new ScanInfo(file, result.statusCode(), changed.test(file, result.file()),
+                            result.file().getLastModified(), result.file().getFileKey());
+    }
+
+    /**
+      * Creates the information about an unchanged file (the file is not read).
+      *
+      * @param file the file found in the directory
+      * @return the file information marked as unchanged
+      */
+    private static FileInfo unchangedFileInfo(FileSystem.FileEntry file) {
+        return new FileInfo(file.path().toString(), null, StatusCode.NO_ERROR, true);
+    }
+
+    /**
+      * Waits for the result of a worker.
+      *
+      * @param <R> the type of the result
+      * @param result the result of the worker
+      * @return the result, or null if the worker failed
+      */
+    private static <R> R takeResult(Future<R> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // handled by the caller
+        }
+        return null;
+    }
+}
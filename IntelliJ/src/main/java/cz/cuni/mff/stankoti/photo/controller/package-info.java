@@ -6,6 +6,7 @@
   * <ul>
   *     <li><code>{@link Controller}</code> – The top-level class of the Controller. It initializes the other parts and executes the main application loop.</li>
   *     <li><code>{@link CmdInterpreter}</code> – The main processing class. It executes all commands of the application.</li>
+  *     <li><code>{@link FilePipeline}</code> – A class reading the file information for the ADD and SCAN commands in parallel.</li>
   *     <li><code>{@link CLI}</code> – A class with methods for handling user input.</li>
   *     <li><code>{@link Command}</code> – A class providing internal supporting structure for a user command.</li>
   * </ul>
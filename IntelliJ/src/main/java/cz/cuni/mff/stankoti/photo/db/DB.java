@@ -1,21 +1,28 @@
 package cz.cuni.mff.stankoti.photo.db;
 
+import cz.cuni.mff.stankoti.photo.db.legacy.LegacyDBReader;
 import cz.cuni.mff.stankoti.photo.status.StatusCode;
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
 import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
 import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
-import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 /**
@@ -29,11 +36,28 @@ public class DB {
       * Default file name from which the program reads database data.
       */
     public static final String DEFAULT_DB_FILENAME = "photo_db.pdb";
+    /**
+      * Minimal journal size (in bytes) at which the journal is folded into a new database file on save.
+      */
+    private static final long JOURNAL_COMPACTION_SIZE = 4L * 1024 * 1024;
+    /**
+      * Share of free slots (IDs of removed files) in the file table at which the file IDs are compacted
+      * when the whole database file is written.
+      */
+    private static final double ID_COMPACTION_LIMIT = 0.25;
 
     /**
       * A database that contains information about all files, as well as index structures for quick access and searching.
       */
     private DBData data;
+    /**
+      * Memory-mapped database file used instead of the database data in the read-only mode (null otherwise).
+      */
+    private DBMappedCatalog catalog;
+    /**
+      * A flag indicating whether the database was opened in the read-only mode.
+      */
+    private boolean readOnly = false;
 
     /**
       * Current filename where the program saves database data.
@@ -43,6 +67,39 @@ public class DB {
       * A flag indicating whether the memory database data has changed compared to the last saved state.
       */
     private transient boolean dataChanged = true;
+    /**
+      * A flag indicating whether the database file was in the old (serialized) format and was converted.
+      */
+    private boolean converted = false;
+    /**
+      * Generation of the last read or written database file.
+      */
+    private long generation = 0L;
+    /**
+      * Journal of the changes made since the database file was written.
+      */
+    private DBJournal journal;
+    /**
+      * A flag indicating whether the database file was created by a checkpoint (and has not been saved yet).
+      */
+    private boolean createdByCheckpoint = false;
+    /**
+      * Number of unsaved changes recovered from the journal when the database file was read.
+      */
+    private int recoveredChanges = 0;
+    /**
+      * A flag indicating whether the file IDs were compacted in memory but the database file has not been written yet
+      * (the journal cannot be used until the whole database file is written).
+      */
+    private boolean idsCompacted = false;
+    /**
+      * File system service used for recalculating the checksums and reading the files checked for duplicates.
+      */
+    private final FileSystem fileSystem = new FileSystem();
+    /**
+      * Finder of the duplicate files.
+      */
+    private final DBDuplicateFinder duplicateFinder = new DBDuplicateFinder(fileSystem);
     /**
       * Status code of the last executed DB operation.
       */
@@ -55,8 +112,25 @@ public class DB {
       * @param dbFilename the name of the database file
       */
     public DB(String dbFilename) {
+        this(dbFilename, false);
+    }
+
+    /**
+      * Creates a new DB instance based on data in the specified database filename.
+      * <p>
+      * In the read-only mode, the database file is mapped into memory and the file objects are decoded 
+      * only when requested (if the journal contains unsaved changes, the database file is in the old format
+      * or the catalog was written without some of the optional index sections, the whole database is read instead).
+      * The database data cannot be changed.
+      * </p>
+      *
+      * @param dbFilename the name of the database file
+      * @param readOnly true to open the database in the read-only mode, false otherwise
+      */
+    public DB(String dbFilename, boolean readOnly) {
         setStatusCode(StatusCode.NO_ERROR);
         setDbFilename(dbFilename);
+        this.readOnly = readOnly;
         data = new DBData();
         ReadDB();
     }
@@ -97,12 +171,31 @@ public class DB {
         dataChanged = !dataSaved;
     }
 
+    /**
+      * Returns whether the database file was in the old (serialized) format and was converted when read.
+      * (The database will be stored in the current format on the next SAVE command.)
+      *
+      * @return true if the database file was converted, false otherwise
+      */
+    public boolean isConverted() {
+        return converted;
+    }
+
+    /**
+      * Returns whether the database was opened in the read-only mode.
+      *
+      * @return true if the database is read-only, false otherwise
+      */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     /**
       * Gets the current database filename.
       *
       * @return the database filename
       */
-    public String getDbFilename() {
+    public synchronized String getDbFilename() {
         return dbFilename;
     }
 
@@ -112,7 +205,7 @@ public class DB {
       *
       * @param dbFilename the new database filename
       */
-    public void setDbFilename(String dbFilename) {
+    public synchronized void setDbFilename(String dbFilename) {
         assert dbFilename != null && !dbFilename.isEmpty() : "DB filename must be specified!";
         if (this.dbFilename == null || !this.dbFilename.equals(dbFilename)) {
             this.dbFilename = dbFilename;
@@ -140,15 +233,43 @@ public class DB {
 
     /**
       * Reads the database data from the external database file.
+      * Database files in the old (serialized) format are converted to the current format.
+      * Changes stored in the journal since the database file was written are applied to the read data
+      * (unsaved changes written by checkpoints are recovered, but the data stays marked as changed).
       */
-    public void ReadDB() {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(dbFilename))) {
-            data = (DBData) in.readObject();
-            dataChanged(false);
+    public synchronized void ReadDB() {
+        journal = new DBJournal(dbFilename + DBJournal.FILE_SUFFIX);
+        catalog = null;
+        createdByCheckpoint = false;
+        recoveredChanges = 0;
+        try {
+            converted = false;
+            if (LegacyDBReader.isLegacyFormat(dbFilename)) {
+                data = LegacyDBReader.read(dbFilename);
+                converted = true;
+                dataChanged(true); // the converted data has not been saved in the current format yet
+            } else {
+                DBMappedCatalog mappedCatalog = readOnly ? new DBMappedCatalog(dbFilename) : null;
+                if (mappedCatalog != null && mappedCatalog.hasQueryIndexes() && !journal.hasRecords(mappedCatalog.getGeneration())) {
+                    catalog = mappedCatalog;
+                    generation = catalog.getGeneration();
+                    data.setLastFileID(catalog.getLastFileID());
+                } else {
+                    DBCatalog catalogFile = new DBCatalog(dbFilename);
+                    data = catalogFile.read();
+                    generation = catalogFile.getGeneration();
+                    journal.replay(this, generation);
+                    recoveredChanges = journal.getUnsavedRecords();
+                }
+                dataChanged(recoveredChanges > 0);
+            }
+            if (readOnly) {
+                dataChanged(false); // nothing can be saved
+            }
             setStatusCode(StatusCode.NO_ERROR);
-        } catch (FileNotFoundException e) { // File not found
+        } catch (FileNotFoundException | NoSuchFileException e) { // File not found
             setStatusCode(StatusCode.DB_FILE_DOES_NOT_EXIST);
-        } catch (ClassNotFoundException | InvalidClassException e ) { // Class not found or Class version mismatch
+        } catch (ClassNotFoundException | InvalidClassException | StreamCorruptedException e) { // Unknown format or version
             setStatusCode(StatusCode.DB_FILE_INCOMPATIBLE_FORMAT);
         } catch (IOException e) { // Read error
             setStatusCode(StatusCode.DB_FILE_READ_ERROR);
@@ -157,21 +278,184 @@ public class DB {
     }
 
     /**
-      * Writes the database data to the external database file.
+      * Writes the whole database data to the external database file and starts a new (empty) journal.
+      * If too many file IDs are unused (removed files), the file IDs are compacted first.
+      */
+    public synchronized void WriteDB() {
+        WriteDB(data.getFragmentation() > ID_COMPACTION_LIMIT);
+    }
+
+    /**
+      * Writes the whole database data to the external database file and starts a new (empty) journal.
+      *
+      * @param compactIDs true to renumber the file IDs to 1..n before writing (see {@link DBData#compactIDs()}), false otherwise
       */
-    public void WriteDB() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(dbFilename))) {
-            out.writeObject(data);
+    public synchronized void WriteDB(boolean compactIDs) {
+        assert !readOnly : "Method DB.WriteDB() - The database is read-only!";
+        if (compactIDs) {
+            data = data.compactIDs();
+            idsCompacted = true;
+        }
+        try {
+            if (!journal.getFilename().equals(dbFilename + DBJournal.FILE_SUFFIX)) {
+                discardCheckpoints(); // the database is saved under a new filename
+            }
+            DBCatalog catalog = new DBCatalog(dbFilename);
+            catalog.write(data, generation + 1);
+            generation = catalog.getGeneration();
+            converted = false;
+            journal = new DBJournal(dbFilename + DBJournal.FILE_SUFFIX);
+            journal.reset(generation);
+            createdByCheckpoint = false;
+            recoveredChanges = 0;
+            idsCompacted = false;
             dataSaved(true);
             setStatusCode(StatusCode.NO_ERROR);
-        } catch (NotSerializableException e) {
-            setStatusCode(StatusCode.DB_FILE_NOT_SERIALIZABLE);
         } catch (IOException e) {
             setStatusCode(StatusCode.DB_FILE_WRITE_ERROR);
             //e.printStackTrace();
         }
     }
 
+    /**
+      * Saves the database data changes.
+      * <p>
+      * If the database file is in the current format and belongs to the current journal, 
+      * only the changes made since the last save are appended to the journal.
+      * Otherwise (new database, new filename, converted database), the whole database file is written.
+      * When the journal grows too large, it is folded into a new database file (see {@link #CompactDB()}).
+      * </p>
+      */
+    public synchronized void SaveDB() {
+        assert !readOnly : "Method DB.SaveDB() - The database is read-only!";
+        if (generation == 0L || converted || idsCompacted || !journal.getFilename().equals(dbFilename + DBJournal.FILE_SUFFIX)) {
+            WriteDB();
+            return;
+        }
+
+        try {
+            journal.flush(generation);
+            createdByCheckpoint = false;
+            recoveredChanges = 0;
+            if (journal.size() > Math.max(JOURNAL_COMPACTION_SIZE, Files.size(Path.of(dbFilename)) / 2)) {
+                CompactDB();
+                return;
+            }
+            dataSaved(true);
+            setStatusCode(StatusCode.NO_ERROR);
+        } catch (IOException e) {
+            setStatusCode(StatusCode.DB_FILE_WRITE_ERROR);
+        }
+    }
+
+    /**
+      * Folds the journal into a new database file (the whole database data is written and the journal is emptied).
+      */
+    public synchronized void CompactDB() {
+        WriteDB();
+    }
+
+    /**
+      * Folds the journal into a new database file (the whole database data is written and the journal is emptied).
+      *
+      * @param compactIDs true to renumber the file IDs to 1..n (removes the gaps after removed files), false otherwise
+      */
+    public synchronized void CompactDB(boolean compactIDs) {
+        WriteDB(compactIDs);
+    }
+
+    /**
+      * Checkpoint: writes the changes recorded since the last checkpoint or save to the journal file,
+      * so that they are not lost if the program crashes. The changes stay unsaved (see {@link #discardUnsavedChanges()}).
+      * <p>
+      * Only the already encoded journal records are written, the database data itself is not touched,
+      * so this method can be called from another thread than the one executing the commands
+      * (see {@link DBCheckpointer}). If no database file exists yet, an empty one is created first.
+      * If the database is going to be written as a whole on the next save (new filename, converted database),
+      * nothing is written.
+      * </p>
+      *
+      * @return the checkpoint status code (the DB operation status code is not changed)
+      */
+    public synchronized StatusCode checkpoint() {
+        if (readOnly || converted || idsCompacted || !journal.getFilename().equals(dbFilename + DBJournal.FILE_SUFFIX)
+                || journal.getPendingRecords() == 0) {
+            return StatusCode.NO_ERROR;
+        }
+        try {
+            if (generation == 0L) {
+                if (Files.exists(Path.of(dbFilename))) {
+                    return StatusCode.NO_ERROR; // unreadable database file, it is overwritten only by SAVE
+                }
+                DBCatalog catalog = new DBCatalog(dbFilename);
+                catalog.write(new DBData(), 1L);
+                generation = catalog.getGeneration();
+                createdByCheckpoint = true;
+            }
+            journal.checkpoint(generation);
+            return StatusCode.NO_ERROR;
+        } catch (IOException e) {
+            return StatusCode.DB_FILE_WRITE_ERROR;
+        }
+    }
+
+    /**
+      * Discards the unsaved changes written by checkpoints (the journal file is cut off after the last save).
+      * The database data in memory is not changed.
+      */
+    public synchronized void discardUnsavedChanges() {
+        if (readOnly) {
+            return;
+        }
+        discardCheckpoints();
+    }
+
+    /**
+      * Discards the unsaved changes written by checkpoints to the current journal file
+      * (and removes the database file if it was created by a checkpoint).
+      */
+    private void discardCheckpoints() {
+        try {
+            journal.rollback();
+            if (createdByCheckpoint) {
+                String checkpointFilename = journal.getFilename().substring(0, journal.getFilename().length() - DBJournal.FILE_SUFFIX.length());
+                Files.deleteIfExists(Path.of(journal.getFilename()));
+                Files.deleteIfExists(Path.of(checkpointFilename));
+                createdByCheckpoint = false;
+                generation = 0L;
+            }
+        } catch (IOException e) {
+            // the unsaved changes stay in the journal file and will be recovered on the next start
+        }
+    }
+
+    /**
+      * Gets the number of unsaved changes (recorded since the last save, including changes written by checkpoints).
+      *
+      * @return the number of unsaved changes
+      */
+    public int getUnsavedChanges() {
+        return journal.getPendingRecords() + journal.getUnsavedRecords();
+    }
+
+    /**
+      * Gets the number of unsaved changes recovered from the journal when the database file was read.
+      *
+      * @return the number of recovered changes
+      */
+    public int getRecoveredChanges() {
+        return recoveredChanges;
+    }
+
+    /**
+      * Gets the current size of the journal file.
+      *
+      * @return the journal file size in bytes
+      */
+    public long getJournalSize() {
+        return journal.size();
+    }
+
     /**
       * Adds a file object (with image information) to the database.
       * If the image information already exists, updates them.
@@ -180,13 +464,34 @@ public class DB {
       * @return the ID of the old (updated) file object if it existed, 0 otherwise
       */
     public int addFile(DBFile file) {
+        assert !readOnly : "Method DB.addFile() - The database is read-only!";
+        if (file.getChecksumAlgorithm() == data.getHashAlgorithm()) {
+            rehashStaleFiles(file.getSize(), data.getFileID(file.getFullpath()));
+        }
+        byte[] record = journal.encodeFile(file);
+        int oldFileID = addFileInternal(file, 0);
+        journal.recordAddFile(file.getID(), record);
+        return oldFileID;
+    }
+
+    /**
+      * Adds a file object to the database (without recording the change in the journal).
+      *
+      * @param file the file object to add
+      * @param newFileID the ID for the new file object, or 0 to assign the next file ID
+      * @return the ID of the old (updated) file object if it existed, 0 otherwise
+      */
+    int addFileInternal(DBFile file, int newFileID) {
         Set<String> keywords = null;
         int oldFileID = data.getFileID(file.getFullpath());
 
         if (oldFileID != 0) {
             file.setID(oldFileID);
             keywords = this.getFile(oldFileID).getKeywords();
-            removeFile(oldFileID);
+            removeFileInternal(oldFileID);
+        } else if (newFileID != 0) {
+            file.setID(newFileID);
+            data.setLastFileID(Math.max(data.getLastFileID(), newFileID));
         } else {
             file.setID(this.nextFileID());
         }
@@ -197,28 +502,26 @@ public class DB {
         data.addFileLocation(file.getLocation(), fileID);
         data.addFileFilename(file.getFilename(), fileID);
         data.addFileExtension(file.getExtension(), fileID);
-        data.addFileTimestamp(file.getTimestamp(), fileID);
+        data.addFileTimestamp(file.getTimestampSeconds(), fileID);
         data.addFileSize(file.getSize(), fileID);
+        data.addDirectoryTotal(file);
         data.addFileChecksum(file.getChecksum(), fileID);
         if (oldFileID != 0) {
             for (String keyword : keywords) {
-                this.addKeyword(keyword, fileID);
+                addKeywordInternal(keyword, fileID);
             }
         }
         for (MetadataInfo metadataInfo : file.getMetadata()) {
             data.addFileMetadataTag(metadataInfo.getTag(), fileID);
+            data.addFileMetadataValue(metadataInfo, fileID);
         }
         
-        for (int potentialDuplicateFileID : data.findPotentialDuplicatesIDs(file.getSize(), file.getChecksum())) {
-            if (potentialDuplicateFileID != fileID) {
-                file.addPotentialDuplicate(potentialDuplicateFileID);
-                DBFile potentialDuplicateFile = data.getFile(potentialDuplicateFileID);
-                potentialDuplicateFile.addPotentialDuplicate(fileID);
-                data.addPotentialDuplicate(fileID);
-                data.addPotentialDuplicate(potentialDuplicateFileID);
-                addKeyword("DUP?", fileID);
-                addKeyword("DUP?", potentialDuplicateFileID);
-            }
+        IntBitmap potentialDuplicatesIDs = data.findPotentialDuplicatesIDs(file.getSize(), file.getChecksum(), 
+                                                                           file.getChecksumAlgorithm());
+        potentialDuplicatesIDs.add(fileID);
+        if (potentialDuplicatesIDs.size() > 1) {
+            data.joinPotentialDuplicates(potentialDuplicatesIDs);
+            potentialDuplicatesIDs.forEachInt(potentialDuplicateFileID -> addKeywordInternal("DUP?", potentialDuplicateFileID));
         }
     
         dataChanged(true);
@@ -232,23 +535,36 @@ public class DB {
       * @param fileID the ID of the file object to remove
       */
     public void removeFile(int fileID) {
+        assert !readOnly : "Method DB.removeFile() - The database is read-only!";
+        removeFileInternal(fileID);
+        journal.recordRemoveFile(fileID);
+    }
+
+    /**
+      * Removes a file object from the database (without recording the change in the journal).
+      *
+      * @param fileID the ID of the file object to remove
+      */
+    void removeFileInternal(int fileID) {
         DBFile file = data.getFile(fileID);
         data.removeFile(fileID);
         data.removeFilePath(file.getFullpath(), fileID);
         data.removeFileLocation(file.getLocation(), fileID);
         data.removeFileFilename(file.getFilename(), fileID);
         data.removeFileExtension(file.getExtension(), fileID);
-        data.removeFileTimestamp(file.getTimestamp(), fileID);
+        data.removeFileTimestamp(file.getTimestampSeconds(), fileID);
         data.removeFileSize(file.getSize(), fileID);
+        data.removeDirectoryTotal(file);
         data.removeFileChecksum(file.getChecksum(), fileID);
         for (String keyword : file.getKeywords()) {
             data.removeFileKeyword(keyword, fileID);
         }
         for (MetadataInfo metadataInfo : file.getMetadata()) {
             data.removeFileMetadataTag(metadataInfo.getTag(), fileID);
+            data.removeFileMetadataValue(metadataInfo, fileID);
         }
 
-        removeFileDuplicateInformation(file);
+        removeFileDuplicateInformationInternal(file);
 
         dataChanged(true);
     }
@@ -259,75 +575,94 @@ public class DB {
       * @param file the file object whose duplicate information to remove
       */
     public void removeFileDuplicateInformation(DBFile file) {
+        assert !readOnly : "Method DB.removeFileDuplicateInformation() - The database is read-only!";
+        removeFileDuplicateInformationInternal(file);
+        journal.recordRemoveFileDuplicateInformation(file.getID());
+    }
+
+    /**
+      * Removes all duplicate information connected with the specified file object 
+      * (without recording the change in the journal).
+      *
+      * @param file the file object whose duplicate information to remove
+      */
+    void removeFileDuplicateInformationInternal(DBFile file) {
         int fileID = file.getID();
         
-        for (int duplicateFileID : file.getDuplicates()) {
-            DBFile duplicateFile = data.getFile(duplicateFileID);
-            duplicateFile.removeDuplicate(fileID);
-            if (duplicateFile.getDuplicates().isEmpty()) {
-                data.removeDuplicate(duplicateFileID);
-                removeKeyword("DUP", duplicateFileID);
-            }
-        }
-        for (int potentialDuplicateFileID : file.getPotentialDuplicates()) {
-            DBFile potentialDuplicateFile = data.getFile(potentialDuplicateFileID);
-            potentialDuplicateFile.removePotentialDuplicate(fileID);
-            if (potentialDuplicateFile.getPotentialDuplicates().isEmpty()) {
-                data.removePotentialDuplicate(potentialDuplicateFileID);
-                removeKeyword("DUP?", potentialDuplicateFileID);
-            }
-        }
+        // the files left alone in the clusters lose their keywords, too
+        data.leaveDuplicates(file).forEachInt(duplicateFileID -> removeKeywordInternal("DUP", duplicateFileID));
+        data.leavePotentialDuplicates(file).forEachInt(potentialDuplicateFileID -> 
+            removeKeywordInternal("DUP?", potentialDuplicateFileID));
 
-        file.setDuplicates(null);
-        file.setPotentialDuplicates(null);
-        data.removeDuplicate(fileID);
-        removeKeyword("DUP", fileID);
-        data.removePotentialDuplicate(fileID);
-        removeKeyword("DUP?", fileID);
+        removeKeywordInternal("DUP", fileID);
+        removeKeywordInternal("DUP?", fileID);
 
         dataChanged(true);
     }
 
     /**
-      * By comparing the contents of the files, it looks for duplicates of the file whose ID is specified.
-      * Based on the set of found duplicates, it updates information about duplicates and 
-      * potential duplicates for all files in that set.
+      * By comparing the contents of the files, it looks for duplicates of the files whose IDs are specified
+      * (among all files in the database, see {@link DBDuplicateFinder}).
+      * Based on the found sets of duplicates, it updates information about duplicates and 
+      * potential duplicates for all files in these sets and for the specified files without duplicates.
       *
-      * @param fileID the ID of the file object to check for duplicates
+      * @param fileIDs the IDs of the file objects to check for duplicates
+      * @param parallelism the number of threads reading the files
       * @return a map of file objects IDs and the number of duplicates found for each
       */
-    public Map<Integer, Integer> processDuplicates(int fileID) {
-        Set<Integer> duplicatesIDs = new HashSet<>();
-        duplicatesIDs.add(fileID);
-        DBFile file = data.getFile(fileID);
-        for (int duplicateFileID : data.findPotentialDuplicatesIDs(file.getSize(), file.getChecksum())) {
-            if (duplicateFileID != fileID) {
-                DBFile duplicateFile = data.getFile(duplicateFileID);
-                if (FileSystem.compareFiles(file.getFullpath(), duplicateFile.getFullpath())) {
-                    duplicatesIDs.add(duplicateFileID);
-                }
+    public Map<Integer, Integer> processDuplicates(Set<Integer> fileIDs, int parallelism) {
+        assert !readOnly : "Method DB.processDuplicates() - The database is read-only!";
+        IntBitmap targetIDs = new IntBitmap(fileIDs);
+        Set<Long> sizes = new HashSet<>();
+        List<DBDuplicateFinder.Candidate> candidates = new ArrayList<>();
+        targetIDs.forEachInt(fileID -> {
+            long size = data.getFile(fileID).getSize();
+            if (sizes.add(size)) {
+                data.findSameSizeIDs(size).forEachInt(candidateID -> 
+                    candidates.add(new DBDuplicateFinder.Candidate(candidateID, data.getFile(candidateID).getFullpath(), size)));
+            }
+        });
+
+        Map<Integer, Integer> duplicatesFound = new HashMap<>();
+        for (IntBitmap duplicatesIDs : duplicateFinder.findDuplicates(candidates, parallelism)) {
+            IntBitmap checkedIDs = IntBitmap.and(duplicatesIDs, targetIDs);
+            if (!checkedIDs.isEmpty()) {  // the duplicates of files which were not checked are not changed
+                duplicatesFound.putAll(markDuplicates(checkedIDs.first(), duplicatesIDs));
+                journal.recordDuplicates(checkedIDs.first(), duplicatesIDs);
             }
         }
+        targetIDs.forEachInt(fileID -> {
+            if (!duplicatesFound.containsKey(fileID)) {
+                IntBitmap duplicatesIDs = IntBitmap.of(fileID);
+                markDuplicates(fileID, duplicatesIDs);
+                journal.recordDuplicates(fileID, duplicatesIDs);
+            }
+        });
+        return duplicatesFound;
+    }
 
+    /**
+      * Updates information about duplicates and potential duplicates for all files in the specified set
+      * of (already found) duplicates (without recording the change in the journal).
+      *
+      * @param fileID the ID of the file object which was checked for duplicates
+      * @param duplicatesIDs the set of IDs of all identical files (including the checked file)
+      * @return a map of file objects IDs and the number of duplicates found for each
+      */
+    Map<Integer, Integer> markDuplicates(int fileID, Set<Integer> duplicatesIDs) {
         Map<Integer, Integer> duplicatesFound = new HashMap<>();
         int numOfDuplicates = duplicatesIDs.size() - 1;
         if (numOfDuplicates > 0) {
             for (int fID : duplicatesIDs) {
-                removeFileDuplicateInformation(data.getFile(fID));
+                removeFileDuplicateInformationInternal(data.getFile(fID));
                 duplicatesFound.put(fID, numOfDuplicates);
             }
+            data.joinDuplicates(new IntBitmap(duplicatesIDs));
             for (int fID : duplicatesIDs) {
-                file = data.getFile(fID);
-                for (int fDupID : duplicatesIDs) {
-                    if (fID != fDupID) {
-                        file.addDuplicate(fDupID);
-                        addKeyword("DUP", fID);
-                        data.addDuplicate(fID);
-                    }
-                }
+                addKeywordInternal("DUP", fID);
             }
         } else {
-            removeFileDuplicateInformation(file);
+            removeFileDuplicateInformationInternal(data.getFile(fileID));
         }
 
         dataChanged(true);
@@ -335,6 +670,110 @@ public class DB {
         return duplicatesFound;
     }
 
+    /**
+      * Gets the algorithm used for the checksums of the files added to the database.
+      *
+      * @return the checksum algorithm
+      */
+    public HashAlgorithm getHashAlgorithm() {
+        if (catalog != null) {
+            return catalog.getHashAlgorithm();
+        }
+        return data.getHashAlgorithm();
+    }
+
+    /**
+      * Sets the algorithm used for the checksums of the files added to the database.
+      * The checksums of the files already in the database are not recalculated now, 
+      * but lazily - when a file of the same size is added.
+      *
+      * @param algorithm the checksum algorithm
+      */
+    public void setHashAlgorithm(HashAlgorithm algorithm) {
+        assert !readOnly : "Method DB.setHashAlgorithm() - The database is read-only!";
+        setHashAlgorithmInternal(algorithm);
+        journal.recordHashAlgorithm(algorithm);
+    }
+
+    /**
+      * Sets the algorithm used for the checksums (without recording the change in the journal).
+      *
+      * @param algorithm the checksum algorithm
+      */
+    void setHashAlgorithmInternal(HashAlgorithm algorithm) {
+        data.setHashAlgorithm(algorithm);
+        dataChanged(true);
+    }
+
+    /**
+      * Gets the number of files whose checksum was calculated by another algorithm than the database one
+      * (they are rehashed lazily).
+      *
+      * @return the number of files to rehash
+      */
+    public int getStaleChecksums() {
+        if (catalog != null) {
+            return 0;  // not known without decoding all file records
+        }
+        return data.countStaleChecksums();
+    }
+
+    /**
+      * Recalculates the checksums of all files with the specified size which were calculated
+      * by another algorithm than the database one (lazy migration to the database algorithm).
+      * Files which cannot be read keep the old checksum (they are not compared with the rehashed files).
+      *
+      * @param size the size of the files
+      * @param skipFileID the ID of the file object which is not rehashed (0 = none)
+      */
+    private void rehashStaleFiles(long size, int skipFileID) {
+        HashAlgorithm algorithm = data.getHashAlgorithm();
+        for (int fileID : data.findStaleChecksumIDs(size)) {
+            if (fileID == skipFileID) {
+                continue;
+            }
+            FileSystem.ChecksumResult result = fileSystem.calculateChecksum(new File(data.getFile(fileID).getFullpath()), algorithm);
+            if (result.statusCode() == StatusCode.NO_ERROR) {
+                updateChecksumInternal(fileID, algorithm, result.checksum());
+                journal.recordChecksum(fileID, algorithm, result.checksum());
+            }
+        }
+    }
+
+    /**
+      * Sets a new checksum of the file object (without recording the change in the journal).
+      * If the new checksum differs from a checksum of the same algorithm in the cluster of potential duplicates,
+      * the file leaves the cluster.
+      *
+      * @param fileID the ID of the file object
+      * @param algorithm the algorithm of the new checksum
+      * @param checksum the new checksum
+      */
+    void updateChecksumInternal(int fileID, HashAlgorithm algorithm, long checksum) {
+        DBFile file = data.getFile(fileID);
+        data.removeFileChecksum(file.getChecksum(), fileID);
+        file.setChecksum(checksum);
+        file.setChecksumAlgorithm(algorithm);
+        data.addFileChecksum(checksum, fileID);
+
+        DBCluster potentialDuplicates = file.getPotentialDuplicateCluster();
+        if (potentialDuplicates != null) {
+            boolean differs = false;
+            for (int potentialDuplicateFileID : potentialDuplicates.getMembers()) {
+                DBFile potentialDuplicateFile = data.getFile(potentialDuplicateFileID);
+                differs |= potentialDuplicateFileID != fileID && potentialDuplicateFile.getChecksumAlgorithm() == algorithm 
+                           && potentialDuplicateFile.getChecksum() != checksum;
+            }
+            if (differs) {
+                data.leavePotentialDuplicates(file).forEachInt(potentialDuplicateFileID -> 
+                    removeKeywordInternal("DUP?", potentialDuplicateFileID));
+                removeKeywordInternal("DUP?", fileID);
+            }
+        }
+
+        dataChanged(true);
+    }
+
     /**
       * Return the next file ID.
       *
@@ -351,6 +790,9 @@ public class DB {
       * @return the file ID, or 0 if not found
       */
     public int getFileID(String fullpath) {
+        if (catalog != null) {
+            return catalog.getFileID(fullpath);
+        }
         return data.getFileID(fullpath);
     }
 
@@ -363,6 +805,9 @@ public class DB {
       * @return the file ID, or 0 if not found
       */
     public int getFileID(String location, String filename, String extension) {
+        if (catalog != null) {
+            return catalog.getFileID(location, filename, extension);
+        }
         return data.getFileID(location, filename, extension);
     }
 
@@ -373,6 +818,9 @@ public class DB {
       * @return the file object associated with the specified ID, or null if not found
       */
     public DBFile getFile(int fileID) {
+        if (catalog != null) {
+            return catalog.getFile(fileID);
+        }
         return data.getFile(fileID);
     }
 
@@ -380,26 +828,138 @@ public class DB {
       * Gets the set of file objects IDs based on the specified key and 'location'.
       *
       * @param key the key to search for (can be full filename path or directory path or keyword)
-      * @param where the 'location' to search ('F' for filename full path, 'D' for directory, 'K' for keyword)
+      * @param where the 'location' to search ('F' for filename full path, 'D' for directory, 
+      *              'T' for directory with all its subdirectories, 'K' for keyword)
       * @return a set of file IDs matching the key and location
       */
     public Set<Integer> getFileIDs(String key, char where) {
         Set<Integer> fileIDs = null;
         switch (Character.toUpperCase(where)) {
             case 'F' -> {
-                int fileID = data.getFileID(key);
+                int fileID = getFileID(key);
                 if (fileID != 0) {
-                    fileIDs = new HashSet<>();
-                    fileIDs.add(fileID);
+                    fileIDs = IntBitmap.of(fileID);
                 }
             }
-            case 'D' -> fileIDs = data.getFileIDsInLocation(key);
-            case 'K' -> fileIDs = data.getFileIDsWithKeyword(key);
+            case 'D' -> fileIDs = catalog != null ? catalog.getFileIDsInLocation(key) : data.getFileIDsInLocation(key);
+            case 'T' -> fileIDs = getFileIDsInTree(key);
+            case 'K' -> fileIDs = catalog != null ? catalog.getFileIDsWithKeyword(key) : data.getFileIDsWithKeyword(key);
             default -> { assert false : "Method DB.getFileIDs() - Invalid 'where' parameter value!"; }
         }
         return fileIDs;
     }
 
+    /**
+      * Gets the IDs of the file objects in the specified directory and all its subdirectories.
+      * (The catalog mapped in the read-only mode has no directory tree, so the files of all its subdirectories are joined
+      * by one union of their sets.)
+      *
+      * @param location the directory
+      * @return a set of file IDs, or null if there are no files in the directory and its subdirectories
+      */
+    private IntBitmap getFileIDsInTree(String location) {
+        if (catalog != null) {
+            return catalog.getFileIDsInTree(location);
+        }
+        return data.getFileIDsInTree(location);
+    }
+
+    /**
+      * Gets the IDs of the file objects with the timestamp in the specified range, ordered by the timestamp.
+      * (In the read-only mode, the range is read from the sorted timestamp index of the mapped catalog.)
+      *
+      * @param range the range of the timestamps
+      * @return a list of file IDs with the timestamp in the range
+      */
+    public List<Integer> getFileIDsInDateRange(DateRange range) {
+        if (catalog != null) {
+            return catalog.getFileIDsInDateRange(range);
+        }
+        return data.getFileIDsInDateRange(range);
+    }
+
+    /**
+      * Gets the IDs of the file objects with the size in the specified range, ordered by the size.
+      *
+      * @param min the minimal size (inclusive)
+      * @param max the maximal size (inclusive)
+      * @return a list of file IDs with the size in the range
+      */
+    public List<Integer> getFileIDsInSizeRange(long min, long max) {
+        if (catalog != null) {
+            return catalog.getFileIDsInSizeRange(min, max);
+        }
+        return data.getFileIDsInSizeRange(min, max);
+    }
+
+    /**
+      * Gets the IDs of the largest (or the smallest) file objects, ordered by the size.
+      * The largest files of all files are read from the end of the size index; the largest files of a subset
+      * are selected by a heap holding at most count files (only the sizes of the files are read, the files are not decoded).
+      *
+      * @param count the maximal number of files
+      * @param largest true for the largest files (in descending order of size), false for the smallest files (in ascending order)
+      * @param fileIDs the IDs of the files to select from (null = all files)
+      * @return a list of at most count file IDs
+      */
+    public List<Integer> getFileIDsBySize(int count, boolean largest, Set<Integer> fileIDs) {
+        assert count > 0 : "Method DB.getFileIDsBySize() - The number of files must be positive!";
+        if (fileIDs == null) {
+            return catalog != null ? catalog.getFileIDsBySize(count, largest) : data.getFileIDsBySize(count, largest);
+        }
+
+        Map<Integer, Long> sizes = new HashMap<>();
+        for (Integer fileID : fileIDs) {
+            sizes.put(fileID, catalog != null ? catalog.getFileSize(fileID) : data.getFile(fileID).getSize());
+        }
+        Comparator<Integer> order = Comparator.comparingLong(sizes::get);
+        if (largest) {
+            order = order.reversed();
+        }
+        order = order.thenComparingInt(Integer::intValue);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(count + 1, order.reversed());  // the head is the last of the selected files
+        for (Integer fileID : fileIDs) {
+            if (heap.size() < count) {
+                heap.add(fileID);
+            } else if (order.compare(fileID, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(fileID);
+            }
+        }
+        List<Integer> selected = new ArrayList<>(heap);
+        selected.sort(order);
+        return selected;
+    }
+
+    /**
+      * Gets the totals (number of files and total size) of all directories, ordered by the total size (largest first).
+      * The totals are maintained when the files are added and removed; in the read-only mode,
+      * they are read from the directory totals section of the mapped catalog.
+      *
+      * @return the list of the directory totals
+      */
+    public List<DBData.DirectoryTotal> getDirectoryTotals() {
+        List<DBData.DirectoryTotal> totals;
+        if (catalog != null) {
+            totals = catalog.getDirectoryTotals();
+        } else {
+            totals = data.getDirectoryTotals();
+        }
+        totals.sort(Comparator.comparingLong(DBData.DirectoryTotal::bytes).reversed()
+                              .thenComparing(DBData.DirectoryTotal::directory));
+        return totals;
+    }
+
+    /**
+      * Gets the set of IDs of the file objects matching the query (evaluated by the indexes of the database).
+      *
+      * @param query the query
+      * @return a (new) set of file IDs matching the query
+      */
+    public IntBitmap query(DBQuery query) {
+        return query.evaluate(catalog != null ? DBQuery.index(catalog) : DBQuery.index(data));
+    }
+
     /**
       * Connects keyword and file object ID.
       *
@@ -407,12 +967,27 @@ public class DB {
       * @param fileID the ID of the file object
       */
     public void addKeyword(String keyword, int fileID) {
+        assert !readOnly : "Method DB.addKeyword() - The database is read-only!";
+        if (addKeywordInternal(keyword, fileID)) {
+            journal.recordAddKeyword(keyword, fileID);
+        }
+    }
+
+    /**
+      * Connects keyword and file object ID (without recording the change in the journal).
+      *
+      * @param keyword the keyword to connect with file object
+      * @param fileID the ID of the file object
+      * @return true if the file object exists, false otherwise
+      */
+    boolean addKeywordInternal(String keyword, int fileID) {
         DBFile file = data.getFile(fileID);
         if (file != null) {
             file.addKeyword(keyword);
             data.addFileKeyword(keyword, fileID);
             dataChanged(true);
         }
+        return file != null;
     }
 
     /**
@@ -422,12 +997,60 @@ public class DB {
       * @param fileID the ID of the file object
       */
     public void removeKeyword(String keyword, int fileID) {
+        assert !readOnly : "Method DB.removeKeyword() - The database is read-only!";
+        if (removeKeywordInternal(keyword, fileID)) {
+            journal.recordRemoveKeyword(keyword, fileID);
+        }
+    }
+
+    /**
+      * Disconnects keyword from file object ID (without recording the change in the journal).
+      *
+      * @param keyword the keyword to disconnect from file object
+      * @param fileID the ID of the file object
+      * @return true if the file object exists, false otherwise
+      */
+    boolean removeKeywordInternal(String keyword, int fileID) {
         DBFile file = data.getFile(fileID);
         if (file != null) {
             file.removeKeyword(keyword);
             data.removeFileKeyword(keyword, fileID);
             dataChanged(true);
         }
+        return file != null;
+    }
+
+    /**
+      * Updates the last modification time and the file key of a file object whose content is unchanged
+      * (e.g. the file was touched or copied back), so the next SCAN does not read the file again.
+      *
+      * @param fileID the ID of the file object
+      * @param lastModified the current last modification time of the file (in milliseconds)
+      * @param fileKey the current file key hash of the file
+      */
+    public void updateFileAttributes(int fileID, long lastModified, int fileKey) {
+        assert !readOnly : "Method DB.updateFileAttributes() - The database is read-only!";
+        if (updateFileAttributesInternal(fileID, lastModified, fileKey)) {
+            journal.recordFileAttributes(fileID, lastModified, fileKey);
+        }
+    }
+
+    /**
+      * Updates the last modification time and the file key of a file object (without recording the change in the journal).
+      *
+      * @param fileID the ID of the file object
+      * @param lastModified the last modification time of the file (in milliseconds)
+      * @param fileKey the file key hash of the file
+      * @return true if the file object exists, false otherwise
+      */
+    boolean updateFileAttributesInternal(int fileID, long lastModified, int fileKey) {
+        DBFile file = data.getFile(fileID);
+        if (file != null) {
+            file.setLastModified(lastModified);
+            file.setFileKey(fileKey);
+            dataChanged(true);
+        }
+        return file != null;
     }
 
     /**
@@ -436,6 +1059,9 @@ public class DB {
       * @return a sorted list of keywords
       */
     public List<String> getKeywords() {
+        if (catalog != null) {
+            return catalog.getKeywords();
+        }
         return data.getKeywords();
     }
 
@@ -445,15 +1071,41 @@ public class DB {
       * @return a sorted list of directories
       */
     public List<String> getDirectories() {
+        if (catalog != null) {
+            return catalog.getDirectories();
+        }
         return data.getDirectories();
     }
 
+    /**
+      * Gets a sorted list of the specified directory and all its subdirectories in the database.
+      *
+      * @param location the directory
+      * @return a sorted list of directories (empty if there is no such directory in the database)
+      */
+    public List<String> getDirectories(String location) {
+        if (catalog != null) {
+            String prefix = FileSystem.subfolderPrefix(location);
+            List<String> directories = new ArrayList<>();
+            for (String directory : catalog.getDirectories()) {
+                if (directory.equals(location) || directory.startsWith(prefix)) {
+                    directories.add(directory);
+                }
+            }
+            return directories;
+        }
+        return data.getDirectories(location);
+    }
+
     /**
       * Gets statistics about the database.
       *
       * @return a map containing statistics about the database
       */
     public Map<String, Integer> getDBStatistics() {
+        if (catalog != null) {
+            return catalog.getDBStatistics();
+        }
         return data.getDBStatistics();
     }
 }
@@ -0,0 +1,993 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+  * This class reads and writes the database data in the binary catalog (.pdb) format.
+  * <p>
+  * The catalog file consists of a fixed-size header, a section directory and the sections themselves:
+  * <ul>
+  *     <li>STRINGS – string dictionary (every path, name, keyword and metadata text is stored only once)</li>
+  *     <li>FILES – fixed-width file records, sorted by the file ID</li>
+  *     <li>LISTS – length-prefixed lists of integers (keywords, metadata, duplicates and index posting lists)</li>
+  *     <li>PATHS – full path index, sorted by the path</li>
+  *     <li>LOCATIONS – location (directory) index, sorted by the directory</li>
+  *     <li>KEYWORDS – keyword index, sorted by the keyword</li>
+  *     <li>CHECKSUM_ALGORITHMS – checksum algorithm ID of every file record (optional, CRC32 if missing)</li>
+  *     <li>FILE_ATTRIBUTES – last modification time and file key of every file record (optional)</li>
+  *     <li>METADATA_DIGESTS – digest of the metadata of every file record (optional, calculated when needed if missing)</li>
+  *     <li>TIMESTAMPS – (timestamp, file ID) pairs sorted by the timestamp (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>SIZES – (size, file ID) pairs sorted by the size (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>DIRECTORY_TOTALS – number of files and total size of every directory (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>EXTENSIONS – extension index, sorted by the extension (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>FILENAMES – filename index, sorted by the filename (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>METADATA_VALUES – metadata value index, sorted by the tag, the value and the directory,
+  *         and the tags which are not indexed (optional, used only by {@link DBMappedCatalog})</li>
+  *     <li>METADATA_COLUMNS – (value, file ID) pairs of every numeric metadata tag sorted by the value
+  *         (optional, used only by {@link DBMappedCatalog})</li>
+  * </ul>
+  * All numbers are stored in big-endian byte order.
+  * The file is written and read using FileChannel and direct buffers.
+  * </p>
+  */
+public class DBCatalog {
+    /**
+      * Magic bytes at the beginning of every catalog file.
+      */
+    static final byte[] MAGIC = "PHOTO-DB".getBytes(StandardCharsets.US_ASCII);
+    /**
+      * Current version of the catalog format.
+      */
+    static final int FORMAT_VERSION = 1;
+    /**
+      * Size of the fixed header in bytes.
+      * <p>
+      * Header layout: magic (8), version (4), section count (4), generation (8), last file ID (4),
+      * number of files (4), number of duplicates (4), number of potential duplicates (4),
+      * checksum algorithm ID of the database (4, 0 in catalogs written before it was stored), reserved (20).
+      * </p>
+      */
+    static final int HEADER_SIZE = 64;
+    /**
+      * Size of one section directory entry in bytes: section type (4), offset (8), length (8).
+      */
+    static final int SECTION_ENTRY_SIZE = 20;
+    /**
+      * Size of one file record in bytes.
+      * <p>
+      * Record layout: ID, full path, location, filename, extension, timestamp (6 x 4),
+      * size, checksum (2 x 8), keywords, metadata, duplicates, potential duplicates list references (4 x 4).
+      * The duplicates lists contain the whole cluster (including the file itself) and all files of one cluster
+      * share the same list; older catalogs contain a separate list of the other files for every file.
+      * </p>
+      */
+    static final int FILE_RECORD_SIZE = 56;
+    /**
+      * Size of the attributes of one file in bytes: last modification time (8), file key (4).
+      */
+    static final int FILE_ATTRIBUTES_SIZE = 12;
+    /**
+      * Size of one sorted index entry in bytes: string code (4), file ID or list reference (4).
+      */
+    static final int INDEX_ENTRY_SIZE = 8;
+    /**
+      * Size of one sorted value index entry in bytes: value (8), file ID (4).
+      */
+    static final int VALUE_ENTRY_SIZE = 12;
+    /**
+      * Size of one directory totals entry in bytes: directory string code (4), number of files (4), total size (8).
+      */
+    static final int DIRECTORY_TOTAL_SIZE = 16;
+    /**
+      * Size of one metadata value index entry in bytes: tag, value and directory string codes (3 x 4), list reference (4).
+      */
+    static final int METADATA_ENTRY_SIZE = 16;
+
+    /**
+      * String dictionary section type.
+      */
+    static final int SECTION_STRINGS = 1;
+    /**
+      * File records section type.
+      */
+    static final int SECTION_FILES = 2;
+    /**
+      * Integer lists section type.
+      */
+    static final int SECTION_LISTS = 3;
+    /**
+      * Full path index section type.
+      */
+    static final int SECTION_PATHS = 4;
+    /**
+      * Location (directory) index section type.
+      */
+    static final int SECTION_LOCATIONS = 5;
+    /**
+      * Keyword index section type.
+      */
+    static final int SECTION_KEYWORDS = 6;
+    /**
+      * Checksum algorithms section type.
+      */
+    static final int SECTION_CHECKSUM_ALGORITHMS = 7;
+    /**
+      * File attributes (last modification time, file key) section type.
+      */
+    static final int SECTION_FILE_ATTRIBUTES = 8;
+    /**
+      * Metadata digests section type.
+      */
+    static final int SECTION_METADATA_DIGESTS = 9;
+    /**
+      * Sorted timestamp index section type.
+      */
+    static final int SECTION_TIMESTAMPS = 10;
+    /**
+      * Sorted size index section type.
+      */
+    static final int SECTION_SIZES = 11;
+    /**
+      * Directory totals section type.
+      */
+    static final int SECTION_DIRECTORY_TOTALS = 12;
+    /**
+      * Extension index section type.
+      */
+    static final int SECTION_EXTENSIONS = 13;
+    /**
+      * Filename index section type.
+      */
+    static final int SECTION_FILENAMES = 14;
+    /**
+      * Metadata value index section type.
+      */
+    static final int SECTION_METADATA_VALUES = 15;
+    /**
+      * Sorted numeric metadata columns section type.
+      */
+    static final int SECTION_METADATA_COLUMNS = 16;
+
+    /**
+      * Size of the direct buffer used for writing.
+      */
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    /**
+      * The catalog filename.
+      */
+    private String filename;
+    /**
+      * Generation of the last read or written catalog (incremented on each write).
+      */
+    private long generation;
+
+    /**
+      * Creates a new catalog instance for the specified filename.
+      *
+      * @param filename the name of the catalog file
+      */
+    public DBCatalog(String filename) {
+        assert filename != null && !filename.isEmpty() : "Catalog filename must be specified!";
+        this.filename = filename;
+        generation = 0L;
+    }
+
+    /**
+      * Gets the generation of the last read or written catalog.
+      *
+      * @return the catalog generation
+      */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+      * Reads the whole catalog file and builds the database data (including all index structures).
+      *
+      * @return the database data read from the catalog file
+      * @throws IOException if the file cannot be read
+      * @throws StreamCorruptedException if the file is not a catalog file or has an unsupported version
+      */
+    public DBData read() throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            checkHeader(header);
+            long[][] sections = readSectionDirectory(channel, header);
+
+            String[] strings = decodeStrings(readSection(channel, sections, SECTION_STRINGS));
+            ByteBuffer records = readSection(channel, sections, SECTION_FILES);
+            ByteBuffer lists = readSection(channel, sections, SECTION_LISTS);
+            ByteBuffer algorithms = sections[SECTION_CHECKSUM_ALGORITHMS] != null
+                                    ? readSection(channel, sections, SECTION_CHECKSUM_ALGORITHMS) : null;
+            ByteBuffer attributes = sections[SECTION_FILE_ATTRIBUTES] != null
+                                    ? readSection(channel, sections, SECTION_FILE_ATTRIBUTES) : null;
+            ByteBuffer digests = sections[SECTION_METADATA_DIGESTS] != null
+                                 ? readSection(channel, sections, SECTION_METADATA_DIGESTS) : null;
+
+            DBData data = new DBData();
+            data.setHashAlgorithm(readHashAlgorithm(header));
+            int fileCount = records.getInt(0);
+            Map<Integer, IntBitmap> duplicates = new LinkedHashMap<>();  // list reference -> files of the cluster
+            Map<Integer, IntBitmap> potentialDuplicates = new LinkedHashMap<>();
+            for (int i = 0; i < fileCount; i++) {
+                DBFile file = decodeFile(records, i, code -> strings[code], lists, algorithms, attributes, digests);
+                data.loadFile(file);
+                addClusterMember(duplicates, lists, records.getInt(4 + i * FILE_RECORD_SIZE + 48), file.getID());
+                addClusterMember(potentialDuplicates, lists, records.getInt(4 + i * FILE_RECORD_SIZE + 52), file.getID());
+            }
+            for (IntBitmap cluster : duplicates.values()) {
+                data.joinDuplicates(cluster);
+            }
+            for (IntBitmap cluster : potentialDuplicates.values()) {
+                data.joinPotentialDuplicates(cluster);
+            }
+            data.setLastFileID(Math.max(data.getLastFileID(), header.getInt(24)));
+            generation = header.getLong(16);
+
+            return data;
+        }
+    }
+
+    /**
+      * Writes the database data to the catalog file.
+      * The data is first written to a temporary file, which then replaces the catalog file.
+      *
+      * @param data the database data to write
+      * @param newGeneration the generation of the written catalog
+      * @throws IOException if the file cannot be written
+      */
+    public void write(DBData data, long newGeneration) throws IOException {
+        List<DBFile> files = new ArrayList<>(data.getFiles());
+        files.sort(Comparator.comparingInt(DBFile::getID));
+
+        StringTable strings = new StringTable();
+        IntList lists = new IntList();
+        lists.add(0); // list reference 0 is always an empty list
+
+        // string codes and list references of all file records
+        int[] fileRefs = new int[files.size() * 9];
+        int duplicatesCount = 0;
+        int potentialDuplicatesCount = 0;
+        Map<DBCluster, Integer> clusterRefs = new IdentityHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            DBFile file = files.get(i);
+            int r = i * 9;
+            fileRefs[r] = strings.code(file.getFullpath());
+            fileRefs[r + 1] = strings.code(file.getLocation());
+            fileRefs[r + 2] = strings.code(file.getFilename());
+            fileRefs[r + 3] = strings.code(file.getExtension());
+            fileRefs[r + 4] = strings.code(file.getTimestamp());
+            fileRefs[r + 5] = addStringList(lists, strings, file.getKeywords());
+            fileRefs[r + 6] = addMetadataList(lists, strings, file.getMetadata());
+            fileRefs[r + 7] = addClusterList(lists, clusterRefs, file.getDuplicateCluster());
+            fileRefs[r + 8] = addClusterList(lists, clusterRefs, file.getPotentialDuplicateCluster());
+            if (file.getDuplicateCluster() != null) {
+                duplicatesCount++;
+            }
+            if (file.getPotentialDuplicateCluster() != null) {
+                potentialDuplicatesCount++;
+            }
+        }
+
+        // sorted index sections: (string code, file ID) for paths, (string code, list reference) for others
+        int[] paths = new int[files.size() * 2];
+        List<DBFile> filesByPath = new ArrayList<>(files);
+        filesByPath.sort(Comparator.comparing(DBFile::getFullpath));
+        for (int i = 0; i < filesByPath.size(); i++) {
+            paths[i * 2] = strings.code(filesByPath.get(i).getFullpath());
+            paths[i * 2 + 1] = filesByPath.get(i).getID();
+        }
+        int[] locations = sortedIndex(lists, strings, data.getLocationIndex().keys(), data.getLocationIndex()::get);
+        int[] keywords = sortedIndex(lists, strings, data.getKeywordIndex().keys(), data.getKeywordIndex()::get);
+        int[] extensions = sortedIndex(lists, strings, data.getExtensionIndex().keys(), data.getExtensionIndex()::get);
+        List<String> filenames = new ArrayList<>(data.getFilenameIndex().keySet());
+        filenames.sort(null);
+        int[] filenameEntries = sortedIndex(lists, strings, filenames, data.getFilenameIndex()::get);
+        int[] metadataValues = metadataIndex(lists, strings, data.getMetadataIndex());
+        List<String> skippedTags = data.getMetadataIndex().getSkippedTags();
+        int[] skippedTagCodes = new int[skippedTags.size()];
+        for (int i = 0; i < skippedTags.size(); i++) {
+            skippedTagCodes[i] = strings.code(skippedTags.get(i));
+        }
+        List<DBData.DirectoryTotal> directoryTotals = data.getDirectoryTotals();
+        directoryTotals.sort(Comparator.comparing(DBData.DirectoryTotal::directory));
+        int[] directoryCodes = new int[directoryTotals.size()];
+        for (int i = 0; i < directoryTotals.size(); i++) {
+            directoryCodes[i] = strings.code(directoryTotals.get(i).directory());
+        }
+
+        Path target = Path.of(filename);
+        Path temp = Path.of(filename + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            int sectionCount = 16;
+            long[][] sections = new long[sectionCount][];
+            out.skipTo(HEADER_SIZE + sectionCount * SECTION_ENTRY_SIZE);
+
+            // STRINGS
+            long start = out.position();
+            List<byte[]> encoded = strings.encode();
+            out.putInt(encoded.size());
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.putInt(offset);
+                offset += bytes.length;
+            }
+            out.putInt(offset);
+            for (byte[] bytes : encoded) {
+                out.put(bytes);
+            }
+            sections[0] = new long[] {SECTION_STRINGS, start, out.position() - start};
+
+            // FILES
+            start = out.position();
+            out.putInt(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                DBFile file = files.get(i);
+                int r = i * 9;
+                out.putInt(file.getID());
+                for (int j = 0; j < 5; j++) {
+                    out.putInt(fileRefs[r + j]);
+                }
+                out.putLong(file.getSize());
+                out.putLong(file.getChecksum());
+                for (int j = 5; j < 9; j++) {
+                    out.putInt(fileRefs[r + j]);
+                }
+            }
+            sections[1] = new long[] {SECTION_FILES, start, out.position() - start};
+
+            // LISTS
+            start = out.position();
+            for (int i = 0; i < lists.size(); i++) {
+                out.putInt(lists.get(i));
+            }
+            sections[2] = new long[] {SECTION_LISTS, start, out.position() - start};
+
+            // PATHS, LOCATIONS, KEYWORDS
+            sections[3] = writeIndex(out, SECTION_PATHS, paths);
+            sections[4] = writeIndex(out, SECTION_LOCATIONS, locations);
+            sections[5] = writeIndex(out, SECTION_KEYWORDS, keywords);
+
+            // CHECKSUM_ALGORITHMS
+            start = out.position();
+            out.putInt(files.size());
+            for (DBFile file : files) {
+                out.putByte(file.getChecksumAlgorithm().getId());
+            }
+            sections[6] = new long[] {SECTION_CHECKSUM_ALGORITHMS, start, out.position() - start};
+
+            // FILE_ATTRIBUTES
+            start = out.position();
+            out.putInt(files.size());
+            for (DBFile file : files) {
+                out.putLong(file.getLastModified());
+                out.putInt(file.getFileKey());
+            }
+            sections[7] = new long[] {SECTION_FILE_ATTRIBUTES, start, out.position() - start};
+
+            // METADATA_DIGESTS
+            start = out.position();
+            out.putInt(files.size());
+            for (DBFile file : files) {
+                out.putLong(file.getMetadataDigest());
+            }
+            sections[8] = new long[] {SECTION_METADATA_DIGESTS, start, out.position() - start};
+
+            // TIMESTAMPS
+            sections[9] = writeValueIndex(out, SECTION_TIMESTAMPS, data.getTimestampIndex());
+
+            // SIZES
+            sections[10] = writeValueIndex(out, SECTION_SIZES, data.getSizeIndex());
+
+            // DIRECTORY_TOTALS
+            start = out.position();
+            out.putInt(directoryTotals.size());
+            for (int i = 0; i < directoryTotals.size(); i++) {
+                out.putInt(directoryCodes[i]);
+                out.putInt(directoryTotals.get(i).files());
+                out.putLong(directoryTotals.get(i).bytes());
+            }
+            sections[11] = new long[] {SECTION_DIRECTORY_TOTALS, start, out.position() - start};
+
+            // EXTENSIONS, FILENAMES
+            sections[12] = writeIndex(out, SECTION_EXTENSIONS, extensions);
+            sections[13] = writeIndex(out, SECTION_FILENAMES, filenameEntries);
+
+            // METADATA_VALUES
+            start = out.position();
+            out.putInt(metadataValues.length / 4);
+            for (int entry : metadataValues) {
+                out.putInt(entry);
+            }
+            out.putInt(skippedTagCodes.length);
+            for (int code : skippedTagCodes) {
+                out.putInt(code);
+            }
+            sections[14] = new long[] {SECTION_METADATA_VALUES, start, out.position() - start};
+
+            // METADATA_COLUMNS
+            start = out.position();
+            out.putInt(DBMetadataIndex.Column.values().length);
+            for (DBMetadataIndex.Column column : DBMetadataIndex.Column.values()) {
+                putValueEntries(out, data.getMetadataIndex().getColumn(column), DBCatalog::sortableValue);
+            }
+            sections[15] = new long[] {SECTION_METADATA_COLUMNS, start, out.position() - start};
+            out.flush();
+
+            // header and section directory
+            ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE + sectionCount * SECTION_ENTRY_SIZE);
+            header.put(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(sectionCount);
+            header.putLong(newGeneration);
+            header.putInt(data.getLastFileID());
+            header.putInt(files.size());
+            header.putInt(duplicatesCount);
+            header.putInt(potentialDuplicatesCount);
+            header.putInt(data.getHashAlgorithm().getId());
+            header.position(HEADER_SIZE);
+            for (long[] section : sections) {
+                header.putInt((int) section[0]);
+                header.putLong(section[1]);
+                header.putLong(section[2]);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation = newGeneration;
+    }
+
+    /**
+      * Checks the catalog header (magic bytes and format version).
+      *
+      * @param header the buffer containing the catalog header
+      * @throws StreamCorruptedException if the file is not a catalog file or has an unsupported version
+      */
+    static void checkHeader(ByteBuffer header) throws StreamCorruptedException {
+        byte[] magic = new byte[MAGIC.length];
+        header.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new StreamCorruptedException("Not a Photo database catalog file.");
+        }
+        int version = header.getInt(8);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new StreamCorruptedException("Unsupported catalog format version: " + version);
+        }
+    }
+
+    /**
+      * Reads the checksum algorithm of the database from the catalog header.
+      * (Catalogs written before the algorithm was stored get the default algorithm, their files are rehashed lazily.)
+      *
+      * @param header the buffer containing the catalog header
+      * @return the checksum algorithm of the database
+      * @throws StreamCorruptedException if the algorithm is not supported
+      */
+    static HashAlgorithm readHashAlgorithm(ByteBuffer header) throws StreamCorruptedException {
+        int id = header.getInt(40);
+        if (id == 0) {
+            return HashAlgorithm.DEFAULT;
+        }
+        HashAlgorithm algorithm = HashAlgorithm.fromId(id);
+        if (algorithm == null) {
+            throw new StreamCorruptedException("Unsupported checksum algorithm: " + id);
+        }
+        return algorithm;
+    }
+
+    /**
+      * Reads the section directory which follows the catalog header.
+      *
+      * @param channel the catalog file channel
+      * @param header the buffer containing the catalog header
+      * @return an array of sections, indexed by section type (each entry contains offset and length, or is null)
+      * @throws IOException if the section directory cannot be read
+      */
+    static long[][] readSectionDirectory(FileChannel channel, ByteBuffer header) throws IOException {
+        int sectionCount = header.getInt(12);
+        ByteBuffer directory = readFully(channel, HEADER_SIZE, sectionCount * SECTION_ENTRY_SIZE);
+        long[][] sections = new long[SECTION_METADATA_COLUMNS + 1][];
+        for (int i = 0; i < sectionCount; i++) {
+            int type = directory.getInt(i * SECTION_ENTRY_SIZE);
+            if (type > 0 && type < sections.length) {
+                sections[type] = new long[] {directory.getLong(i * SECTION_ENTRY_SIZE + 4),
+                                             directory.getLong(i * SECTION_ENTRY_SIZE + 12)};
+            }
+        }
+        return sections;
+    }
+
+    /**
+      * Reads the whole section of the specified type into a direct buffer.
+      *
+      * @param channel the catalog file channel
+      * @param sections the section directory
+      * @param type the section type
+      * @return the buffer containing the section
+      * @throws IOException if the section does not exist or cannot be read
+      */
+    private static ByteBuffer readSection(FileChannel channel, long[][] sections, int type) throws IOException {
+        long[] section = sections[type];
+        if (section == null) {
+            throw new StreamCorruptedException("Missing catalog section: " + type);
+        }
+        if (section[1] > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Catalog section is too large: " + type);
+        }
+        return readFully(channel, section[0], (int) section[1]);
+    }
+
+    /**
+      * Reads the specified part of the file into a direct buffer.
+      *
+      * @param channel the file channel
+      * @param position the starting position in the file
+      * @param length the number of bytes to read
+      * @return the buffer containing the data
+      * @throws IOException if the data cannot be read
+      */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position + buffer.position());
+            if (bytesRead < 0) {
+                throw new StreamCorruptedException("Unexpected end of the catalog file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+      * Decodes all strings from the string dictionary section.
+      *
+      * @param section the string dictionary section
+      * @return the array of strings, indexed by the string code
+      */
+    private static String[] decodeStrings(ByteBuffer section) {
+        int count = section.getInt(0);
+        int blobStart = 4 + (count + 1) * 4;
+        String[] strings = new String[count];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int start = section.getInt(4 + i * 4);
+            int length = section.getInt(8 + i * 4) - start;
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            section.get(blobStart + start, bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+      * Decodes one file record (together with its lists) into a file object.
+      *
+      * @param records the file records section
+      * @param index the index of the record in the section
+      * @param strings the string dictionary (mapping the string code to the string)
+      * @param lists the integer lists section
+      * @param algorithms the checksum algorithms section (null if the catalog does not contain it)
+      * @param attributes the file attributes section (null if the catalog does not contain it)
+      * @param digests the metadata digests section (null if the catalog does not contain it)
+      * @return the decoded file object
+      */
+    static DBFile decodeFile(ByteBuffer records, int index, IntFunction<String> strings, ByteBuffer lists, 
+                             ByteBuffer algorithms, ByteBuffer attributes, ByteBuffer digests) {
+        int r = 4 + index * FILE_RECORD_SIZE;
+        Set<String> keywords = new HashSet<>();
+        int ref = records.getInt(r + 40);
+        for (int i = 1; i <= lists.getInt(ref * 4); i++) {
+            keywords.add(strings.apply(lists.getInt((ref + i) * 4)));
+        }
+        Set<MetadataInfo> metadata = new HashSet<>();
+        ref = records.getInt(r + 44);
+        for (int i = 0; i < lists.getInt(ref * 4); i++) {
+            int m = (ref + 1 + i * 3) * 4;
+            metadata.add(new MetadataInfo(strings.apply(lists.getInt(m)), strings.apply(lists.getInt(m + 4)),
+                                          strings.apply(lists.getInt(m + 8))));
+        }
+        DBFile file = new DBFile(records.getInt(r),
+                                 strings.apply(records.getInt(r + 4)), strings.apply(records.getInt(r + 8)),
+                                 strings.apply(records.getInt(r + 12)), strings.apply(records.getInt(r + 16)),
+                                 strings.apply(records.getInt(r + 20)), records.getLong(r + 24), records.getLong(r + 32),
+                                 keywords, metadata);
+        if (algorithms != null) {
+            HashAlgorithm algorithm = HashAlgorithm.fromId(algorithms.get(4 + index));
+            file.setChecksumAlgorithm(algorithm != null ? algorithm : HashAlgorithm.CRC32);
+        }
+        if (attributes != null) {
+            file.setLastModified(attributes.getLong(4 + index * FILE_ATTRIBUTES_SIZE));
+            file.setFileKey(attributes.getInt(4 + index * FILE_ATTRIBUTES_SIZE + 8));
+        }
+        if (digests != null) {
+            file.setMetadataDigest(digests.getLong(4 + index * 8));
+        }
+        return file;
+    }
+
+    /**
+      * Adds the file to the cluster of files sharing the list of duplicates (the files of the list are added, too).
+      *
+      * @param clusters the map of list references to the files of the clusters
+      * @param lists the integer lists section
+      * @param ref the reference of the list of duplicates of the file
+      * @param fileID the ID of the file
+      */
+    private static void addClusterMember(Map<Integer, IntBitmap> clusters, ByteBuffer lists, int ref, int fileID) {
+        if (ref == 0) {
+            return;  // no duplicates
+        }
+        clusters.computeIfAbsent(ref, k -> decodeIDList(lists, ref)).add(fileID);
+    }
+
+    /**
+      * Decodes the cluster of duplicates of a file (as a cluster object not shared with other files).
+      *
+      * @param lists the integer lists section
+      * @param ref the reference of the list of duplicates of the file
+      * @param fileID the ID of the file
+      * @return the cluster, or null if the file has no duplicates
+      */
+    static DBCluster decodeCluster(ByteBuffer lists, int ref, int fileID) {
+        if (ref == 0) {
+            return null;
+        }
+        IntBitmap members = decodeIDList(lists, ref);
+        members.add(fileID);
+        return new DBCluster(members);
+    }
+
+    /**
+      * Decodes a list of file IDs.
+      *
+      * @param lists the integer lists section
+      * @param ref the list reference
+      * @return the set of file IDs
+      */
+    static IntBitmap decodeIDList(ByteBuffer lists, int ref) {
+        IntBitmap ids = new IntBitmap();
+        for (int i = 1; i <= lists.getInt(ref * 4); i++) {
+            ids.add(lists.getInt((ref + i) * 4));
+        }
+        return ids;
+    }
+
+    /**
+      * Appends the list of files of a cluster to the lists section (the list is appended only once for every cluster).
+      *
+      * @param lists the lists section being built
+      * @param clusterRefs the map of the clusters already appended to their list references
+      * @param cluster the cluster (null = no duplicates)
+      * @return the list reference
+      */
+    private static int addClusterList(IntList lists, Map<DBCluster, Integer> clusterRefs, DBCluster cluster) {
+        if (cluster == null) {
+            return 0;
+        }
+        return clusterRefs.computeIfAbsent(cluster, c -> addIDList(lists, c.getMembers()));
+    }
+
+    /**
+      * Appends a list of string codes to the lists section.
+      *
+      * @param lists the lists section being built
+      * @param strings the string dictionary being built
+      * @param values the strings to add
+      * @return the list reference
+      */
+    private static int addStringList(IntList lists, StringTable strings, Collection<String> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        int ref = lists.size();
+        lists.add(values.size());
+        for (String value : values) {
+            lists.add(strings.code(value));
+        }
+        return ref;
+    }
+
+    /**
+      * Appends a list of metadata (directory, tag, description) string code triples to the lists section.
+      *
+      * @param lists the lists section being built
+      * @param strings the string dictionary being built
+      * @param metadata the metadata to add
+      * @return the list reference
+      */
+    private static int addMetadataList(IntList lists, StringTable strings, Collection<MetadataInfo> metadata) {
+        if (metadata.isEmpty()) {
+            return 0;
+        }
+        int ref = lists.size();
+        lists.add(metadata.size());
+        for (MetadataInfo metadataInfo : metadata) {
+            lists.add(strings.code(metadataInfo.getDirectory()));
+            lists.add(strings.code(metadataInfo.getTag()));
+            lists.add(strings.code(metadataInfo.getDescription()));
+        }
+        return ref;
+    }
+
+    /**
+      * Appends a sorted list of file IDs to the lists section.
+      *
+      * @param lists the lists section being built
+      * @param ids the file IDs to add
+      * @return the list reference
+      */
+    private static int addIDList(IntList lists, IntBitmap ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int ref = lists.size();
+        lists.add(ids.size());
+        ids.forEachInt(lists::add); // the bitmap is already sorted
+        return ref;
+    }
+
+    /**
+      * Builds a sorted index section content: (string code, list reference) pairs, sorted by the key.
+      *
+      * @param lists the lists section being built (posting lists are appended to it)
+      * @param strings the string dictionary being built
+      * @param keys the sorted keys of the index
+      * @param index the index to write (mapping the key to the set of file IDs)
+      * @return the array of index entries
+      */
+    private static int[] sortedIndex(IntList lists, StringTable strings, List<String> keys, Function<String, IntBitmap> index) {
+        int[] entries = new int[keys.size() * 2];
+        for (int i = 0; i < keys.size(); i++) {
+            entries[i * 2] = strings.code(keys.get(i));
+            entries[i * 2 + 1] = addIDList(lists, index.apply(keys.get(i)));
+        }
+        return entries;
+    }
+
+    /**
+      * Builds the metadata value index section content: (tag code, value code, directory code, list reference) entries,
+      * sorted by the tag, the value and the directory.
+      *
+      * @param lists the lists section being built (posting lists are appended to it)
+      * @param strings the string dictionary being built
+      * @param index the metadata index to write
+      * @return the array of index entries
+      */
+    private static int[] metadataIndex(IntList lists, StringTable strings, DBMetadataIndex index) {
+        List<Map.Entry<MetadataInfo, IntBitmap>> values = new ArrayList<>(index.getValues().entrySet());
+        values.sort(Map.Entry.comparingByKey(Comparator.comparing(MetadataInfo::getTag)
+                                                      .thenComparing(MetadataInfo::getDescription)
+                                                      .thenComparing(MetadataInfo::getDirectory)));
+        int[] entries = new int[values.size() * 4];
+        for (int i = 0; i < values.size(); i++) {
+            MetadataInfo metadataInfo = values.get(i).getKey();
+            entries[i * 4] = strings.code(metadataInfo.getTag());
+            entries[i * 4 + 1] = strings.code(metadataInfo.getDescription());
+            entries[i * 4 + 2] = strings.code(metadataInfo.getDirectory());
+            entries[i * 4 + 3] = addIDList(lists, values.get(i).getValue());
+        }
+        return entries;
+    }
+
+    /**
+      * Converts the numeric metadata value to a long value with the same order
+      * (so the sorted columns are searched like the other sorted value indexes).
+      *
+      * @param value the numeric value
+      * @return the long value
+      */
+    static long sortableValue(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+    }
+
+    /**
+      * Writes one sorted index section.
+      *
+      * @param out the channel writer
+      * @param type the section type
+      * @param entries the index entries
+      * @return the section directory entry (type, offset, length)
+      * @throws IOException if the section cannot be written
+      */
+    private static long[] writeIndex(ChannelWriter out, int type, int[] entries) throws IOException {
+        long start = out.position();
+        out.putInt(entries.length / 2);
+        for (int entry : entries) {
+            out.putInt(entry);
+        }
+        return new long[] {type, start, out.position() - start};
+    }
+
+    /**
+      * Writes one sorted value index section: (value, file ID) pairs, sorted by the value and the file ID.
+      *
+      * @param out the channel writer
+      * @param type the section type
+      * @param index the index (mapping the value to the set of file IDs)
+      * @return the section directory entry (type, offset, length)
+      * @throws IOException if the section cannot be written
+      */
+    private static long[] writeValueIndex(ChannelWriter out, int type, NavigableMap<Long, IntBitmap> index) throws IOException {
+        long start = out.position();
+        putValueEntries(out, index, Long::longValue);
+        return new long[] {type, start, out.position() - start};
+    }
+
+    /**
+      * Writes the number of entries and the (value, file ID) entries of one sorted value index.
+      *
+      * @param <K> the type of the values
+      * @param out the channel writer
+      * @param index the index (mapping the value to the set of file IDs)
+      * @param value the conversion of the value to a long value with the same order
+      * @throws IOException if the entries cannot be written
+      */
+    private static <K> void putValueEntries(ChannelWriter out, NavigableMap<K, IntBitmap> index, ToLongFunction<K> value)
+            throws IOException {
+        int count = 0;
+        for (IntBitmap fileIDs : index.values()) {
+            count += fileIDs.size();
+        }
+        out.putInt(count);
+        for (Map.Entry<K, IntBitmap> entry : index.entrySet()) {
+            long key = value.applyAsLong(entry.getKey());
+            for (int fileID : entry.getValue().toIntArray()) {
+                out.putLong(key);
+                out.putInt(fileID);
+            }
+        }
+    }
+
+    /**
+      * String dictionary being built during the write (assigns codes in order of first use).
+      */
+    private static class StringTable {
+        private Map<String, Integer> codes = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = strings.size();
+                codes.put(value, code);
+                strings.add(value);
+            }
+            return code;
+        }
+
+        List<byte[]> encode() {
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            for (String value : strings) {
+                encoded.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            return encoded;
+        }
+    }
+
+    /**
+      * Growable array of primitive integers.
+      */
+    private static class IntList {
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+      * Sequential writer to a file channel through one reusable direct buffer.
+      */
+    private static class ChannelWriter {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private long position = 0L;
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return position + buffer.position();
+        }
+
+        void skipTo(long newPosition) throws IOException {
+            flush();
+            position = newPosition;
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
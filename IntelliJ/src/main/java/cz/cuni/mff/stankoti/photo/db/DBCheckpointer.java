@@ -0,0 +1,128 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.status.StatusCode;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+  * This class periodically writes the database changes to the journal file in the background (checkpoints).
+  * <p>
+  * The changes are recorded in the journal as already encoded records, so a checkpoint only takes
+  * the pending records (under a short lock) and appends them to the journal file on its own thread.
+  * The commands are not paused by the checkpoints and the changes of a long running command (e.g. ADD)
+  * survive a crash. The changes written by checkpoints stay unsaved until the next SAVE (see {@link DB#checkpoint()}).
+  * </p>
+  */
+public class DBCheckpointer implements AutoCloseable {
+    /**
+      * Default interval between two checkpoints (in seconds).
+      */
+    public static final int DEFAULT_INTERVAL = 60;
+
+    /**
+      * The database whose changes are written.
+      */
+    private final DB db;
+    /**
+      * Executor running the checkpoints.
+      */
+    private final ScheduledExecutorService executor;
+    /**
+      * Currently scheduled checkpoints (null if the automatic checkpoints are off).
+      */
+    private ScheduledFuture<?> task;
+    /**
+      * Interval between two checkpoints (in seconds), 0 if the automatic checkpoints are off.
+      */
+    private int interval;
+    /**
+      * Status code of the last checkpoint.
+      */
+    private volatile StatusCode statusCode;
+
+    /**
+      * Creates a new checkpointer for the specified database (the automatic checkpoints are off).
+      *
+      * @param db the database whose changes are written
+      */
+    public DBCheckpointer(DB db) {
+        this.db = db;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "photo-db-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        interval = 0;
+        statusCode = StatusCode.NO_ERROR;
+    }
+
+    /**
+      * Starts (or restarts) the automatic checkpoints with the specified interval.
+      *
+      * @param interval the interval between two checkpoints (in seconds), 0 to turn the automatic checkpoints off
+      */
+    public synchronized void start(int interval) {
+        assert interval >= 0 : "Checkpoint interval must not be negative!";
+        stop();
+        if (interval > 0 && !executor.isShutdown()) {
+            task = executor.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.SECONDS);
+            this.interval = interval;
+        }
+    }
+
+    /**
+      * Stops the automatic checkpoints (a running checkpoint is finished).
+      */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        interval = 0;
+    }
+
+    /**
+      * Gets the interval between two checkpoints.
+      *
+      * @return the interval in seconds, 0 if the automatic checkpoints are off
+      */
+    public synchronized int getInterval() {
+        return interval;
+    }
+
+    /**
+      * Gets the status code of the last checkpoint.
+      *
+      * @return the status code of the last checkpoint
+      */
+    public StatusCode getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+      * Writes a checkpoint immediately (on the calling thread).
+      *
+      * @return the checkpoint status code
+      */
+    public StatusCode checkpoint() {
+        statusCode = db.checkpoint();
+        return statusCode;
+    }
+
+    /**
+      * Stops the automatic checkpoints and waits until a running checkpoint is finished.
+      */
+    @Override
+    public void close() {
+        stop();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
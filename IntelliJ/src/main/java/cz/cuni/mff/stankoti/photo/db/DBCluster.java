@@ -0,0 +1,96 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+
+/**
+  * This class contains one cluster of duplicates (or potential duplicates) - the set of IDs of files
+  * which are all identical (or potentially identical) to each other.
+  * <p>
+  * One cluster object is shared by all its member files (see {@link DBFile#getDuplicateCluster()}),
+  * so the relation takes one set per group instead of one set per file, and the membership test,
+  * the number of duplicates and the removal of a file do not depend on the size of the group.
+  * Two clusters are merged by moving the members of the smaller cluster to the larger one
+  * (see {@link DBData#joinDuplicates(IntBitmap)}).
+  * </p>
+  */
+public class DBCluster {
+    /**
+      * IDs of the member files.
+      */
+    private final IntBitmap members;
+
+    /**
+      * Creates a new empty cluster.
+      */
+    public DBCluster() {
+        members = new IntBitmap();
+    }
+
+    /**
+      * Creates a cluster with the specified members (the set is used by the cluster, it is not copied).
+      *
+      * @param members the set of IDs of the member files
+      */
+    public DBCluster(IntBitmap members) {
+        this.members = members;
+    }
+
+    /**
+      * Gets the IDs of the member files (the set must not be changed).
+      *
+      * @return the set of IDs of the member files
+      */
+    public IntBitmap getMembers() {
+        return members;
+    }
+
+    /**
+      * Gets the number of member files.
+      *
+      * @return the number of member files
+      */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+      * Checks if the file is a member of the cluster.
+      *
+      * @param fileID the ID of the file
+      * @return true if the file is a member, false otherwise
+      */
+    public boolean contains(int fileID) {
+        return members.contains(fileID);
+    }
+
+    /**
+      * Gets the IDs of the member files except the specified one (a new set).
+      *
+      * @param fileID the ID of the file to leave out
+      * @return the set of IDs of the other member files
+      */
+    public IntBitmap others(int fileID) {
+        IntBitmap others = members.copy();
+        others.remove(fileID);
+        return others;
+    }
+
+    /**
+      * Adds a member file.
+      *
+      * @param fileID the ID of the file
+      */
+    void add(int fileID) {
+        members.add(fileID);
+    }
+
+    /**
+      * Removes a member file.
+      *
+      * @param fileID the ID of the file
+      */
+    void remove(int fileID) {
+        members.remove(fileID);
+    }
+}
@@ -0,0 +1,244 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+  * This class contains an index keyed by strings of the global string dictionary (see {@link StringDictionary}).
+  * <p>
+  * The sets (bitmaps) of file IDs of the keys are stored in a compact array of slots (one slot per key of this index),
+  * the slot of a key is found by a small open-addressing hash table keyed by the string dictionary code of the key.
+  * So the index holds no key strings and no hash map entries, and its size does not depend on the number of strings
+  * in the dictionary (e.g. the index of a few extensions stays small even if there are millions of paths).
+  * </p>
+  * <p>
+  * The sorted list of the keys is kept until a key is added or removed, so listing the keys does not sort them every time.
+  * </p>
+  */
+public class DBCodeIndex {
+    /**
+      * Initial number of slots (a power of two).
+      */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+      * Hash table of the slots: slot number + 1 at the position given by the hash of the key code (0 = empty position).
+      * Its length is a power of two and at least twice the number of keys (linear probing).
+      */
+    private int[] table;
+    /**
+      * String dictionary codes of the keys, by the slot.
+      */
+    private int[] codes;
+    /**
+      * Sets (bitmaps) of file IDs of the keys, by the slot.
+      */
+    private IntBitmap[] postings;
+    /**
+      * Number of keys in the index (the slots 0 .. size - 1 are used).
+      */
+    private int size;
+    /**
+      * Sorted list of the keys, or null if a key was added or removed since it was created.
+      */
+    private List<String> sortedKeys;
+
+    /**
+      * Creates a new empty index.
+      */
+    public DBCodeIndex() {
+        table = new int[INITIAL_CAPACITY * 2];
+        codes = new int[INITIAL_CAPACITY];
+        postings = new IntBitmap[INITIAL_CAPACITY];
+        size = 0;
+        sortedKeys = null;
+    }
+
+    /**
+      * Gets the set of file IDs of the specified key.
+      *
+      * @param key the key
+      * @return the set (bitmap) of file IDs, or null if the key is not in the index
+      */
+    public IntBitmap get(String key) {
+        return get(StringDictionary.find(key));
+    }
+
+    /**
+      * Gets the set of file IDs of the key with the specified string dictionary code.
+      *
+      * @param code the code of the key
+      * @return the set (bitmap) of file IDs, or null if the key is not in the index
+      */
+    public IntBitmap get(int code) {
+        int slot = code >= 0 ? table[position(code)] - 1 : -1;
+        return slot >= 0 ? postings[slot] : null;
+    }
+
+    /**
+      * Adds a file ID to the specified key.
+      *
+      * @param key the key
+      * @param fileID the ID of the file object
+      */
+    public void add(String key, int fileID) {
+        add(StringDictionary.code(key), fileID);
+    }
+
+    /**
+      * Adds a file ID to the key with the specified string dictionary code.
+      *
+      * @param code the code of the key
+      * @param fileID the ID of the file object
+      */
+    public void add(int code, int fileID) {
+        assert code >= 0 : "Invalid string code!";
+        int position = position(code);
+        if (table[position] == 0) {
+            if (size == postings.length) {
+                grow();
+                position = position(code);
+            }
+            codes[size] = code;
+            postings[size] = new IntBitmap();
+            table[position] = ++size;
+            sortedKeys = null;
+        }
+        postings[table[position] - 1].add(fileID);
+    }
+
+    /**
+      * Removes a file ID from the specified key (the key is removed when it has no file IDs left).
+      *
+      * @param key the key
+      * @param fileID the ID of the file object
+      */
+    public void remove(String key, int fileID) {
+        remove(StringDictionary.find(key), fileID);
+    }
+
+    /**
+      * Removes a file ID from the key with the specified string dictionary code
+      * (the key is removed when it has no file IDs left).
+      *
+      * @param code the code of the key
+      * @param fileID the ID of the file object
+      */
+    public void remove(int code, int fileID) {
+        if (code < 0) {
+            return;
+        }
+        int position = position(code);
+        int slot = table[position] - 1;
+        if (slot < 0) {
+            return;
+        }
+        postings[slot].remove(fileID);
+        if (!postings[slot].isEmpty()) {
+            return;
+        }
+
+        // the last slot is moved to the free slot, so the used slots stay contiguous
+        removePosition(position);
+        int last = --size;
+        if (slot != last) {
+            codes[slot] = codes[last];
+            postings[slot] = postings[last];
+            table[position(codes[slot])] = slot + 1;
+        }
+        postings[last] = null;
+        sortedKeys = null;
+    }
+
+    /**
+      * Gets the number of keys in the index.
+      *
+      * @return the number of keys
+      */
+    public int size() {
+        return size;
+    }
+
+    /**
+      * Gets a sorted list of all keys in the index.
+      *
+      * @return a sorted list of keys (must not be changed)
+      */
+    public List<String> keys() {
+        if (sortedKeys == null) {
+            List<String> keys = new ArrayList<>(size);
+            for (int slot = 0; slot < size; slot++) {
+                keys.add(StringDictionary.string(codes[slot]));
+            }
+            keys.sort(null);
+            sortedKeys = Collections.unmodifiableList(keys);
+        }
+        return sortedKeys;
+    }
+
+    /**
+      * Finds the position of the key code in the hash table: the position holding its slot,
+      * or the empty position where it would be inserted.
+      *
+      * @param code the code of the key
+      * @return the position in the hash table
+      */
+    private int position(int code) {
+        int mask = table.length - 1;
+        int position = hash(code) & mask;
+        while (table[position] != 0 && codes[table[position] - 1] != code) {
+            position = (position + 1) & mask;
+        }
+        return position;
+    }
+
+    /**
+      * Empties the position of the hash table, moving back the following entries of the same probe sequence
+      * (so no "deleted" marks are needed).
+      *
+      * @param position the position to empty
+      */
+    private void removePosition(int position) {
+        int mask = table.length - 1;
+        int free = position;
+        int next = (free + 1) & mask;
+        while (table[next] != 0) {
+            int home = hash(codes[table[next] - 1]) & mask;
+            // the entry can be moved to the free position if its home position is not in (free, next]
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                table[free] = table[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[free] = 0;
+    }
+
+    /**
+      * Doubles the number of slots and rebuilds the hash table.
+      */
+    private void grow() {
+        codes = Arrays.copyOf(codes, codes.length * 2);
+        postings = Arrays.copyOf(postings, postings.length * 2);
+        table = new int[postings.length * 2];
+        for (int slot = 0; slot < size; slot++) {
+            table[position(codes[slot])] = slot + 1;
+        }
+    }
+
+    /**
+      * Mixes the bits of the key code (the codes of the keys of one index are often close to each other).
+      *
+      * @param code the code of the key
+      * @return the hash of the code
+      */
+    private static int hash(int code) {
+        int hash = code * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,34 +1,53 @@
 package cz.cuni.mff.stankoti.photo.db;
 
-import java.io.Serializable;
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
   * This class contains the internal representation of the Photo database.
   * <p>
   * It contains the internal structure and provides methods for manipulating data (files, folders, keywords, etc.) in the database.
   * </p>
+  * <p>
+  * All posting lists (sets of file IDs) of the indexes are stored as compressed bitmaps (see {@link IntBitmap}).
+  * </p>
+  * <p>
+  * The location, extension, keyword and metadata tag indexes are keyed by the codes of the global
+  * string dictionary (see {@link DBCodeIndex}). The directories are also kept in a compressed trie
+  * (see {@link DBPathTrie}), so the files of a whole directory subtree are found without scanning all directories.
+  * </p>
   */
-public class DBData implements Serializable {  // implement the Serializable interface
-    /**
-      * Unique identifier for the serialized class version.
-      */
-    private static final long serialVersionUID = 1L;
+public class DBData {
     /**
       * Last used ID of the file object.
       */
     private int lastFileID;
+    /**
+      * Algorithm used for the checksums of the files added to the database.
+      * (Files with a checksum calculated by another algorithm are rehashed lazily.)
+      */
+    private HashAlgorithm hashAlgorithm;
     /**
       * File object ID index.
-      * Mapping the file object ID to the corresponding file object in the database.
+      * The table of file objects indexed directly by the file object ID.
       */
-    private Map<Integer, DBFile> files;
+    private DBFileTable files;
     /**
       * Absolute filename path index.
       * Mapping (1:1) the absolute filename path (including filename) to the ID of corresponding file object in the database.
@@ -38,70 +57,91 @@ public class DBData implements Serializable {  // implement the Serializable int
       * Location (directory) index.
       * Mapping the directory to the set of files located in that directory.
       */
-    private Map<String, Set<Integer>> locations;
+    private DBCodeIndex locations;
+    /**
+      * Directory tree index.
+      * Compressed trie of the directories with the sets of files of the whole directory subtrees.
+      */
+    private DBPathTrie directoryTree;
     /**
       * Filename index.
       * Mapping the filename to the set of files with that filename.
       */
-    private Map<String, Set<Integer>> filenames;
+    private Map<String, IntBitmap> filenames;
     /**
       * File extension index.
       * Mapping the extension to the set of files with that extension.
       */
-    private Map<String, Set<Integer>> extensions;
+    private DBCodeIndex extensions;
     /**
       * Timestamp index.
-      * Mapping the timestamp to the set of files with that timestamp.
+      * Mapping the timestamp (seconds since the epoch) to the set of files with that timestamp, sorted by the timestamp
+      * (so the files in a range of timestamps are found in O(log n + k)).
       */
-    private Map<String, Set<Integer>> timestamps;
+    private NavigableMap<Long, IntBitmap> timestamps;
     /**
       * Size index.
-      * Mapping the file size to the set of files with that size.
+      * Mapping the file size to the set of files with that size, sorted by the size
+      * (so the files in a range of sizes, or the largest and smallest files, are found without visiting all sizes).
+      */
+    private NavigableMap<Long, IntBitmap> sizes;
+    /**
+      * Directory totals.
+      * Mapping the location (directory) code to the number and the total size of the files in the directory.
       */
-    private Map<Long, Set<Integer>> sizes;
+    private Map<Integer, DirectoryTotal> directoryTotals;
     /**
       * Checksum index.
       * Mapping checksum values to the set of files that have that checksum.
       */
-    private Map<Long, Set<Integer>> checksums;
+    private Map<Long, IntBitmap> checksums;
     /**
       * Keyword index.
       * Mapping the keyword to the set of files associated with that keyword.
       */
-    private Map<String, Set<Integer>> keywords;
+    private DBCodeIndex keywords;
     /**
       * Metadata tag index.
       * Mapping the metadata tag to the set of files containing that tag.
       */
-    private Map<String, Set<Integer>> metadataTags;
+    private DBCodeIndex metadataTags;
+    /**
+      * Metadata value index.
+      * Mapping the metadata tag with its value to the set of files containing that tag (with typed columns of the numeric tags).
+      */
+    private DBMetadataIndex metadataValues;
     /**
       * Duplicates index.
-      * Set of all file object IDs with at least one duplicate
+      * Set of all file object IDs with at least one duplicate (the members of all clusters of duplicates)
       */
-    private Set<Integer> duplicates;
+    private IntBitmap duplicates;
     /**
       * Duplicates index.
-      * Set of all file object IDs with at least one potential duplicate
+      * Set of all file object IDs with at least one potential duplicate (the members of all clusters of potential duplicates)
       */
-    private Set<Integer> potentialDuplicates;
+    private IntBitmap potentialDuplicates;
 
     /**
       * Default constructor for database initialization.
       */
     public DBData() {
         lastFileID = 0;
-        files = new HashMap<>();
+        hashAlgorithm = HashAlgorithm.DEFAULT;
+        files = new DBFileTable();
         fullpaths = new HashMap<>();
-        locations = new HashMap<>();
+        locations = new DBCodeIndex();
+        directoryTree = new DBPathTrie();
         filenames = new HashMap<>();
-        extensions = new HashMap<>();
-        timestamps = new HashMap<>();
-        sizes = new HashMap<>();
+        extensions = new DBCodeIndex();
+        timestamps = new TreeMap<>();
+        sizes = new TreeMap<>();
+        directoryTotals = new HashMap<>();
         checksums = new HashMap<>();
-        keywords = new HashMap<>();
-        metadataTags = new HashMap<>();
-        duplicates = new HashSet<>();
-        potentialDuplicates = new HashSet<>();
+        keywords = new DBCodeIndex();
+        metadataTags = new DBCodeIndex();
+        metadataValues = new DBMetadataIndex();
+        duplicates = new IntBitmap();
+        potentialDuplicates = new IntBitmap();
     }
 
     /**
@@ -122,6 +162,25 @@ public class DBData implements Serializable {  // implement the Serializable int
         lastFileID = newID;
     }
 
+    /**
+      * Gets the algorithm used for the checksums of the files added to the database.
+      *
+      * @return the checksum algorithm
+      */
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+      * Sets the algorithm used for the checksums of the files added to the database.
+      *
+      * @param hashAlgorithm the checksum algorithm
+      */
+    public void setHashAlgorithm(HashAlgorithm hashAlgorithm) {
+        assert hashAlgorithm != null : "Checksum algorithm must not be null!";
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
     /**
       * Generates the next file ID by incrementing the last file ID.
       *
@@ -138,20 +197,31 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @return a sorted list of keywords
       */
     public List<String> getKeywords() {
-        List<String> keys = new ArrayList<>(keywords.keySet());
-        Collections.sort(keys);
-        return keys;
+        return keywords.keys();
     }
 
     /**
-      * Retrieves a sorted list of all directories in the database.
+      * Retrieves a sorted list of all directories in the database (the directory tree is already sorted).
       *
       * @return a sorted list of directories
       */
     public List<String> getDirectories() {
-        List<String> dirs = new ArrayList<>(locations.keySet());
-        Collections.sort(dirs);
-        return dirs;
+        return directoryTree.getPaths("");
+    }
+
+    /**
+      * Retrieves a sorted list of the specified directory and all its subdirectories in the database.
+      *
+      * @param location the directory
+      * @return a sorted list of directories (empty if there is no such directory in the database)
+      */
+    public List<String> getDirectories(String location) {
+        List<String> directories = new ArrayList<>();
+        if (locations.get(location) != null) {
+            directories.add(location);
+        }
+        directories.addAll(directoryTree.getPaths(FileSystem.subfolderPrefix(location)));
+        return directories;
     }
 
     /**
@@ -161,7 +231,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @return the file object associated with the specified ID, or null if not found
       */
     public DBFile getFile(int fileID) {
-        return files.getOrDefault(fileID, null);
+        return files.get(fileID);
     }
 
     /**
@@ -170,7 +240,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param file the file object to add
       */
     public void addFile(DBFile file) {
-        files.put(file.getID(), file);
+        files.put(file);
     }
 
     /**
@@ -182,6 +252,196 @@ public class DBData implements Serializable {  // implement the Serializable int
         files.remove(fileID);
     }
 
+    /**
+      * Adds a file object read from the database file to the database, including all its index entries.
+      * (The file keywords are taken as they are, nothing is recalculated. The clusters of duplicates
+      * are linked by {@link #joinDuplicates(IntBitmap)} after all files are loaded.)
+      *
+      * @param file the file object to add
+      */
+    public void loadFile(DBFile file) {
+        int fileID = file.getID();
+        addFile(file);
+        addFilePath(file.getFullpath(), fileID);
+        locations.add(file.getLocationCode(), fileID);
+        directoryTree.add(file.getLocation(), fileID);
+        addFileFilename(file.getFilename(), fileID);
+        extensions.add(file.getExtensionCode(), fileID);
+        addFileTimestamp(file.getTimestampSeconds(), fileID);
+        addFileSize(file.getSize(), fileID);
+        addDirectoryTotal(file);
+        addFileChecksum(file.getChecksum(), fileID);
+        file.getKeywordCodes().forEachInt(code -> keywords.add(code, fileID));
+        for (MetadataInfo metadataInfo : file.getMetadata()) {
+            metadataTags.add(metadataInfo.getTagCode(), fileID);
+            metadataValues.add(metadataInfo, fileID);
+        }
+        if (fileID > lastFileID) {
+            lastFileID = fileID;
+        }
+    }
+
+    /**
+      * Gets all file objects in the database.
+      *
+      * @return the collection of all file objects
+      */
+    Collection<DBFile> getFiles() {
+        return files.values();
+    }
+
+    /**
+      * Gets the share of free slots (IDs of removed file objects) in the file table.
+      *
+      * @return the share of free slots (0.0 - 1.0)
+      */
+    public double getFragmentation() {
+        int highestID = files.getHighestID();
+        return highestID == 0 ? 0.0 : (double) files.getFreeSlots() / highestID;
+    }
+
+    /**
+      * Creates a copy of the database with file object IDs renumbered to 1..n (in the order of the current IDs),
+      * so that the file table has no free slots. The file objects are moved to the new database (and changed).
+      * (All references to file object IDs held outside of the database become invalid.)
+      *
+      * @return the database with compacted file object IDs
+      */
+    public DBData compactIDs() {
+        int[] newIDs = new int[files.getHighestID() + 1];
+        int count = 0;
+        for (DBFile file : files.values()) {
+            newIDs[file.getID()] = ++count;
+        }
+
+        DBData compacted = new DBData();
+        compacted.setHashAlgorithm(hashAlgorithm);
+        Set<DBCluster> duplicateClusters = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<DBCluster> potentialDuplicateClusters = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DBFile file : files.values()) {
+            if (file.getDuplicateCluster() != null) {
+                duplicateClusters.add(file.getDuplicateCluster());
+            }
+            if (file.getPotentialDuplicateCluster() != null) {
+                potentialDuplicateClusters.add(file.getPotentialDuplicateCluster());
+            }
+            file.setDuplicateCluster(null);
+            file.setPotentialDuplicateCluster(null);
+            file.setID(newIDs[file.getID()]);
+            compacted.loadFile(file);
+        }
+        for (DBCluster cluster : duplicateClusters) {
+            compacted.joinDuplicates(renumber(cluster.getMembers(), newIDs));
+        }
+        for (DBCluster cluster : potentialDuplicateClusters) {
+            compacted.joinPotentialDuplicates(renumber(cluster.getMembers(), newIDs));
+        }
+        compacted.setLastFileID(count);
+        return compacted;
+    }
+
+    /**
+      * Renumbers the set of file object IDs (IDs of non-existent file objects are left out).
+      *
+      * @param fileIDs the set of file object IDs
+      * @param newIDs the mapping of the old IDs to the new IDs
+      * @return the renumbered set of file object IDs
+      */
+    private static IntBitmap renumber(IntBitmap fileIDs, int[] newIDs) {
+        IntBitmap renumbered = new IntBitmap();
+        fileIDs.forEachInt(fileID -> {
+            if (fileID < newIDs.length && newIDs[fileID] != 0) {
+                renumbered.add(newIDs[fileID]);
+            }
+        });
+        return renumbered;
+    }
+
+    /**
+      * Gets the location (directory) index.
+      *
+      * @return the index of directories
+      */
+    DBCodeIndex getLocationIndex() {
+        return locations;
+    }
+
+    /**
+      * Gets the keyword index.
+      *
+      * @return the index of keywords
+      */
+    DBCodeIndex getKeywordIndex() {
+        return keywords;
+    }
+
+    /**
+      * Gets the extension index.
+      *
+      * @return the index of extensions
+      */
+    DBCodeIndex getExtensionIndex() {
+        return extensions;
+    }
+
+    /**
+      * Gets the filename index.
+      *
+      * @return the index of filenames (without extension)
+      */
+    Map<String, IntBitmap> getFilenameIndex() {
+        return filenames;
+    }
+
+    /**
+      * Gets the file size index.
+      *
+      * @return the index of file sizes
+      */
+    NavigableMap<Long, IntBitmap> getSizeIndex() {
+        return sizes;
+    }
+
+    /**
+      * Gets the timestamp index.
+      *
+      * @return the index of timestamps
+      */
+    NavigableMap<Long, IntBitmap> getTimestampIndex() {
+        return timestamps;
+    }
+
+    /**
+      * Gets the metadata value index.
+      *
+      * @return the index of metadata values
+      */
+    DBMetadataIndex getMetadataIndex() {
+        return metadataValues;
+    }
+
+    /**
+      * Gets the number of files in the database.
+      *
+      * @return the number of files
+      */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+      * Gets the IDs of all files in the database.
+      *
+      * @return the (new) set of IDs of all files
+      */
+    public IntBitmap getFileIDs() {
+        IntBitmap fileIDs = new IntBitmap();
+        for (DBFile file : files.values()) {
+            fileIDs.add(file.getID());
+        }
+        return fileIDs;
+    }
+
     /**
       * Connects the specified filename path with the file object ID.
       *
@@ -211,7 +471,8 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileLocation(String location, int fileID) {
         assert location != null && !location.isEmpty() : "File location must be specified!";
-        locations.computeIfAbsent(location, k -> new HashSet<>()).add(fileID);
+        locations.add(location, fileID);
+        directoryTree.add(location, fileID);
     }
 
     /**
@@ -221,13 +482,8 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileLocation(String location, int fileID) {
-        Set<Integer> fileIDs = locations.get(location);
-        if (fileIDs != null) {
-            fileIDs.remove(fileID);
-            if (fileIDs.isEmpty()) {
-                locations.remove(location);
-            }
-        }
+        locations.remove(location, fileID);
+        directoryTree.remove(location, fileID);
     }
 
     /**
@@ -238,7 +494,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileFilename(String filename, int fileID) {
         assert filename != null && !filename.isEmpty() : "Filename must be specified!";
-        filenames.computeIfAbsent(filename, k -> new HashSet<>()).add(fileID);
+        filenames.computeIfAbsent(filename, k -> new IntBitmap()).add(fileID);
     }
 
     /**
@@ -248,7 +504,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileFilename(String filename, int fileID) {
-        Set<Integer> fileIDs = filenames.get(filename);
+        IntBitmap fileIDs = filenames.get(filename);
         if (fileIDs != null) {
             fileIDs.remove(fileID);
             if (fileIDs.isEmpty()) {
@@ -265,7 +521,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileExtension(String extension, int fileID) {
         assert extension != null && !extension.isEmpty() : "File extension must be specified!";
-        extensions.computeIfAbsent(extension, k -> new HashSet<>()).add(fileID);
+        extensions.add(extension, fileID);
     }
 
     /**
@@ -275,34 +531,27 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileExtension(String extension, int fileID) {
-        Set<Integer> fileIDs = extensions.get(extension);
-        if (fileIDs != null) {
-            fileIDs.remove(fileID);
-            if (fileIDs.isEmpty()) {
-                extensions.remove(extension);
-            }
-        }
+        extensions.remove(extension, fileID);
     }
 
     /**
       * Adds a file object ID to the specified timestamp.
       *
-      * @param timestamp the timestamp of the file
+      * @param timestamp the timestamp of the file (seconds since the epoch)
       * @param fileID the ID of the file object
       */
-    public void addFileTimestamp(String timestamp, int fileID) {
-        assert timestamp != null && !timestamp.isEmpty() : "File timestamp must be specified!";
-        timestamps.computeIfAbsent(timestamp, k -> new HashSet<>()).add(fileID);
+    public void addFileTimestamp(long timestamp, int fileID) {
+        timestamps.computeIfAbsent(timestamp, k -> new IntBitmap()).add(fileID);
     }
 
     /**
       * Removes a file object ID from the specified timestamp.
       *
-      * @param timestamp the timestamp of the file
+      * @param timestamp the timestamp of the file (seconds since the epoch)
       * @param fileID the ID of the file object
       */
-    public void removeFileTimestamp(String timestamp, int fileID) {
-        Set<Integer> fileIDs = timestamps.get(timestamp);
+    public void removeFileTimestamp(long timestamp, int fileID) {
+        IntBitmap fileIDs = timestamps.get(timestamp);
         if (fileIDs != null) {
             fileIDs.remove(fileID);
             if (fileIDs.isEmpty()) {
@@ -319,7 +568,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileSize(long size, int fileID) {
         assert size >= 0 : "Size must not be negative!";
-        sizes.computeIfAbsent(size, k -> new HashSet<>()).add(fileID);
+        sizes.computeIfAbsent(size, k -> new IntBitmap()).add(fileID);
     }
 
     /**
@@ -329,7 +578,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileSize(long size, int fileID) {
-        Set<Integer> fileIDs = sizes.get(size);
+        IntBitmap fileIDs = sizes.get(size);
         if (fileIDs != null) {
             fileIDs.remove(fileID);
             if (fileIDs.isEmpty()) {
@@ -338,6 +587,73 @@ public class DBData implements Serializable {  // implement the Serializable int
         }
     }
 
+    /**
+      * Adds the file to the totals of its directory (number of files and total size).
+      *
+      * @param file the file object
+      */
+    public void addDirectoryTotal(DBFile file) {
+        directoryTotals.merge(file.getLocationCode(), new DirectoryTotal(file.getLocation(), 1, file.getSize()), DirectoryTotal::plus);
+    }
+
+    /**
+      * Removes the file from the totals of its directory (the totals of an empty directory are removed).
+      *
+      * @param file the file object
+      */
+    public void removeDirectoryTotal(DBFile file) {
+        directoryTotals.computeIfPresent(file.getLocationCode(),
+                                         (code, total) -> total.files() > 1 ? total.minus(file.getSize()) : null);
+    }
+
+    /**
+      * Gets the totals (number of files and total size) of all directories.
+      *
+      * @return the list of the directory totals (in no particular order)
+      */
+    public List<DirectoryTotal> getDirectoryTotals() {
+        return new ArrayList<>(directoryTotals.values());
+    }
+
+    /**
+      * Gets IDs of all files with the size in the specified range, ordered by the size.
+      * Only the part of the size index covering the range is visited.
+      *
+      * @param min the minimal size (inclusive)
+      * @param max the maximal size (inclusive)
+      * @return a list of file IDs with the size in the range
+      */
+    public List<Integer> getFileIDsInSizeRange(long min, long max) {
+        List<Integer> fileIDs = new ArrayList<>();
+        if (min <= max) {
+            for (IntBitmap sizeFileIDs : sizes.subMap(min, true, max, true).values()) {
+                sizeFileIDs.forEachInt(fileIDs::add);
+            }
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets IDs of the largest (or the smallest) files, ordered by the size.
+      * The size index is visited from its end, only until the required number of files is found.
+      *
+      * @param count the maximal number of files
+      * @param largest true for the largest files (in descending order of size), false for the smallest files (in ascending order)
+      * @return a list of at most count file IDs
+      */
+    public List<Integer> getFileIDsBySize(int count, boolean largest) {
+        List<Integer> fileIDs = new ArrayList<>(Math.min(count, files.size()));
+        for (IntBitmap sizeFileIDs : (largest ? sizes.descendingMap() : sizes).values()) {
+            for (int fileID : sizeFileIDs.toIntArray()) {
+                if (fileIDs.size() == count) {
+                    return fileIDs;
+                }
+                fileIDs.add(fileID);
+            }
+        }
+        return fileIDs;
+    }
+
     /**
       * Adds a file object ID to the specified checksum.
       *
@@ -345,7 +661,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void addFileChecksum(long checksum, int fileID) {
-        checksums.computeIfAbsent(checksum, k -> new HashSet<>()).add(fileID);
+        checksums.computeIfAbsent(checksum, k -> new IntBitmap()).add(fileID);
     }
 
     /**
@@ -355,7 +671,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileChecksum(long checksum, int fileID) {
-        Set<Integer> fileIDs = checksums.get(checksum);
+        IntBitmap fileIDs = checksums.get(checksum);
         if (fileIDs != null) {
             fileIDs.remove(fileID);
             if (fileIDs.isEmpty()) {
@@ -372,7 +688,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileKeyword(String keyword, int fileID) {
         assert keyword != null && !keyword.isEmpty() : "Keyword must be specified!";
-        keywords.computeIfAbsent(keyword.toUpperCase(), k -> new HashSet<>()).add(fileID);
+        keywords.add(keyword.toUpperCase(), fileID);
     }
 
     /**
@@ -382,13 +698,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileKeyword(String keyword, int fileID) {
-        Set<Integer> fileIDs = keywords.get(keyword.toUpperCase());
-        if (fileIDs != null) {
-            fileIDs.remove(fileID);
-            if (fileIDs.isEmpty()) {
-                keywords.remove(keyword.toUpperCase());
-            }
-        }
+        keywords.remove(keyword.toUpperCase(), fileID);
     }
 
     /**
@@ -399,7 +709,7 @@ public class DBData implements Serializable {  // implement the Serializable int
       */
     public void addFileMetadataTag(String metadataTag, int fileID) {
         assert metadataTag != null && !metadataTag.isEmpty() : "Metadata tag must be specified!";
-        metadataTags.computeIfAbsent(metadataTag, k -> new HashSet<>()).add(fileID);
+        metadataTags.add(metadataTag, fileID);
     }
 
     /**
@@ -409,13 +719,27 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param fileID the ID of the file object
       */
     public void removeFileMetadataTag(String metadataTag, int fileID) {
-        Set<Integer> fileIDs = metadataTags.get(metadataTag);
-        if (fileIDs != null) {
-            fileIDs.remove(fileID);
-            if (fileIDs.isEmpty()) {
-                metadataTags.remove(metadataTag);
-            }
-        }
+        metadataTags.remove(metadataTag, fileID);
+    }
+
+    /**
+      * Adds a file object ID to the specified metadata tag with its value.
+      *
+      * @param metadataInfo the metadata tag
+      * @param fileID the ID of the file object
+      */
+    public void addFileMetadataValue(MetadataInfo metadataInfo, int fileID) {
+        metadataValues.add(metadataInfo, fileID);
+    }
+
+    /**
+      * Removes a file object ID from the specified metadata tag with its value.
+      *
+      * @param metadataInfo the metadata tag
+      * @param fileID the ID of the file object
+      */
+    public void removeFileMetadataValue(MetadataInfo metadataInfo, int fileID) {
+        metadataValues.remove(metadataInfo, fileID);
     }
 
     /**
@@ -441,37 +765,86 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @return the file ID, or 0 if not found
       */
     public int getFileID(String location, String filename, String extension) {
-        Set<Integer> filenameIDs = filenames.getOrDefault(filename, new HashSet<>());
-        Set<Integer> locationIDs = locations.getOrDefault(location, new HashSet<>());
-        Set<Integer> extensionIDs = extensions.getOrDefault(extension, new HashSet<>());
-
-        for (int fileID : filenameIDs) {
-            if (locationIDs.contains(fileID) && extensionIDs.contains(fileID)) {
-                return fileID;
-            }
+        IntBitmap filenameIDs = filenames.get(filename);
+        IntBitmap locationIDs = locations.get(location);
+        IntBitmap extensionIDs = extensions.get(extension);
+        if (filenameIDs == null || locationIDs == null || extensionIDs == null) {
+            return 0;
         }
-        return 0;
+
+        IntBitmap fileIDs = IntBitmap.and(IntBitmap.and(filenameIDs, locationIDs), extensionIDs);
+        return fileIDs.isEmpty() ? 0 : fileIDs.first();
     }
 
     /**
       * Finds IDs of all files with the specified size and checksum.
+      * (Only the checksums calculated by the same algorithm are compared.)
       *
       * @param size the size of the file
       * @param checksum the checksum of the file
+      * @param algorithm the algorithm of the checksum
       * @return a set of file IDs matching the specified size and checksum
       */
-    public Set<Integer> findPotentialDuplicatesIDs(long size, long checksum) {
-        Set<Integer> foundIDs = new HashSet<>();
-        Set<Integer> sizeIDs = sizes.getOrDefault(size, new HashSet<>());
-        Set<Integer> checksumIDs = checksums.getOrDefault(checksum, new HashSet<>());
+    public IntBitmap findPotentialDuplicatesIDs(long size, long checksum, HashAlgorithm algorithm) {
+        IntBitmap sizeIDs = sizes.get(size);
+        IntBitmap checksumIDs = checksums.get(checksum);
+        if (sizeIDs == null || checksumIDs == null) {
+            return new IntBitmap();
+        }
 
-        for (int fileID : sizeIDs) {
-            if (checksumIDs.contains(fileID)) {
-                foundIDs.add(fileID);
+        IntBitmap fileIDs = IntBitmap.and(sizeIDs, checksumIDs);
+        IntBitmap otherAlgorithmIDs = new IntBitmap();
+        fileIDs.forEachInt(fileID -> {
+            if (getFile(fileID).getChecksumAlgorithm() != algorithm) {
+                otherAlgorithmIDs.add(fileID);
             }
+        });
+        return otherAlgorithmIDs.isEmpty() ? fileIDs : IntBitmap.andNot(fileIDs, otherAlgorithmIDs);
+    }
+
+    /**
+      * Finds IDs of all files with the specified size.
+      *
+      * @param size the size of the file
+      * @return a (new) set of file IDs with the specified size
+      */
+    public IntBitmap findSameSizeIDs(long size) {
+        IntBitmap sizeIDs = sizes.get(size);
+        return sizeIDs == null ? new IntBitmap() : sizeIDs.copy();
+    }
+
+    /**
+      * Finds IDs of all files with the specified size whose checksum was not calculated by the database algorithm.
+      *
+      * @param size the size of the file
+      * @return a set of file IDs of the files to rehash
+      */
+    public IntBitmap findStaleChecksumIDs(long size) {
+        IntBitmap staleIDs = new IntBitmap();
+        IntBitmap sizeIDs = sizes.get(size);
+        if (sizeIDs != null) {
+            sizeIDs.forEachInt(fileID -> {
+                if (getFile(fileID).getChecksumAlgorithm() != hashAlgorithm) {
+                    staleIDs.add(fileID);
+                }
+            });
         }
+        return staleIDs;
+    }
 
-        return foundIDs;
+    /**
+      * Counts the files whose checksum was not calculated by the database algorithm.
+      *
+      * @return the number of files to rehash
+      */
+    public int countStaleChecksums() {
+        int count = 0;
+        for (DBFile file : files.values()) {
+            if (file.getChecksumAlgorithm() != hashAlgorithm) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -480,58 +853,206 @@ public class DBData implements Serializable {  // implement the Serializable int
       * @param location the location (directory) of the files
       * @return a set of file IDs in the specified location
       */
-    public Set<Integer> getFileIDsInLocation(String location) {
-        Set<Integer> fileIDs = locations.get(location);
+    public IntBitmap getFileIDsInLocation(String location) {
+        IntBitmap fileIDs = locations.get(location);
         return fileIDs;
     }
 
+    /**
+      * Gets IDs of all files in the specified location (directory) and all its subdirectories.
+      * The files of the subdirectories are read from one node of the directory tree.
+      *
+      * @param location the location (directory) of the files
+      * @return a (new) set of file IDs, or null if there are no files in the directory and its subdirectories
+      */
+    public IntBitmap getFileIDsInTree(String location) {
+        IntBitmap locationIDs = locations.get(location);
+        IntBitmap subfolderIDs = directoryTree.getFileIDs(FileSystem.subfolderPrefix(location));
+        if (locationIDs == null && subfolderIDs == null) {
+            return null;
+        }
+        if (locationIDs == null || subfolderIDs == null) {
+            return (locationIDs != null ? locationIDs : subfolderIDs).copy();
+        }
+        return IntBitmap.or(locationIDs, subfolderIDs);
+    }
+
+    /**
+      * Gets the number of files in the specified location (directory) and all its subdirectories
+      * (without building the set of their IDs).
+      *
+      * @param location the location (directory) of the files
+      * @return the number of files
+      */
+    public int getFileCountInTree(String location) {
+        IntBitmap locationIDs = locations.get(location);
+        IntBitmap subfolderIDs = directoryTree.getFileIDs(FileSystem.subfolderPrefix(location));
+        return (locationIDs != null ? locationIDs.size() : 0) + (subfolderIDs != null ? subfolderIDs.size() : 0);
+    }
+
     /**
       * Gets IDs of all files with the specified keyword.
       *
       * @param keyword the keyword associated with the files
       * @return a set of file IDs with the specified keyword
       */
-    public Set<Integer> getFileIDsWithKeyword(String keyword) {
-        Set<Integer> fileIDs = keywords.get(keyword);
+    public IntBitmap getFileIDsWithKeyword(String keyword) {
+        IntBitmap fileIDs = keywords.get(keyword);
+        return fileIDs;
+    }
+
+    /**
+      * Gets IDs of all files with the timestamp in the specified range, ordered by the timestamp.
+      * Only the part of the timestamp index covering the range is visited.
+      *
+      * @param range the range of the timestamps
+      * @return a list of file IDs with the timestamp in the range
+      */
+    public List<Integer> getFileIDsInDateRange(DateRange range) {
+        List<Integer> fileIDs = new ArrayList<>();
+        if (range.from() <= range.to()) {
+            for (IntBitmap timestampFileIDs : timestamps.subMap(range.from(), true, range.to(), true).values()) {
+                timestampFileIDs.forEachInt(fileIDs::add);
+            }
+        }
         return fileIDs;
     }
 
     /**
-      * Adds a file ID to the list of duplicates.
+      * Joins the files into one cluster of exact duplicates (together with the files already in their clusters).
+      * The IDs of files which are not in the database are ignored.
+      *
+      * @param fileIDs the IDs of the identical files
+      */
+    public void joinDuplicates(IntBitmap fileIDs) {
+        join(fileIDs, DBFile::getDuplicateCluster, DBFile::setDuplicateCluster, duplicates);
+    }
+
+    /**
+      * Removes the file from its cluster of exact duplicates.
+      * If only one file is left in the cluster, the cluster is dissolved.
+      *
+      * @param file the file object (it need not be in the database any more)
+      * @return the IDs of the other files which were left without duplicates
+      */
+    public IntBitmap leaveDuplicates(DBFile file) {
+        DBCluster cluster = leave(file, DBFile::getDuplicateCluster, DBFile::setDuplicateCluster, duplicates);
+        return cluster == null || cluster.size() > 1 ? new IntBitmap() 
+                                                     : dissolve(cluster, DBFile::setDuplicateCluster, duplicates);
+    }
+
+    /**
+      * Joins the files into one cluster of potential duplicates (together with the files already in their clusters).
+      * The IDs of files which are not in the database are ignored.
+      *
+      * @param fileIDs the IDs of the potentially identical files
+      */
+    public void joinPotentialDuplicates(IntBitmap fileIDs) {
+        join(fileIDs, DBFile::getPotentialDuplicateCluster, DBFile::setPotentialDuplicateCluster, potentialDuplicates);
+    }
+
+    /**
+      * Removes the file from its cluster of potential duplicates.
+      * If the remaining files are not potential duplicates any more (only one file is left, or all are exact duplicates
+      * of each other), the cluster is dissolved.
       *
-      * @param duplicateFileID the ID of the file
+      * @param file the file object (it need not be in the database any more)
+      * @return the IDs of the other files which were left without potential duplicates
       */
-    public void addDuplicate(Integer duplicateFileID) {
-        assert duplicateFileID > 0 : "Duplicate file ID must be positive!";
-        duplicates.add(duplicateFileID);
+    public IntBitmap leavePotentialDuplicates(DBFile file) {
+        DBCluster cluster = leave(file, DBFile::getPotentialDuplicateCluster, DBFile::setPotentialDuplicateCluster, 
+                                  potentialDuplicates);
+        if (cluster == null) {
+            return new IntBitmap();
+        }
+        DBCluster duplicateCluster = getFile(cluster.getMembers().first()).getDuplicateCluster();
+        if (cluster.size() > 1 && (duplicateCluster == null 
+                                   || !IntBitmap.andNot(cluster.getMembers(), duplicateCluster.getMembers()).isEmpty())) {
+            return new IntBitmap();
+        }
+        return dissolve(cluster, DBFile::setPotentialDuplicateCluster, potentialDuplicates);
     }
 
     /**
-      * Removes a file ID from the list of duplicates.
+      * Joins the files into one cluster. The smaller clusters are merged into the largest one.
       *
-      * @param duplicateFileID the ID of the file to remove
+      * @param fileIDs the IDs of the files
+      * @param getCluster the getter of the cluster of a file
+      * @param setCluster the setter of the cluster of a file
+      * @param index the index of all files in the clusters
       */
-    public void removeDuplicate(Integer duplicateFileID) {
-        duplicates.remove(duplicateFileID);
+    private void join(IntBitmap fileIDs, Function<DBFile, DBCluster> getCluster, 
+                      BiConsumer<DBFile, DBCluster> setCluster, IntBitmap index) {
+        DBCluster target = null;
+        for (int fileID : fileIDs) {
+            DBFile file = getFile(fileID);
+            DBCluster cluster = file == null ? null : getCluster.apply(file);
+            if (cluster != null && (target == null || cluster.size() > target.size())) {
+                target = cluster;
+            }
+        }
+        if (target == null) {
+            target = new DBCluster();
+        }
+
+        for (int fileID : fileIDs) {
+            DBFile file = getFile(fileID);
+            if (file == null) {
+                continue;
+            }
+            DBCluster cluster = getCluster.apply(file);
+            if (cluster == target) {
+                continue;
+            }
+            IntBitmap moved = cluster == null ? IntBitmap.of(fileID) : cluster.getMembers();
+            for (int movedID : moved) {
+                target.add(movedID);
+                setCluster.accept(getFile(movedID), target);
+                index.add(movedID);
+            }
+        }
+
+        if (target.size() == 1) {  // a file alone is not a cluster
+            dissolve(target, setCluster, index);
+        }
     }
 
     /**
-      * Adds a file ID to the list of potential duplicates.
+      * Removes the file from its cluster.
       *
-      * @param potentialDuplicateFileID the ID of the file
+      * @param file the file object
+      * @param getCluster the getter of the cluster of a file
+      * @param setCluster the setter of the cluster of a file
+      * @param index the index of all files in the clusters
+      * @return the cluster which the file left, or null if the file was not in a cluster
       */
-    public void addPotentialDuplicate(Integer potentialDuplicateFileID) {
-        assert potentialDuplicateFileID > 0 : "Potential duplicate file ID must be positive!";
-        potentialDuplicates.add(potentialDuplicateFileID);
+    private DBCluster leave(DBFile file, Function<DBFile, DBCluster> getCluster, 
+                            BiConsumer<DBFile, DBCluster> setCluster, IntBitmap index) {
+        DBCluster cluster = getCluster.apply(file);
+        if (cluster != null) {
+            cluster.remove(file.getID());
+            setCluster.accept(file, null);
+            index.remove(file.getID());
+        }
+        return cluster;
     }
 
     /**
-      * Removes a file ID from the list of potential duplicates.
+      * Dissolves the cluster - removes all its files from it.
       *
-      * @param potentialDuplicateFileID the ID of the file to remove
+      * @param cluster the cluster
+      * @param setCluster the setter of the cluster of a file
+      * @param index the index of all files in the clusters
+      * @return the IDs of the files which were in the cluster
       */
-    public void removePotentialDuplicate(Integer potentialDuplicateFileID) {
-        potentialDuplicates.remove(potentialDuplicateFileID);
+    private IntBitmap dissolve(DBCluster cluster, BiConsumer<DBFile, DBCluster> setCluster, IntBitmap index) {
+        IntBitmap members = cluster.getMembers().copy();
+        members.forEachInt(fileID -> {
+            setCluster.accept(getFile(fileID), null);
+            index.remove(fileID);
+            cluster.remove(fileID);
+        });
+        return members;
     }
 
     /**
@@ -548,4 +1069,33 @@ public class DBData implements Serializable {  // implement the Serializable int
         dbStatistics.put("DUP?S", potentialDuplicates.size());
         return dbStatistics;
     }
+
+    /**
+      * Number and total size of the files in one directory.
+      *
+      * @param directory the directory
+      * @param files the number of files
+      * @param bytes the total size of the files in bytes
+      */
+    public record DirectoryTotal(String directory, int files, long bytes) {
+        /**
+          * Adds the totals of another file(s) of the directory.
+          *
+          * @param other the totals to add
+          * @return the new totals
+          */
+        DirectoryTotal plus(DirectoryTotal other) {
+            return new DirectoryTotal(directory, files + other.files, bytes + other.bytes);
+        }
+
+        /**
+          * Removes one file from the totals.
+          *
+          * @param size the size of the removed file
+          * @return the new totals
+          */
+        DirectoryTotal minus(long size) {
+            return new DirectoryTotal(directory, files - 1, bytes - size);
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.status.StatusCode;
+import cz.cuni.mff.stankoti.photo.util.ContentComparator;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+  * This class finds the groups of identical files among a set of files (candidates).
+  * <p>
+  * The candidates are narrowed down in three tiers, each tier reads only the files which survived the previous one:
+  * <ol>
+  *     <li>size - the files are grouped by their size (no file is read),</li>
+  *     <li>sample - the files are grouped by the hash of the blocks at the beginning, in the middle and at the end of the file
+  *         (a few small positional reads per file),</li>
+  *     <li>content - the files of every group are compared byte by byte, all at once in lockstep
+  *         (see {@link ContentComparator}), so every file is read once.</li>
+  * </ol>
+  * A group with only one file is dropped after every tier, so a unique file is usually excluded by its size or sample
+  * and most of the files are never read whole. The files of one tier are read in parallel by a pool of worker threads.
+  * The files which cannot be read are excluded (they have no duplicates).
+  * </p>
+  * <p>
+  * A group with more files than can be compared at once (the same file copied many times) is grouped
+  * by the SHA-256 digests of the files in the last tier instead.
+  * </p>
+  */
+public class DBDuplicateFinder {
+    /**
+      * Size of one block of the sample read in the second tier.
+      */
+    public static final int SAMPLE_SIZE = 4096;
+
+    /**
+      * A file checked for duplicates.
+      *
+      * @param fileID the ID of the file object
+      * @param path the full path of the file
+      * @param size the size of the file stored in the database
+      */
+    public record Candidate(int fileID, String path, long size) {}
+
+    /**
+      * File system service used for reading the files.
+      */
+    private final FileSystem fileSystem;
+
+    /**
+      * Creates a new duplicate finder.
+      *
+      * @param fileSystem the file system service used for reading the files
+      */
+    public DBDuplicateFinder(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+      * Finds the groups of identical files among the candidates.
+      *
+      * @param candidates the files checked for duplicates
+      * @param parallelism the number of threads reading the files
+      * @return the list of groups of identical files (every group contains at least two file IDs)
+      */
+    public List<IntBitmap> findDuplicates(List<Candidate> candidates, int parallelism) {
+        assert parallelism >= 1 : "Invalid number of threads!";
+        List<List<Candidate>> groups = split(List.of(candidates), Candidate::size);
+        if (groups.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "photo-duplicates-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<Candidate, Long> samples = read(groups, workers, this::sampleChecksum);
+            groups = split(groups, samples::get);
+            List<List<Candidate>> largeGroups = new ArrayList<>();
+            List<List<Candidate>> smallGroups = new ArrayList<>();
+            for (List<Candidate> group : groups) {
+                (group.size() > ContentComparator.MAX_FILES ? largeGroups : smallGroups).add(group);
+            }
+            groups = compare(smallGroups, workers);
+            if (!largeGroups.isEmpty()) {
+                Map<Candidate, ByteBuffer> digests = read(largeGroups, workers, this::digest);
+                groups.addAll(split(largeGroups, digests::get));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        List<IntBitmap> duplicates = new ArrayList<>(groups.size());
+        for (List<Candidate> group : groups) {
+            IntBitmap fileIDs = new IntBitmap();
+            for (Candidate candidate : group) {
+                fileIDs.add(candidate.fileID());
+            }
+            duplicates.add(fileIDs);
+        }
+        return duplicates;
+    }
+
+    /**
+      * Reads the specified value of all files of the groups by the workers.
+      *
+      * @param groups the groups of files
+      * @param workers the worker threads
+      * @param reader the function reading the value of one file (null if the file cannot be read)
+      * @return the map of the files and their values (without the files which cannot be read)
+      */
+    private static <K> Map<Candidate, K> read(List<List<Candidate>> groups, ExecutorService workers, Function<Candidate, K> reader) {
+        List<Callable<K>> tasks = new ArrayList<>();
+        List<Candidate> files = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            for (Candidate candidate : group) {
+                files.add(candidate);
+                tasks.add(() -> reader.apply(candidate));
+            }
+        }
+
+        Map<Candidate, K> values = new LinkedHashMap<>();
+        try {
+            List<Future<K>> results = workers.invokeAll(tasks);
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    K value = results.get(i).get();
+                    if (value != null) {
+                        values.put(files.get(i), value);
+                    }
+                } catch (ExecutionException e) {
+                    // the file is excluded as unreadable
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return values;
+    }
+
+    /**
+      * Splits every group of files into groups of identical files by the workers (one group per worker).
+      *
+      * @param groups the groups of files
+      * @param workers the worker threads
+      * @return the list of the groups of identical files (in the order of the original groups)
+      */
+    private List<List<Candidate>> compare(List<List<Candidate>> groups, ExecutorService workers) {
+        List<Callable<List<List<Candidate>>>> tasks = new ArrayList<>(groups.size());
+        for (List<Candidate> group : groups) {
+            tasks.add(() -> compare(group));
+        }
+
+        List<List<Candidate>> result = new ArrayList<>();
+        try {
+            for (Future<List<List<Candidate>>> identical : workers.invokeAll(tasks)) {
+                try {
+                    result.addAll(identical.get());
+                } catch (ExecutionException e) {
+                    // the files of the group are excluded as unreadable
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    /**
+      * Splits the group of files into groups of identical files (runs on a worker thread).
+      * The groups with only one file are dropped.
+      *
+      * @param group the group of files
+      * @return the list of the groups of identical files
+      */
+    private List<List<Candidate>> compare(List<Candidate> group) {
+        List<String> paths = new ArrayList<>(group.size());
+        for (Candidate candidate : group) {
+            paths.add(candidate.path());
+        }
+
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Integer> indexes : fileSystem.compareFiles(paths)) {
+            if (indexes.size() > 1) {
+                List<Candidate> identical = new ArrayList<>(indexes.size());
+                for (int index : indexes) {
+                    identical.add(group.get(index));
+                }
+                result.add(identical);
+            }
+        }
+        return result;
+    }
+
+    /**
+      * Splits every group of files into smaller groups by the specified key.
+      * The groups with only one file and the files without the key are dropped.
+      *
+      * @param groups the groups of files
+      * @param key the function getting the key of a file (null = the file is dropped)
+      * @return the list of the new groups (in the order of the original groups and files)
+      */
+    private static <K> List<List<Candidate>> split(List<List<Candidate>> groups, Function<Candidate, K> key) {
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            Map<K, List<Candidate>> subgroups = new LinkedHashMap<>();
+            for (Candidate candidate : group) {
+                K value = key.apply(candidate);
+                if (value != null) {
+                    subgroups.computeIfAbsent(value, k -> new ArrayList<>()).add(candidate);
+                }
+            }
+            for (List<Candidate> subgroup : subgroups.values()) {
+                if (subgroup.size() > 1) {
+                    result.add(subgroup);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+      * Calculates the checksum of the sample of the file (runs on a worker thread).
+      *
+      * @param candidate the file
+      * @return the checksum of the sample, or null if the file cannot be read
+      */
+    private Long sampleChecksum(Candidate candidate) {
+        FileSystem.ChecksumResult result = fileSystem.calculateSampleChecksum(new File(candidate.path()), SAMPLE_SIZE);
+        return result.statusCode() == StatusCode.NO_ERROR ? result.checksum() : null;
+    }
+
+    /**
+      * Calculates the digest of the whole file (runs on a worker thread).
+      *
+      * @param candidate the file
+      * @return the digest (wrapped in a buffer comparable by its content), or null if the file cannot be read
+      */
+    private ByteBuffer digest(Candidate candidate) {
+        FileSystem.DigestResult result = fileSystem.calculateDigest(new File(candidate.path()));
+        return result.statusCode() == StatusCode.NO_ERROR ? ByteBuffer.wrap(result.digest()) : null;
+    }
+}
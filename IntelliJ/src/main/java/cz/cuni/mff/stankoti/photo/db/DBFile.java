@@ -1,19 +1,24 @@
 package cz.cuni.mff.stankoti.photo.db;
 
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
 import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+import cz.cuni.mff.stankoti.photo.util.StringDictionary;
 
-import java.io.Serializable;
+import java.util.AbstractSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 /**
   * This class contains structures and methods for handling information related to a single file.
+  * <p>
+  * The location, extension and keywords are shared by many files, so they are kept
+  * as codes of the global string dictionary (see {@link StringDictionary}).
+  * </p>
   */
-public class DBFile implements Serializable {  // implement the Serializable interface
-    /**
-      * Unique identifier for the serialized class version.
-      */
-    private static final long serialVersionUID = 1L;
+public class DBFile {
     /**
       * File object unique identifier.
       */
@@ -23,45 +28,69 @@ public class DBFile implements Serializable {  // implement the Serializable int
       */
     private String fullpath;
     /**
-      * File location (directory).
+      * File location (directory) - string dictionary code.
       */
-    private String location;
+    private int location;
     /**
       * File filename only (without path and extension).
       */
     private String filename;
     /**
-      * File extension.
+      * File extension - string dictionary code.
       */
-    private String extension;
+    private int extension;
     /**
       * File timestamp.
       */
     private String timestamp;
+    /**
+      * File timestamp in seconds since the epoch (see {@link DateRange#toEpochSecond}).
+      */
+    private long timestampSeconds;
     /**
       * File size.
       */
     private long size;
     /**
-      * File CRC32 checksum.
+      * File last modification time (milliseconds since the epoch, 0 if not known).
+      */
+    private long lastModified;
+    /**
+      * Hash of the file key (e.g. device and inode number) identifying the file in the file system (0 if not available).
+      */
+    private int fileKey;
+    /**
+      * File checksum.
       */
     private long checksum;
     /**
-      * Set of keywords associated with the file.
+      * Algorithm used for the file checksum.
+      */
+    private HashAlgorithm checksumAlgorithm;
+    /**
+      * Set (bitmap) of string dictionary codes of keywords associated with the file.
       */
-    private Set<String> keywords;
+    private IntBitmap keywords;
     /**
       * Set of metadata tags contained in the file.
       */
     private Set<MetadataInfo> metadata;
     /**
-      * Set of exact duplicates of this file.
+      * Digest of the metadata tags (see {@link MetadataInfo#digest}), valid only if {@link #metadataDigestKnown} is true.
+      */
+    private long metadataDigest;
+    /**
+      * True if the metadata digest is calculated, false if it must be calculated (the metadata has changed).
+      */
+    private boolean metadataDigestKnown;
+    /**
+      * Cluster of exact duplicates containing this file (null if the file has no duplicates).
       */
-    private Set<Integer> duplicates;
+    private DBCluster duplicateCluster;
     /**
-      * Set of potential duplicates of this file.
+      * Cluster of potential duplicates containing this file (null if the file has no potential duplicates).
       */
-    private Set<Integer> potentialDuplicates;
+    private DBCluster potentialDuplicateCluster;
 
     /**
       * Default constructor required for deserialization.
@@ -69,16 +98,21 @@ public class DBFile implements Serializable {  // implement the Serializable int
     public DBFile() {
         id = 0;
         fullpath = "";
-        location = "";
+        location = 0;
         filename = "";
-        extension = "";
+        extension = 0;
         timestamp = "";
+        timestampSeconds = 0L;
         size = 0L;
+        lastModified = 0L;
+        fileKey = 0;
         checksum = 0L;
-        keywords = new HashSet<>();
+        checksumAlgorithm = HashAlgorithm.CRC32;
+        keywords = new IntBitmap();
         metadata = new HashSet<>();
-        duplicates = new HashSet<>();
-        potentialDuplicates = new HashSet<>();
+        metadataDigestKnown = false;
+        duplicateCluster = null;
+        potentialDuplicateCluster = null;
     }
 
     /**
@@ -91,17 +125,14 @@ public class DBFile implements Serializable {  // implement the Serializable int
       * @param extension the file extension
       * @param timestamp the timestamp of the file
       * @param size the size of the file in bytes
-      * @param checksum the checksum of the file
+      * @param checksum the checksum of the file (calculated by {@link HashAlgorithm#CRC32})
       * @param keywords the set of keywords associated with the file
       * @param metadata the set of metadata information (tags) contained in the file
-      * @param duplicates the set of file IDs corresponding to files that are identical to the file
-      * @param potentialDuplicates the set of file IDs corresponding to files that are potentially identical to the file
       */
     public DBFile(int id, 
                 String fullpath, String location, String filename, String extension, 
                 String timestamp, long size, long checksum, 
-                Set<String> keywords, Set<MetadataInfo> metadata,
-                Set<Integer> duplicates, Set<Integer> potentialDuplicates) {
+                Set<String> keywords, Set<MetadataInfo> metadata) {
         setID(id);
         setFullpath(fullpath);
         setLocation(location);
@@ -110,10 +141,9 @@ public class DBFile implements Serializable {  // implement the Serializable int
         setTimestamp(timestamp);
         setSize(size);
         setChecksum(checksum);
+        setChecksumAlgorithm(HashAlgorithm.CRC32);
         setKeywords(keywords);
         setMetadata(metadata);
-        setDuplicates(duplicates);
-        setPotentialDuplicates(potentialDuplicates);
     }
 
     /**
@@ -160,6 +190,15 @@ public class DBFile implements Serializable {  // implement the Serializable int
       * @return the location of the file
       */
     public String getLocation() {
+        return StringDictionary.string(location);
+    }
+
+    /**
+      * Gets the string dictionary code of the location (directory) of the file.
+      *
+      * @return the code of the file location
+      */
+    public int getLocationCode() {
         return location;
     }
 
@@ -170,7 +209,7 @@ public class DBFile implements Serializable {  // implement the Serializable int
       */
     public void setLocation(String location) {
         assert location != null && !location.isEmpty() : "File location must be specified!";
-        this.location = location;
+        this.location = StringDictionary.code(location);
     }
 
     /**
@@ -198,6 +237,15 @@ public class DBFile implements Serializable {  // implement the Serializable int
       * @return the file extension
       */
     public String getExtension() {
+        return StringDictionary.string(extension);
+    }
+
+    /**
+      * Gets the string dictionary code of the file extension.
+      *
+      * @return the code of the file extension
+      */
+    public int getExtensionCode() {
         return extension;
     }
 
@@ -208,7 +256,7 @@ public class DBFile implements Serializable {  // implement the Serializable int
       */
     public void setExtension(String extension) {
         assert extension != null : "Extension must be specified!";
-        this.extension = extension;
+        this.extension = StringDictionary.code(extension);
     }
 
     /**
@@ -228,6 +276,16 @@ public class DBFile implements Serializable {  // implement the Serializable int
     public void setTimestamp(String timestamp) {
         assert timestamp != null && !timestamp.isEmpty() : "Timestamp must be specified!";
         this.timestamp = timestamp;
+        this.timestampSeconds = DateRange.toEpochSecond(timestamp);
+    }
+
+    /**
+      * Gets the timestamp of the file in seconds since the epoch.
+      *
+      * @return the timestamp in seconds since the epoch
+      */
+    public long getTimestampSeconds() {
+        return timestampSeconds;
     }
 
     /**
@@ -249,6 +307,42 @@ public class DBFile implements Serializable {  // implement the Serializable int
         this.size = size;
     }
 
+    /**
+      * Gets the last modification time of the file.
+      *
+      * @return the last modification time (milliseconds since the epoch, 0 if not known)
+      */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+      * Sets the last modification time of the file.
+      *
+      * @param lastModified the last modification time (milliseconds since the epoch)
+      */
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+      * Gets the hash of the file key identifying the file in the file system.
+      *
+      * @return the file key hash (0 if not available)
+      */
+    public int getFileKey() {
+        return fileKey;
+    }
+
+    /**
+      * Sets the hash of the file key identifying the file in the file system.
+      *
+      * @param fileKey the file key hash
+      */
+    public void setFileKey(int fileKey) {
+        this.fileKey = fileKey;
+    }
+
     /**
       * Gets the checksum of the file.
       *
@@ -267,12 +361,82 @@ public class DBFile implements Serializable {  // implement the Serializable int
         this.checksum = checksum;
     }
 
+    /**
+      * Gets the algorithm used for the checksum of the file.
+      *
+      * @return the checksum algorithm
+      */
+    public HashAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+      * Sets the algorithm used for the checksum of the file.
+      *
+      * @param checksumAlgorithm the checksum algorithm
+      */
+    public void setChecksumAlgorithm(HashAlgorithm checksumAlgorithm) {
+        assert checksumAlgorithm != null : "Checksum algorithm must not be null!";
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
     /**
       * Gets the set of keywords associated with the file.
+      * The returned set is a view of the keyword codes of the file (changes are reflected in the file).
       *
       * @return the set of keywords
       */
     public Set<String> getKeywords() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return keywords.size();
+            }
+
+            @Override
+            public boolean contains(Object keyword) {
+                return keyword instanceof String value && keywords.contains(StringDictionary.find(value));
+            }
+
+            @Override
+            public boolean add(String keyword) {
+                return keywords.add(StringDictionary.code(keyword));
+            }
+
+            @Override
+            public boolean remove(Object keyword) {
+                return keyword instanceof String value && keywords.remove(StringDictionary.find(value));
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                Iterator<Integer> codes = keywords.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return codes.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return StringDictionary.string(codes.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        codes.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+      * Gets the set (bitmap) of string dictionary codes of keywords associated with the file.
+      *
+      * @return the set of keyword codes
+      */
+    public IntBitmap getKeywordCodes() {
         return keywords;
     }
 
@@ -282,10 +446,11 @@ public class DBFile implements Serializable {  // implement the Serializable int
       * @param keywords the set of keywords
       */
     public void setKeywords(Set<String> keywords) {
-        if (keywords == null) {
-            this.keywords = new HashSet<>();
-        } else {
-            this.keywords = keywords;
+        this.keywords = new IntBitmap();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                this.keywords.add(StringDictionary.code(keyword));
+            }
         }
     }
 
@@ -309,125 +474,157 @@ public class DBFile implements Serializable {  // implement the Serializable int
         } else {
             this.metadata = metadata;
         }
+        metadataDigestKnown = false;
+    }
+
+    /**
+      * Gets the digest of the metadata information contained in the file.
+      * The digest is calculated when it is needed for the first time after the metadata has changed
+      * (unless it was set together with the metadata, see {@link #setMetadataDigest(long)}).
+      *
+      * @return the digest of the metadata information (see {@link MetadataInfo#digest})
+      */
+    public long getMetadataDigest() {
+        if (!metadataDigestKnown) {
+            metadataDigest = MetadataInfo.digest(metadata);
+            metadataDigestKnown = true;
+        }
+        return metadataDigest;
+    }
+
+    /**
+      * Sets the digest of the metadata information contained in the file (the digest calculated or stored
+      * together with the current metadata, so it is not calculated again).
+      *
+      * @param metadataDigest the digest of the metadata information
+      */
+    public void setMetadataDigest(long metadataDigest) {
+        this.metadataDigest = metadataDigest;
+        metadataDigestKnown = true;
     }
 
     /**
       * Gets the set of file IDs corresponding to files that are identical to the file.
       *
-      * @return the set of IDs corresponding to the file duplicates
+      * @return the (new) set of IDs corresponding to the file duplicates
       */
-    public Set<Integer> getDuplicates() {
-        return duplicates;
+    public IntBitmap getDuplicates() {
+        return duplicateCluster == null ? new IntBitmap() : duplicateCluster.others(id);
     }
 
     /**
-      * Sets the set of file IDs corresponding to files that are identical to the file.
+      * Gets the number of files that are identical to the file.
       *
-      * @param duplicates the set of IDs corresponding to the file duplicates
+      * @return the number of the file duplicates
       */
-    public void setDuplicates(Set<Integer> duplicates) {
-        if (duplicates == null) {
-            this.duplicates = new HashSet<>();
-        } else {
-            this.duplicates = duplicates;
-        }
+    public int getDuplicatesCount() {
+        return duplicateCluster == null ? 0 : duplicateCluster.size() - 1;
     }
 
     /**
-      * Gets the set of file IDs corresponding to files that are potentially identical to the file.
+      * Gets the set of file IDs corresponding to files that are potentially identical to the file
+      * (the exact duplicates of the file are left out).
       *
-      * @return the set of IDs corresponding to the file potential duplicates
+      * @return the (new) set of IDs corresponding to the file potential duplicates
       */
-    public Set<Integer> getPotentialDuplicates() {
-        return potentialDuplicates;
+    public IntBitmap getPotentialDuplicates() {
+        if (potentialDuplicateCluster == null) {
+            return new IntBitmap();
+        }
+        if (duplicateCluster == null) {
+            return potentialDuplicateCluster.others(id);
+        }
+        return IntBitmap.andNot(potentialDuplicateCluster.getMembers(), duplicateCluster.getMembers());
     }
 
     /**
-      * Sets the set of file IDs corresponding to files that are potentially identical to the file.
+      * Gets the number of files that are potentially identical to the file (the exact duplicates of the file are left out).
       *
-      * @param potentialDuplicates the set of IDs corresponding to the file potential duplicates
+      * @return the number of the file potential duplicates
       */
-    public void setPotentialDuplicates(Set<Integer> potentialDuplicates) {
-        if (potentialDuplicates == null) {
-            this.potentialDuplicates = new HashSet<>();
-        } else {
-            this.potentialDuplicates = potentialDuplicates;
+    public int getPotentialDuplicatesCount() {
+        if (potentialDuplicateCluster == null) {
+            return 0;
         }
+        if (duplicateCluster == null) {
+            return potentialDuplicateCluster.size() - 1;
+        }
+        return IntBitmap.andNot(potentialDuplicateCluster.getMembers(), duplicateCluster.getMembers()).size();
     }
 
     /**
-      * Adds a keyword to the set of keywords associated with the file.
+      * Gets the cluster of exact duplicates containing this file.
       *
-      * @param keyword the keyword to add
+      * @return the cluster, or null if the file has no duplicates
       */
-    public void addKeyword(String keyword) {
-        assert keyword != null && !keyword.isEmpty() : "Keyword must be specified!";
-        keywords.add(keyword.toUpperCase());
+    public DBCluster getDuplicateCluster() {
+        return duplicateCluster;
     }
 
     /**
-      * Removes a keyword from the set of keywords associated with the file.
+      * Sets the cluster of exact duplicates containing this file.
       *
-      * @param keyword the keyword to remove
+      * @param duplicateCluster the cluster, or null if the file has no duplicates
       */
-    public void removeKeyword(String keyword) {
-        keywords.remove(keyword.toUpperCase());
+    public void setDuplicateCluster(DBCluster duplicateCluster) {
+        this.duplicateCluster = duplicateCluster;
     }
 
     /**
-      * Adds one metadata information (tag) to the set of metadata associated with the file.
+      * Gets the cluster of potential duplicates containing this file.
       *
-      * @param metadataInfo the metadata information (tag) to add
+      * @return the cluster, or null if the file has no potential duplicates
       */
-    public void addMetadata(MetadataInfo metadataInfo) {
-        assert metadataInfo != null : "Metadata must be specified!";
-        metadata.add(metadataInfo);
+    public DBCluster getPotentialDuplicateCluster() {
+        return potentialDuplicateCluster;
     }
 
     /**
-      * Removes one metadata information (tag) from the set of metadata associated with the file.
+      * Sets the cluster of potential duplicates containing this file.
       *
-      * @param metadataInfo the metadata information (tag) to remove
+      * @param potentialDuplicateCluster the cluster, or null if the file has no potential duplicates
       */
-    public void removeMetadata(MetadataInfo metadataInfo) {
-        metadata.remove(metadataInfo);
+    public void setPotentialDuplicateCluster(DBCluster potentialDuplicateCluster) {
+        this.potentialDuplicateCluster = potentialDuplicateCluster;
     }
 
     /**
-      * Adds a duplicate file ID to the set of duplicate file IDs.
+      * Adds a keyword to the set of keywords associated with the file.
       *
-      * @param duplicateFileID the duplicate file ID to add
+      * @param keyword the keyword to add
       */
-    public void addDuplicate(Integer duplicateFileID) {
-        assert duplicateFileID > 0 : "Duplicate file ID must be positive!";
-        duplicates.add(duplicateFileID);
+    public void addKeyword(String keyword) {
+        assert keyword != null && !keyword.isEmpty() : "Keyword must be specified!";
+        keywords.add(StringDictionary.code(keyword.toUpperCase()));
     }
 
     /**
-      * Removes a duplicate file ID from the set of duplicate file IDs.
+      * Removes a keyword from the set of keywords associated with the file.
       *
-      * @param duplicateFileID the duplicate file ID to remove
+      * @param keyword the keyword to remove
       */
-    public void removeDuplicate(Integer duplicateFileID) {
-        duplicates.remove(duplicateFileID);
+    public void removeKeyword(String keyword) {
+        keywords.remove(StringDictionary.find(keyword.toUpperCase()));
     }
 
     /**
-      * Adds a potential duplicate file ID to the set of potential duplicate file IDs.
+      * Adds one metadata information (tag) to the set of metadata associated with the file.
       *
-      * @param potentialDuplicateFileID the potential duplicate file ID to add
+      * @param metadataInfo the metadata information (tag) to add
       */
-    public void addPotentialDuplicate(Integer potentialDuplicateFileID) {
-        assert potentialDuplicateFileID > 0 : "Potential duplicate file ID must be positive!";
-        potentialDuplicates.add(potentialDuplicateFileID);
+    public void addMetadata(MetadataInfo metadataInfo) {
+        assert metadataInfo != null : "Metadata must be specified!";
+        metadata.add(metadataInfo);
+        metadataDigestKnown = false;
     }
 
     /**
-      * Removes a potential duplicate file ID from the set of potential duplicate file IDs.
+      * Removes one metadata information (tag) from the set of metadata associated with the file.
       *
-      * @param potentialDuplicateFileID the potential duplicate file ID to remove
+      * @param metadataInfo the metadata information (tag) to remove
       */
-    public void removePotentialDuplicate(Integer potentialDuplicateFileID) {
-        potentialDuplicates.remove(potentialDuplicateFileID);
+    public void removeMetadata(MetadataInfo metadataInfo) {
+        metadata.remove(metadataInfo);
+        metadataDigestKnown = false;
     }
 }
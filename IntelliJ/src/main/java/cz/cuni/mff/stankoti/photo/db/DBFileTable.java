@@ -0,0 +1,174 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+  * This class contains the table of file objects indexed directly by the file ID.
+  * <p>
+  * The file IDs are assigned in increasing order, so the table is a dense array (slot = file ID)
+  * and getting the file object is a plain array access. The slots of removed file objects
+  * are kept in the free-slot bitmap (they are not reused, see {@link DBData#compactIDs()}).
+  * </p>
+  */
+public class DBFileTable {
+    /**
+      * File objects indexed by the file ID (slot 0 is never used).
+      */
+    private DBFile[] slots;
+    /**
+      * IDs (slots) up to the highest ID without a file object.
+      */
+    private IntBitmap freeSlots;
+    /**
+      * The highest ID of a file object ever stored in the table.
+      */
+    private int highestID;
+    /**
+      * Number of file objects in the table.
+      */
+    private int size;
+
+    /**
+      * Creates a new empty file table.
+      */
+    public DBFileTable() {
+        slots = new DBFile[16];
+        freeSlots = new IntBitmap();
+        highestID = 0;
+        size = 0;
+    }
+
+    /**
+      * Gets the file object with the specified ID.
+      *
+      * @param fileID the file ID
+      * @return the file object, or null if not found
+      */
+    public DBFile get(int fileID) {
+        return fileID > 0 && fileID < slots.length ? slots[fileID] : null;
+    }
+
+    /**
+      * Stores the file object into the slot given by its ID (the previous file object with the same ID is replaced).
+      *
+      * @param file the file object
+      */
+    public void put(DBFile file) {
+        int fileID = file.getID();
+        assert fileID > 0 : "File ID must be positive!";
+        if (fileID >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(fileID + 1, slots.length * 2));
+        }
+        if (fileID > highestID) {
+            for (int id = highestID + 1; id < fileID; id++) {
+                freeSlots.add(id);
+            }
+            highestID = fileID;
+        } else {
+            freeSlots.remove(fileID);
+        }
+        if (slots[fileID] == null) {
+            size++;
+        }
+        slots[fileID] = file;
+    }
+
+    /**
+      * Removes the file object with the specified ID.
+      *
+      * @param fileID the file ID
+      * @return the removed file object, or null if not found
+      */
+    public DBFile remove(int fileID) {
+        DBFile file = get(fileID);
+        if (file != null) {
+            slots[fileID] = null;
+            freeSlots.add(fileID);
+            size--;
+        }
+        return file;
+    }
+
+    /**
+      * Gets the number of file objects in the table.
+      *
+      * @return the number of file objects
+      */
+    public int size() {
+        return size;
+    }
+
+    /**
+      * Gets the highest ID of a file object ever stored in the table.
+      *
+      * @return the highest file ID
+      */
+    public int getHighestID() {
+        return highestID;
+    }
+
+    /**
+      * Gets the number of free slots (IDs of removed file objects up to the highest ID).
+      *
+      * @return the number of free slots
+      */
+    public int getFreeSlots() {
+        return freeSlots.size();
+    }
+
+    /**
+      * Gets all file objects of the table (in the order of IDs).
+      * The returned collection is a view of the table.
+      *
+      * @return the collection of file objects
+      */
+    public AbstractCollection<DBFile> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<DBFile> iterator() {
+                return new Iterator<>() {
+                    private int nextID = nextUsed(1);
+
+                    @Override
+                    public boolean hasNext() {
+                        return nextID <= highestID;
+                    }
+
+                    @Override
+                    public DBFile next() {
+                        if (nextID > highestID) {
+                            throw new NoSuchElementException();
+                        }
+                        DBFile file = slots[nextID];
+                        nextID = nextUsed(nextID + 1);
+                        return file;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+      * Finds the first used slot starting with the specified ID.
+      *
+      * @param fromID the first ID to check
+      * @return the ID of the used slot, or (highest ID + 1) if there is none
+      */
+    private int nextUsed(int fromID) {
+        int id = fromID;
+        while (id <= highestID && slots[id] == null) {
+            id++;
+        }
+        return id;
+    }
+}
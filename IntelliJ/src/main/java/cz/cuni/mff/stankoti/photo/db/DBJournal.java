@@ -0,0 +1,773 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+  * This class contains the append-only journal of the database changes (mutations).
+  * <p>
+  * Every change of the database data is recorded as one compact journal record.
+  * The records are kept in memory until the next checkpoint or save, when they are appended to the journal file.
+  * A save also appends a SAVED record, so the records after the last SAVED record are the unsaved (checkpointed) changes,
+  * which can be discarded (see {@link #rollback()}) or recovered after a crash.
+  * On start, the journal records are replayed on top of the database (catalog) file they belong to.
+  * </p>
+  * <p>
+  * The records can be written to the file by another thread (see {@link DBCheckpointer}) than the one recording them.
+  * Recording only appends the already encoded record to the pending records under a short lock.
+  * </p>
+  * <p>
+  * The journal file consists of a header (magic, version, generation of the catalog file the journal belongs to)
+  * followed by the records. Each record is stored as: length (4), type (1), data, CRC32 of type and data (4).
+  * An incomplete or damaged record at the end of the file (e.g. after a crash) is ignored
+  * (and cut off when new records are written).
+  * </p>
+  */
+public class DBJournal {
+    /**
+      * Suffix added to the database filename to get the journal filename.
+      */
+    public static final String FILE_SUFFIX = ".jnl";
+    /**
+      * Magic bytes at the beginning of every journal file.
+      */
+    static final byte[] MAGIC = "PHOTOJNL".getBytes(StandardCharsets.US_ASCII);
+    /**
+      * Current version of the journal format.
+      */
+    static final int FORMAT_VERSION = 1;
+    /**
+      * Size of the journal header in bytes: magic (8), version (4), reserved (4), catalog generation (8).
+      */
+    static final int HEADER_SIZE = 24;
+
+    /**
+      * Record type: file object added (or updated).
+      */
+    static final byte ADD_FILE = 1;
+    /**
+      * Record type: file object removed.
+      */
+    static final byte REMOVE_FILE = 2;
+    /**
+      * Record type: keyword connected with the file object.
+      */
+    static final byte ADD_KEYWORD = 3;
+    /**
+      * Record type: keyword disconnected from the file object.
+      */
+    static final byte REMOVE_KEYWORD = 4;
+    /**
+      * Record type: set of duplicates found for the file object.
+      */
+    static final byte DUPLICATES = 5;
+    /**
+      * Record type: duplicate information of the file object removed.
+      */
+    static final byte REMOVE_DUPLICATE_INFORMATION = 6;
+    /**
+      * Record type: all previous records were saved (not a database change).
+      */
+    static final byte SAVED = 7;
+    /**
+      * Record type: checksum of the file object recalculated by another algorithm.
+      */
+    static final byte CHECKSUM = 8;
+    /**
+      * Record type: checksum algorithm of the database changed (not related to a file object, file ID 0).
+      */
+    static final byte HASH_ALGORITHM = 9;
+    /**
+      * Record type: last modification time and file key of the unchanged file object updated.
+      */
+    static final byte FILE_ATTRIBUTES = 10;
+
+    /**
+      * The journal filename.
+      */
+    private String filename;
+    /**
+      * Generation of the catalog file to which the journal file belongs (-1 if unknown).
+      */
+    private long baseGeneration;
+    /**
+      * Size of the valid part of the journal file.
+      */
+    private long size;
+    /**
+      * Size of the saved part of the journal file (up to the last SAVED record).
+      */
+    private long savedSize;
+    /**
+      * Number of records written to the journal file after the last SAVED record.
+      */
+    private int unsavedRecords;
+    /**
+      * Records not yet written to the journal file.
+      */
+    private ByteArrayOutputStream pending;
+    /**
+      * Number of records not yet written to the journal file.
+      */
+    private int pendingRecords;
+    /**
+      * Lock held while the journal file is written.
+      */
+    private final Object fileLock = new Object();
+
+    /**
+      * Creates a new journal instance for the specified journal filename.
+      *
+      * @param filename the name of the journal file
+      */
+    public DBJournal(String filename) {
+        assert filename != null && !filename.isEmpty() : "Journal filename must be specified!";
+        this.filename = filename;
+        baseGeneration = -1L;
+        size = 0L;
+        savedSize = 0L;
+        unsavedRecords = 0;
+        pending = new ByteArrayOutputStream();
+        pendingRecords = 0;
+    }
+
+    /**
+      * Gets the journal filename.
+      *
+      * @return the journal filename
+      */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+      * Gets the size of the journal file (after the last write).
+      *
+      * @return the journal file size in bytes
+      */
+    public long size() {
+        synchronized (fileLock) {
+            return size;
+        }
+    }
+
+    /**
+      * Gets the number of records not yet written to the journal file.
+      *
+      * @return the number of pending records
+      */
+    public synchronized int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+      * Gets the number of records written to the journal file after the last save (by checkpoints).
+      *
+      * @return the number of unsaved records in the journal file
+      */
+    public int getUnsavedRecords() {
+        synchronized (fileLock) {
+            return unsavedRecords;
+        }
+    }
+
+    /**
+      * Writes an empty journal file which belongs to the catalog of the specified generation.
+      * Records not yet written are kept.
+      *
+      * @param generation the generation of the catalog file
+      * @throws IOException if the journal file cannot be written
+      */
+    public void reset(long generation) throws IOException {
+        synchronized (fileLock) {
+            writeHeader(generation);
+        }
+    }
+
+    /**
+      * Writes an empty journal file (the file lock must be held).
+      *
+      * @param generation the generation of the catalog file
+      * @throws IOException if the journal file cannot be written
+      */
+    private void writeHeader(long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(0);
+        header.putLong(generation);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        baseGeneration = generation;
+        size = HEADER_SIZE;
+        savedSize = HEADER_SIZE;
+        unsavedRecords = 0;
+    }
+
+    /**
+      * Saves the changes: appends all pending records followed by the SAVED record to the journal file.
+      * If the journal file does not belong to the catalog of the specified generation, it is started again.
+      *
+      * @param generation the generation of the catalog file
+      * @throws IOException if the journal file cannot be written
+      */
+    public void flush(long generation) throws IOException {
+        synchronized (fileLock) {
+            if (generation != baseGeneration) {
+                writeHeader(generation);
+            }
+            if (getPendingRecords() == 0 && unsavedRecords == 0) {
+                return;
+            }
+            RecordWriter out = new RecordWriter();
+            out.writeInt(0);
+            append(SAVED, out);
+            writePending();
+            savedSize = size;
+            unsavedRecords = 0;
+        }
+    }
+
+    /**
+      * Checkpoint: appends all pending records to the journal file (without marking them as saved).
+      * If the journal file does not belong to the catalog of the specified generation, it is started again.
+      *
+      * @param generation the generation of the catalog file
+      * @return the number of written records
+      * @throws IOException if the journal file cannot be written
+      */
+    public int checkpoint(long generation) throws IOException {
+        synchronized (fileLock) {
+            if (generation != baseGeneration) {
+                writeHeader(generation);
+            }
+            int count = writePending();
+            unsavedRecords += count;
+            return count;
+        }
+    }
+
+    /**
+      * Discards all unsaved changes: the pending records are dropped and the journal file 
+      * is cut off after the last SAVED record.
+      *
+      * @throws IOException if the journal file cannot be truncated
+      */
+    public void rollback() throws IOException {
+        synchronized (fileLock) {
+            synchronized (this) {
+                pending.reset();
+                pendingRecords = 0;
+            }
+            if (baseGeneration >= 0 && size > savedSize && Files.exists(Path.of(filename))) {
+                try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.WRITE)) {
+                    channel.truncate(savedSize);
+                    channel.force(false);
+                }
+                size = savedSize;
+            }
+            unsavedRecords = 0;
+        }
+    }
+
+    /**
+      * Takes the pending records (under a short lock, so that new records can be recorded meanwhile)
+      * and appends them to the journal file (the file lock must be held).
+      * If the write fails, the records are returned to the pending records.
+      *
+      * @return the number of written records
+      * @throws IOException if the journal file cannot be written
+      */
+    private int writePending() throws IOException {
+        byte[] records;
+        int count;
+        synchronized (this) {
+            records = pending.toByteArray();
+            count = pendingRecords;
+            pending.reset();
+            pendingRecords = 0;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(records.length);
+        buffer.put(records);
+        buffer.flip();
+        long position = size;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            if (channel.size() > position) {
+                channel.truncate(position); // cut off the damaged end of the journal
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                byte[] newer = pending.toByteArray();
+                pending.reset();
+                pending.writeBytes(records);
+                pending.writeBytes(newer);
+                pendingRecords += count;
+            }
+            throw e;
+        }
+        size = position;
+        return count;
+    }
+
+    /**
+      * Replays the journal file records on the database.
+      * The journal file is used only if it belongs to the catalog of the specified generation.
+      *
+      * @param db the database on which the records are applied
+      * @param generation the generation of the catalog file the database was read from
+      * @return the number of replayed records
+      * @throws IOException if the journal file cannot be read
+      */
+    public int replay(DB db, long generation) throws IOException {
+        synchronized (fileLock) {
+            return replayRecords(db, generation);
+        }
+    }
+
+    /**
+      * Replays the journal file records on the database (the file lock must be held).
+      *
+      * @param db the database on which the records are applied
+      * @param generation the generation of the catalog file the database was read from
+      * @return the number of replayed records
+      * @throws IOException if the journal file cannot be read
+      */
+    private int replayRecords(DB db, long generation) throws IOException {
+        Path path = Path.of(filename);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                return 0; // not a valid journal, it will be started again on the next save
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) fileSize);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            if (!belongsTo(buffer, generation)) {
+                return 0; // journal of another (older) catalog file, its changes are already in the catalog
+            }
+
+            int position = HEADER_SIZE;
+            int count = 0;
+            int saved = HEADER_SIZE;
+            int unsaved = 0;
+            CRC32 crc = new CRC32();
+            while (position + 9 <= buffer.limit()) {
+                int length = buffer.getInt(position);
+                if (length < 1 || length > buffer.limit() - position - 8) {
+                    break;
+                }
+                ByteBuffer record = buffer.slice(position + 4, length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+                    break;
+                }
+                position += 8 + length;
+                if (record.get(0) == SAVED) {
+                    saved = position;
+                    unsaved = 0;
+                } else {
+                    apply(db, record);
+                    count++;
+                    unsaved++;
+                }
+            }
+
+            // a damaged end of the journal (if any) is overwritten and cut off on the next flush
+            baseGeneration = generation;
+            size = position;
+            savedSize = saved;
+            unsavedRecords = unsaved;
+            return count;
+        }
+    }
+
+    /**
+      * Checks whether the journal file contains any records for the catalog of the specified generation.
+      *
+      * @param generation the generation of the catalog file
+      * @return true if there are records to replay, false otherwise
+      * @throws IOException if the journal file cannot be read
+      */
+    public boolean hasRecords(long generation) throws IOException {
+        Path path = Path.of(filename);
+        if (!Files.exists(path) || Files.size(path) <= HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return false;
+                }
+            }
+            return belongsTo(header, generation);
+        }
+    }
+
+    /**
+      * Checks the journal header (magic bytes, version and the catalog generation).
+      *
+      * @param buffer the buffer starting with the journal header
+      * @param generation the generation of the catalog file
+      * @return true if the journal belongs to the catalog of the specified generation, false otherwise
+      */
+    private static boolean belongsTo(ByteBuffer buffer, long generation) {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        return Arrays.equals(magic, MAGIC) && buffer.getInt(8) == FORMAT_VERSION && buffer.getLong(16) == generation;
+    }
+
+    /**
+      * Encodes the file object information for the ADD_FILE record.
+      * (It must be called before the file object is added to the database, because adding changes it.)
+      *
+      * @param file the file object
+      * @return the encoded file object information
+      */
+    public byte[] encodeFile(DBFile file) {
+        RecordWriter out = new RecordWriter();
+        out.writeString(file.getFullpath());
+        out.writeString(file.getLocation());
+        out.writeString(file.getFilename());
+        out.writeString(file.getExtension());
+        out.writeString(file.getTimestamp());
+        out.writeLong(file.getSize());
+        out.writeLong(file.getChecksum());
+        out.writeInt(file.getKeywords().size());
+        for (String keyword : file.getKeywords()) {
+            out.writeString(keyword);
+        }
+        out.writeInt(file.getMetadata().size());
+        for (MetadataInfo metadataInfo : file.getMetadata()) {
+            out.writeString(metadataInfo.getDirectory());
+            out.writeString(metadataInfo.getTag());
+            out.writeString(metadataInfo.getDescription());
+        }
+        out.writeByte((byte) file.getChecksumAlgorithm().getId());
+        out.writeLong(file.getLastModified());
+        out.writeInt(file.getFileKey());
+        return out.toByteArray();
+    }
+
+    /**
+      * Records that the file object was added (or updated).
+      *
+      * @param fileID the ID assigned to the file object
+      * @param encodedFile the file object information (see {@link #encodeFile(DBFile)})
+      */
+    public void recordAddFile(int fileID, byte[] encodedFile) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.write(encodedFile);
+        append(ADD_FILE, out);
+    }
+
+    /**
+      * Records that the file object was removed.
+      *
+      * @param fileID the ID of the removed file object
+      */
+    public void recordRemoveFile(int fileID) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        append(REMOVE_FILE, out);
+    }
+
+    /**
+      * Records that the keyword was connected with the file object.
+      *
+      * @param keyword the keyword
+      * @param fileID the ID of the file object
+      */
+    public void recordAddKeyword(String keyword, int fileID) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.writeString(keyword);
+        append(ADD_KEYWORD, out);
+    }
+
+    /**
+      * Records that the keyword was disconnected from the file object.
+      *
+      * @param keyword the keyword
+      * @param fileID the ID of the file object
+      */
+    public void recordRemoveKeyword(String keyword, int fileID) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.writeString(keyword);
+        append(REMOVE_KEYWORD, out);
+    }
+
+    /**
+      * Records the set of duplicates found for the file object.
+      *
+      * @param fileID the ID of the file object which was checked for duplicates
+      * @param duplicatesIDs the set of IDs of all identical files (including the checked file)
+      */
+    public void recordDuplicates(int fileID, Set<Integer> duplicatesIDs) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.writeInt(duplicatesIDs.size());
+        for (int duplicateFileID : duplicatesIDs) {
+            out.writeInt(duplicateFileID);
+        }
+        append(DUPLICATES, out);
+    }
+
+    /**
+      * Records that the duplicate information of the file object was removed.
+      *
+      * @param fileID the ID of the file object
+      */
+    public void recordRemoveFileDuplicateInformation(int fileID) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        append(REMOVE_DUPLICATE_INFORMATION, out);
+    }
+
+    /**
+      * Records that the checksum of the file object was recalculated.
+      *
+      * @param fileID the ID of the file object
+      * @param algorithm the algorithm of the new checksum
+      * @param checksum the new checksum
+      */
+    public void recordChecksum(int fileID, HashAlgorithm algorithm, long checksum) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.writeByte((byte) algorithm.getId());
+        out.writeLong(checksum);
+        append(CHECKSUM, out);
+    }
+
+    /**
+      * Records that the last modification time and the file key of the file object were updated.
+      *
+      * @param fileID the ID of the file object
+      * @param lastModified the last modification time of the file (in milliseconds)
+      * @param fileKey the file key hash of the file
+      */
+    public void recordFileAttributes(int fileID, long lastModified, int fileKey) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(fileID);
+        out.writeLong(lastModified);
+        out.writeInt(fileKey);
+        append(FILE_ATTRIBUTES, out);
+    }
+
+    /**
+      * Records that the checksum algorithm of the database was changed.
+      *
+      * @param algorithm the new checksum algorithm
+      */
+    public void recordHashAlgorithm(HashAlgorithm algorithm) {
+        RecordWriter out = new RecordWriter();
+        out.writeInt(0);
+        out.writeByte((byte) algorithm.getId());
+        append(HASH_ALGORITHM, out);
+    }
+
+    /**
+      * Appends one record to the pending records.
+      *
+      * @param type the record type
+      * @param record the record data
+      */
+    private synchronized void append(byte type, RecordWriter record) {
+        byte[] bytes = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(bytes);
+
+        RecordWriter out = new RecordWriter();
+        out.writeInt(bytes.length + 1);
+        out.writeByte(type);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+        pending.writeBytes(out.toByteArray());
+        pendingRecords++;
+    }
+
+    /**
+      * Applies one record on the database.
+      *
+      * @param db the database
+      * @param record the record (type and data)
+      */
+    private static void apply(DB db, ByteBuffer record) {
+        byte type = record.get();
+        int fileID = record.getInt();
+        switch (type) {
+            case ADD_FILE -> db.addFileInternal(decodeFile(record), fileID);
+            case REMOVE_FILE -> {
+                if (db.getFile(fileID) != null) {
+                    db.removeFileInternal(fileID);
+                }
+            }
+            case ADD_KEYWORD -> db.addKeywordInternal(readString(record), fileID);
+            case REMOVE_KEYWORD -> db.removeKeywordInternal(readString(record), fileID);
+            case DUPLICATES -> {
+                IntBitmap duplicatesIDs = new IntBitmap();
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    duplicatesIDs.add(record.getInt());
+                }
+                if (db.getFile(fileID) != null) {
+                    duplicatesIDs.removeIf(id -> db.getFile(id) == null);
+                    db.markDuplicates(fileID, duplicatesIDs);
+                }
+            }
+            case REMOVE_DUPLICATE_INFORMATION -> {
+                if (db.getFile(fileID) != null) {
+                    db.removeFileDuplicateInformationInternal(db.getFile(fileID));
+                }
+            }
+            case CHECKSUM -> {
+                HashAlgorithm algorithm = HashAlgorithm.fromId(record.get());
+                long checksum = record.getLong();
+                if (db.getFile(fileID) != null && algorithm != null) {
+                    db.updateChecksumInternal(fileID, algorithm, checksum);
+                }
+            }
+            case HASH_ALGORITHM -> {
+                HashAlgorithm algorithm = HashAlgorithm.fromId(record.get());
+                if (algorithm != null) {
+                    db.setHashAlgorithmInternal(algorithm);
+                }
+            }
+            case FILE_ATTRIBUTES -> {
+                long lastModified = record.getLong();
+                int fileKey = record.getInt();
+                if (db.getFile(fileID) != null) {
+                    db.updateFileAttributesInternal(fileID, lastModified, fileKey);
+                }
+            }
+            default -> { } // unknown record type (written by a newer version), ignored
+        }
+    }
+
+    /**
+      * Decodes the file object information of the ADD_FILE record.
+      *
+      * @param record the record data (positioned at the file object information)
+      * @return the decoded file object (without ID)
+      */
+    private static DBFile decodeFile(ByteBuffer record) {
+        DBFile file = new DBFile();
+        file.setFullpath(readString(record));
+        file.setLocation(readString(record));
+        file.setFilename(readString(record));
+        file.setExtension(readString(record));
+        file.setTimestamp(readString(record));
+        file.setSize(record.getLong());
+        file.setChecksum(record.getLong());
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            file.addKeyword(readString(record));
+        }
+        count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            file.addMetadata(new MetadataInfo(readString(record), readString(record), readString(record)));
+        }
+        HashAlgorithm algorithm = record.hasRemaining() ? HashAlgorithm.fromId(record.get()) : null;
+        file.setChecksumAlgorithm(algorithm != null ? algorithm : HashAlgorithm.CRC32);  // older records: CRC32
+        if (record.remaining() >= 12) {
+            file.setLastModified(record.getLong());
+            file.setFileKey(record.getInt());
+        }
+        return file;
+    }
+
+    /**
+      * Reads one length-prefixed UTF-8 string.
+      *
+      * @param record the record data
+      * @return the string
+      */
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+      * Writer of the record data (numbers in big-endian order, strings as length-prefixed UTF-8).
+      */
+    private static class RecordWriter {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private DataOutputStream out = new DataOutputStream(bytes);
+
+        void writeByte(byte value) {
+            bytes.write(value);
+        }
+
+        void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new AssertionError(e); // cannot happen when writing to memory
+            }
+        }
+
+        void writeLong(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException e) {
+                throw new AssertionError(e); // cannot happen when writing to memory
+            }
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(encoded.length);
+            bytes.writeBytes(encoded);
+        }
+
+        void write(byte[] data) {
+            bytes.writeBytes(data);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
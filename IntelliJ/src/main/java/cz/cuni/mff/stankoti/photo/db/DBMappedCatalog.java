@@ -0,0 +1,855 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+  * This class provides read-only access to the catalog (.pdb) file mapped into memory.
+  * <p>
+  * Nothing is read in advance: the file records are decoded only when requested and
+  * the index queries (path, directory, keyword, extension, filename, metadata value, timestamp, size and metadata range)
+  * are answered by binary search directly in the mapped index sections.
+  * So, the catalog opens immediately and the used heap memory does not depend on the catalog size.
+  * (Each catalog section must be smaller than 2 GB.)
+  * </p>
+  */
+public class DBMappedCatalog {
+    /**
+      * Maximal number of decoded file objects kept in the cache.
+      */
+    private static final int FILE_CACHE_SIZE = 1024;
+
+    /**
+      * Generation of the catalog.
+      */
+    private long generation;
+    /**
+      * Last used ID of the file object.
+      */
+    private int lastFileID;
+    /**
+      * Number of files with at least one duplicate.
+      */
+    private int duplicatesCount;
+    /**
+      * Number of files with at least one potential duplicate.
+      */
+    private int potentialDuplicatesCount;
+    /**
+      * Checksum algorithm of the database.
+      */
+    private HashAlgorithm hashAlgorithm;
+    /**
+      * Mapped string dictionary section.
+      */
+    private ByteBuffer strings;
+    /**
+      * Mapped file records section.
+      */
+    private ByteBuffer records;
+    /**
+      * Mapped integer lists section.
+      */
+    private ByteBuffer lists;
+    /**
+      * Mapped full path index section.
+      */
+    private ByteBuffer paths;
+    /**
+      * Mapped location (directory) index section.
+      */
+    private ByteBuffer locations;
+    /**
+      * Mapped keyword index section.
+      */
+    private ByteBuffer keywords;
+    /**
+      * Mapped checksum algorithms section (null if the catalog does not contain it).
+      */
+    private ByteBuffer algorithms;
+    /**
+      * Mapped file attributes section (null if the catalog does not contain it).
+      */
+    private ByteBuffer attributes;
+    /**
+      * Mapped metadata digests section (null if the catalog does not contain it).
+      */
+    private ByteBuffer digests;
+    /**
+      * Mapped sorted timestamp index section (null if the catalog does not contain it).
+      */
+    private ByteBuffer timestamps;
+    /**
+      * Mapped sorted size index section (null if the catalog does not contain it).
+      */
+    private ByteBuffer sizes;
+    /**
+      * Mapped directory totals section (null if the catalog does not contain it).
+      */
+    private ByteBuffer directoryTotals;
+    /**
+      * Mapped extension index section (null if the catalog does not contain it).
+      */
+    private ByteBuffer extensions;
+    /**
+      * Mapped filename index section (null if the catalog does not contain it).
+      */
+    private ByteBuffer filenames;
+    /**
+      * Mapped metadata value index section (null if the catalog does not contain it).
+      */
+    private ByteBuffer metadataValues;
+    /**
+      * Mapped sorted numeric metadata columns, indexed by the column ordinal (null if the catalog does not contain them).
+      */
+    private ByteBuffer[] metadataColumns;
+    /**
+      * Recently decoded file objects (mapping the file ID to the file object).
+      */
+    private Map<Integer, DBFile> fileCache;
+
+    /**
+      * Opens the catalog file and maps all its sections into memory.
+      *
+      * @param filename the name of the catalog file
+      * @throws IOException if the file cannot be read
+      * @throws StreamCorruptedException if the file is not a catalog file or has an unsupported version
+      */
+    public DBMappedCatalog(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, DBCatalog.HEADER_SIZE);
+            DBCatalog.checkHeader(header);
+            generation = header.getLong(16);
+            lastFileID = header.getInt(24);
+            duplicatesCount = header.getInt(32);
+            potentialDuplicatesCount = header.getInt(36);
+            hashAlgorithm = DBCatalog.readHashAlgorithm(header);
+
+            long[][] sections = DBCatalog.readSectionDirectory(channel, header);
+            strings = mapSection(channel, sections, DBCatalog.SECTION_STRINGS);
+            records = mapSection(channel, sections, DBCatalog.SECTION_FILES);
+            lists = mapSection(channel, sections, DBCatalog.SECTION_LISTS);
+            paths = mapSection(channel, sections, DBCatalog.SECTION_PATHS);
+            locations = mapSection(channel, sections, DBCatalog.SECTION_LOCATIONS);
+            keywords = mapSection(channel, sections, DBCatalog.SECTION_KEYWORDS);
+            if (sections[DBCatalog.SECTION_CHECKSUM_ALGORITHMS] != null) {
+                algorithms = mapSection(channel, sections, DBCatalog.SECTION_CHECKSUM_ALGORITHMS);
+            }
+            if (sections[DBCatalog.SECTION_FILE_ATTRIBUTES] != null) {
+                attributes = mapSection(channel, sections, DBCatalog.SECTION_FILE_ATTRIBUTES);
+            }
+            if (sections[DBCatalog.SECTION_METADATA_DIGESTS] != null) {
+                digests = mapSection(channel, sections, DBCatalog.SECTION_METADATA_DIGESTS);
+            }
+            if (sections[DBCatalog.SECTION_TIMESTAMPS] != null) {
+                timestamps = mapSection(channel, sections, DBCatalog.SECTION_TIMESTAMPS);
+            }
+            if (sections[DBCatalog.SECTION_SIZES] != null) {
+                sizes = mapSection(channel, sections, DBCatalog.SECTION_SIZES);
+            }
+            if (sections[DBCatalog.SECTION_DIRECTORY_TOTALS] != null) {
+                directoryTotals = mapSection(channel, sections, DBCatalog.SECTION_DIRECTORY_TOTALS);
+            }
+            if (sections[DBCatalog.SECTION_EXTENSIONS] != null) {
+                extensions = mapSection(channel, sections, DBCatalog.SECTION_EXTENSIONS);
+            }
+            if (sections[DBCatalog.SECTION_FILENAMES] != null) {
+                filenames = mapSection(channel, sections, DBCatalog.SECTION_FILENAMES);
+            }
+            if (sections[DBCatalog.SECTION_METADATA_VALUES] != null) {
+                metadataValues = mapSection(channel, sections, DBCatalog.SECTION_METADATA_VALUES);
+            }
+            if (sections[DBCatalog.SECTION_METADATA_COLUMNS] != null) {
+                ByteBuffer columns = mapSection(channel, sections, DBCatalog.SECTION_METADATA_COLUMNS);
+                metadataColumns = new ByteBuffer[columns.getInt(0)];
+                int position = 4;
+                for (int i = 0; i < metadataColumns.length; i++) {
+                    int length = 4 + columns.getInt(position) * DBCatalog.VALUE_ENTRY_SIZE;
+                    metadataColumns[i] = columns.slice(position, length);
+                    position += length;
+                }
+            }
+        }
+        fileCache = new LinkedHashMap<>(FILE_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DBFile> eldest) {
+                return size() > FILE_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+      * Gets the generation of the catalog.
+      *
+      * @return the catalog generation
+      */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+      * Gets the last ID assigned to a file in the catalog.
+      *
+      * @return the last ID of the file
+      */
+    public int getLastFileID() {
+        return lastFileID;
+    }
+
+    /**
+      * Gets the checksum algorithm of the database.
+      *
+      * @return the checksum algorithm
+      */
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+      * Gets the file object associated with the specified file ID (the file record is decoded on request).
+      *
+      * @param fileID the ID of the file object to retrieve
+      * @return the file object associated with the specified ID, or null if not found
+      */
+    public DBFile getFile(int fileID) {
+        DBFile file = fileCache.get(fileID);
+        if (file == null) {
+            int index = findRecord(fileID);
+            if (index >= 0) {
+                file = DBCatalog.decodeFile(records, index, this::string, lists, algorithms, attributes, digests);
+                int r = 4 + index * DBCatalog.FILE_RECORD_SIZE;
+                file.setDuplicateCluster(DBCatalog.decodeCluster(lists, records.getInt(r + 48), fileID));
+                file.setPotentialDuplicateCluster(DBCatalog.decodeCluster(lists, records.getInt(r + 52), fileID));
+                fileCache.put(fileID, file);
+            }
+        }
+        return file;
+    }
+
+    /**
+      * Gets the number of files in the catalog.
+      *
+      * @return the number of files
+      */
+    public int getFileCount() {
+        return records.getInt(0);
+    }
+
+    /**
+      * Gets the IDs of all files in the catalog (only the IDs of the file records are read).
+      *
+      * @return the (new) set of IDs of all files
+      */
+    public IntBitmap getFileIDs() {
+        IntBitmap fileIDs = new IntBitmap();
+        for (int i = 0; i < getFileCount(); i++) {
+            fileIDs.add(records.getInt(4 + i * DBCatalog.FILE_RECORD_SIZE));
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets the ID of the file with the specified full file path.
+      *
+      * @param fullpath the full path of the file
+      * @return the file ID, or 0 if not found
+      */
+    public int getFileID(String fullpath) {
+        int index = findKey(paths, fullpath);
+        return index >= 0 ? paths.getInt(4 + index * DBCatalog.INDEX_ENTRY_SIZE + 4) : 0;
+    }
+
+    /**
+      * Gets the file ID with the specified combination location (directory) + filename + extension.
+      *
+      * @param location the location (directory) of the file
+      * @param filename the filename of the file
+      * @param extension the extension of the file
+      * @return the file ID, or 0 if not found
+      */
+    public int getFileID(String location, String filename, String extension) {
+        IntBitmap locationIDs = getFileIDsInLocation(location);
+        if (locationIDs != null) {
+            for (int fileID : locationIDs) {
+                int r = 4 + findRecord(fileID) * DBCatalog.FILE_RECORD_SIZE;
+                if (string(records.getInt(r + 12)).equals(filename) && string(records.getInt(r + 16)).equals(extension)) {
+                    return fileID;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+      * Gets IDs of all files in the specified location (directory).
+      *
+      * @param location the location (directory) of the files
+      * @return a set of file IDs in the specified location, or null if the location does not exist
+      */
+    public IntBitmap getFileIDsInLocation(String location) {
+        return postingList(locations, location);
+    }
+
+    /**
+      * Gets IDs of all files with the specified keyword.
+      *
+      * @param keyword the keyword associated with the files
+      * @return a set of file IDs with the specified keyword, or null if the keyword does not exist
+      */
+    public IntBitmap getFileIDsWithKeyword(String keyword) {
+        return postingList(keywords, keyword);
+    }
+
+    /**
+      * Gets IDs of all files in the specified directory and all its subdirectories
+      * (the sets of the directories are joined by one union).
+      *
+      * @param location the directory
+      * @return a set of file IDs, or null if there are no files in the directory and its subdirectories
+      */
+    public IntBitmap getFileIDsInTree(String location) {
+        List<IntBitmap> directoryFileIDs = new ArrayList<>();
+        for (int entry : treeEntries(location)) {
+            directoryFileIDs.add(DBCatalog.decodeIDList(lists, locations.getInt(4 + entry * DBCatalog.INDEX_ENTRY_SIZE + 4)));
+        }
+        return directoryFileIDs.isEmpty() ? null : IntBitmap.or(directoryFileIDs);
+    }
+
+    /**
+      * Gets the number of files in the specified directory and all its subdirectories
+      * (only the lengths of the posting lists are read).
+      *
+      * @param location the directory
+      * @return the number of files
+      */
+    public long getFileCountInTree(String location) {
+        long count = 0;
+        for (int entry : treeEntries(location)) {
+            count += lists.getInt(locations.getInt(4 + entry * DBCatalog.INDEX_ENTRY_SIZE + 4) * 4);
+        }
+        return count;
+    }
+
+    /**
+      * Gets IDs of all files with the specified extension.
+      *
+      * @param extension the extension of the files
+      * @return a set of file IDs with the specified extension, or null if the extension does not exist
+      */
+    public IntBitmap getFileIDsWithExtension(String extension) {
+        assert extensions != null : "Method DBMappedCatalog.getFileIDsWithExtension() - The catalog has no extension index!";
+        return postingList(extensions, extension);
+    }
+
+    /**
+      * Gets a sorted list of all extensions in the catalog (the index is already sorted).
+      *
+      * @return a sorted list of extensions
+      */
+    public List<String> getExtensions() {
+        assert extensions != null : "Method DBMappedCatalog.getExtensions() - The catalog has no extension index!";
+        return indexKeys(extensions);
+    }
+
+    /**
+      * Gets IDs of all files with the specified filename (without the extension).
+      *
+      * @param filename the filename of the files
+      * @return a set of file IDs with the specified filename, or null if the filename does not exist
+      */
+    public IntBitmap getFileIDsWithFilename(String filename) {
+        assert filenames != null : "Method DBMappedCatalog.getFileIDsWithFilename() - The catalog has no filename index!";
+        return postingList(filenames, filename);
+    }
+
+    /**
+      * Gets IDs of all files containing the metadata tag with the specified value
+      * (the entries of the tag and the value are adjacent in the sorted metadata value index).
+      *
+      * @param directory the metadata directory (null = the tag in any directory)
+      * @param tag the name of the metadata tag
+      * @param value the description of the tag's value
+      * @return a (new) set of file IDs, or null if the tag is not indexed (in the directory, or in some directory)
+      */
+    public IntBitmap getFileIDsWithMetadata(String directory, String tag, String value) {
+        assert metadataValues != null : "Method DBMappedCatalog.getFileIDsWithMetadata() - The catalog has no metadata index!";
+        if (directory != null ? !DBMetadataIndex.isIndexed(directory, tag, value) : isSkippedTag(tag)) {
+            return null;
+        }
+        List<IntBitmap> valueFileIDs = new ArrayList<>();
+        int count = metadataValues.getInt(0);
+        for (int i = metadataLowerBound(tag, value); i < count; i++) {
+            int e = 4 + i * DBCatalog.METADATA_ENTRY_SIZE;
+            if (!string(metadataValues.getInt(e)).equals(tag) || !string(metadataValues.getInt(e + 4)).equals(value)) {
+                break;
+            }
+            if (directory == null || string(metadataValues.getInt(e + 8)).equals(directory)) {
+                valueFileIDs.add(DBCatalog.decodeIDList(lists, metadataValues.getInt(e + 12)));
+            }
+        }
+        return IntBitmap.or(valueFileIDs);
+    }
+
+    /**
+      * Gets IDs of all files with the value of the numeric tag in the specified range
+      * (only the entries of the sorted column covering the range are read).
+      *
+      * @param column the numeric tag
+      * @param min the minimal value
+      * @param minInclusive true if the minimal value is included in the range
+      * @param max the maximal value
+      * @param maxInclusive true if the maximal value is included in the range
+      * @return a (new) set of file IDs
+      */
+    public IntBitmap getFileIDsInMetadataRange(DBMetadataIndex.Column column, double min, boolean minInclusive,
+                                               double max, boolean maxInclusive) {
+        IntBitmap fileIDs = new IntBitmap();
+        valueRange(metadataColumn(column), DBCatalog.sortableValue(min) + (minInclusive ? 0 : 1),
+                   DBCatalog.sortableValue(max) - (maxInclusive ? 0 : 1)).forEach(fileIDs::add);
+        return fileIDs;
+    }
+
+    /**
+      * Gets the number of files with the value of the numeric tag in the specified range
+      * (by two binary searches in the sorted column).
+      *
+      * @param column the numeric tag
+      * @param min the minimal value
+      * @param minInclusive true if the minimal value is included in the range
+      * @param max the maximal value
+      * @param maxInclusive true if the maximal value is included in the range
+      * @return the number of files
+      */
+    public int getFileCountInMetadataRange(DBMetadataIndex.Column column, double min, boolean minInclusive,
+                                           double max, boolean maxInclusive) {
+        return valueCount(metadataColumn(column), DBCatalog.sortableValue(min) + (minInclusive ? 0 : 1),
+                          DBCatalog.sortableValue(max) - (maxInclusive ? 0 : 1));
+    }
+
+    /**
+      * Gets a sorted list of all keywords in the catalog (the index is already sorted).
+      *
+      * @return a sorted list of keywords
+      */
+    public List<String> getKeywords() {
+        return indexKeys(keywords);
+    }
+
+    /**
+      * Gets a sorted list of all directories in the catalog (the index is already sorted).
+      *
+      * @return a sorted list of directories
+      */
+    public List<String> getDirectories() {
+        return indexKeys(locations);
+    }
+
+    /**
+      * Checks whether the catalog contains all optional index sections - the sorted value indexes, the directory totals,
+      * the extension, filename and metadata indexes (catalogs written by older versions do not, so some queries
+      * cannot be answered without decoding all file records).
+      *
+      * @return true if the catalog contains all optional index sections, false otherwise
+      */
+    public boolean hasQueryIndexes() {
+        return timestamps != null && sizes != null && directoryTotals != null
+               && extensions != null && filenames != null && metadataValues != null && metadataColumns != null;
+    }
+
+    /**
+      * Gets the size of the file (read directly from the file record, the record is not decoded).
+      *
+      * @param fileID the ID of the file object
+      * @return the size of the file, or -1 if not found
+      */
+    public long getFileSize(int fileID) {
+        int index = findRecord(fileID);
+        return index >= 0 ? records.getLong(4 + index * DBCatalog.FILE_RECORD_SIZE + 24) : -1L;
+    }
+
+    /**
+      * Gets IDs of all files with the size in the specified range, ordered by the size
+      * (only the entries of the sorted size index covering the range are read).
+      *
+      * @param min the minimal size (inclusive)
+      * @param max the maximal size (inclusive)
+      * @return a list of file IDs with the size in the range
+      */
+    public List<Integer> getFileIDsInSizeRange(long min, long max) {
+        assert sizes != null : "Method DBMappedCatalog.getFileIDsInSizeRange() - The catalog has no size index!";
+        return valueRange(sizes, min, max);
+    }
+
+    /**
+      * Gets the number of files with the size in the specified range (by two binary searches in the sorted size index).
+      *
+      * @param min the minimal size (inclusive)
+      * @param max the maximal size (inclusive)
+      * @return the number of files
+      */
+    public int getFileCountInSizeRange(long min, long max) {
+        assert sizes != null : "Method DBMappedCatalog.getFileCountInSizeRange() - The catalog has no size index!";
+        return valueCount(sizes, min, max);
+    }
+
+    /**
+      * Gets IDs of the largest (or the smallest) files, ordered by the size (files of the same size are ordered by the ID).
+      * Only the required number of entries is read from the end (or the beginning) of the sorted size index.
+      *
+      * @param count the maximal number of files
+      * @param largest true for the largest files (in descending order of size), false for the smallest files (in ascending order)
+      * @return a list of at most count file IDs
+      */
+    public List<Integer> getFileIDsBySize(int count, boolean largest) {
+        assert sizes != null : "Method DBMappedCatalog.getFileIDsBySize() - The catalog has no size index!";
+        int entries = sizes.getInt(0);
+        List<Integer> fileIDs = new ArrayList<>(Math.min(count, entries));
+        if (!largest) {
+            for (int i = 0; i < entries && fileIDs.size() < count; i++) {
+                fileIDs.add(sizes.getInt(4 + i * DBCatalog.VALUE_ENTRY_SIZE + 8));
+            }
+            return fileIDs;
+        }
+        int end = entries;  // the entries of one size are read in the ascending order of the IDs
+        while (end > 0 && fileIDs.size() < count) {
+            long size = sizes.getLong(4 + (end - 1) * DBCatalog.VALUE_ENTRY_SIZE);
+            int start = end - 1;
+            while (start > 0 && sizes.getLong(4 + (start - 1) * DBCatalog.VALUE_ENTRY_SIZE) == size) {
+                start--;
+            }
+            for (int i = start; i < end && fileIDs.size() < count; i++) {
+                fileIDs.add(sizes.getInt(4 + i * DBCatalog.VALUE_ENTRY_SIZE + 8));
+            }
+            end = start;
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets the totals (number of files and total size) of all directories (stored in the catalog, no file record is read).
+      *
+      * @return the (new) list of the directory totals, ordered by the directory
+      */
+    public List<DBData.DirectoryTotal> getDirectoryTotals() {
+        assert directoryTotals != null : "Method DBMappedCatalog.getDirectoryTotals() - The catalog has no directory totals!";
+        int count = directoryTotals.getInt(0);
+        List<DBData.DirectoryTotal> totals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int r = 4 + i * DBCatalog.DIRECTORY_TOTAL_SIZE;
+            totals.add(new DBData.DirectoryTotal(string(directoryTotals.getInt(r)), directoryTotals.getInt(r + 4),
+                                                 directoryTotals.getLong(r + 8)));
+        }
+        return totals;
+    }
+
+    /**
+      * Gets IDs of all files with the timestamp in the specified range, ordered by the timestamp
+      * (only the entries of the sorted timestamp index covering the range are read).
+      *
+      * @param range the range of the timestamps
+      * @return a list of file IDs with the timestamp in the range
+      */
+    public List<Integer> getFileIDsInDateRange(DateRange range) {
+        assert timestamps != null : "Method DBMappedCatalog.getFileIDsInDateRange() - The catalog has no timestamp index!";
+        return valueRange(timestamps, range.from(), range.to());
+    }
+
+    /**
+      * Gets the number of files with the timestamp in the specified range (by two binary searches in the sorted timestamp index).
+      *
+      * @param range the range of the timestamps
+      * @return the number of files
+      */
+    public int getFileCountInDateRange(DateRange range) {
+        assert timestamps != null : "Method DBMappedCatalog.getFileCountInDateRange() - The catalog has no timestamp index!";
+        return valueCount(timestamps, range.from(), range.to());
+    }
+
+    /**
+      * Gets statistics about the catalog.
+      *
+      * @return a map containing statistics about the catalog
+      */
+    public Map<String, Integer> getDBStatistics() {
+        Map<String, Integer> dbStatistics = new HashMap<>();
+        dbStatistics.put("FILES", records.getInt(0));
+        dbStatistics.put("DIRS", locations.getInt(0));
+        dbStatistics.put("KEYS", keywords.getInt(0));
+        dbStatistics.put("DUPS", duplicatesCount);
+        dbStatistics.put("DUP?S", potentialDuplicatesCount);
+        return dbStatistics;
+    }
+
+    /**
+      * Decodes the string with the specified code from the string dictionary.
+      *
+      * @param code the string code
+      * @return the string
+      */
+    private String string(int code) {
+        int blobStart = 4 + (strings.getInt(0) + 1) * 4;
+        int start = strings.getInt(4 + code * 4);
+        byte[] bytes = new byte[strings.getInt(8 + code * 4) - start];
+        strings.get(blobStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+      * Finds the file record with the specified file ID (binary search, records are sorted by ID).
+      *
+      * @param fileID the file ID
+      * @return the index of the record, or -1 if not found
+      */
+    private int findRecord(int fileID) {
+        int low = 0;
+        int high = records.getInt(0) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleID = records.getInt(4 + middle * DBCatalog.FILE_RECORD_SIZE);
+            if (middleID < fileID) {
+                low = middle + 1;
+            } else if (middleID > fileID) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+      * Finds the entry with the specified key in the sorted index section (binary search).
+      *
+      * @param index the index section
+      * @param key the key to find
+      * @return the index of the entry, or -1 if not found
+      */
+    private int findKey(ByteBuffer index, String key) {
+        int low = 0;
+        int high = index.getInt(0) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = string(index.getInt(4 + middle * DBCatalog.INDEX_ENTRY_SIZE)).compareTo(key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+      * Gets the posting list (the set of file IDs) for the specified key from the sorted index section.
+      *
+      * @param index the index section
+      * @param key the key
+      * @return the set of file IDs, or null if the key does not exist
+      */
+    private IntBitmap postingList(ByteBuffer index, String key) {
+        int entry = findKey(index, key);
+        if (entry < 0) {
+            return null;
+        }
+        return DBCatalog.decodeIDList(lists, index.getInt(4 + entry * DBCatalog.INDEX_ENTRY_SIZE + 4));
+    }
+
+    /**
+      * Gets the entries of the location index of the specified directory and all its subdirectories.
+      *
+      * @param location the directory
+      * @return the list of entry indexes
+      */
+    private List<Integer> treeEntries(String location) {
+        String prefix = FileSystem.subfolderPrefix(location);
+        List<Integer> entries = new ArrayList<>();
+        for (int i = 0; i < locations.getInt(0); i++) {
+            String directory = string(locations.getInt(4 + i * DBCatalog.INDEX_ENTRY_SIZE));
+            if (directory.equals(location) || directory.startsWith(prefix)) {
+                entries.add(i);
+            }
+        }
+        return entries;
+    }
+
+    /**
+      * Finds the first entry of the metadata value index section with the (tag, value) pair greater than or equal
+      * to the specified pair (binary search, the entries are sorted by the tag, the value and the directory).
+      *
+      * @param tag the name of the metadata tag
+      * @param value the description of the tag's value
+      * @return the index of the entry (the number of entries if there is no such entry)
+      */
+    private int metadataLowerBound(String tag, String value) {
+        int low = 0;
+        int high = metadataValues.getInt(0);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int e = 4 + middle * DBCatalog.METADATA_ENTRY_SIZE;
+            int comparison = string(metadataValues.getInt(e)).compareTo(tag);
+            if (comparison == 0) {
+                comparison = string(metadataValues.getInt(e + 4)).compareTo(value);
+            }
+            if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+      * Checks whether the tag was not indexed in some directory (the list of these tags follows the entries
+      * of the metadata value index section).
+      *
+      * @param tag the name of the metadata tag
+      * @return true if the tag was not indexed in some directory, false otherwise
+      */
+    private boolean isSkippedTag(String tag) {
+        int start = 4 + metadataValues.getInt(0) * DBCatalog.METADATA_ENTRY_SIZE;
+        for (int i = 0; i < metadataValues.getInt(start); i++) {
+            if (string(metadataValues.getInt(start + 4 + i * 4)).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+      * Gets the mapped sorted column of the numeric tag.
+      *
+      * @param column the numeric tag
+      * @return the sorted value index of the column
+      */
+    private ByteBuffer metadataColumn(DBMetadataIndex.Column column) {
+        assert metadataColumns != null : "Method DBMappedCatalog.metadataColumn() - The catalog has no metadata columns!";
+        return metadataColumns[column.ordinal()];
+    }
+
+    /**
+      * Finds the first entry of the sorted value index section with the value greater than or equal
+      * to the specified value (binary search).
+      *
+      * @param index the sorted value index section
+      * @param value the value
+      * @return the index of the entry (the number of entries if there is no such entry)
+      */
+    private static int lowerBound(ByteBuffer index, long value) {
+        int low = 0;
+        int high = index.getInt(0);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.getLong(4 + middle * DBCatalog.VALUE_ENTRY_SIZE) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+      * Gets the file IDs of the entries of the sorted value index section with the value in the specified range.
+      *
+      * @param index the sorted value index section
+      * @param min the minimal value (inclusive)
+      * @param max the maximal value (inclusive)
+      * @return the list of file IDs, ordered by the value
+      */
+    private static List<Integer> valueRange(ByteBuffer index, long min, long max) {
+        List<Integer> fileIDs = new ArrayList<>();
+        if (min <= max) {
+            int count = index.getInt(0);
+            for (int i = lowerBound(index, min); i < count && index.getLong(4 + i * DBCatalog.VALUE_ENTRY_SIZE) <= max; i++) {
+                fileIDs.add(index.getInt(4 + i * DBCatalog.VALUE_ENTRY_SIZE + 8));
+            }
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets the number of the entries of the sorted value index section with the value in the specified range.
+      *
+      * @param index the sorted value index section
+      * @param min the minimal value (inclusive)
+      * @param max the maximal value (inclusive)
+      * @return the number of entries
+      */
+    private static int valueCount(ByteBuffer index, long min, long max) {
+        if (min > max) {
+            return 0;
+        }
+        int end = max < Long.MAX_VALUE ? lowerBound(index, max + 1) : index.getInt(0);
+        return end - lowerBound(index, min);
+    }
+
+    /**
+      * Gets all keys of the sorted index section (in the index order).
+      *
+      * @param index the index section
+      * @return the list of keys
+      */
+    private List<String> indexKeys(ByteBuffer index) {
+        int count = index.getInt(0);
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(string(index.getInt(4 + i * DBCatalog.INDEX_ENTRY_SIZE)));
+        }
+        return keys;
+    }
+
+    /**
+      * Maps the section of the specified type into memory.
+      *
+      * @param channel the catalog file channel
+      * @param sections the section directory
+      * @param type the section type
+      * @return the mapped section
+      * @throws IOException if the section does not exist or cannot be mapped
+      */
+    private static ByteBuffer mapSection(FileChannel channel, long[][] sections, int type) throws IOException {
+        long[] section = sections[type];
+        if (section == null) {
+            throw new StreamCorruptedException("Missing catalog section: " + type);
+        }
+        if (section[1] > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Catalog section is too large: " + type);
+        }
+        return map(channel, section[0], section[1]);
+    }
+
+    /**
+      * Maps the specified part of the file into memory (read-only).
+      *
+      * @param channel the file channel
+      * @param position the starting position in the file
+      * @param length the number of bytes to map
+      * @return the mapped buffer
+      * @throws IOException if the part cannot be mapped
+      */
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (position + length > channel.size()) {
+            throw new StreamCorruptedException("Unexpected end of the catalog file.");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+}
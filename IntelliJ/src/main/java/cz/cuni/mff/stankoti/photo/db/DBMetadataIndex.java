@@ -0,0 +1,427 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+import cz.cuni.mff.stankoti.photo.util.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+  * This class contains the inverted index of the metadata values.
+  * <p>
+  * Every indexed metadata tag of a file - the triple (directory, tag, value) - is mapped to the set of files containing it,
+  * so e.g. all files with the tag <code>Exif IFD0 / Model = Canon EOS R5</code> are found without reading the metadata
+  * of all files. The values are compared exactly (as displayed by the DETAILS command); the directories and the tags
+  * are kept as codes of the global string dictionary (see {@link StringDictionary}).
+  * </p>
+  * <p>
+  * The numeric tags of the photos (see {@link Column}) are also parsed into typed columns sorted by the value,
+  * so they can be searched by a range (e.g. ISO 800 and more).
+  * </p>
+  * <p>
+  * The tags whose values are unique for every file are not indexed (see {@link #isIndexed(String, String, String)}):
+  * the tags of the {@value #FILE_DIRECTORY} directory (file name, size and date), the offsets and lengths
+  * of the embedded data (e.g. the thumbnail) and the binary values. Their triples would only add a single-file entry
+  * per file; the files with such a tag are found by checking the metadata of the files.
+  * </p>
+  */
+public class DBMetadataIndex {
+    /**
+      * Metadata directory of the numeric tags of the photos.
+      */
+    public static final String EXIF_DIRECTORY = "Exif SubIFD";
+    /**
+      * Metadata directory of the file system attributes of the file (not indexed).
+      */
+    public static final String FILE_DIRECTORY = "File";
+    /**
+      * Pattern of the names of the tags with the offsets and lengths of the embedded data, e.g. "Thumbnail Offset"
+      * or "Strip Byte Counts" (not indexed).
+      */
+    private static final Pattern OFFSET_TAG = Pattern.compile(".*\\b(Offsets?|Byte Counts?)|.*\\b(Thumbnail|Preview Image) (Length|Start)");
+    /**
+      * Pattern of the descriptions of the binary values, e.g. "[24 values]" or "(3102 bytes binary data)" (not indexed).
+      */
+    private static final Pattern BINARY_VALUE = Pattern.compile("\\[\\d+ (values|bytes)\\]|\\(\\d+ bytes binary data\\)");
+
+    /**
+      * Numeric metadata tags of the photos, parsed into typed columns.
+      */
+    public enum Column {
+        /**
+          * ISO speed (e.g. 400).
+          */
+        ISO("ISO Speed Ratings", "ISO"),
+        /**
+          * Focal length in millimeters (e.g. 50 mm).
+          */
+        FOCAL_LENGTH("Focal Length", "FOCAL"),
+        /**
+          * Exposure time in seconds (e.g. 1/200 sec).
+          */
+        EXPOSURE_TIME("Exposure Time", "EXPOSURE"),
+        /**
+          * Aperture - the f-number (e.g. f/2.8).
+          */
+        F_NUMBER("F-Number", "APERTURE");
+
+        /**
+          * Pattern of a numeric value: a number, or a fraction of two numbers.
+          */
+        private static final Pattern NUMBER = Pattern.compile("(\\d+(?:\\.\\d+)?)(?:\\s*/\\s*(\\d+(?:\\.\\d+)?))?");
+
+        /**
+          * Name of the metadata tag (in the {@value DBMetadataIndex#EXIF_DIRECTORY} directory).
+          */
+        private final String tag;
+        /**
+          * Name of the column used in the queries.
+          */
+        private final String name;
+
+        /**
+          * Creates the column.
+          *
+          * @param tag the name of the metadata tag
+          * @param name the name of the column used in the queries
+          */
+        Column(String tag, String name) {
+            this.tag = tag;
+            this.name = name;
+        }
+
+        /**
+          * Gets the name of the metadata tag.
+          *
+          * @return the name of the metadata tag
+          */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+          * Gets the name of the column used in the queries.
+          *
+          * @return the name of the column
+          */
+        public String getName() {
+            return name;
+        }
+
+        /**
+          * Gets the column by its name used in the queries (case-insensitive).
+          *
+          * @param name the name of the column
+          * @return the column, or null if there is no such column
+          */
+        public static Column byName(String name) {
+            for (Column column : values()) {
+                if (column.name.equalsIgnoreCase(name)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+
+        /**
+          * Gets the column of the metadata tag.
+          *
+          * @param metadataInfo the metadata tag
+          * @return the column, or null if the tag is not numeric
+          */
+        static Column of(MetadataInfo metadataInfo) {
+            if (!metadataInfo.getDirectory().equals(EXIF_DIRECTORY)) {
+                return null;
+            }
+            for (Column column : values()) {
+                if (column.tag.equals(metadataInfo.getTag())) {
+                    return column;
+                }
+            }
+            return null;
+        }
+
+        /**
+          * Parses the value of a numeric tag from its description (e.g. 400, 50 mm, 1/200 sec, f/2.8).
+          *
+          * @param description the description of the value
+          * @return the value, or NaN if the description does not contain a number
+          */
+        public static double parse(String description) {
+            String text = description.trim().replace(',', '.');
+            if (text.regionMatches(true, 0, "f/", 0, 2)) {
+                text = text.substring(2);
+            }
+            Matcher matcher = NUMBER.matcher(text);
+            if (!matcher.lookingAt()) {
+                return Double.NaN;
+            }
+            double value = Double.parseDouble(matcher.group(1));
+            if (matcher.group(2) != null) {
+                double divisor = Double.parseDouble(matcher.group(2));
+                value = divisor != 0 ? value / divisor : Double.NaN;
+            }
+            return value;
+        }
+    }
+
+    /**
+      * Key of the value index.
+      *
+      * @param directory the string dictionary code of the metadata directory
+      * @param tag the string dictionary code of the metadata tag
+      * @param value the description of the tag's value
+      */
+    private record ValueKey(int directory, int tag, String value) {}
+
+    /**
+      * Value index - mapping the (directory, tag, value) triple to the set of files containing that tag.
+      */
+    private final Map<ValueKey, IntBitmap> values;
+    /**
+      * Mapping the tag code to the set of codes of the directories containing the tag
+      * (used when a tag is searched in all directories; the directories are not removed).
+      */
+    private final Map<Integer, IntBitmap> tagDirectories;
+    /**
+      * Codes of the tags which were not indexed in some directory (see {@link #isIndexed(String, String, String)};
+      * the codes are not removed).
+      */
+    private final IntBitmap skippedTags;
+    /**
+      * Typed columns of the numeric tags - mapping the value to the set of files with that value, sorted by the value.
+      */
+    private final Map<Column, NavigableMap<Double, IntBitmap>> columns;
+
+    /**
+      * Creates a new empty index.
+      */
+    public DBMetadataIndex() {
+        values = new HashMap<>();
+        tagDirectories = new HashMap<>();
+        skippedTags = new IntBitmap();
+        columns = new EnumMap<>(Column.class);
+        for (Column column : Column.values()) {
+            columns.put(column, new TreeMap<>());
+        }
+    }
+
+    /**
+      * Checks whether the metadata tag is indexed. The tags of the {@value #FILE_DIRECTORY} directory,
+      * the offsets and lengths of the embedded data and the binary values are not indexed.
+      *
+      * @param directory the metadata directory
+      * @param tag the name of the metadata tag
+      * @param value the description of the tag's value
+      * @return true if the tag is indexed, false otherwise
+      */
+    public static boolean isIndexed(String directory, String tag, String value) {
+        return !directory.equals(FILE_DIRECTORY) && !OFFSET_TAG.matcher(tag).matches() && !BINARY_VALUE.matcher(value).matches();
+    }
+
+    /**
+      * Adds the metadata tag of the file to the index (the tags which are not indexed are skipped).
+      *
+      * @param metadataInfo the metadata tag
+      * @param fileID the ID of the file object
+      */
+    public void add(MetadataInfo metadataInfo, int fileID) {
+        if (!isIndexed(metadataInfo.getDirectory(), metadataInfo.getTag(), metadataInfo.getDescription())) {
+            skippedTags.add(metadataInfo.getTagCode());
+            return;
+        }
+        ValueKey key = new ValueKey(metadataInfo.getDirectoryCode(), metadataInfo.getTagCode(), metadataInfo.getDescription());
+        values.computeIfAbsent(key, k -> new IntBitmap()).add(fileID);
+        tagDirectories.computeIfAbsent(key.tag(), k -> new IntBitmap()).add(key.directory());
+
+        Column column = Column.of(metadataInfo);
+        if (column != null) {
+            double value = Column.parse(metadataInfo.getDescription());
+            if (!Double.isNaN(value)) {
+                columns.get(column).computeIfAbsent(value, k -> new IntBitmap()).add(fileID);
+            }
+        }
+    }
+
+    /**
+      * Removes the metadata tag of the file from the index.
+      *
+      * @param metadataInfo the metadata tag
+      * @param fileID the ID of the file object
+      */
+    public void remove(MetadataInfo metadataInfo, int fileID) {
+        if (!isIndexed(metadataInfo.getDirectory(), metadataInfo.getTag(), metadataInfo.getDescription())) {
+            return;
+        }
+        ValueKey key = new ValueKey(metadataInfo.getDirectoryCode(), metadataInfo.getTagCode(), metadataInfo.getDescription());
+        remove(values, key, fileID);
+
+        Column column = Column.of(metadataInfo);
+        if (column != null) {
+            double value = Column.parse(metadataInfo.getDescription());
+            if (!Double.isNaN(value)) {
+                remove(columns.get(column), value, fileID);
+            }
+        }
+    }
+
+    /**
+      * Removes the file ID from the set of the key (the empty set is removed).
+      *
+      * @param <K> the type of the keys
+      * @param index the index
+      * @param key the key
+      * @param fileID the ID of the file object
+      */
+    private static <K> void remove(Map<K, IntBitmap> index, K key, int fileID) {
+        IntBitmap fileIDs = index.get(key);
+        if (fileIDs != null) {
+            fileIDs.remove(fileID);
+            if (fileIDs.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+      * Gets the IDs of the files containing the metadata tag with the specified value.
+      *
+      * @param directory the metadata directory (null = the tag in any directory)
+      * @param tag the name of the metadata tag
+      * @param value the description of the tag's value
+      * @return a (new) set of file IDs, or null if the tag is not indexed (in the directory, or in some directory)
+      */
+    public IntBitmap get(String directory, String tag, String value) {
+        int tagCode = StringDictionary.find(tag);
+        if (directory != null ? !isIndexed(directory, tag, value) : skippedTags.contains(tagCode)) {
+            return null;
+        }
+        IntBitmap fileIDs = new IntBitmap();
+        IntBitmap directoryCodes = tagDirectories.get(tagCode);
+        if (tagCode == StringDictionary.NOT_FOUND || directoryCodes == null) {
+            return fileIDs;
+        }
+        if (directory != null) {
+            int directoryCode = StringDictionary.find(directory);
+            directoryCodes = directoryCodes.contains(directoryCode) ? IntBitmap.of(directoryCode) : new IntBitmap();
+        }
+        for (int directoryCode : directoryCodes.toIntArray()) {
+            IntBitmap valueFileIDs = values.get(new ValueKey(directoryCode, tagCode, value));
+            if (valueFileIDs != null) {
+                fileIDs = IntBitmap.or(fileIDs, valueFileIDs);
+            }
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets the IDs of the files with the value of the numeric tag in the specified range.
+      * Only the part of the column covering the range is visited.
+      *
+      * @param column the numeric tag
+      * @param min the minimal value
+      * @param minInclusive true if the minimal value is included in the range
+      * @param max the maximal value
+      * @param maxInclusive true if the maximal value is included in the range
+      * @return a (new) set of file IDs
+      */
+    public IntBitmap range(Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+        IntBitmap fileIDs = new IntBitmap();
+        for (IntBitmap valueFileIDs : rangeValues(column, min, minInclusive, max, maxInclusive)) {
+            fileIDs = IntBitmap.or(fileIDs, valueFileIDs);
+        }
+        return fileIDs;
+    }
+
+    /**
+      * Gets the number of files with the value of the numeric tag in the specified range
+      * (without building the set of their IDs).
+      *
+      * @param column the numeric tag
+      * @param min the minimal value
+      * @param minInclusive true if the minimal value is included in the range
+      * @param max the maximal value
+      * @param maxInclusive true if the maximal value is included in the range
+      * @return the number of files
+      */
+    public long rangeCount(Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+        long count = 0;
+        for (IntBitmap valueFileIDs : rangeValues(column, min, minInclusive, max, maxInclusive)) {
+            count += valueFileIDs.size();
+        }
+        return count;
+    }
+
+    /**
+      * Gets the sets of file IDs of the values of the numeric tag in the specified range.
+      *
+      * @param column the numeric tag
+      * @param min the minimal value
+      * @param minInclusive true if the minimal value is included in the range
+      * @param max the maximal value
+      * @param maxInclusive true if the maximal value is included in the range
+      * @return the sets of file IDs (must not be changed)
+      */
+    private Collection<IntBitmap> rangeValues(Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+        if (min < max || (min == max && minInclusive && maxInclusive)) {
+            return columns.get(column).subMap(min, minInclusive, max, maxInclusive).values();
+        }
+        return List.of();
+    }
+
+    /**
+      * Gets all indexed metadata tags with the sets of files containing them (used when the index is written to the catalog).
+      *
+      * @return a (new) map of the metadata tags to the sets of file IDs (the sets must not be changed)
+      */
+    Map<MetadataInfo, IntBitmap> getValues() {
+        Map<MetadataInfo, IntBitmap> tags = new HashMap<>();
+        for (Map.Entry<ValueKey, IntBitmap> entry : values.entrySet()) {
+            ValueKey key = entry.getKey();
+            tags.put(new MetadataInfo(StringDictionary.string(key.directory()), StringDictionary.string(key.tag()), key.value()),
+                     entry.getValue());
+        }
+        return tags;
+    }
+
+    /**
+      * Gets the names of the tags which were not indexed in some directory (used when the index is written to the catalog).
+      *
+      * @return a (new) list of the names of the tags
+      */
+    List<String> getSkippedTags() {
+        List<String> tags = new ArrayList<>(skippedTags.size());
+        for (int tagCode : skippedTags.toIntArray()) {
+            tags.add(StringDictionary.string(tagCode));
+        }
+        return tags;
+    }
+
+    /**
+      * Gets the typed column of the numeric tag (used when the index is written to the catalog).
+      *
+      * @param column the numeric tag
+      * @return the column - mapping the value to the set of files with that value (must not be changed)
+      */
+    NavigableMap<Double, IntBitmap> getColumn(Column column) {
+        return columns.get(column);
+    }
+
+    /**
+      * Gets the number of distinct (directory, tag, value) triples in the index.
+      *
+      * @return the number of distinct metadata values
+      */
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,316 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+  * This class contains a compressed trie (radix tree) of the directory paths.
+  * <p>
+  * Every edge of the trie holds a part of a path (the common prefixes of the paths are stored only once,
+  * chains of nodes with a single child are merged into one edge). Every node keeps the set of IDs of all files
+  * under it (the files of all paths with the node's prefix) and the number of these paths, so the files of a whole
+  * directory subtree are found by one walk down the trie. The children are sorted by their first character,
+  * so the paths are listed in the sorted order without sorting.
+  * </p>
+  * <p>
+  * The paths themselves are not stored, only the labels of the edges: a path is rebuilt from the labels
+  * on the way from the root when the paths are listed.
+  * </p>
+  */
+public class DBPathTrie {
+    /**
+      * One node of the trie.
+      */
+    private static class Node {
+        /**
+          * Part of the path on the edge from the parent node (empty for the root).
+          */
+        private String label;
+        /**
+          * Child nodes, by the first character of their label (null if there are none).
+          */
+        private TreeMap<Character, Node> children;
+        /**
+          * Number of files of the path ending at this node (0 = no path ends here).
+          */
+        private int files;
+        /**
+          * Number of paths (with at least one file) ending at this node or under it.
+          */
+        private int paths;
+        /**
+          * Set of IDs of all files of the paths ending at this node or under it.
+          */
+        private IntBitmap subtree;
+
+        /**
+          * Creates an empty node.
+          *
+          * @param label the part of the path on the edge from the parent node
+          */
+        Node(String label) {
+            this.label = label;
+            this.subtree = new IntBitmap();
+        }
+
+        /**
+          * Gets the child node starting with the specified character.
+          *
+          * @param c the first character of the child's label
+          * @return the child node, or null if there is none
+          */
+        Node child(char c) {
+            return children != null ? children.get(c) : null;
+        }
+
+        /**
+          * Sets the child node (by the first character of its label).
+          *
+          * @param child the child node
+          */
+        void setChild(Node child) {
+            if (children == null) {
+                children = new TreeMap<>();
+            }
+            children.put(child.label.charAt(0), child);
+        }
+    }
+
+    /**
+      * Root node of the trie (the empty prefix).
+      */
+    private final Node root;
+
+    /**
+      * Creates a new empty trie.
+      */
+    public DBPathTrie() {
+        root = new Node("");
+    }
+
+    /**
+      * Adds a file ID to the specified path.
+      *
+      * @param path the path
+      * @param fileID the ID of the file object
+      */
+    public void add(String path, int fileID) {
+        List<Node> nodes = new ArrayList<>();
+        Node node = root;
+        int position = 0;
+        nodes.add(node);
+        while (position < path.length()) {
+            Node child = node.child(path.charAt(position));
+            if (child == null) {
+                child = new Node(path.substring(position));
+                node.setChild(child);
+            } else {
+                int common = commonPrefixLength(child.label, path, position);
+                if (common < child.label.length()) {
+                    child = split(node, child, common);
+                }
+            }
+            position += child.label.length();
+            node = child;
+            nodes.add(node);
+        }
+
+        boolean newPath = node.files == 0;
+        node.files++;
+        for (Node pathNode : nodes) {
+            pathNode.subtree.add(fileID);
+            if (newPath) {
+                pathNode.paths++;
+            }
+        }
+    }
+
+    /**
+      * Removes a file ID from the specified path (the nodes without files are removed).
+      *
+      * @param path the path
+      * @param fileID the ID of the file object
+      */
+    public void remove(String path, int fileID) {
+        List<Node> nodes = new ArrayList<>();
+        Node node = root;
+        int position = 0;
+        nodes.add(node);
+        while (position < path.length()) {
+            node = node.child(path.charAt(position));
+            if (node == null || !path.startsWith(node.label, position)) {
+                return;
+            }
+            position += node.label.length();
+            nodes.add(node);
+        }
+        if (node.files == 0 || !node.subtree.contains(fileID)) {
+            return;
+        }
+
+        boolean removedPath = --node.files == 0;
+        for (Node pathNode : nodes) {
+            pathNode.subtree.remove(fileID);
+            if (removedPath) {
+                pathNode.paths--;
+            }
+        }
+
+        // remove the empty nodes and merge the nodes left with a single child
+        for (int i = nodes.size() - 1; i > 0; i--) {
+            Node pathNode = nodes.get(i);
+            Node parent = nodes.get(i - 1);
+            if (pathNode.subtree.isEmpty()) {
+                parent.children.remove(pathNode.label.charAt(0));
+                if (parent.children.isEmpty()) {
+                    parent.children = null;
+                }
+            } else if (pathNode.files == 0 && pathNode.children != null && pathNode.children.size() == 1) {
+                Node child = pathNode.children.firstEntry().getValue();
+                child.label = pathNode.label + child.label;
+                parent.setChild(child);
+            }
+        }
+    }
+
+    /**
+      * Gets the IDs of all files of the paths starting with the specified prefix.
+      *
+      * @param prefix the prefix of the paths
+      * @return the set of file IDs (must not be changed), or null if no path starts with the prefix
+      */
+    public IntBitmap getFileIDs(String prefix) {
+        Match match = find(prefix);
+        return match != null ? match.node().subtree : null;
+    }
+
+    /**
+      * Gets the number of the paths starting with the specified prefix.
+      *
+      * @param prefix the prefix of the paths
+      * @return the number of paths
+      */
+    public int getPathCount(String prefix) {
+        Match match = find(prefix);
+        return match != null ? match.node().paths : 0;
+    }
+
+    /**
+      * Gets a sorted list of the paths starting with the specified prefix.
+      *
+      * @param prefix the prefix of the paths (empty = all paths)
+      * @return a sorted list of paths
+      */
+    public List<String> getPaths(String prefix) {
+        Match match = find(prefix);
+        List<String> paths = new ArrayList<>(match != null ? match.node().paths : 0);
+        if (match != null) {
+            collectPaths(match.node(), new StringBuilder(match.path()), paths);
+        }
+        return paths;
+    }
+
+    /**
+      * Gets the number of all paths in the trie.
+      *
+      * @return the number of paths
+      */
+    public int size() {
+        return root.paths;
+    }
+
+    /**
+      * Node found by a prefix of the paths.
+      *
+      * @param node the node
+      * @param path the path ending at the node (it starts with the prefix)
+      */
+    private record Match(Node node, String path) {}
+
+    /**
+      * Finds the highest node whose paths start with the specified prefix
+      * (the prefix may end inside the label of the node).
+      *
+      * @param prefix the prefix of the paths
+      * @return the node and its path, or null if no path starts with the prefix
+      */
+    private Match find(String prefix) {
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            node = node.child(prefix.charAt(position));
+            if (node == null) {
+                return null;
+            }
+            int common = commonPrefixLength(node.label, prefix, position);
+            if (position + common == prefix.length()) {
+                return new Match(node, prefix.substring(0, position) + node.label);
+            }
+            if (common < node.label.length()) {
+                return null;
+            }
+            position += common;
+        }
+        return new Match(node, prefix);
+    }
+
+    /**
+      * Adds the paths of the node and all nodes under it to the list (in the sorted order).
+      * The paths are rebuilt from the labels of the nodes.
+      *
+      * @param node the node
+      * @param path the path ending at the node (the labels of the child nodes are appended to it, then removed)
+      * @param paths the list of paths
+      */
+    private static void collectPaths(Node node, StringBuilder path, List<String> paths) {
+        if (node.files > 0) {
+            paths.add(path.toString());
+        }
+        if (node.children != null) {
+            int length = path.length();
+            for (Node child : node.children.values()) {
+                collectPaths(child, path.append(child.label), paths);
+                path.setLength(length);
+            }
+        }
+    }
+
+    /**
+      * Splits the label of the child node: a new node with the first part of the label is inserted
+      * between the parent and the child.
+      *
+      * @param parent the parent node
+      * @param child the child node
+      * @param length the length of the first part of the label
+      * @return the new node
+      */
+    private static Node split(Node parent, Node child, int length) {
+        Node middle = new Node(child.label.substring(0, length));
+        middle.subtree = child.subtree.copy();
+        middle.paths = child.paths;
+        child.label = child.label.substring(length);
+        middle.setChild(child);
+        parent.setChild(middle);
+        return middle;
+    }
+
+    /**
+      * Gets the length of the common prefix of the label and the part of the path.
+      *
+      * @param label the label of a node
+      * @param path the path
+      * @param position the start of the part of the path
+      * @return the length of the common prefix
+      */
+    private static int commonPrefixLength(String label, String path, int position) {
+        int length = Math.min(label.length(), path.length() - position);
+        int i = 0;
+        while (i < length && label.charAt(i) == path.charAt(position + i)) {
+            i++;
+        }
+        return i;
+    }
+}
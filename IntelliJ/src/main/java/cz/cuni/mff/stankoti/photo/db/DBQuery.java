@@ -0,0 +1,1065 @@
+package cz.cuni.mff.stankoti.photo.db;
+
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+  * This class contains a query over the database indexes - a boolean combination of predicates on the keywords,
+  * directories, extensions, filenames, sizes, dates and metadata of the files.
+  * <p>
+  * Query syntax (the field names and the operators are case-insensitive):
+  * <ul>
+  *     <li><code>KEY=&lt;keyword&gt;</code>, <code>DIR=&lt;directory&gt;</code>, <code>TREE=&lt;directory&gt;</code>
+  *         (the directory and all its subdirectories), <code>EXT=&lt;extension&gt;</code>,
+  *         <code>NAME=&lt;filename without extension&gt;</code> (<code>!=</code> negates the predicate)</li>
+  *     <li><code>SIZE&lt;op&gt;&lt;size&gt;</code> (e.g. <code>SIZE&gt;=2MB</code>) and <code>DATE&lt;op&gt;&lt;date&gt;</code>
+  *         (e.g. <code>DATE&lt;1.1.2020</code>, <code>DATE=2020-01-31</code> or <code>DATE=7.2023</code> - a day, a month or a year,
+  *         see {@link DateRange#parse}), where op is =, !=, &lt;, &lt;=, &gt; or &gt;=</li>
+  *     <li><code>META=[&lt;directory&gt;:]&lt;tag&gt;=&lt;value&gt;</code> (e.g. <code>META="Exif IFD0:Model=Canon EOS R5"</code>,
+  *         the value is compared exactly, <code>!=</code> negates the predicate)</li>
+  *     <li><code>ISO</code>, <code>FOCAL</code>, <code>EXPOSURE</code> and <code>APERTURE&lt;op&gt;&lt;number&gt;</code>
+  *         (e.g. <code>ISO&gt;=800</code>, <code>EXPOSURE&lt;1/200</code>, <code>APERTURE&lt;=2.8</code>),
+  *         see {@link DBMetadataIndex.Column}</li>
+  *     <li><code>NOT</code>, <code>AND</code> (may be omitted), <code>OR</code> and parentheses</li>
+  * </ul>
+  * </p>
+  * <p>
+  * The query is evaluated by a cost-based plan. The cost of a predicate is the size of its posting list
+  * (or the number of all files if the predicate has no index). The posting lists of the ranges (size, date, numeric metadata)
+  * and of the directory trees are unions of many index entries, so their costs are estimated by adding up the sizes
+  * of the entries and the union is built only when it is actually read.
+  * The predicates of a conjunction are evaluated in the order of their costs: the most selective posting list is read first
+  * and the candidates are then intersected with the other posting lists, or - if a posting list is more expensive
+  * than the number of candidates - the candidate files are checked one by one. So, all files are read only if
+  * the query contains no predicate narrowing the result by an index.
+  * </p>
+  */
+public class DBQuery {
+    /**
+      * Pattern of one predicate: field name, operator, value.
+      */
+    private static final Pattern PREDICATE = Pattern.compile("([A-Za-z]+)(<=|>=|!=|=|<|>)(.+)", Pattern.DOTALL);
+
+    /**
+      * Root node of the query.
+      */
+    private final Node root;
+
+    /**
+      * Creates a query with the specified root node.
+      *
+      * @param root the root node of the query
+      */
+    private DBQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+      * Parses the query from the command arguments.
+      * (The parentheses may be separate arguments or attached to the predicates.)
+      *
+      * @param args the arguments of the command
+      * @return the parsed query, or null if the query is not valid
+      */
+    public static DBQuery parse(String[] args) {
+        Parser parser = new Parser(tokenize(args));
+        Node root = parser.parseOr();
+        if (root == null || !parser.atEnd()) {
+            return null;
+        }
+        return new DBQuery(root);
+    }
+
+    /**
+      * Evaluates the query.
+      *
+      * @param index the indexes of the database
+      * @return the (new) set of IDs of the matching files
+      */
+    IntBitmap evaluate(Index index) {
+        return root.evaluate(new Evaluation(index)).copy();
+    }
+
+    /**
+      * Splits the arguments into tokens (the leading and the unbalanced trailing parentheses are separated).
+      *
+      * @param args the arguments of the command
+      * @return the list of tokens
+      */
+    private static List<String> tokenize(String[] args) {
+        List<String> tokens = new ArrayList<>();
+        for (String arg : args) {
+            while (arg.startsWith("(")) {
+                tokens.add("(");
+                arg = arg.substring(1);
+            }
+            int closing = 0;
+            while (arg.endsWith(")") && arg.chars().filter(c -> c == ')').count() > arg.chars().filter(c -> c == '(').count()) {
+                closing++;
+                arg = arg.substring(0, arg.length() - 1);
+            }
+            if (!arg.isEmpty()) {
+                tokens.add(arg);
+            }
+            for (int i = 0; i < closing; i++) {
+                tokens.add(")");
+            }
+        }
+        return tokens;
+    }
+
+    /**
+      * Recursive descent parser of the query (NOT binds tighter than AND, AND binds tighter than OR).
+      */
+    private static class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+            this.position = 0;
+        }
+
+        boolean atEnd() {
+            return position == tokens.size();
+        }
+
+        private boolean peek(String token) {
+            return !atEnd() && tokens.get(position).equalsIgnoreCase(token);
+        }
+
+        Node parseOr() {
+            List<Node> children = new ArrayList<>();
+            do {
+                Node child = parseAnd();
+                if (child == null) {
+                    return null;
+                }
+                children.add(child);
+            } while (peek("OR") && position++ >= 0);
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private Node parseAnd() {
+            List<Node> children = new ArrayList<>();
+            while (!atEnd() && !peek(")") && !peek("OR")) {
+                if (peek("AND")) {
+                    position++;
+                }
+                Node child = parseNot();
+                if (child == null) {
+                    return null;
+                }
+                children.add(child);
+            }
+            if (children.isEmpty()) {
+                return null;
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private Node parseNot() {
+            if (atEnd()) {
+                return null;
+            }
+            if (peek("NOT")) {
+                position++;
+                Node child = parseNot();
+                return child != null ? new Not(child) : null;
+            }
+            if (peek("(")) {
+                position++;
+                Node child = parseOr();
+                if (child == null || !peek(")")) {
+                    return null;
+                }
+                position++;
+                return child;
+            }
+            return parsePredicate(tokens.get(position++));
+        }
+
+        private Node parsePredicate(String token) {
+            Matcher matcher = PREDICATE.matcher(token);
+            if (!matcher.matches()) {
+                return null;
+            }
+            String field = matcher.group(1).toUpperCase();
+            String operator = matcher.group(2);
+            String value = matcher.group(3);
+            boolean negated = operator.equals("!=");
+            Node predicate = switch (field) {
+                case "KEY", "KEYWORD" -> operator.equals("=") || negated ? new Keyword(value.toUpperCase()) : null;
+                case "DIR", "DIRECTORY", "FOLDER" -> operator.equals("=") || negated ? new Directory(value) : null;
+                case "TREE" -> operator.equals("=") || negated ? new Tree(value) : null;
+                case "EXT", "EXTENSION" -> operator.equals("=") || negated ? new Extension(value) : null;
+                case "NAME" -> operator.equals("=") || negated ? new Filename(value) : null;
+                case "SIZE" -> sizeRange(operator, FileSystem.parseFileSize(value));
+                case "DATE" -> dateRange(operator, DateRange.parse(value));
+                case "META", "METADATA" -> operator.equals("=") || negated ? metadata(value) : null;
+                default -> metadataRange(operator, DBMetadataIndex.Column.byName(field), value);
+            };
+            return predicate != null && negated ? new Not(predicate) : predicate;
+        }
+
+        private static Node sizeRange(String operator, long size) {
+            if (size < 0) {
+                return null;
+            }
+            return switch (operator) {
+                case "=", "!=" -> new Size(size, size);
+                case "<" -> size > 0 ? new Size(0, size - 1) : new Size(1, 0);  // nothing is smaller than 0
+                case "<=" -> new Size(0, size);
+                case ">" -> new Size(size + 1, Long.MAX_VALUE);
+                default -> new Size(size, Long.MAX_VALUE);
+            };
+        }
+
+        private static Node metadata(String value) {
+            int separator = value.indexOf('=');
+            if (separator <= 0) {
+                return null;
+            }
+            String tag = value.substring(0, separator);
+            String directory = null;
+            int directorySeparator = tag.indexOf(':');
+            if (directorySeparator >= 0) {
+                directory = tag.substring(0, directorySeparator);
+                tag = tag.substring(directorySeparator + 1);
+            }
+            return tag.isEmpty() ? null : new Metadata(directory, tag, value.substring(separator + 1));
+        }
+
+        private static Node metadataRange(String operator, DBMetadataIndex.Column column, String text) {
+            double value = column != null ? DBMetadataIndex.Column.parse(text) : Double.NaN;
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            return switch (operator) {
+                case "=", "!=" -> new MetadataValue(column, value, true, value, true);
+                case "<" -> new MetadataValue(column, Double.NEGATIVE_INFINITY, true, value, false);
+                case "<=" -> new MetadataValue(column, Double.NEGATIVE_INFINITY, true, value, true);
+                case ">" -> new MetadataValue(column, value, false, Double.POSITIVE_INFINITY, true);
+                default -> new MetadataValue(column, value, true, Double.POSITIVE_INFINITY, true);
+            };
+        }
+
+        private static Node dateRange(String operator, DateRange period) {
+            if (period == null) {
+                return null;
+            }
+            return switch (operator) {
+                case "=", "!=" -> new Date(period);
+                case "<" -> new Date(period.before());
+                case "<=" -> new Date(DateRange.ALL.through(period));
+                case ">" -> new Date(period.after());
+                default -> new Date(period.through(DateRange.ALL));
+            };
+        }
+    }
+
+    /**
+      * Access to the indexes of the database (the database data in memory, or the mapped catalog).
+      */
+    interface Index {
+        /**
+          * Gets the number of files.
+          *
+          * @return the number of files
+          */
+        int fileCount();
+
+        /**
+          * Gets the IDs of all files.
+          *
+          * @return the set of IDs of all files
+          */
+        IntBitmap fileIDs();
+
+        /**
+          * Gets the file object.
+          *
+          * @param fileID the ID of the file
+          * @return the file object, or null if not found
+          */
+        DBFile file(int fileID);
+
+        /**
+          * Gets the IDs of the files with the keyword.
+          *
+          * @param keyword the keyword (in upper case)
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap keyword(String keyword);
+
+        /**
+          * Gets the IDs of the files in the directory.
+          *
+          * @param location the directory
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap location(String location);
+
+        /**
+          * Gets the IDs of the files in the directory and all its subdirectories.
+          *
+          * @param location the directory
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap tree(String location);
+
+        /**
+          * Gets the number of files in the directory and all its subdirectories (without building the set of their IDs).
+          *
+          * @param location the directory
+          * @return the number of files, or -1 if the index is not available
+          */
+        long treeCount(String location);
+
+        /**
+          * Gets the IDs of the files with the extension (case-insensitive).
+          *
+          * @param extension the extension
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap extension(String extension);
+
+        /**
+          * Gets the IDs of the files with the filename.
+          *
+          * @param filename the filename without extension
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap filename(String filename);
+
+        /**
+          * Gets the IDs of the files with the size in the range.
+          *
+          * @param min the minimal size (inclusive)
+          * @param max the maximal size (inclusive)
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap sizes(long min, long max);
+
+        /**
+          * Gets the number of files with the size in the range (without building the set of their IDs).
+          *
+          * @param min the minimal size (inclusive)
+          * @param max the maximal size (inclusive)
+          * @return the number of files, or -1 if the index is not available
+          */
+        long sizesCount(long min, long max);
+
+        /**
+          * Gets the IDs of the files with the timestamp in the range.
+          *
+          * @param range the range of the timestamps
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap timestamps(DateRange range);
+
+        /**
+          * Gets the number of files with the timestamp in the range (without building the set of their IDs).
+          *
+          * @param range the range of the timestamps
+          * @return the number of files, or -1 if the index is not available
+          */
+        long timestampsCount(DateRange range);
+
+        /**
+          * Gets the IDs of the files containing the metadata tag with the value.
+          *
+          * @param directory the metadata directory (null = any directory)
+          * @param tag the metadata tag
+          * @param value the value of the tag
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap metadata(String directory, String tag, String value);
+
+        /**
+          * Gets the IDs of the files with the value of the numeric metadata tag in the range.
+          *
+          * @param column the numeric metadata tag
+          * @param min the minimal value
+          * @param minInclusive true if the minimal value is included in the range
+          * @param max the maximal value
+          * @param maxInclusive true if the maximal value is included in the range
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        IntBitmap metadataRange(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive);
+
+        /**
+          * Gets the number of files with the value of the numeric metadata tag in the range
+          * (without building the set of their IDs).
+          *
+          * @param column the numeric metadata tag
+          * @param min the minimal value
+          * @param minInclusive true if the minimal value is included in the range
+          * @param max the maximal value
+          * @param maxInclusive true if the maximal value is included in the range
+          * @return the number of files, or -1 if the index is not available
+          */
+        long metadataRangeCount(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive);
+    }
+
+    /**
+      * Creates the index access to the database data in memory.
+      *
+      * @param data the database data
+      * @return the index access
+      */
+    static Index index(DBData data) {
+        return new Index() {
+            public int fileCount() {
+                return data.getFileCount();
+            }
+
+            public IntBitmap fileIDs() {
+                return data.getFileIDs();
+            }
+
+            public DBFile file(int fileID) {
+                return data.getFile(fileID);
+            }
+
+            public IntBitmap keyword(String keyword) {
+                return orEmpty(data.getKeywordIndex().get(keyword));
+            }
+
+            public IntBitmap location(String location) {
+                return orEmpty(data.getLocationIndex().get(location));
+            }
+
+            public IntBitmap tree(String location) {
+                return orEmpty(data.getFileIDsInTree(location));
+            }
+
+            public long treeCount(String location) {
+                return data.getFileCountInTree(location);
+            }
+
+            public IntBitmap extension(String extension) {
+                IntBitmap fileIDs = new IntBitmap();
+                for (String key : data.getExtensionIndex().keys()) {  // a few distinct extensions
+                    if (key.equalsIgnoreCase(extension)) {
+                        fileIDs = IntBitmap.or(fileIDs, data.getExtensionIndex().get(key));
+                    }
+                }
+                return fileIDs;
+            }
+
+            public IntBitmap filename(String filename) {
+                return orEmpty(data.getFilenameIndex().get(filename));
+            }
+
+            public IntBitmap sizes(long min, long max) {
+                IntBitmap fileIDs = new IntBitmap();
+                if (min <= max) {  // only the entries in the range are visited (sorted index)
+                    for (IntBitmap sizeFileIDs : data.getSizeIndex().subMap(min, true, max, true).values()) {
+                        fileIDs = IntBitmap.or(fileIDs, sizeFileIDs);
+                    }
+                }
+                return fileIDs;
+            }
+
+            public long sizesCount(long min, long max) {
+                long count = 0;
+                if (min <= max) {
+                    for (IntBitmap sizeFileIDs : data.getSizeIndex().subMap(min, true, max, true).values()) {
+                        count += sizeFileIDs.size();
+                    }
+                }
+                return count;
+            }
+
+            public IntBitmap timestamps(DateRange range) {
+                IntBitmap fileIDs = new IntBitmap();
+                if (range.from() <= range.to()) {  // only the entries in the range are visited (sorted index)
+                    for (IntBitmap timestampFileIDs : data.getTimestampIndex().subMap(range.from(), true, range.to(), true).values()) {
+                        fileIDs = IntBitmap.or(fileIDs, timestampFileIDs);
+                    }
+                }
+                return fileIDs;
+            }
+
+            public long timestampsCount(DateRange range) {
+                long count = 0;
+                if (range.from() <= range.to()) {
+                    for (IntBitmap timestampFileIDs : data.getTimestampIndex().subMap(range.from(), true, range.to(), true).values()) {
+                        count += timestampFileIDs.size();
+                    }
+                }
+                return count;
+            }
+
+            public IntBitmap metadata(String directory, String tag, String value) {
+                return data.getMetadataIndex().get(directory, tag, value);
+            }
+
+            public IntBitmap metadataRange(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+                return data.getMetadataIndex().range(column, min, minInclusive, max, maxInclusive);
+            }
+
+            public long metadataRangeCount(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+                return data.getMetadataIndex().rangeCount(column, min, minInclusive, max, maxInclusive);
+            }
+        };
+    }
+
+    /**
+      * Creates the index access to the mapped catalog (all indexes are read from the mapped index sections).
+      *
+      * @param catalog the mapped catalog
+      * @return the index access
+      */
+    static Index index(DBMappedCatalog catalog) {
+        return new Index() {
+            public int fileCount() {
+                return catalog.getFileCount();
+            }
+
+            public IntBitmap fileIDs() {
+                return catalog.getFileIDs();
+            }
+
+            public DBFile file(int fileID) {
+                return catalog.getFile(fileID);
+            }
+
+            public IntBitmap keyword(String keyword) {
+                return orEmpty(catalog.getFileIDsWithKeyword(keyword));
+            }
+
+            public IntBitmap location(String location) {
+                return orEmpty(catalog.getFileIDsInLocation(location));
+            }
+
+            public IntBitmap tree(String location) {
+                return orEmpty(catalog.getFileIDsInTree(location));
+            }
+
+            public long treeCount(String location) {
+                return catalog.getFileCountInTree(location);
+            }
+
+            public IntBitmap extension(String extension) {
+                IntBitmap fileIDs = new IntBitmap();
+                for (String key : catalog.getExtensions()) {  // a few distinct extensions
+                    if (key.equalsIgnoreCase(extension)) {
+                        fileIDs = IntBitmap.or(fileIDs, catalog.getFileIDsWithExtension(key));
+                    }
+                }
+                return fileIDs;
+            }
+
+            public IntBitmap filename(String filename) {
+                return orEmpty(catalog.getFileIDsWithFilename(filename));
+            }
+
+            public IntBitmap sizes(long min, long max) {
+                IntBitmap fileIDs = new IntBitmap();
+                catalog.getFileIDsInSizeRange(min, max).forEach(fileIDs::add);
+                return fileIDs;
+            }
+
+            public long sizesCount(long min, long max) {
+                return catalog.getFileCountInSizeRange(min, max);
+            }
+
+            public IntBitmap timestamps(DateRange range) {
+                IntBitmap fileIDs = new IntBitmap();
+                catalog.getFileIDsInDateRange(range).forEach(fileIDs::add);
+                return fileIDs;
+            }
+
+            public long timestampsCount(DateRange range) {
+                return catalog.getFileCountInDateRange(range);
+            }
+
+            public IntBitmap metadata(String directory, String tag, String value) {
+                return catalog.getFileIDsWithMetadata(directory, tag, value);
+            }
+
+            public IntBitmap metadataRange(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+                return catalog.getFileIDsInMetadataRange(column, min, minInclusive, max, maxInclusive);
+            }
+
+            public long metadataRangeCount(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+                return catalog.getFileCountInMetadataRange(column, min, minInclusive, max, maxInclusive);
+            }
+        };
+    }
+
+    /**
+      * Replaces a missing posting list by an empty set.
+      *
+      * @param fileIDs the posting list (or null)
+      * @return the posting list, or an empty set
+      */
+    private static IntBitmap orEmpty(IntBitmap fileIDs) {
+        return fileIDs != null ? fileIDs : new IntBitmap();
+    }
+
+    /**
+      * State of one evaluation of the query (the index and the posting lists already read).
+      */
+    private static class Evaluation {
+        private final Index index;
+        private final Map<Predicate, IntBitmap> postings;
+        private final Map<Predicate, Long> costs;
+        private final int fileCount;
+
+        Evaluation(Index index) {
+            this.index = index;
+            this.postings = new IdentityHashMap<>();
+            this.costs = new IdentityHashMap<>();
+            this.fileCount = index.fileCount();
+        }
+
+        /**
+          * Gets the posting list of a predicate (it is looked up only once).
+          */
+        IntBitmap postings(Predicate predicate) {
+            if (!postings.containsKey(predicate)) {
+                postings.put(predicate, predicate.lookup(index));
+            }
+            return postings.get(predicate);
+        }
+
+        /**
+          * Gets the cost of a predicate - the size of its posting list if it was already read, its estimate otherwise
+          * (it is estimated only once), or the number of all files if the predicate has no index.
+          */
+        long cost(Predicate predicate) {
+            long cost;
+            if (postings.containsKey(predicate)) {
+                IntBitmap fileIDs = postings.get(predicate);
+                cost = fileIDs != null ? fileIDs.size() : -1;
+            } else {
+                cost = costs.computeIfAbsent(predicate, p -> p.estimate(this));
+            }
+            return cost >= 0 ? cost : fileCount;
+        }
+
+        /**
+          * Checks the candidate files one by one.
+          */
+        IntBitmap filter(IntBitmap candidates, Node node) {
+            IntBitmap result = new IntBitmap();
+            candidates.forEachInt(fileID -> {
+                DBFile file = index.file(fileID);
+                if (file != null && node.matches(file)) {
+                    result.add(fileID);
+                }
+            });
+            return result;
+        }
+    }
+
+    /**
+      * Node of the query.
+      */
+    private abstract static class Node {
+        /**
+          * Gets the estimated cost of evaluating the node by the indexes (number of file IDs or index entries visited).
+          */
+        abstract long cost(Evaluation evaluation);
+
+        /**
+          * Gets the IDs of the matching files (the set must not be changed).
+          */
+        abstract IntBitmap evaluate(Evaluation evaluation);
+
+        /**
+          * Checks if the file matches the node.
+          */
+        abstract boolean matches(DBFile file);
+
+        /**
+          * Gets the candidate files matching the node - by intersecting the candidates with the result of the node,
+          * or by checking the candidates one by one if there are fewer candidates than the cost of the node.
+          */
+        IntBitmap restrict(IntBitmap candidates, Evaluation evaluation) {
+            if (cost(evaluation) <= candidates.size()) {
+                return IntBitmap.and(candidates, evaluate(evaluation));
+            }
+            return evaluation.filter(candidates, this);
+        }
+    }
+
+    /**
+      * Conjunction of nodes.
+      */
+    private static class And extends Node {
+        private final List<Node> children;
+
+        And(List<Node> children) {
+            this.children = children;
+        }
+
+        long cost(Evaluation evaluation) {
+            return children.stream().mapToLong(child -> child.cost(evaluation)).min().orElse(evaluation.fileCount);
+        }
+
+        IntBitmap evaluate(Evaluation evaluation) {
+            List<Node> plan = plan(evaluation);
+            return restrict(plan.get(0).evaluate(evaluation), plan.subList(1, plan.size()), evaluation);
+        }
+
+        @Override
+        IntBitmap restrict(IntBitmap candidates, Evaluation evaluation) {
+            return restrict(candidates, plan(evaluation), evaluation);
+        }
+
+        private List<Node> plan(Evaluation evaluation) {
+            List<Node> plan = new ArrayList<>(children);
+            plan.sort(Comparator.comparingLong(child -> child.cost(evaluation)));  // the most selective node first
+            return plan;
+        }
+
+        private static IntBitmap restrict(IntBitmap candidates, List<Node> nodes, Evaluation evaluation) {
+            for (Node node : nodes) {
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                candidates = node.restrict(candidates, evaluation);
+            }
+            return candidates;
+        }
+
+        boolean matches(DBFile file) {
+            return children.stream().allMatch(child -> child.matches(file));
+        }
+    }
+
+    /**
+      * Disjunction of nodes.
+      */
+    private static class Or extends Node {
+        private final List<Node> children;
+
+        Or(List<Node> children) {
+            this.children = children;
+        }
+
+        long cost(Evaluation evaluation) {
+            return children.stream().mapToLong(child -> child.cost(evaluation)).sum();
+        }
+
+        IntBitmap evaluate(Evaluation evaluation) {
+            IntBitmap result = new IntBitmap();
+            for (Node child : children) {
+                result = IntBitmap.or(result, child.evaluate(evaluation));
+            }
+            return result;
+        }
+
+        @Override
+        IntBitmap restrict(IntBitmap candidates, Evaluation evaluation) {
+            IntBitmap result = new IntBitmap();
+            for (Node child : children) {
+                result = IntBitmap.or(result, child.restrict(candidates, evaluation));
+            }
+            return result;
+        }
+
+        boolean matches(DBFile file) {
+            return children.stream().anyMatch(child -> child.matches(file));
+        }
+    }
+
+    /**
+      * Negation of a node.
+      */
+    private static class Not extends Node {
+        private final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        long cost(Evaluation evaluation) {
+            return evaluation.fileCount;  // the complement needs the set of all files
+        }
+
+        IntBitmap evaluate(Evaluation evaluation) {
+            return IntBitmap.andNot(evaluation.index.fileIDs(), child.evaluate(evaluation));
+        }
+
+        @Override
+        IntBitmap restrict(IntBitmap candidates, Evaluation evaluation) {
+            if (child.cost(evaluation) <= candidates.size()) {
+                return IntBitmap.andNot(candidates, child.evaluate(evaluation));
+            }
+            return evaluation.filter(candidates, this);
+        }
+
+        boolean matches(DBFile file) {
+            return !child.matches(file);
+        }
+    }
+
+    /**
+      * Predicate on one attribute of the file.
+      */
+    private abstract static class Predicate extends Node {
+        /**
+          * Looks up the matching files in the index.
+          *
+          * @return the set of file IDs (must not be changed), or null if the index is not available
+          */
+        abstract IntBitmap lookup(Index index);
+
+        /**
+          * Estimates the number of the matching files. By default, the posting list is looked up
+          * (it is kept in the index, so it is not built); the predicates whose posting lists are built
+          * from many index entries count the entries instead.
+          *
+          * @return the estimated number of file IDs, or -1 if the index is not available
+          */
+        long estimate(Evaluation evaluation) {
+            IntBitmap fileIDs = evaluation.postings(this);
+            return fileIDs != null ? fileIDs.size() : -1;
+        }
+
+        long cost(Evaluation evaluation) {
+            return evaluation.cost(this);
+        }
+
+        IntBitmap evaluate(Evaluation evaluation) {
+            IntBitmap fileIDs = evaluation.postings(this);
+            return fileIDs != null ? fileIDs : evaluation.filter(evaluation.index.fileIDs(), this);
+        }
+    }
+
+    /**
+      * Predicate KEY=keyword.
+      */
+    private static class Keyword extends Predicate {
+        private final String keyword;
+
+        Keyword(String keyword) {
+            this.keyword = keyword;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.keyword(keyword);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getKeywords().contains(keyword);
+        }
+    }
+
+    /**
+      * Predicate DIR=directory.
+      */
+    private static class Directory extends Predicate {
+        private final String location;
+
+        Directory(String location) {
+            this.location = location;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.location(location);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getLocation().equals(location);
+        }
+    }
+
+    /**
+      * Predicate TREE=directory (the directory and all its subdirectories).
+      */
+    private static class Tree extends Predicate {
+        private final String location;
+        private final String prefix;
+
+        Tree(String location) {
+            this.location = location;
+            this.prefix = FileSystem.subfolderPrefix(location);
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.tree(location);
+        }
+
+        @Override
+        long estimate(Evaluation evaluation) {
+            return evaluation.index.treeCount(location);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getLocation().equals(location) || file.getLocation().startsWith(prefix);
+        }
+    }
+
+    /**
+      * Predicate EXT=extension (case-insensitive).
+      */
+    private static class Extension extends Predicate {
+        private final String extension;
+
+        Extension(String extension) {
+            this.extension = extension;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.extension(extension);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getExtension().equalsIgnoreCase(extension);
+        }
+    }
+
+    /**
+      * Predicate NAME=filename (without extension).
+      */
+    private static class Filename extends Predicate {
+        private final String filename;
+
+        Filename(String filename) {
+            this.filename = filename;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.filename(filename);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getFilename().equals(filename);
+        }
+    }
+
+    /**
+      * Predicate on the file size (inclusive range).
+      */
+    private static class Size extends Predicate {
+        private final long min;
+        private final long max;
+
+        Size(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.sizes(min, max);
+        }
+
+        @Override
+        long estimate(Evaluation evaluation) {
+            return evaluation.index.sizesCount(min, max);
+        }
+
+        boolean matches(DBFile file) {
+            return file.getSize() >= min && file.getSize() <= max;
+        }
+    }
+
+    /**
+      * Predicate on the file timestamp (the range is looked up in the sorted timestamp index).
+      */
+    private static class Date extends Predicate {
+        private final DateRange range;
+
+        Date(DateRange range) {
+            this.range = range;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.timestamps(range);
+        }
+
+        @Override
+        long estimate(Evaluation evaluation) {
+            return evaluation.index.timestampsCount(range);
+        }
+
+        boolean matches(DBFile file) {
+            return range.contains(file.getTimestampSeconds());
+        }
+    }
+
+    /**
+      * Predicate META=[directory:]tag=value (the value is compared exactly).
+      */
+    private static class Metadata extends Predicate {
+        private final String directory;
+        private final String tag;
+        private final String value;
+
+        Metadata(String directory, String tag, String value) {
+            this.directory = directory;
+            this.tag = tag;
+            this.value = value;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.metadata(directory, tag, value);
+        }
+
+        boolean matches(DBFile file) {
+            for (MetadataInfo metadataInfo : file.getMetadata()) {
+                if (metadataInfo.getTag().equals(tag) && metadataInfo.getDescription().equals(value)
+                    && (directory == null || metadataInfo.getDirectory().equals(directory))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+      * Predicate on the value of a numeric metadata tag (the range is looked up in the sorted column of the metadata index).
+      */
+    private static class MetadataValue extends Predicate {
+        private final DBMetadataIndex.Column column;
+        private final double min;
+        private final boolean minInclusive;
+        private final double max;
+        private final boolean maxInclusive;
+
+        MetadataValue(DBMetadataIndex.Column column, double min, boolean minInclusive, double max, boolean maxInclusive) {
+            this.column = column;
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        IntBitmap lookup(Index index) {
+            return index.metadataRange(column, min, minInclusive, max, maxInclusive);
+        }
+
+        @Override
+        long estimate(Evaluation evaluation) {
+            return evaluation.index.metadataRangeCount(column, min, minInclusive, max, maxInclusive);
+        }
+
+        boolean matches(DBFile file) {
+            for (MetadataInfo metadataInfo : file.getMetadata()) {
+                if (DBMetadataIndex.Column.of(metadataInfo) == column) {
+                    double value = DBMetadataIndex.Column.parse(metadataInfo.getDescription());
+                    if ((minInclusive ? value >= min : value > min) && (maxInclusive ? value <= max : value < max)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
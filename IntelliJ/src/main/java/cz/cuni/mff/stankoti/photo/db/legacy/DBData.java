@@ -0,0 +1,54 @@
+package cz.cuni.mff.stankoti.photo.db.legacy;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+  * The database data as it was stored by the Java serialization (the old database file format).
+  * <p>
+  * Only the fields needed for the conversion are declared, all other (index) fields are ignored while reading,
+  * because they are rebuilt from the file objects.
+  * </p>
+  */
+class DBData implements Serializable {
+    /**
+      * Unique identifier for the serialized class version (must match the old class).
+      */
+    private static final long serialVersionUID = 1L;
+    /**
+      * Last used ID of the file object.
+      */
+    private int lastFileID;
+    /**
+      * Mapping the file object ID to the corresponding file object in the database.
+      */
+    private Map<Integer, DBFile> files;
+
+    /**
+      * Converts the old database data to the current database data (including all index structures).
+      *
+      * @return the converted database data
+      */
+    cz.cuni.mff.stankoti.photo.db.DBData toDBData() {
+        cz.cuni.mff.stankoti.photo.db.DBData data = new cz.cuni.mff.stankoti.photo.db.DBData();
+        if (files != null) {
+            for (DBFile file : files.values()) {
+                data.loadFile(file.toDBFile());
+            }
+            for (DBFile file : files.values()) {
+                IntBitmap duplicates = file.duplicateCluster();
+                if (duplicates != null) {
+                    data.joinDuplicates(duplicates);
+                }
+                IntBitmap potentialDuplicates = file.potentialDuplicateCluster();
+                if (potentialDuplicates != null) {
+                    data.joinPotentialDuplicates(potentialDuplicates);
+                }
+            }
+        }
+        data.setLastFileID(Math.max(data.getLastFileID(), lastFileID));
+        return data;
+    }
+}
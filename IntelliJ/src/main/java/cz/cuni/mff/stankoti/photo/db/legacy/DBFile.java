@@ -0,0 +1,73 @@
+package cz.cuni.mff.stankoti.photo.db.legacy;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+  * The file object as it was stored by the Java serialization (the old database file format).
+  */
+class DBFile implements Serializable {
+    /**
+      * Unique identifier for the serialized class version (must match the old class).
+      */
+    private static final long serialVersionUID = 1L;
+    private int id;
+    private String fullpath;
+    private String location;
+    private String filename;
+    private String extension;
+    private String timestamp;
+    private long size;
+    private long checksum;
+    private Set<String> keywords;
+    private Set<MetadataInfo> metadata;
+    private Set<Integer> duplicates;
+    private Set<Integer> potentialDuplicates;
+
+    /**
+      * Converts the old file object to the current file object.
+      *
+      * @return the converted file object
+      */
+    cz.cuni.mff.stankoti.photo.db.DBFile toDBFile() {
+        Set<cz.cuni.mff.stankoti.photo.util.MetadataInfo> convertedMetadata = new HashSet<>();
+        if (metadata != null) {
+            for (MetadataInfo metadataInfo : metadata) {
+                convertedMetadata.add(metadataInfo.toMetadataInfo());
+            }
+        }
+        return new cz.cuni.mff.stankoti.photo.db.DBFile(id, fullpath, location, filename, extension,
+                                                          timestamp, size, checksum,
+                                                          keywords, convertedMetadata);
+    }
+
+    /**
+      * Gets the IDs of the file and its duplicates (the cluster of duplicates).
+      *
+      * @return the set of file IDs, or null if the file has no duplicates
+      */
+    IntBitmap duplicateCluster() {
+        return cluster(duplicates);
+    }
+
+    /**
+      * Gets the IDs of the file and its potential duplicates (the cluster of potential duplicates).
+      *
+      * @return the set of file IDs, or null if the file has no potential duplicates
+      */
+    IntBitmap potentialDuplicateCluster() {
+        return cluster(potentialDuplicates);
+    }
+
+    private IntBitmap cluster(Set<Integer> fileIDs) {
+        if (fileIDs == null || fileIDs.isEmpty()) {
+            return null;
+        }
+        IntBitmap cluster = new IntBitmap(fileIDs);
+        cluster.add(id);
+        return cluster;
+    }
+}
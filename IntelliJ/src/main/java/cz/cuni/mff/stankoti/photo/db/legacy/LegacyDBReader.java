@@ -0,0 +1,80 @@
+package cz.cuni.mff.stankoti.photo.db.legacy;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.util.Map;
+
+/**
+  * A class for reading (and converting) database files in the old format, created by the Java serialization.
+  * <p>
+  * The old classes are read into their counterparts in this package, which are then converted to the current classes.
+  * </p>
+  */
+public class LegacyDBReader {
+    /**
+      * Mapping of the old (serialized) class names to the classes used for reading them.
+      */
+    private static final Map<String, Class<?>> LEGACY_CLASSES = Map.of(
+        "cz.cuni.mff.stankoti.photo.db.DBData", DBData.class,
+        "cz.cuni.mff.stankoti.photo.db.DBFile", DBFile.class,
+        "cz.cuni.mff.stankoti.photo.util.MetadataInfo", MetadataInfo.class);
+
+    /**
+      * Default constructor.
+      * (defined to prevent Javadoc warning)
+      */
+    public LegacyDBReader() {}
+
+    /**
+      * Checks whether the specified file was created by the Java serialization (the old database file format).
+      *
+      * @param filename the name of the database file
+      * @return true if the file is in the old format, false otherwise
+      * @throws IOException if the file cannot be read
+      */
+    public static boolean isLegacyFormat(String filename) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            int b1 = in.read();
+            int b2 = in.read();
+            return b1 >= 0 && b2 >= 0 && (short) ((b1 << 8) | b2) == ObjectStreamConstants.STREAM_MAGIC;
+        }
+    }
+
+    /**
+      * Reads the database file in the old format and converts it to the current database data.
+      *
+      * @param filename the name of the database file
+      * @return the converted database data
+      * @throws IOException if the file cannot be read
+      * @throws ClassNotFoundException if the file contains an unknown class
+      */
+    public static cz.cuni.mff.stankoti.photo.db.DBData read(String filename) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new LegacyObjectInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            DBData legacyData = (DBData) in.readObject();
+            return legacyData.toDBData();
+        }
+    }
+
+    /**
+      * Object input stream which maps the old class names to the classes in this package.
+      */
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> legacyClass = LEGACY_CLASSES.get(desc.getName());
+            if (legacyClass != null) {
+                return legacyClass;
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package cz.cuni.mff.stankoti.photo.db.legacy;
+
+import java.io.Serializable;
+
+/**
+  * The metadata tag as it was stored by the Java serialization (the old database file format).
+  */
+class MetadataInfo implements Serializable {
+    /**
+      * Unique identifier for the serialized class version.
+      * (The old class did not declare it, so this is the value computed by the JVM for the old class.)
+      */
+    private static final long serialVersionUID = -2802303219833040120L;
+    private String directory;
+    private String tag;
+    private String description;
+
+    /**
+      * Converts the old metadata tag to the current metadata tag.
+      *
+      * @return the converted metadata tag
+      */
+    cz.cuni.mff.stankoti.photo.util.MetadataInfo toMetadataInfo() {
+        return new cz.cuni.mff.stankoti.photo.util.MetadataInfo(directory, tag, description);
+    }
+}
@@ -0,0 +1,10 @@
+/**
+  * This package provides reading of database files in the old format (created by the Java serialization).
+  * <p>
+  * This package includes the following classes:
+  * <ul>
+  *     <li><code>{@link LegacyDBReader}</code> – A class for reading (and converting) database files in the old format.</li>
+  * </ul>
+  * The other classes of this package only mirror the old serialized classes.
+  */
+package cz.cuni.mff.stankoti.photo.db.legacy;
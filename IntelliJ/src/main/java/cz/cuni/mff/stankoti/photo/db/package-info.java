@@ -7,6 +7,17 @@
   *     <li><code>{@link DB}</code> – The top-level class of the Model. It provides methods for accessing the Photo database as a whole.</li>
   *     <li><code>{@link DBData}</code> – This class contains the internal structure of the Photo database and provides methods for manipulating data (files, folders, keywords, etc.) in the database.</li>
   *     <li><code>{@link DBFile}</code> – This class contains structures and methods for handling information related to a single file.</li>
+  *     <li><code>{@link DBFileTable}</code> – This class contains the table of file objects indexed directly by the file ID.</li>
+  *     <li><code>{@link DBCodeIndex}</code> – This class contains an index keyed by the codes of the global string dictionary.</li>
+  *     <li><code>{@link DBPathTrie}</code> – This class contains a compressed trie (radix tree) of the directory paths with the files of the whole directory subtrees.</li>
+  *     <li><code>{@link DBMetadataIndex}</code> – This class contains the inverted index of the metadata values (with typed columns of the numeric tags).</li>
+  *     <li><code>{@link DBCatalog}</code> – This class reads and writes the database data in the binary catalog (.pdb) format.</li>
+  *     <li><code>{@link DBJournal}</code> – This class contains the append-only journal of the database changes.</li>
+  *     <li><code>{@link DBMappedCatalog}</code> – This class provides read-only access to the catalog (.pdb) file mapped into memory.</li>
+  *     <li><code>{@link DBCluster}</code> – This class contains one cluster of duplicates (or potential duplicates) shared by all its member files.</li>
+  *     <li><code>{@link DBDuplicateFinder}</code> – This class finds the groups of identical files (by their size, a sample of their content and their whole content).</li>
+  *     <li><code>{@link DBQuery}</code> – This class contains a query over the database indexes (a boolean combination of predicates) and its cost-based evaluation.</li>
+  *     <li><code>{@link DBCheckpointer}</code> – This class periodically writes the database changes to the journal file in the background (checkpoints).</li>
   * </ul>
   */
 package cz.cuni.mff.stankoti.photo.db;
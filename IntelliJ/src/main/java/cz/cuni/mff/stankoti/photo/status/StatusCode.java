@@ -40,18 +40,22 @@ public enum StatusCode {
       * An error occurred while reading the database file.
       */
     DB_FILE_READ_ERROR,
-    /**
-      * Data object is not serializable.
-      */
-    DB_FILE_NOT_SERIALIZABLE,
     /**
       * An error occurred while writing to the database file.
       */
     DB_FILE_WRITE_ERROR,
+    /**
+      * The database is opened in the read-only mode.
+      */
+    DB_READ_ONLY,
     /**
       * Invalid number of arguments.
       */
     INVALID_NUMBER_OF_ARGUMENTS,
+    /**
+      * Invalid argument.
+      */
+    INVALID_ARGUMENT,
     /**
       * Path does not exist.
       */
@@ -19,9 +19,10 @@ public class StatusMessages {
         statusMessages.put(StatusCode.DB_FILE_DIR_KEYWORD_DOES_NOT_EXIST, "ERROR: The file, directory, or keyword does not exist in the database.");
         statusMessages.put(StatusCode.DB_FILE_INCOMPATIBLE_FORMAT, "ERROR: The database file is in incompatible format.");
         statusMessages.put(StatusCode.DB_FILE_READ_ERROR, "ERROR: An error occurred while reading the database file.");
-        statusMessages.put(StatusCode.DB_FILE_NOT_SERIALIZABLE, "ERROR: Data object is not serializable.\nCheck: All data classes (DBData, DBFile, etc.) must implement the Serializable interface.");
         statusMessages.put(StatusCode.DB_FILE_WRITE_ERROR, "ERROR: An error occurred while writing to the database file.");
+        statusMessages.put(StatusCode.DB_READ_ONLY, "ERROR: The database is opened in the read-only mode. The command is not available.");
         statusMessages.put(StatusCode.INVALID_NUMBER_OF_ARGUMENTS, "ERROR: Invalid number of arguments.");
+        statusMessages.put(StatusCode.INVALID_ARGUMENT, "ERROR: Invalid argument.");
         statusMessages.put(StatusCode.PATH_DOES_NOT_EXIST, "ERROR: Path does not exists.");
         statusMessages.put(StatusCode.FILE_SYSTEM_ERROR, "ERROR: Error reading file system.");
         statusMessages.put(StatusCode.FILE_SYSTEM_NOT_FILE, "WARNING: Not a file.");
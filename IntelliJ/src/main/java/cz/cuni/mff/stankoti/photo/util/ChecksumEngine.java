@@ -0,0 +1,144 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+  * This class calculates the checksums of files read through a {@link FileChannel}.
+  * <p>
+  * The file is read into a large direct buffer, which is passed to the checksum without copying
+  * ({@link Checksum#update(ByteBuffer)} - CRC32 and CRC32C process the direct memory natively).
+  * So, a big file (RAW image, video) is read with a few large system calls and never copied to the heap.
+  * The buffers are reused per thread, so one instance can be shared by a pool of worker threads.
+  * </p>
+  */
+public class ChecksumEngine {
+    /**
+      * Size of the direct read buffers.
+      */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+      * Direct read buffer of the current thread.
+      */
+    private final ThreadLocal<ByteBuffer> readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+      * Creates a new checksum engine.
+      */
+    public ChecksumEngine() {}
+
+    /**
+      * Calculates the checksum of the whole file.
+      *
+      * @param path the path of the file
+      * @param algorithm the algorithm used for the checksum
+      * @return the checksum value
+      * @throws IOException if the file cannot be read
+      */
+    public long checksum(Path path, HashAlgorithm algorithm) throws IOException {
+        Checksum checksum = algorithm.newChecksum();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            update(checksum, channel);
+        }
+        return checksum.getValue();
+    }
+
+    /**
+      * Calculates the checksum of a sample of the file: the blocks at the beginning, in the middle and at the end of the file
+      * (XXH64 hash, at most three positional reads). A file not larger than the three blocks is hashed whole.
+      * <p>
+      * Two files of the same size with a different sample are different, so most of the files are excluded
+      * from the duplicate search without reading their whole content.
+      * </p>
+      *
+      * @param path the path of the file
+      * @param sampleSize the size of one block (at most {@link #BUFFER_SIZE})
+      * @return the checksum of the sample
+      * @throws IOException if the file cannot be read
+      */
+    public long sampleChecksum(Path path, int sampleSize) throws IOException {
+        assert sampleSize > 0 && sampleSize <= BUFFER_SIZE : "Invalid sample size!";
+        Checksum checksum = new XXHash64();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= 3L * sampleSize) {
+                update(checksum, channel);
+            } else {
+                update(checksum, channel, 0L, sampleSize);
+                update(checksum, channel, (size - sampleSize) / 2, sampleSize);
+                update(checksum, channel, size - sampleSize, sampleSize);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+      * Calculates the whole SHA-256 digest (all 256 bits) of the file.
+      * Two files with the same digest are considered identical.
+      *
+      * @param path the path of the file
+      * @return the digest
+      * @throws IOException if the file cannot be read
+      */
+    public byte[] digest(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // SHA-256 is required in every Java platform
+        }
+        ByteBuffer buffer = readBuffer.get();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+      * Updates the checksum with the rest of the file (from the current position of the channel to the end).
+      *
+      * @param checksum the checksum to update
+      * @param channel the file channel
+      * @throws IOException if the file cannot be read
+      */
+    public void update(Checksum checksum, FileChannel channel) throws IOException {
+        ByteBuffer buffer = readBuffer.get();
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            checksum.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+      * Updates the checksum with the specified block of the file (the position of the channel is not changed).
+      *
+      * @param checksum the checksum to update
+      * @param channel the file channel
+      * @param position the position of the block in the file
+      * @param length the length of the block (at most {@link #BUFFER_SIZE})
+      * @throws IOException if the file cannot be read
+      */
+    private void update(Checksum checksum, FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = readBuffer.get();
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1) {
+            // reads until the block is complete or the end of the file
+        }
+        buffer.flip();
+        checksum.update(buffer);
+    }
+}
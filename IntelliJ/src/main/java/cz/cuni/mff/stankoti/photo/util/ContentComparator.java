@@ -0,0 +1,224 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+  * This class splits a group of files into classes of identical files by comparing their contents.
+  * <p>
+  * All files of the group are opened at once and read in lockstep: the next block of every file of a class
+  * is read and the class is split by the blocks ({@link ByteBuffer#mismatch} compares the direct buffers with vector instructions).
+  * A file which differs from all other files is closed immediately, a class which reaches the end of the files together
+  * contains identical files. So, every file is read at most once, no matter how many files are in the group.
+  * </p>
+  * <p>
+  * The size of the read buffers depends on the number of files (and it is never larger than the file),
+  * so the memory used by one comparison is limited. The read buffers are slices of one direct memory block
+  * reused per thread, so no direct memory is allocated for the files of the next comparisons.
+  * </p>
+  */
+public class ContentComparator {
+    /**
+      * Maximal number of files compared at once (number of files open at once).
+      */
+    public static final int MAX_FILES = 256;
+    /**
+      * Maximal size of the read buffer of one file.
+      */
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+    /**
+      * Minimal size of the read buffer of one file.
+      */
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+    /**
+      * Memory used for the read buffers of all files of one comparison.
+      */
+    private static final int MEMORY_LIMIT = 8 << 20;
+
+    /**
+      * Direct memory block of the current thread, divided into the read buffers of the files (grown when needed).
+      */
+    private final ThreadLocal<ByteBuffer> readMemory = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MEMORY_LIMIT));
+
+    /**
+      * Creates a new content comparator.
+      */
+    public ContentComparator() {}
+
+    /**
+      * Splits the files into classes of identical files.
+      * The files which cannot be opened or read are not in any class.
+      *
+      * @param paths the paths of the files (at most {@link #MAX_FILES}, null = the file cannot be read)
+      * @return the list of classes (the indexes of the files in the list of paths, in ascending order), including the classes with one file
+      */
+    public List<List<Integer>> partition(List<Path> paths) {
+        assert paths.size() <= MAX_FILES : "Too many files compared at once!";
+        int bufferSize = Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, MEMORY_LIMIT / Math.max(1, paths.size())));
+        List<List<Integer>> classes = new ArrayList<>();
+        List<Member> members = new ArrayList<>(paths.size());
+        ByteBuffer memory = readMemory(bufferSize * paths.size());
+        int offset = 0;
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                if (paths.get(i) == null) {
+                    continue;
+                }
+                try {
+                    Member member = new Member(i, FileChannel.open(paths.get(i), StandardOpenOption.READ), memory, offset, bufferSize);
+                    offset += member.buffer.capacity();
+                    members.add(member);
+                } catch (IOException e) {
+                    // the file is not in any class
+                }
+            }
+
+            Deque<List<Member>> pending = new ArrayDeque<>();
+            pending.add(members);
+            while (!pending.isEmpty()) {
+                List<Member> current = pending.removeFirst();
+                List<Member> readable = new ArrayList<>(current.size());
+                for (Member member : current) {
+                    if (member.readBlock()) {
+                        readable.add(member);
+                    }
+                }
+
+                for (List<Member> subclass : split(readable)) {
+                    if (subclass.size() == 1 || !subclass.get(0).buffer.hasRemaining()) {  // unique file or the end of the files
+                        classes.add(close(subclass));
+                    } else {
+                        pending.addFirst(subclass);  // the finished files are closed before the next class is read
+                    }
+                }
+            }
+        } finally {
+            for (Member member : members) {
+                member.close();
+            }
+        }
+
+        classes.sort(Comparator.comparing((List<Integer> list) -> list.get(0)));
+        return classes;
+    }
+
+    /**
+      * Gets the direct memory block of the current thread (a larger block replaces it if it is too small).
+      *
+      * @param size the required size of the block
+      * @return the memory block
+      */
+    private ByteBuffer readMemory(int size) {
+        ByteBuffer memory = readMemory.get();
+        if (memory.capacity() < size) {
+            memory = ByteBuffer.allocateDirect(size);
+            readMemory.set(memory);
+        }
+        return memory;
+    }
+
+    /**
+      * Splits the files by their last read blocks.
+      *
+      * @param members the files with the read blocks
+      * @return the list of subclasses (the files with identical blocks)
+      */
+    private static List<List<Member>> split(List<Member> members) {
+        List<List<Member>> subclasses = new ArrayList<>();
+        for (Member member : members) {
+            List<Member> match = null;
+            for (List<Member> subclass : subclasses) {
+                if (subclass.get(0).buffer.mismatch(member.buffer) == -1) {
+                    match = subclass;
+                    break;
+                }
+            }
+            if (match == null) {
+                match = new ArrayList<>();
+                subclasses.add(match);
+            }
+            match.add(member);
+        }
+        return subclasses;
+    }
+
+    /**
+      * Closes the files of a finished class.
+      *
+      * @param members the files of the class
+      * @return the indexes of the files
+      */
+    private static List<Integer> close(List<Member> members) {
+        List<Integer> indexes = new ArrayList<>(members.size());
+        for (Member member : members) {
+            member.close();
+            indexes.add(member.index);
+        }
+        return indexes;
+    }
+
+    /**
+      * One file of the compared group.
+      */
+    private static class Member {
+        private final int index;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        /**
+          * Creates the member, its read buffer is a slice of the memory block.
+          *
+          * @param index the index of the file in the group
+          * @param channel the open file
+          * @param memory the memory block of the read buffers
+          * @param offset the offset of the read buffer in the memory block
+          * @param bufferSize the maximal size of the read buffer
+          * @throws IOException if the size of the file cannot be read (the file is closed)
+          */
+        Member(int index, FileChannel channel, ByteBuffer memory, int offset, int bufferSize) throws IOException {
+            this.index = index;
+            this.channel = channel;
+            try {
+                this.buffer = memory.slice(offset, (int) Math.min(bufferSize, channel.size()));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+          * Reads the next block of the file into the buffer (a shorter block only at the end of the file).
+          *
+          * @return true if the block was read, false if the file cannot be read (the file is closed)
+          */
+        boolean readBlock() {
+            buffer.clear();
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // reads until the buffer is full or the end of the file
+                }
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+            buffer.flip();
+            return true;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do, the file was only read
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalQuery;
+
+/**
+  * Range of file timestamps (seconds since the epoch, both bounds inclusive).
+  * <p>
+  * The file timestamps are stored as the local date and time of the file (format <code>yyyyMMdd HHmmss</code>),
+  * they are converted to the seconds since the epoch in the system timezone (the same timezone in which they were written,
+  * see {@link FileSystem}). A range can be specified by a day, a month or a year, so e.g. <code>7.2023</code>
+  * is the whole July 2023.
+  * </p>
+  *
+  * @param from the first second of the range (inclusive)
+  * @param to the last second of the range (inclusive)
+  */
+public record DateRange(long from, long to) {
+    /**
+      * Timezone of the file timestamps (system timezone).
+      */
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    /**
+      * Formatter of the displayed file timestamps (system timezone).
+      */
+    private static final DateTimeFormatter DISPLAY_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZONE);
+    /**
+      * Accepted formats of a day.
+      */
+    private static final DateTimeFormatter[] DAY_FORMATS = { DateTimeFormatter.ofPattern("d.M.yyyy"), DateTimeFormatter.ISO_LOCAL_DATE };
+    /**
+      * Accepted formats of a month.
+      */
+    private static final DateTimeFormatter[] MONTH_FORMATS = { DateTimeFormatter.ofPattern("M.yyyy"), DateTimeFormatter.ofPattern("yyyy-MM") };
+    /**
+      * Accepted format of a year.
+      */
+    private static final DateTimeFormatter YEAR_FORMAT = DateTimeFormatter.ofPattern("yyyy");
+    /**
+      * Range containing all timestamps.
+      */
+    public static final DateRange ALL = new DateRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    /**
+      * Creates the range of the timestamps.
+      *
+      * @param from the first second of the range (inclusive)
+      * @param to the last second of the range (inclusive)
+      */
+    public DateRange {
+        assert from <= to || from == to + 1 : "Invalid range of timestamps!";  // an empty range is allowed
+    }
+
+    /**
+      * Parses a day (d.M.yyyy or yyyy-MM-dd), a month (M.yyyy or yyyy-MM) or a year (yyyy) into the range of its timestamps.
+      *
+      * @param text the day, month or year
+      * @return the range of the timestamps, or null if the text is not valid
+      */
+    public static DateRange parse(String text) {
+        text = text.trim();
+        for (DateTimeFormatter format : DAY_FORMATS) {
+            LocalDate day = parse(text, format, LocalDate::from);
+            if (day != null) {
+                return of(day, day.plusDays(1));
+            }
+        }
+        for (DateTimeFormatter format : MONTH_FORMATS) {
+            YearMonth month = parse(text, format, YearMonth::from);
+            if (month != null) {
+                return of(month.atDay(1), month.plusMonths(1).atDay(1));
+            }
+        }
+        Integer year = parse(text, YEAR_FORMAT, temporal -> temporal.get(ChronoField.YEAR));
+        if (year != null) {
+            return of(LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1));
+        }
+        return null;
+    }
+
+    /**
+      * Parses the text by the format.
+      *
+      * @param <T> the type of the result
+      * @param text the text to parse
+      * @param format the format
+      * @param query the conversion of the parsed text to the result
+      * @return the result, or null if the text does not match the format
+      */
+    private static <T> T parse(String text, DateTimeFormatter format, TemporalQuery<T> query) {
+        try {
+            return format.parse(text, query);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+      * Creates the range of the timestamps of the days.
+      *
+      * @param first the first day (inclusive)
+      * @param end the day after the last day (exclusive)
+      * @return the range of the timestamps
+      */
+    private static DateRange of(LocalDate first, LocalDate end) {
+        return new DateRange(startOf(first), startOf(end) - 1);
+    }
+
+    /**
+      * Gets the first second of the day (in the system timezone).
+      *
+      * @param day the day
+      * @return the first second of the day since the epoch
+      */
+    private static long startOf(LocalDate day) {
+        return day.atStartOfDay(ZONE).toEpochSecond();
+    }
+
+    /**
+      * Creates the range from the beginning of this range to the end of the other range.
+      *
+      * @param last the range where the new range ends
+      * @return the new range (empty if the other range ends before this range)
+      */
+    public DateRange through(DateRange last) {
+        return last.to >= from ? new DateRange(from, last.to) : new DateRange(from, from - 1);
+    }
+
+    /**
+      * Gets the range of all timestamps before this range.
+      *
+      * @return the range of the earlier timestamps
+      */
+    public DateRange before() {
+        return new DateRange(Long.MIN_VALUE, from - 1);
+    }
+
+    /**
+      * Gets the range of all timestamps after this range.
+      *
+      * @return the range of the later timestamps
+      */
+    public DateRange after() {
+        return new DateRange(to + 1, Long.MAX_VALUE);
+    }
+
+    /**
+      * Checks if the range contains the timestamp.
+      *
+      * @param timestamp the timestamp (seconds since the epoch)
+      * @return true if the timestamp is in the range, false otherwise
+      */
+    public boolean contains(long timestamp) {
+        return timestamp >= from && timestamp <= to;
+    }
+
+    /**
+      * Converts the stored file timestamp (yyyyMMdd HHmmss, system timezone) to the seconds since the epoch.
+      * (The fixed-width fields are read directly, it is called for every file when the database is loaded.)
+      *
+      * @param timestamp the stored file timestamp
+      * @return the seconds since the epoch, or 0 if the timestamp is not valid
+      */
+    public static long toEpochSecond(String timestamp) {
+        if (timestamp.length() != 15 || timestamp.charAt(8) != ' ') {
+            return 0L;
+        }
+        try {
+            LocalDateTime dateTime = LocalDateTime.of(Integer.parseInt(timestamp, 0, 4, 10), Integer.parseInt(timestamp, 4, 6, 10),
+                                                      Integer.parseInt(timestamp, 6, 8, 10), Integer.parseInt(timestamp, 9, 11, 10),
+                                                      Integer.parseInt(timestamp, 11, 13, 10), Integer.parseInt(timestamp, 13, 15, 10));
+            return dateTime.atZone(ZONE).toEpochSecond();
+        } catch (NumberFormatException | DateTimeException e) {
+            return 0L;
+        }
+    }
+
+    /**
+      * Formats the file timestamp for display (dd.MM.yyyy HH:mm:ss, system timezone).
+      *
+      * @param timestamp the file timestamp (seconds since the epoch)
+      * @return the formatted timestamp
+      */
+    public static String format(long timestamp) {
+        return DISPLAY_FORMATTER.format(Instant.ofEpochSecond(timestamp));
+    }
+}
@@ -7,52 +7,158 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.time.Instant;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.CRC32;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.Tag;
+import com.drew.metadata.file.FileSystemMetadataReader;
 
 /**
   * A class with methods for file system access and reading directories, files, and metadata information.
+  * <p>
+  * The file inspection methods are thread-safe: they keep no shared state and return immutable result records
+  * carrying the result together with the status code of the operation. The read buffers are reused per thread,
+  * so one instance can be shared by a pool of worker threads.
+  * </p>
   */
 public class FileSystem {
     /**
-      * Status code of the last executed File System operation.
+      * Size of the buffers used for reading the files.
       */
-    private static StatusCode statusCode;
-    
+    private static final int BUFFER_SIZE = 8192;
+    /**
+      * Formatter of the file timestamps (HH for 24-hour format, system timezone).
+      */
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd HHmmss").withZone(ZoneId.systemDefault());
+    /**
+      * Pattern of a file size: number and optional unit (see {@link #parseFileSize}).
+      */
+    private static final Pattern FILE_SIZE_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(B|KB|MB|GB|TB)?", Pattern.CASE_INSENSITIVE);
+    /**
+      * Units of the file sizes (powers of 1024).
+      */
+    private static final List<String> FILE_SIZE_UNITS = List.of("B", "KB", "MB", "GB", "TB");
+
+    /**
+      * Default list of names (glob patterns) skipped when walking a directory tree (hidden files and directories).
+      */
+    public static final List<String> DEFAULT_IGNORE_LIST = List.of(".*");
+
     /**
-      * Gets the last FileSystem operation status code.
+      * One file found in a directory, with its basic attributes read during the directory walk.
       *
-      * @return the last FileSystem operation status code
+      * @param path the full (canonical) path of the file
+      * @param attributes the basic attributes of the file
       */
-    public static StatusCode getStatusCode() {
-        return statusCode;
-    }
+    public record FileEntry(Path path, BasicFileAttributes attributes) {}
 
     /**
-      * Sets a FileSystem operation status code.
+      * Result of listing a directory (or a whole directory tree).
       *
-      * @param newStatusCode the FileSystem operation status code
+      * @param directory the full (canonical) path of the directory
+      * @param files the list of files found
+      * @param directories the number of directories walked through
+      * @param unreadable the number of files and directories which could not be read (and were skipped)
+      * @param statusCode the status code of the operation
       */
-    public static void setStatusCode(StatusCode newStatusCode) {
-        statusCode = newStatusCode;
-    }
+    public record DirectoryResult(String directory, List<FileEntry> files, int directories, int unreadable, StatusCode statusCode) {}
+
+    /**
+      * Result of reading the file information.
+      *
+      * @param file the file object containing the file information
+      * @param statusCode the status code of the operation
+      */
+    public record FileResult(DBFile file, StatusCode statusCode) {}
+
+    /**
+      * Result of reading the basic attributes of a file.
+      *
+      * @param entry the file with its basic attributes (null if the attributes cannot be read)
+      * @param statusCode the status code of the operation
+      */
+    public record EntryResult(FileEntry entry, StatusCode statusCode) {}
 
     /**
-      * Default constructor.
-      * (defined to prevent Javadoc warning)
+      * Result of the checksum calculation.
+      *
+      * @param checksum the checksum value
+      * @param statusCode the status code of the operation
+      */
+    public record ChecksumResult(long checksum, StatusCode statusCode) {}
+
+    /**
+      * Result of the digest calculation.
+      *
+      * @param digest the digest of the file content (null if the file cannot be read)
+      * @param statusCode the status code of the operation
+      */
+    public record DigestResult(byte[] digest, StatusCode statusCode) {}
+
+    /**
+      * Result of reading the metadata information.
+      *
+      * @param metadata the (unmodifiable) set of metadata information
+      * @param statusCode the status code of the operation
+      */
+    public record MetadataResult(Set<MetadataInfo> metadata, StatusCode statusCode) {}
+
+    /**
+      * Result of reading the file content (checksum and metadata in one pass).
+      *
+      * @param checksum the checksum value
+      * @param metadata the set of metadata information
+      * @param statusCode the status code of the operation
+      */
+    private record ContentResult(long checksum, Set<MetadataInfo> metadata, StatusCode statusCode) {}
+
+    /**
+      * Result of the comparison of two files.
+      *
+      * @param identical true if the files are identical, false otherwise
+      * @param statusCode the status code of the operation
+      */
+    public record CompareResult(boolean identical, StatusCode statusCode) {}
+
+    /**
+      * Engine calculating the checksums through file channels and direct buffers.
+      */
+    private final ChecksumEngine checksumEngine = new ChecksumEngine();
+    /**
+      * Comparator of the file contents.
+      */
+    private final ContentComparator contentComparator = new ContentComparator();
+
+    /**
+      * Creates a new file system service.
       */
     public FileSystem() {}
         
@@ -79,103 +185,233 @@ public class FileSystem {
       * Gets a list of all files in the given directory.
       *
       * @param directory the directory path
-      * @return a list of file paths in the directory (first element in the list is the directory path itself)
+      * @return the list of files in the directory and the status code
       */
-    public static List<String> filesInDirectory(String directory) {
-        List<String> listOfFiles = new ArrayList<>();
+    public DirectoryResult filesInDirectory(String directory) {
+        return walkDirectory(directory, 1, List.of());
+    }
 
-        setStatusCode(StatusCode.NO_ERROR);
+    /**
+      * Gets a list of all files in the given directory tree (the directory and all its subdirectories).
+      * <p>
+      * Only the starting directory (and the target of a symbolic link) is canonicalized, the paths of the files 
+      * and subdirectories are created from it. Every directory is walked through at most once, so the symbolic 
+      * links cannot create a loop. The file attributes are read once during the walk and passed with the files.
+      * </p>
+      *
+      * @param directory the directory path
+      * @param maxDepth the maximal depth of the walk (1 = files in the directory only)
+      * @param ignoreList the names (glob patterns, e.g. ".*") of the files and subdirectories to skip
+      * @return the list of files in the directory tree and the status code
+      */
+    public DirectoryResult walkDirectory(String directory, int maxDepth, List<String> ignoreList) {
+        assert maxDepth >= 1 : "Depth of the directory walk must be positive!";
+        Path root;
+        try {
+            root = Paths.get(directory).toRealPath();
+        } catch (IOException | InvalidPathException e) {
+            return new DirectoryResult(directory, List.of(), 0, 0, StatusCode.FILE_SYSTEM_ERROR);
+        }
+        if (!Files.isDirectory(root)) {
+            return new DirectoryResult(root.toString(), List.of(), 0, 0, StatusCode.FILE_SYSTEM_ERROR);
+        }
 
-        File dir = new File(directory);
-        if (dir.isDirectory()) {
-            try {
-                // add the full absolute directory path as the first element in the result
-                listOfFiles.add(dir.getCanonicalPath()); 
+        TreeWalker walker = new TreeWalker(ignoreList);
+        walker.walk(root, maxDepth);
+        return new DirectoryResult(root.toString(), Collections.unmodifiableList(walker.files), 
+                                   walker.directories, walker.unreadable, StatusCode.NO_ERROR);
+    }
 
-                for (File file : dir.listFiles()) {
-                    if (file.isFile()) {
-                        listOfFiles.add(file.getCanonicalPath()); 
-                    }
-                }
-            } catch (IOException e) {
-                setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
-            }
+    /**
+      * Checks whether the glob pattern for the ignore list is valid.
+      *
+      * @param pattern the glob pattern
+      * @return true if the pattern is valid, false otherwise
+      */
+    public static boolean isValidIgnorePattern(String pattern) {
+        try {
+            FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-
-        return listOfFiles;
     }
 
+    /**
+      * Gets detailed information about a file (the checksum is calculated by the default algorithm).
+      *
+      * @param filename the name of the file to get information about
+      * @return the file object containing the file information and the status code
+      */
+    public FileResult getFileInformation(String filename) {
+        return getFileInformation(filename, HashAlgorithm.DEFAULT);
+    }
 
     /**
       * Gets detailed information about a file.
       *
       * @param filename the name of the file to get information about
-      * @return a DBFile object containing the file information
+      * @param algorithm the algorithm used for the checksum
+      * @return the file object containing the file information and the status code
       */
-    public static DBFile getFileInformation(String filename) {
-        String fullpath = "";
-        String location = "";
-        String fname = "";
-        String extension = "";
-        String timestamp = "";
-        long size = 0L;
-        long checksum = 0L;
-        Set<String> keywords = new HashSet<>();
-        Set<MetadataInfo> metadata = new HashSet<>();
+    public FileResult getFileInformation(String filename, HashAlgorithm algorithm) {
+        EntryResult result = getFileEntry(filename);
+        if (result.statusCode() != StatusCode.NO_ERROR) {
+            return new FileResult(new DBFile(), result.statusCode());
+        }
+        return getFileInformation(result.entry(), algorithm);
+    }
 
-        setStatusCode(StatusCode.NO_ERROR);
+    /**
+      * Reads the basic attributes of a file (size, last modification time, file key). The content is not read.
+      *
+      * @param filename the name of the file
+      * @return the file with its attributes and the status code (FILE_SYSTEM_NOT_FILE if the file does not exist or is not a regular file)
+      */
+    public EntryResult getFileEntry(String filename) {
+        try {
+            Path path = Paths.get(filename).toRealPath();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return new EntryResult(null, StatusCode.FILE_SYSTEM_NOT_FILE);
+            }
+            return new EntryResult(new FileEntry(path, attributes), StatusCode.NO_ERROR);
+        } catch (NoSuchFileException | InvalidPathException e) {
+            return new EntryResult(null, StatusCode.FILE_SYSTEM_NOT_FILE);
+        } catch (IOException e) {
+            return new EntryResult(null, StatusCode.FILE_SYSTEM_ERROR);
+        }
+    }
 
+    /**
+      * Gets detailed information about a file found in a directory.
+      * (The path and the attributes of the file are taken from the directory walk, they are not read again.)
+      *
+      * @param entry the file found in a directory
+      * @param algorithm the algorithm used for the checksum
+      * @return the file object containing the file information and the status code
+      */
+    public FileResult getFileInformation(FileEntry entry, HashAlgorithm algorithm) {
         DBFile dbFile = new DBFile();
+        Path path = entry.path();
+        BasicFileAttributes attributes = entry.attributes();
 
-        try {
-            File file = new File(filename);
-            if (file.isFile()) {
-                fullpath = file.getCanonicalPath(); // full filepath
+        String fullpath = path.toString(); // full filepath
+        Path parentPath = path.getParent(); // absolute parent path
+        String location = parentPath != null ? parentPath.toString() : "";
 
-                String parentPath = file.getParent(); // absolute parent path
-                location = parentPath != null ? new File(parentPath).getCanonicalPath() : "";
+        String fname;
+        String extension = "";
+        String fullName = path.getFileName().toString();   // filename with extension
+        int lastDotIndex = fullName.lastIndexOf('.');
+        if (lastDotIndex > 0 && lastDotIndex < fullName.length() - 1) {
+            // file has an extension
+            fname = fullName.substring(0, lastDotIndex);
+            extension = fullName.substring(lastDotIndex + 1);
+        } else {
+            // no extension or starts with dot
+            fname = fullName;
+        }
 
-                String fullName = file.getName();   // filename with extension
-                int lastDotIndex = fullName.lastIndexOf('.');
-                if (lastDotIndex > 0 && lastDotIndex < fullName.length() - 1) {
-                    // file has an extension
-                    fname = fullName.substring(0, lastDotIndex);
-                    extension = fullName.substring(lastDotIndex + 1);
-                } else {
-                    // no extension or starts with dot
-                    fname = fullName;
-                }
+        dbFile.setFullpath(fullpath);
+        dbFile.setLocation(location);
+        dbFile.setFilename(fname);
+        dbFile.setExtension(extension);
+
+        File file = path.toFile();
+        String timestamp = TIMESTAMP_FORMATTER.format(attributes.lastModifiedTime().toInstant());
+        long size = attributes.size();
+        ContentResult content = readContent(file, size, algorithm);
+
+        dbFile.setTimestamp(timestamp);
+        dbFile.setSize(size);
+        dbFile.setLastModified(attributes.lastModifiedTime().toMillis());
+        dbFile.setFileKey(fileKey(attributes));
+        dbFile.setChecksum(content.checksum());
+        dbFile.setChecksumAlgorithm(algorithm);
+        dbFile.setKeywords(new HashSet<>());
+        dbFile.setMetadata(content.metadata());
+        dbFile.setMetadataDigest(MetadataInfo.digest(content.metadata()));  // calculated by the worker reading the file
+
+        return new FileResult(dbFile, content.statusCode());
+    }
 
-                dbFile.setFullpath(fullpath);
-                dbFile.setLocation(location);
-                dbFile.setFilename(fname);
-                dbFile.setExtension(extension);
+    /**
+      * Checks whether the file found in a directory is unchanged since its information was read
+      * (the size, the last modification time and the file key are the same). The content is not read.
+      * The files read by older versions have no last modification time and file key (legacy catalogs),
+      * their size and timestamp (in seconds) are compared instead.
+      *
+      * @param entry the file found in a directory
+      * @param file the file object containing the previously read file information
+      * @return true if the file is unchanged, false otherwise
+      */
+    public static boolean isUnchanged(FileEntry entry, DBFile file) {
+        BasicFileAttributes attributes = entry.attributes();
+        if (file.getLastModified() == 0L) {
+            return file.getSize() == attributes.size()
+                   && file.getTimestamp().equals(TIMESTAMP_FORMATTER.format(attributes.lastModifiedTime().toInstant()));
+        }
+        return file.getSize() == attributes.size()
+               && file.getLastModified() == attributes.lastModifiedTime().toMillis()
+               && file.getFileKey() == fileKey(attributes);
+    }
 
-                // HH for 24-hour format
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd HHmmss").withZone(ZoneId.systemDefault());  // use system timezone
-                timestamp = formatter.format(Instant.ofEpochMilli(file.lastModified()));
+    /**
+      * Gets the hash of the file key (e.g. device and inode number on Unix) identifying the file in the file system.
+      *
+      * @param attributes the basic attributes of the file
+      * @return the file key hash, or 0 if the file system does not provide file keys
+      */
+    public static int fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.hashCode() : 0;
+    }
 
-                size = file.length();
-                checksum = calculateChecksum(file);
-                metadata = readMetadata(file);
+    /**
+      * Reads the content of a file once, for both the checksum and the metadata.
+      * <p>
+      * The metadata parser reads the file through a stream which updates the checksum with every byte read
+      * from the disk (the parser's own buffering and skipping happen above the checksum). The rest of the file, 
+      * not needed by the parser, is then read for the checksum only - directly through the file channel 
+      * (see {@link ChecksumEngine}). Each byte is read from the disk once.
+      * </p>
+      *
+      * @param file the file to read
+      * @param size the size of the file
+      * @param algorithm the algorithm used for the checksum
+      * @return the checksum value, the metadata information and the status code
+      */
+    private ContentResult readContent(File file, long size, HashAlgorithm algorithm) {
+        Checksum checksum = algorithm.newChecksum();
+        Set<MetadataInfo> metadataSet = new HashSet<>();
+        StatusCode statusCode = StatusCode.NO_ERROR;
 
-                dbFile.setTimestamp(timestamp);
-                dbFile.setSize(size);
-                dbFile.setChecksum(checksum);
-                dbFile.setKeywords(keywords);
-                dbFile.setMetadata(metadata);
-            } else {
-                setStatusCode(StatusCode.FILE_SYSTEM_NOT_FILE);
+        try (FileInputStream fileStream = new FileInputStream(file);
+             CheckedInputStream checkedStream = new CheckedInputStream(fileStream, checksum)) {
+            try {
+                Metadata metadata = ImageMetadataReader.readMetadata(new BufferedInputStream(checkedStream, BUFFER_SIZE), size);
+                if (metadata != null) {
+                    new FileSystemMetadataReader().read(file, metadata);  // file name, size and date (as if read from the File)
+                    addMetadata(metadata, metadataSet);
+                } else {
+                    statusCode = StatusCode.FILE_SYSTEM_NOT_IMAGE;
+                }
+            } catch (ImageProcessingException e) {
+                statusCode = StatusCode.FILE_SYSTEM_NOT_IMAGE;
             }
+
+            checksumEngine.update(checksum, fileStream.getChannel());  // continues where the parser stopped reading
         } catch (IOException e) {
-            setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
-        }               
+            statusCode = StatusCode.FILE_SYSTEM_ERROR;
+        }
 
-        return dbFile;
+        return new ContentResult(checksum.getValue(), metadataSet, statusCode);
     }
 
     /**
-      * Calculates the checksum of a file using CRC32.
+      * Calculates the checksum of a file using the specified algorithm.
+      * The file is read through a file channel into a large direct buffer (see {@link ChecksumEngine}).
       * <p>
       * Based on:
       * <ul>
@@ -184,21 +420,44 @@ public class FileSystem {
       * </ul>
       *
       * @param file the file to calculate the checksum for
-      * @return the checksum value
-      */
-    public static long calculateChecksum(File file) {
-        setStatusCode(StatusCode.NO_ERROR);
-        CRC32 crc = new CRC32();
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                crc.update(buffer, 0, bytesRead);
-            }
-        } catch (IOException e) {
-            setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
+      * @param algorithm the algorithm used for the checksum
+      * @return the checksum value and the status code
+      */
+    public ChecksumResult calculateChecksum(File file, HashAlgorithm algorithm) {
+        try {
+            return new ChecksumResult(checksumEngine.checksum(file.toPath(), algorithm), StatusCode.NO_ERROR);
+        } catch (IOException | InvalidPathException e) {
+            return new ChecksumResult(algorithm.newChecksum().getValue(), StatusCode.FILE_SYSTEM_ERROR);
+        }
+    }
+
+    /**
+      * Calculates the checksum of a sample of the file content (see {@link ChecksumEngine#sampleChecksum}).
+      *
+      * @param file the file
+      * @param sampleSize the size of one sampled block
+      * @return the checksum result containing the checksum of the sample and the status code
+      */
+    public ChecksumResult calculateSampleChecksum(File file, int sampleSize) {
+        try {
+            return new ChecksumResult(checksumEngine.sampleChecksum(file.toPath(), sampleSize), StatusCode.NO_ERROR);
+        } catch (IOException | InvalidPathException e) {
+            return new ChecksumResult(0L, StatusCode.FILE_SYSTEM_ERROR);
+        }
+    }
+
+    /**
+      * Calculates the SHA-256 digest of the whole file content.
+      *
+      * @param file the file
+      * @return the digest result containing the digest and the status code
+      */
+    public DigestResult calculateDigest(File file) {
+        try {
+            return new DigestResult(checksumEngine.digest(file.toPath()), StatusCode.NO_ERROR);
+        } catch (IOException | InvalidPathException e) {
+            return new DigestResult(null, StatusCode.FILE_SYSTEM_ERROR);
         }
-        return crc.getValue();
     }
 
     /**
@@ -220,6 +479,19 @@ public class FileSystem {
         return filenameOnly;
     }
 
+    /**
+      * Gets the prefix of the paths of all subfolders of the folder (the folder path ending with the file separator).
+      *
+      * @param folder the path of the folder
+      * @return the folder path with the trailing file separator
+      */
+    public static String subfolderPrefix(String folder) {
+        if (folder.endsWith("/") || folder.endsWith("\\")) {  // a root folder (e.g. / or C:\)
+            return folder;
+        }
+        return folder + File.separator;
+    }
+
     /**
       * Formats the file size in a human-readable format.
       *
@@ -239,80 +511,209 @@ public class FileSystem {
         return String.format("%.2f %s", size, units[unitIndex]);
     }
 
+    /**
+      * Parses the file size in the format of {@link #formatFileSize} (a number and an optional unit B, KB, MB, GB or TB,
+      * e.g. 20MB or 1.5 GB; the units are powers of 1024).
+      *
+      * @param size the file size
+      * @return the size in bytes, or -1 if the file size is not valid
+      */
+    public static long parseFileSize(String size) {
+        Matcher matcher = FILE_SIZE_PATTERN.matcher(size.trim());
+        if (!matcher.matches()) {
+            return -1;
+        }
+        int unitIndex = matcher.group(2) != null ? FILE_SIZE_UNITS.indexOf(matcher.group(2).toUpperCase()) : 0;
+        return Math.round(Double.parseDouble(matcher.group(1)) * Math.pow(1024, unitIndex));
+    }
+
     /**
       * Reads all metadata information from a file.
       *
       * @param file the file to read metadata from
-      * @return a set of MetadataInfo objects containing the metadata information
+      * @return the set of MetadataInfo objects containing the metadata information and the status code
       */
-    public static Set<MetadataInfo> readMetadata(File file) {
-        setStatusCode(StatusCode.NO_ERROR);
+    public MetadataResult readMetadata(File file) {
         Set<MetadataInfo> metadataSet = new HashSet<>();
+        StatusCode statusCode = StatusCode.NO_ERROR;
 
         try {
             Metadata metadata = ImageMetadataReader.readMetadata(file);
             if (metadata != null) {
-                for (Directory directory : metadata.getDirectories()) {
-                    for (Tag tag : directory.getTags()) {
-                        metadataSet.add(new MetadataInfo(directory.getName(), tag.getTagName(), tag.getDescription()));
-                    }
-                }
+                addMetadata(metadata, metadataSet);
             } else {
-                setStatusCode(StatusCode.FILE_SYSTEM_NOT_IMAGE);
+                statusCode = StatusCode.FILE_SYSTEM_NOT_IMAGE;
             }
         } catch (ImageProcessingException e) {
-            setStatusCode(StatusCode.FILE_SYSTEM_NOT_IMAGE);
+            statusCode = StatusCode.FILE_SYSTEM_NOT_IMAGE;
         } catch (IOException e) {
-            setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
+            statusCode = StatusCode.FILE_SYSTEM_ERROR;
         }
 
-        return metadataSet;
+        return new MetadataResult(Collections.unmodifiableSet(metadataSet), statusCode);
     }   
 
+    /**
+      * Adds all tags of the metadata read by the metadata parser to the set of metadata information.
+      *
+      * @param metadata the metadata read by the parser
+      * @param metadataSet the set of metadata information
+      */
+    private static void addMetadata(Metadata metadata, Set<MetadataInfo> metadataSet) {
+        for (Directory directory : metadata.getDirectories()) {
+            for (Tag tag : directory.getTags()) {
+                metadataSet.add(new MetadataInfo(directory.getName(), tag.getTagName(), tag.getDescription()));
+            }
+        }
+    }
+
     /**
       * Compares two files to check if they are identical.
       *
       * @param path1 the path of the first file
       * @param path2 the path of the second file
-      * @return true if the files are identical, false otherwise
+      * @return the comparison result (true if the files are identical, false otherwise) and the status code
       */
-    public static boolean compareFiles(String path1, String path2) {
-        setStatusCode(StatusCode.NO_ERROR);
-
+    public CompareResult compareFiles(String path1, String path2) {
         try {
             File file1 = new File(path1);
             File file2 = new File(path2);
 
             if (!file1.isFile() || !file2.isFile()) {
-                return false;
+                return new CompareResult(false, StatusCode.NO_ERROR);
             }
 
             if (file1.length() != file2.length()) {
-                return false;
+                return new CompareResult(false, StatusCode.NO_ERROR);
+            }
+
+            List<List<Integer>> classes = contentComparator.partition(List.of(file1.toPath(), file2.toPath()));
+            if (classes.size() == 1 && classes.get(0).size() == 2) {
+                return new CompareResult(true, StatusCode.NO_ERROR);
+            }
+            if (classes.size() == 2) {
+                return new CompareResult(false, StatusCode.NO_ERROR);
+            }
+        } catch (InvalidPathException e) {
+            // handled below
+        }
+
+        return new CompareResult(false, StatusCode.FILE_SYSTEM_ERROR);
+    }
+
+    /**
+      * Splits the files into groups of identical files (see {@link ContentComparator}). Every file is read at most once.
+      *
+      * @param paths the paths of the files (at most {@link ContentComparator#MAX_FILES})
+      * @return the list of groups (the indexes of the files in the list of paths), including the groups with one file;
+      *         the files which cannot be read are not in any group
+      */
+    public List<List<Integer>> compareFiles(List<String> paths) {
+        List<Path> filePaths = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            try {
+                filePaths.add(Path.of(path));
+            } catch (InvalidPathException e) {
+                filePaths.add(null);  // keeps the indexes, the file cannot be read
             }
+        }
+        return contentComparator.partition(filePaths);
+    }
 
-            try (FileInputStream stream1 = new FileInputStream(file1);
-                FileInputStream stream2 = new FileInputStream(file2)) {
+    /**
+      * Visitor collecting the files of a directory tree (see {@link #walkDirectory(String, int, List)}).
+      * <p>
+      * The symbolic links are not followed by the walk itself. A link to a file adds the target file,
+      * a link to a directory is walked later as a new tree (with the remaining depth) and the directories 
+      * already walked through are skipped.
+      * </p>
+      */
+    private static class TreeWalker extends SimpleFileVisitor<Path> {
+        private final List<PathMatcher> ignored = new ArrayList<>();
+        private final Set<Path> visitedDirectories = new HashSet<>();
+        private final Deque<Map.Entry<Path, Integer>> linkedDirectories = new ArrayDeque<>();
+        private final List<FileEntry> files = new ArrayList<>();
+        private int directories = 0;
+        private int unreadable = 0;
+        private int maxDepth;
+        private int depth;
+
+        TreeWalker(List<String> ignoreList) {
+            for (String pattern : ignoreList) {
+                ignored.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+        }
 
-                byte[] buffer1 = new byte[1024];
-                byte[] buffer2 = new byte[1024];
+        void walk(Path root, int rootMaxDepth) {
+            linkedDirectories.add(Map.entry(root, rootMaxDepth));
+            while (!linkedDirectories.isEmpty()) {
+                Map.Entry<Path, Integer> next = linkedDirectories.poll();
+                maxDepth = next.getValue();
+                depth = 0;
+                try {
+                    Files.walkFileTree(next.getKey(), EnumSet.noneOf(FileVisitOption.class), maxDepth, this);
+                } catch (IOException e) {
+                    unreadable++;
+                }
+            }
+        }
 
-                int bytesRead1;
-                int bytesRead2;
+        boolean isIgnored(Path path) {
+            Path name = path.getFileName();
+            for (PathMatcher matcher : ignored) {
+                if (name != null && matcher.matches(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-                while ((bytesRead1 = stream1.read(buffer1)) != -1) {
-                    bytesRead2 = stream2.read(buffer2);
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            if ((depth > 0 && isIgnored(dir)) || !visitedDirectories.add(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            directories++;
+            depth++;
+            return FileVisitResult.CONTINUE;
+        }
 
-                    if (bytesRead1 != bytesRead2 || !Arrays.equals(buffer1, buffer2)) {
-                        return false;
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            if (isIgnored(file)) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (attributes.isRegularFile()) {
+                files.add(new FileEntry(file, attributes));
+            } else if (attributes.isSymbolicLink()) {
+                try {
+                    Path target = file.toRealPath();
+                    BasicFileAttributes targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+                    if (targetAttributes.isRegularFile()) {
+                        files.add(new FileEntry(target, targetAttributes));
+                    } else if (targetAttributes.isDirectory() && depth < maxDepth) {
+                        linkedDirectories.add(Map.entry(target, maxDepth - depth));
                     }
+                } catch (IOException e) {
+                    // broken link - skipped
                 }
             }
-        } catch (IOException e) {
-            setStatusCode(StatusCode.FILE_SYSTEM_ERROR);
-            return false;
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            unreadable++;
+            return FileVisitResult.CONTINUE;
         }
 
-        return true;
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            if (e != null) {
+                unreadable++;
+            }
+            depth--;
+            return FileVisitResult.CONTINUE;
+        }
     }
 }
@@ -0,0 +1,175 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+  * Enum representing the algorithms used for the file checksums (content hashes).
+  * <p>
+  * Every algorithm produces a 64-bit value (the checksum of a file is stored as a long).
+  * The 32-bit checksums (CRC32, CRC32C) produce many false potential duplicates in large databases,
+  * the 64-bit hashes make them rare. For SHA-256 the first 64 bits of the digest are used.
+  * </p>
+  * <p>
+  * The ID of an algorithm is stored in the database file, so it must never be changed.
+  * </p>
+  */
+public enum HashAlgorithm {
+    /**
+      * CRC32 checksum (32 bits, the original checksum of the database).
+      */
+    CRC32(1, "CRC32"),
+    /**
+      * CRC32C checksum (32 bits, calculated by the CPU instructions where available).
+      */
+    CRC32C(2, "CRC32C"),
+    /**
+      * XXH64 hash (fast non-cryptographic 64-bit hash).
+      */
+    XXH64(3, "XXH64"),
+    /**
+      * SHA-256 cryptographic hash (first 64 bits of the digest).
+      */
+    SHA256(4, "SHA-256");
+
+    /**
+      * Algorithm used for the new databases.
+      */
+    public static final HashAlgorithm DEFAULT = XXH64;
+
+    /**
+      * ID of the algorithm stored in the database file.
+      */
+    private final int id;
+    /**
+      * Name of the algorithm.
+      */
+    private final String displayName;
+
+    /**
+      * Creates a new algorithm constant.
+      *
+      * @param id the ID of the algorithm stored in the database file
+      * @param displayName the name of the algorithm
+      */
+    HashAlgorithm(int id, String displayName) {
+        this.id = id;
+        this.displayName = displayName;
+    }
+
+    /**
+      * Gets the ID of the algorithm stored in the database file.
+      *
+      * @return the ID of the algorithm
+      */
+    public int getId() {
+        return id;
+    }
+
+    /**
+      * Gets the name of the algorithm.
+      *
+      * @return the name of the algorithm
+      */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+      * Creates a new checksum object calculating the checksum with this algorithm.
+      *
+      * @return the new checksum object
+      */
+    public Checksum newChecksum() {
+        return switch (this) {
+            case CRC32 -> new CRC32();
+            case CRC32C -> new CRC32C();
+            case XXH64 -> new XXHash64();
+            case SHA256 -> new DigestChecksum("SHA-256");
+        };
+    }
+
+    /**
+      * Gets the algorithm with the specified ID.
+      *
+      * @param id the ID of the algorithm
+      * @return the algorithm, or null if there is no algorithm with the specified ID
+      */
+    public static HashAlgorithm fromId(int id) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.id == id) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+      * Gets the algorithm with the specified name (case-insensitive, the dash can be omitted).
+      *
+      * @param name the name of the algorithm
+      * @return the algorithm, or null if there is no algorithm with the specified name
+      */
+    public static HashAlgorithm fromName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.displayName.equalsIgnoreCase(name) || algorithm.name().equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+      * Checksum calculated by a message digest (the value is the first 64 bits of the digest).
+      */
+    private static class DigestChecksum implements Checksum {
+        private final MessageDigest digest;
+
+        DigestChecksum(String algorithm) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);  // SHA-256 is required in every Java platform
+            }
+        }
+
+        @Override
+        public void update(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public long getValue() {
+            byte[] hash;
+            try {
+                hash = ((MessageDigest) digest.clone()).digest();  // the digest itself can still be updated
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+            long result = 0L;
+            for (int i = 0; i < Long.BYTES; i++) {
+                result = (result << 8) | (hash[i] & 0xFFL);
+            }
+            return result;
+        }
+
+        @Override
+        public void reset() {
+            digest.reset();
+        }
+    }
+}
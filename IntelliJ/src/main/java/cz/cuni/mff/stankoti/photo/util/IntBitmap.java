@@ -0,0 +1,878 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+  * Compressed set of int values (file IDs), organized in the same way as the Roaring bitmap.
+  * <p>
+  * The values are divided into chunks by their upper 16 bits. Every non-empty chunk is stored in a container:
+  * a sorted array of the lower 16 bits (up to 4096 values), or a bitmap of 65536 bits (more values).
+  * So, the set needs about 2 bytes per value (at most 8 kB per chunk) instead of 50+ bytes
+  * per value of the boxed {@code HashSet<Integer>}, and the set operations (and, or, and not)
+  * are done on whole containers (merge of arrays, or bitwise operations on 64-bit words).
+  * </p>
+  * <p>
+  * The values are iterated in ascending order (of unsigned values).
+  * The class implements the {@code Set<Integer>} interface, so it can be used wherever the set of IDs is expected,
+  * but the primitive methods (e.g. {@link #add(int)}, {@link #contains(int)}, {@link #forEachInt(IntConsumer)})
+  * avoid boxing.
+  * </p>
+  */
+public class IntBitmap extends AbstractSet<Integer> {
+    /**
+      * Maximal number of values in the array container (larger containers are bitmaps).
+      */
+    static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+
+    /**
+      * Upper 16 bits of the values in the containers (sorted).
+      */
+    private char[] keys;
+    /**
+      * Containers with the lower 16 bits of the values (in the order of keys).
+      */
+    private Container[] containers;
+    /**
+      * Number of containers.
+      */
+    private int containerCount;
+    /**
+      * Number of values in the set.
+      */
+    private int size;
+
+    /**
+      * Creates a new empty set.
+      */
+    public IntBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+        containerCount = 0;
+        size = 0;
+    }
+
+    /**
+      * Creates a new set containing all values of the specified collection.
+      *
+      * @param values the values to add
+      */
+    public IntBitmap(Collection<Integer> values) {
+        this();
+        addAll(values);
+    }
+
+    /**
+      * Creates a new set containing the specified values.
+      *
+      * @param values the values to add
+      * @return the new set
+      */
+    public static IntBitmap of(int... values) {
+        IntBitmap bitmap = new IntBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+      * Gets the number of values in the set.
+      *
+      * @return the number of values
+      */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+      * Checks whether the set is empty.
+      *
+      * @return true if the set contains no values, false otherwise
+      */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+      * Checks whether the set contains the specified value.
+      *
+      * @param value the value
+      * @return true if the set contains the value, false otherwise
+      */
+    public boolean contains(int value) {
+        int index = findKey(high(value));
+        return index >= 0 && containers[index].contains(low(value));
+    }
+
+    /**
+      * Checks whether the set contains the specified value.
+      *
+      * @param value the value
+      * @return true if the set contains the value, false otherwise
+      */
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer intValue && contains(intValue.intValue());
+    }
+
+    /**
+      * Adds the specified value to the set.
+      *
+      * @param value the value
+      * @return true if the set did not contain the value, false otherwise
+      */
+    public boolean add(int value) {
+        char high = high(value);
+        int index = findKey(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int cardinality = container.cardinality();
+        containers[index] = container.add(low(value));
+        if (containers[index].cardinality() == cardinality) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+      * Adds the specified value to the set.
+      *
+      * @param value the value
+      * @return true if the set did not contain the value, false otherwise
+      */
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    /**
+      * Removes the specified value from the set.
+      *
+      * @param value the value
+      * @return true if the set contained the value, false otherwise
+      */
+    public boolean remove(int value) {
+        int index = findKey(high(value));
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int cardinality = container.cardinality();
+        containers[index] = container.remove(low(value));
+        if (containers[index].cardinality() == cardinality) {
+            return false;
+        }
+        size--;
+        if (containers[index].cardinality() == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    /**
+      * Removes the specified value from the set.
+      *
+      * @param value the value
+      * @return true if the set contained the value, false otherwise
+      */
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof Integer intValue && remove(intValue.intValue());
+    }
+
+    /**
+      * Adds all values of the specified collection to the set.
+      *
+      * @param values the values to add
+      * @return true if the set was changed, false otherwise
+      */
+    @Override
+    public boolean addAll(Collection<? extends Integer> values) {
+        if (values instanceof IntBitmap bitmap) {
+            IntBitmap union = or(this, bitmap);
+            boolean changed = union.size != size;
+            setContent(union);
+            return changed;
+        }
+        return super.addAll(values);
+    }
+
+    /**
+      * Removes all values from the set.
+      */
+    @Override
+    public void clear() {
+        Arrays.fill(containers, 0, containerCount, null);
+        containerCount = 0;
+        size = 0;
+    }
+
+    /**
+      * Performs the specified action for each value of the set (in ascending order, without boxing).
+      *
+      * @param action the action
+      */
+    public void forEachInt(IntConsumer action) {
+        for (int i = 0; i < containerCount; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+      * Returns all values of the set as an array (in ascending order).
+      *
+      * @return the array of values
+      */
+    public int[] toIntArray() {
+        int[] values = new int[size];
+        int[] count = new int[1];
+        forEachInt(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    /**
+      * Returns the first (lowest) value of the set.
+      *
+      * @return the first value
+      * @throws NoSuchElementException if the set is empty
+      */
+    public int first() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return (keys[0] << 16) | containers[0].next(0);
+    }
+
+    /**
+      * Creates a copy of the set.
+      *
+      * @return the copy of the set
+      */
+    public IntBitmap copy() {
+        IntBitmap copy = new IntBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(containerCount, 4));
+        copy.containers = new Container[copy.keys.length];
+        for (int i = 0; i < containerCount; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.containerCount = containerCount;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+      * Returns an iterator over the values of the set (in ascending order).
+      *
+      * @return the iterator
+      */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int containerIndex = 0;
+            private int nextLow = nextLow(0, 0);
+            private long last = -1L;
+
+            // finds the next value (lower 16 bits) starting with the specified container and the lower 16 bits
+            private int nextLow(int index, int fromLow) {
+                for (containerIndex = index; containerIndex < containerCount; containerIndex++) {
+                    int low = fromLow <= 0xFFFF ? containers[containerIndex].next(fromLow) : -1;
+                    if (low >= 0) {
+                        return low;
+                    }
+                    fromLow = 0;
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextLow >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (nextLow < 0) {
+                    throw new NoSuchElementException();
+                }
+                char high = keys[containerIndex];
+                int value = (high << 16) | nextLow;
+                last = value & 0xFFFFFFFFL;
+                nextLow = nextLow(containerIndex, nextLow + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                char nextHigh = nextLow >= 0 ? keys[containerIndex] : 0;
+                IntBitmap.this.remove((int) last);
+                last = -1L;
+                if (nextLow >= 0) {
+                    containerIndex = findKey(nextHigh); // the container of the removed value may have been removed
+                }
+            }
+        };
+    }
+
+    /**
+      * Returns the intersection of two sets (a new set).
+      *
+      * @param a the first set
+      * @param b the second set
+      * @return the set of values contained in both sets
+      */
+    public static IntBitmap and(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendContainer(a.keys[i], a.containers[i].and(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+      * Returns the union of two sets (a new set).
+      *
+      * @param a the first set
+      * @param b the second set
+      * @return the set of values contained in at least one of the sets
+      */
+    public static IntBitmap or(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            if (j >= b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                result.appendContainer(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i >= a.containerCount || a.keys[i] > b.keys[j]) {
+                result.appendContainer(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+      * Returns the union of many sets (a new set). The containers with the same key are merged
+      * into one bitmap of words, so every container is visited only once (unlike the repeated union of two sets,
+      * which copies the growing result for every set).
+      *
+      * @param sets the sets
+      * @return the set of values contained in at least one of the sets
+      */
+    public static IntBitmap or(Collection<IntBitmap> sets) {
+        int total = 0;
+        for (IntBitmap set : sets) {
+            total += set.containerCount;
+        }
+        char[] allKeys = new char[total];
+        Container[] allContainers = new Container[total];
+        long[] order = new long[total];  // the key in the upper bits, the index in the lower bits
+        int count = 0;
+        for (IntBitmap set : sets) {
+            for (int i = 0; i < set.containerCount; i++) {
+                allKeys[count] = set.keys[i];
+                allContainers[count] = set.containers[i];
+                order[count] = ((long) set.keys[i] << 32) | count;
+                count++;
+            }
+        }
+        Arrays.sort(order);
+
+        IntBitmap result = new IntBitmap();
+        int start = 0;
+        while (start < total) {
+            char key = allKeys[(int) order[start]];
+            int end = start + 1;
+            while (end < total && allKeys[(int) order[end]] == key) {
+                end++;
+            }
+            if (end - start == 1) {
+                result.appendContainer(key, allContainers[(int) order[start]].copy());
+            } else {
+                long[] words = new long[1024];
+                for (int i = start; i < end; i++) {
+                    allContainers[(int) order[i]].orInto(words);
+                }
+                result.appendContainer(key, BitmapContainer.normalized(words));
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+      * Returns the difference of two sets (a new set).
+      *
+      * @param a the first set
+      * @param b the second set
+      * @return the set of values contained in the first set but not in the second set
+      */
+    public static IntBitmap andNot(IntBitmap a, IntBitmap b) {
+        IntBitmap result = new IntBitmap();
+        int j = 0;
+        for (int i = 0; i < a.containerCount; i++) {
+            while (j < b.containerCount && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.containerCount && b.keys[j] == a.keys[i]) {
+                result.appendContainer(a.keys[i], a.containers[i].andNot(b.containers[j]));
+            } else {
+                result.appendContainer(a.keys[i], a.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+      * Gets the upper 16 bits of the value.
+      *
+      * @param value the value
+      * @return the upper 16 bits
+      */
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    /**
+      * Gets the lower 16 bits of the value.
+      *
+      * @param value the value
+      * @return the lower 16 bits
+      */
+    private static char low(int value) {
+        return (char) value;
+    }
+
+    /**
+      * Finds the container with the specified key (binary search).
+      *
+      * @param key the upper 16 bits of the values
+      * @return the index of the container, or (-(insertion point) - 1) if not found
+      */
+    private int findKey(char key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    /**
+      * Inserts a new container at the specified index.
+      *
+      * @param index the index
+      * @param key the upper 16 bits of the container values
+      * @param container the container
+      */
+    private void insertContainer(int index, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    /**
+      * Appends a container after the last container (if not empty).
+      *
+      * @param key the upper 16 bits of the container values (greater than all existing keys)
+      * @param container the container
+      */
+    private void appendContainer(char key, Container container) {
+        if (container.cardinality() > 0) {
+            insertContainer(containerCount, key, container);
+            size += container.cardinality();
+        }
+    }
+
+    /**
+      * Removes the container at the specified index.
+      *
+      * @param index the index
+      */
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    /**
+      * Replaces the content of the set by the content of another set.
+      *
+      * @param other the other set (it must not be used anymore)
+      */
+    private void setContent(IntBitmap other) {
+        keys = other.keys;
+        containers = other.containers;
+        containerCount = other.containerCount;
+        size = other.size;
+    }
+
+    /**
+      * Container of the lower 16 bits of the values with the same upper 16 bits.
+      * The modifying methods return the container which should be used from now on
+      * (the container is converted to another type when its size crosses the limit).
+      */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        // the smallest value greater than or equal to fromLow, or -1 if there is none
+        abstract int next(int fromLow);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract Container copy();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        // sets the bits of the values in the bitmap of 1024 words
+        abstract void orInto(long[] words);
+    }
+
+    /**
+      * Container storing the sorted array of values (used for up to 4096 values).
+      */
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_CONTAINER_MAX_SIZE) {
+                return toBitmap().add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(cardinality * 2, 4), ARRAY_CONTAINER_MAX_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int next(int fromLow) {
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) fromLow);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof ArrayContainer array) {
+                char[] result = new char[cardinality + array.cardinality];
+                int count = 0;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality || j < array.cardinality) {
+                    if (j >= array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                        result[count++] = values[i++];
+                    } else if (i >= cardinality || values[i] > array.values[j]) {
+                        result[count++] = array.values[j++];
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+                ArrayContainer union = new ArrayContainer(result, count);
+                return count > ARRAY_CONTAINER_MAX_SIZE ? union.toBitmap() : union;
+            }
+            return other.or(this);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+      * Container storing the bitmap of all 65536 possible values (used for more than 4096 values).
+      */
+    private static class BitmapContainer extends Container {
+        private long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        void set(char low) {
+            if (!contains(low)) {
+                words[low >>> 6] |= 1L << low;
+                cardinality++;
+            }
+        }
+
+        @Override
+        Container add(char low) {
+            set(low);
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            if (contains(low)) {
+                words[low >>> 6] &= ~(1L << low);
+                cardinality--;
+                if (cardinality <= ARRAY_CONTAINER_MAX_SIZE) {
+                    return toArray();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        int next(int fromLow) {
+            int index = fromLow >>> 6;
+            if (index >= words.length) {
+                return -1;
+            }
+            long word = words[index] & (-1L << fromLow);
+            while (word == 0) {
+                if (++index == words.length) {
+                    return -1;
+                }
+                word = words[index];
+            }
+            return index * 64 + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int index = 0; index < words.length; index++) {
+                long word = words[index];
+                while (word != 0) {
+                    action.accept(high | (index * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof BitmapContainer bitmap) {
+                long[] result = new long[words.length];
+                for (int i = 0; i < words.length; i++) {
+                    result[i] = words[i] & bitmap.words[i];
+                }
+                return normalized(result);
+            }
+            return other.and(this);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof BitmapContainer bitmap) {
+                for (int i = 0; i < words.length; i++) {
+                    result[i] |= bitmap.words[i];
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            }
+            return normalized(result);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            if (other instanceof BitmapContainer bitmap) {
+                for (int i = 0; i < words.length; i++) {
+                    result[i] &= ~bitmap.words[i];
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            }
+            return normalized(result);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= this.words[i];
+            }
+        }
+
+        ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int[] count = new int[1];
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, cardinality);
+        }
+
+        // creates the container of the right type for the bitmap
+        private static Container normalized(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+            return cardinality <= ARRAY_CONTAINER_MAX_SIZE ? bitmap.toArray() : bitmap;
+        }
+    }
+}
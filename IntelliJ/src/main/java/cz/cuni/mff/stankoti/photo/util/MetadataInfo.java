@@ -1,19 +1,43 @@
 package cz.cuni.mff.stankoti.photo.util;
 
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
   * This class is a supporting structure for one metadata tag.
+  * <p>
+  * The tag's directory and name are repeated in almost every file, so they are kept
+  * as codes of the global string dictionary (see {@link StringDictionary}).
+  * </p>
+  * <p>
+  * Two tags are equal if they have the same directory, name and value description.
+  * The whole set of tags of a file is summarized by a 64-bit digest (see {@link #digest(Collection)}),
+  * so two sets can be compared without comparing the tags one by one.
+  * </p>
   */
-public class MetadataInfo implements Serializable {  // implement the Serializable interface
+public class MetadataInfo {
     /**
-      * The metadata tag's directory.
+      * Canonical order of the tags (by the directory, the name and the value description), independent of the dictionary codes.
       */
-    private String directory;
+    public static final Comparator<MetadataInfo> ORDER = Comparator.comparing(MetadataInfo::getDirectory)
+                                                                   .thenComparing(MetadataInfo::getTag)
+                                                                   .thenComparing(MetadataInfo::getDescription);
+
+    /**
+      * The metadata tag's directory (string dictionary code).
+      */
+    private int directory;
     /**
-      * The metadata tag's name.
+      * The metadata tag's name (string dictionary code).
       */
-    private String tag;
+    private int tag;
     /**
       * A description of the tag's value.
       */
@@ -39,6 +63,15 @@ public class MetadataInfo implements Serializable {  // implement the Serializab
       * @return the tag's directory
       */
     public String getDirectory() {
+        return StringDictionary.string(directory);
+    }
+
+    /**
+      * Gets the string dictionary code of the metadata tag's directory.
+      *
+      * @return the code of the tag's directory
+      */
+    public int getDirectoryCode() {
         return directory;
     }
 
@@ -49,7 +82,7 @@ public class MetadataInfo implements Serializable {  // implement the Serializab
       * @param directory the tag's directory
       */
     public void setDirectory(String directory) {
-        this.directory = (directory != null) ? directory : "";
+        this.directory = StringDictionary.code((directory != null) ? directory : "");
     }
 
     /**
@@ -58,6 +91,15 @@ public class MetadataInfo implements Serializable {  // implement the Serializab
       * @return the tag's name
       */
     public String getTag() {
+        return StringDictionary.string(tag);
+    }
+
+    /**
+      * Gets the string dictionary code of the metadata tag's name.
+      *
+      * @return the code of the tag's name
+      */
+    public int getTagCode() {
         return tag;
     }
 
@@ -68,7 +110,7 @@ public class MetadataInfo implements Serializable {  // implement the Serializab
       * @param tag the tag's name
       */
     public void setTag(String tag) {
-        this.tag = (tag != null) ? tag : "";
+        this.tag = StringDictionary.code((tag != null) ? tag : "");
     }
 
     /**
@@ -89,4 +131,83 @@ public class MetadataInfo implements Serializable {  // implement the Serializab
     public void setDescription(String description) {
         this.description = (description != null) ? description : "";
     }
+
+    /**
+      * Calculates the digest of a set of tags (XXH64 of the tags in the canonical order).
+      * The digest does not depend on the order of the set or on the dictionary codes, so it can be stored
+      * in the database and compared with the digest of the tags read later (or in another run of the application).
+      *
+      * @param metadata the set of tags
+      * @return the digest of the set
+      */
+    public static long digest(Collection<MetadataInfo> metadata) {
+        List<MetadataInfo> sorted = new ArrayList<>(metadata);
+        sorted.sort(ORDER);
+        XXHash64 hash = new XXHash64();
+        for (MetadataInfo metadataInfo : sorted) {
+            update(hash, metadataInfo.getDirectory());
+            update(hash, metadataInfo.getTag());
+            update(hash, metadataInfo.getDescription());
+        }
+        return hash.getValue();
+    }
+
+    /**
+      * Gets the tags of the first set which are not in the second set (used to show what has changed
+      * when the digests of the sets differ).
+      *
+      * @param metadata the first set of tags
+      * @param other the second set of tags
+      * @return the list of the tags missing in the second set, in the canonical order
+      */
+    public static List<MetadataInfo> difference(Collection<MetadataInfo> metadata, Collection<MetadataInfo> other) {
+        Set<MetadataInfo> otherSet = other instanceof Set<MetadataInfo> set ? set : new HashSet<>(other);
+        List<MetadataInfo> difference = new ArrayList<>();
+        for (MetadataInfo metadataInfo : metadata) {
+            if (!otherSet.contains(metadataInfo)) {
+                difference.add(metadataInfo);
+            }
+        }
+        difference.sort(ORDER);
+        return difference;
+    }
+
+    /**
+      * Adds one string to the digest (its length first, so the boundaries of the strings are part of the digest).
+      *
+      * @param hash the digest being calculated
+      * @param value the string
+      */
+    private static void update(XXHash64 hash, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        hash.update(ByteBuffer.allocate(4).putInt(bytes.length).array(), 0, 4);
+        hash.update(bytes, 0, bytes.length);
+    }
+
+    /**
+      * Checks if the tag is equal to another object (the same directory, name and value description).
+      *
+      * @param o the object to compare with
+      * @return true if the object is an equal tag, false otherwise
+      */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MetadataInfo other)) {
+            return false;
+        }
+        return directory == other.directory && tag == other.tag && description.equals(other.description);
+    }
+
+    /**
+      * Gets the hash code of the tag (consistent with {@link #equals(Object)}).
+      *
+      * @return the hash code
+      */
+    @Override
+    public int hashCode() {
+        return Objects.hash(directory, tag, description);
+    }
 }
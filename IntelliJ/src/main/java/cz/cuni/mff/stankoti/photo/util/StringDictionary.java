@@ -0,0 +1,107 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+  * This class is a global string dictionary (intern table) mapping frequently repeated strings
+  * (file locations, extensions, keywords, metadata directory and tag names) to int codes.
+  * <p>
+  * Every distinct string is stored only once and the objects referencing it keep just its code.
+  * The codes are assigned in increasing order (code 0 is the empty string) and are never reused,
+  * so they are valid only while the program is running. The database file stores the strings
+  * themselves (in the string section of the catalog, see {@code DBCatalog}).
+  * </p>
+  * <p>
+  * The dictionary is thread-safe; looking up a string or a code is lock-free.
+  * </p>
+  */
+public final class StringDictionary {
+    /**
+      * Code returned by {@link #find(String)} for a string not contained in the dictionary.
+      */
+    public static final int NOT_FOUND = -1;
+
+    /**
+      * Mapping of the strings to their codes.
+      */
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    /**
+      * Strings indexed by their codes (replaced by a larger copy when full).
+      */
+    private static volatile String[] strings = new String[1024];
+    /**
+      * Number of strings in the dictionary.
+      */
+    private static volatile int size = 0;
+
+    static {
+        code("");
+    }
+
+    /**
+      * Private constructor (the class only has static members).
+      */
+    private StringDictionary() {
+    }
+
+    /**
+      * Gets the code of the specified string, adding the string to the dictionary if necessary.
+      *
+      * @param value the string
+      * @return the code of the string
+      */
+    public static int code(String value) {
+        assert value != null : "String must not be null!";
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (StringDictionary.class) {
+            code = codes.get(value);
+            if (code == null) {
+                code = size;
+                String[] current = strings;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = value;
+                strings = current;
+                size = code + 1;
+                codes.put(value, code);  // published last, so the code can always be resolved
+            }
+            return code;
+        }
+    }
+
+    /**
+      * Gets the code of the specified string without adding it to the dictionary.
+      *
+      * @param value the string
+      * @return the code of the string, or {@link #NOT_FOUND} if the string is not in the dictionary
+      */
+    public static int find(String value) {
+        Integer code = value != null ? codes.get(value) : null;
+        return code != null ? code : NOT_FOUND;
+    }
+
+    /**
+      * Gets the string with the specified code.
+      *
+      * @param code the code of the string
+      * @return the string
+      */
+    public static String string(int code) {
+        assert code >= 0 && code < size : "Invalid string code!";
+        return strings[code];
+    }
+
+    /**
+      * Gets the number of strings in the dictionary.
+      *
+      * @return the number of strings
+      */
+    public static int size() {
+        return size;
+    }
+}
@@ -0,0 +1,247 @@
+package cz.cuni.mff.stankoti.photo.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+  * This class calculates the XXH64 hash (fast non-cryptographic 64-bit hash) of a stream of bytes.
+  * <p>
+  * It implements the {@link Checksum} interface, so it can be used in the same way as CRC32
+  * (e.g. with {@link java.util.zip.CheckedInputStream}). The input is processed in 32-byte stripes,
+  * the bytes of an incomplete stripe are kept until the next update. Direct buffers are read in place (not copied).
+  * </p>
+  */
+public class XXHash64 implements Checksum {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /**
+      * Little-endian view of a byte array as longs.
+      */
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+      * Little-endian view of a byte array as ints.
+      */
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+      * Little-endian view of a byte buffer as longs.
+      */
+    private static final VarHandle BUFFER_LONG_LE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+      * Seed of the hash.
+      */
+    private final long seed;
+    /**
+      * The four accumulators (lanes).
+      */
+    private long v1, v2, v3, v4;
+    /**
+      * Total number of bytes processed.
+      */
+    private long totalLength;
+    /**
+      * Bytes of the incomplete stripe.
+      */
+    private final byte[] stripe = new byte[32];
+    /**
+      * Number of bytes in the incomplete stripe.
+      */
+    private int stripeLength;
+
+    /**
+      * Creates a new hash with seed 0.
+      */
+    public XXHash64() {
+        this(0L);
+    }
+
+    /**
+      * Creates a new hash with the specified seed.
+      *
+      * @param seed the seed
+      */
+    public XXHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+      * Updates the hash with one byte (the byte is added to the incomplete stripe, no array is allocated).
+      *
+      * @param b the byte (the lowest 8 bits)
+      */
+    @Override
+    public void update(int b) {
+        totalLength++;
+        stripe[stripeLength++] = (byte) b;
+        if (stripeLength == 32) {
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+    }
+
+    /**
+      * Updates the hash with the specified bytes.
+      *
+      * @param b the byte array
+      * @param off the start offset of the bytes
+      * @param len the number of bytes
+      */
+    @Override
+    public void update(byte[] b, int off, int len) {
+        totalLength += len;
+        int end = off + len;
+
+        if (stripeLength > 0) {
+            int count = Math.min(32 - stripeLength, len);
+            System.arraycopy(b, off, stripe, stripeLength, count);
+            stripeLength += count;
+            off += count;
+            if (stripeLength < 32) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+
+        while (end - off >= 32) {
+            processStripe(b, off);
+            off += 32;
+        }
+
+        if (off < end) {
+            System.arraycopy(b, off, stripe, 0, end - off);
+            stripeLength = end - off;
+        }
+    }
+
+    /**
+      * Updates the hash with the remaining bytes of the buffer (the buffer position is moved to its limit).
+      *
+      * @param buffer the buffer
+      */
+    @Override
+    public void update(ByteBuffer buffer) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + position, limit - position);
+            buffer.position(limit);
+            return;
+        }
+
+        totalLength += limit - position;
+        buffer.position(limit);
+
+        if (stripeLength > 0) {
+            int count = Math.min(32 - stripeLength, limit - position);
+            buffer.get(position, stripe, stripeLength, count);
+            stripeLength += count;
+            position += count;
+            if (stripeLength < 32) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+
+        while (limit - position >= 32) {
+            v1 = round(v1, (long) BUFFER_LONG_LE.get(buffer, position));
+            v2 = round(v2, (long) BUFFER_LONG_LE.get(buffer, position + 8));
+            v3 = round(v3, (long) BUFFER_LONG_LE.get(buffer, position + 16));
+            v4 = round(v4, (long) BUFFER_LONG_LE.get(buffer, position + 24));
+            position += 32;
+        }
+
+        if (position < limit) {
+            buffer.get(position, stripe, 0, limit - position);
+            stripeLength = limit - position;
+        }
+    }
+
+    /**
+      * Gets the hash of all bytes processed so far (the hash can still be updated).
+      *
+      * @return the hash value
+      */
+    @Override
+    public long getValue() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += totalLength;
+
+        int i = 0;
+        for (; i + 8 <= stripeLength; i += 8) {
+            hash ^= round(0L, (long) LONG_LE.get(stripe, i));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= stripeLength) {
+            hash ^= (Integer.toUnsignedLong((int) INT_LE.get(stripe, i))) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < stripeLength; i++) {
+            hash ^= (stripe[i] & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /**
+      * Resets the hash to its initial state.
+      */
+    @Override
+    public void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        totalLength = 0L;
+        stripeLength = 0;
+    }
+
+    /**
+      * Processes one 32-byte stripe.
+      *
+      * @param b the byte array
+      * @param off the start offset of the stripe
+      */
+    private void processStripe(byte[] b, int off) {
+        v1 = round(v1, (long) LONG_LE.get(b, off));
+        v2 = round(v2, (long) LONG_LE.get(b, off + 8));
+        v3 = round(v3, (long) LONG_LE.get(b, off + 16));
+        v4 = round(v4, (long) LONG_LE.get(b, off + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0L, value);
+        return accumulator * PRIME1 + PRIME4;
+    }
+}
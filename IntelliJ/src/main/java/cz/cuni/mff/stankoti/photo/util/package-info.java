@@ -6,6 +6,13 @@
   * <ul>
   *     <li><code>{@link FileSystem}</code> – A class with methods for file system access and reading directories, files, and metadata information.</li>
   *     <li><code>{@link MetadataInfo}</code> – This class is a supporting structure for one metadata tag.</li>
+  *     <li><code>{@link IntBitmap}</code> – A compressed set of int values (file IDs) with fast set operations (Roaring-style bitmap).</li>
+  *     <li><code>{@link StringDictionary}</code> – A global string dictionary mapping frequently repeated strings to int codes.</li>
+  *     <li><code>{@link HashAlgorithm}</code> – Enum representing the algorithms used for the file checksums (CRC32, CRC32C, XXH64, SHA-256).</li>
+  *     <li><code>{@link ChecksumEngine}</code> – This class calculates the checksums of files read through a file channel into direct buffers.</li>
+  *     <li><code>{@link XXHash64}</code> – This class calculates the XXH64 hash (fast non-cryptographic 64-bit hash).</li>
+  *     <li><code>{@link DateRange}</code> – A range of file timestamps (a day, a month or a year) and the conversion and formatting of the timestamps.</li>
+  *     <li><code>{@link ContentComparator}</code> – This class splits a group of files into classes of identical files (all files are read at once in lockstep).</li>
   * </ul>
   */
   package cz.cuni.mff.stankoti.photo.util;
@@ -0,0 +1,91 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.ChecksumEngine;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+  * Throughput benchmark of the checksum calculation (not run by the unit tests).
+  * <p>
+  * Compares the original stream-based reading (8 KB heap buffer behind a buffered stream)
+  * with the {@link ChecksumEngine} (file channel, large direct buffer) for every checksum algorithm.
+  * Usage: {@code ChecksumBenchmark [<size-in-MB> [<file>]]} (a temporary file with random content is used by default).
+  * The file is read several times, so the results show the speed of reading from the page cache.
+  * </p>
+  */
+public class ChecksumBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        Path file = args.length > 1 ? Path.of(args[1]) : createFile(sizeMB);
+        long size = Files.size(file);
+        System.out.printf("File: %s (%.1f MB)%n", file, size / 1048576.0);
+
+        ChecksumEngine engine = new ChecksumEngine();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            long streamValue = 0L;
+            long engineValue = 0L;
+            long streamTime = Long.MAX_VALUE;
+            long engineTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                streamValue = streamChecksum(file, algorithm);
+                streamTime = Math.min(streamTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                engineValue = engine.checksum(file, algorithm);
+                engineTime = Math.min(engineTime, System.nanoTime() - start);
+            }
+            if (streamValue != engineValue) {
+                throw new IllegalStateException(algorithm.getDisplayName() + ": different checksums!");
+            }
+            System.out.printf("%-8s stream %8.1f MB/s   engine %8.1f MB/s   (%.2fx)%n", algorithm.getDisplayName(),
+                              throughput(size, streamTime), throughput(size, engineTime), (double) streamTime / engineTime);
+        }
+
+        if (args.length <= 1) {
+            Files.delete(file);
+        }
+    }
+
+    /**
+      * Calculates the checksum the original way (stream with an 8 KB heap buffer).
+      */
+    private static long streamChecksum(Path file, HashAlgorithm algorithm) throws IOException {
+        Checksum checksum = algorithm.newChecksum();
+        byte[] buffer = new byte[8192];
+        try (CheckedInputStream stream = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file.toFile())), checksum)) {
+            while (stream.read(buffer) != -1) {
+                // only the checksum is updated
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private static Path createFile(int sizeMB) throws IOException {
+        Path file = Files.createTempFile("photo-benchmark", ".bin");
+        byte[] block = new byte[1 << 20];
+        Random random = new Random(1);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < sizeMB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        return file;
+    }
+
+    private static double throughput(long size, long nanos) {
+        return size / 1048576.0 / (nanos / 1e9);
+    }
+}
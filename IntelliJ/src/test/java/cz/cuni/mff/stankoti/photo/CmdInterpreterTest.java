@@ -0,0 +1,66 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.controller.CmdInterpreter;
+import cz.cuni.mff.stankoti.photo.controller.Command;
+import cz.cuni.mff.stankoti.photo.controller.FilePipeline;
+import cz.cuni.mff.stankoti.photo.db.DB;
+import cz.cuni.mff.stankoti.photo.db.DBFile;
+import cz.cuni.mff.stankoti.photo.util.FileSystem;
+import cz.cuni.mff.stankoti.photo.view.View;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CmdInterpreterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void ScanTouchedFile() throws Exception {
+        Path photo = tempDir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", photo.toFile());
+        long modified = 1688212800000L;
+        Files.setLastModifiedTime(photo, FileTime.fromMillis(modified));
+
+        String filename = tempDir.resolve("photo.db").toString();
+        DB db = new DB(filename);
+        CmdInterpreter interpreter = new CmdInterpreter(db, new View());
+        interpreter.executeCommand(new Command("ADD", new String[] {photo.toString()}));
+        int fileID = db.getFileIDs(photo.toString(), 'F').iterator().next();
+        db.SaveDB();
+
+        // the file is touched, its content and timestamp (in seconds) stay the same
+        Files.setLastModifiedTime(photo, FileTime.fromMillis(modified + 400));
+        FileSystem fileSystem = new FileSystem();
+        assertFalse(FileSystem.isUnchanged(fileSystem.getFileEntry(photo.toString()).entry(), db.getFile(fileID)));
+
+        interpreter.executeCommand(new Command("SCAN", new String[] {photo.toString()}));
+        assertEquals(Set.of(), db.getFile(fileID).getKeywords());
+        assertEquals(modified + 400, db.getFile(fileID).getLastModified());
+
+        // the next SCAN compares only the attributes, the file is not read
+        AtomicInteger read = new AtomicInteger();
+        new FilePipeline(fileSystem).scan(List.of(db.getFile(fileID)), file -> false,
+                                          (dbFile, currentFile) -> read.incrementAndGet() < 0, scanInfo -> {});
+        assertEquals(0, read.get());
+
+        // the new attributes are journaled
+        db.SaveDB();
+        assertEquals(modified + 400, new DB(filename).getFile(fileID).getLastModified());
+
+        // a file read by an older version (without the last modification time) is compared by the size and timestamp
+        DBFile file = db.getFile(fileID);
+        DBFile legacy = new DBFile(fileID, file.getFullpath(), file.getLocation(), file.getFilename(), file.getExtension(),
+                                   file.getTimestamp(), file.getSize(), file.getChecksum(), null, null);
+        assertTrue(FileSystem.isUnchanged(fileSystem.getFileEntry(photo.toString()).entry(), legacy));
+    }
+}
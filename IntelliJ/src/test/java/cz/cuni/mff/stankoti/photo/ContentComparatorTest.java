@@ -0,0 +1,54 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.ContentComparator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentComparatorTest {
+    @Test
+    public void Partition() throws IOException {
+        byte[] data = new byte[3_000_000];  // more than one read block
+        new Random(11).nextBytes(data);
+        byte[] lastByteChanged = data.clone();
+        lastByteChanged[data.length - 1] ^= 1;
+
+        Path directory = Files.createTempDirectory("photo-compare");
+        List<Path> paths = new ArrayList<>();
+        try {
+            paths.add(write(directory, "a1", data));
+            paths.add(write(directory, "b", lastByteChanged));
+            paths.add(write(directory, "a2", data));
+            paths.add(write(directory, "prefix", Arrays.copyOf(data, 100_000)));
+            paths.add(write(directory, "empty1", new byte[0]));
+            paths.add(directory.resolve("missing"));
+            paths.add(write(directory, "empty2", new byte[0]));
+            paths.add(write(directory, "a3", data));
+
+            ContentComparator comparator = new ContentComparator();
+            List<List<Integer>> classes = comparator.partition(paths);
+            assertEquals(List.of(List.of(0, 2, 7), List.of(1), List.of(3), List.of(4, 6)), classes,
+                         "The files should be split into classes of identical files, the missing file should be skipped.");
+
+            // the read buffers of the previous comparison are reused
+            assertEquals(List.of(List.of(0), List.of(1, 3), List.of(2)),
+                         comparator.partition(List.of(paths.get(3), paths.get(0), paths.get(1), paths.get(7))));
+        } finally {
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static Path write(Path directory, String name, byte[] content) throws IOException {
+        return Files.write(directory.resolve(name), content);
+    }
+}
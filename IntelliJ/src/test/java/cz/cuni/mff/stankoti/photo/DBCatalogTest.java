@@ -0,0 +1,192 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DBCatalog;
+import cz.cuni.mff.stankoti.photo.db.DBData;
+import cz.cuni.mff.stankoti.photo.db.DBFile;
+import cz.cuni.mff.stankoti.photo.db.DBMappedCatalog;
+import cz.cuni.mff.stankoti.photo.db.DBMetadataIndex;
+import cz.cuni.mff.stankoti.photo.db.legacy.LegacyDBReader;
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBCatalogTest {
+    @TempDir
+    Path tempDir;
+
+    private static DBFile file(int id, String location, String name, long size, long checksum,
+                               Set<String> keywords, Set<MetadataInfo> metadata) {
+        return new DBFile(id, location + "/" + name + ".jpg", location, name, "jpg",
+                          "20230701 120000", size, checksum, keywords, metadata);
+    }
+
+    private static DBData mappedCatalogData() {
+        DBData data = new DBData();
+        String[] timestamps = {"20230701 120000", "20221231 235959", "20230701 120000", "20240115 080000", "20230315 100000"};
+        long[] sizes = {500, 100, 300, 100, 2000};
+        String[] isos = {"100", "400", "800", "400", "3200"};
+        for (int i = 0; i < timestamps.length; i++) {
+            String location = i < 3 ? "/photos/2023" : "/photos/2024";
+            String extension = i < 4 ? "jpg" : "JPG";
+            data.loadFile(new DBFile(i + 1, location + "/f" + i + "." + extension, location, "f" + i, extension, timestamps[i],
+                                     sizes[i], i, null, Set.of(new MetadataInfo("Exif SubIFD", "ISO Speed Ratings", isos[i]),
+                                                               new MetadataInfo("Exif IFD0", "Model", i % 2 == 0 ? "Canon" : "Nikon"),
+                                                               new MetadataInfo("File", "File Size", sizes[i] + " bytes"))));
+        }
+        return data;
+    }
+
+    @Test
+    public void WriteAndReadCatalog() throws Exception {
+        DBData data = new DBData();
+        data.setHashAlgorithm(HashAlgorithm.XXH64);
+        data.loadFile(file(1, "/photos/2023", "a", 100, 7, Set.of("HOLIDAY", "SEA"),
+                           Set.of(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"))));
+        data.loadFile(file(2, "/photos/2023", "b", 100, 7, Set.of("HOLIDAY"),
+                           Set.of(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"))));
+        data.loadFile(file(3, "/photos/2024", "c", 100, 8, Set.of(), Set.of()));
+        data.loadFile(file(5, "/photos/2024", "d", 2000, 9, Set.of("CAT"), Set.of()));
+        data.joinDuplicates(IntBitmap.of(1, 2));
+        data.joinPotentialDuplicates(IntBitmap.of(1, 2, 3));
+        data.getFile(1).setChecksumAlgorithm(HashAlgorithm.XXH64);
+        data.getFile(2).setChecksumAlgorithm(HashAlgorithm.XXH64);
+        data.getFile(3).setChecksumAlgorithm(HashAlgorithm.SHA256);
+        data.getFile(1).setLastModified(1688212800000L);
+        data.getFile(1).setFileKey(42);
+        data.getFile(1).setMetadataDigest(0x1234_5678_9abcL);
+
+        String filename = tempDir.resolve("photo.db").toString();
+        DBCatalog catalog = new DBCatalog(filename);
+        catalog.write(data, 3L);
+        assertFalse(Files.exists(Path.of(filename + ".tmp")), "The temporary file should be replaced.");
+
+        DBCatalog readCatalog = new DBCatalog(filename);
+        DBData read = readCatalog.read();
+        assertEquals(3L, readCatalog.getGeneration());
+        assertEquals(HashAlgorithm.XXH64, read.getHashAlgorithm());
+        assertEquals(4, read.getFileCount());
+        assertEquals(5, read.getLastFileID());
+        assertEquals(IntBitmap.of(1, 2, 3, 5), read.getFileIDs());
+        assertEquals(data.getDBStatistics(), read.getDBStatistics());
+
+        for (int fileID : data.getFileIDs().toIntArray()) {
+            DBFile expected = data.getFile(fileID);
+            DBFile actual = read.getFile(fileID);
+            assertEquals(expected.getFullpath(), actual.getFullpath());
+            assertEquals(expected.getLocation(), actual.getLocation());
+            assertEquals(expected.getFilename(), actual.getFilename());
+            assertEquals(expected.getExtension(), actual.getExtension());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getChecksum(), actual.getChecksum());
+            assertEquals(expected.getChecksumAlgorithm(), actual.getChecksumAlgorithm());
+            assertEquals(expected.getLastModified(), actual.getLastModified());
+            assertEquals(expected.getFileKey(), actual.getFileKey());
+            assertEquals(expected.getMetadataDigest(), actual.getMetadataDigest());
+            assertEquals(expected.getKeywords(), actual.getKeywords());
+            assertEquals(expected.getMetadata(), actual.getMetadata());
+            assertEquals(expected.getDuplicates(), actual.getDuplicates());
+            assertEquals(expected.getPotentialDuplicates(), actual.getPotentialDuplicates());
+        }
+
+        assertEquals(List.of("CAT", "HOLIDAY", "SEA"), read.getKeywords());
+        assertEquals(IntBitmap.of(1, 2), read.getFileIDsWithKeyword("HOLIDAY"));
+        assertEquals(List.of("/photos/2023", "/photos/2024"), read.getDirectories());
+        assertEquals(IntBitmap.of(3, 5), read.getFileIDsInLocation("/photos/2024"));
+        assertEquals(2, read.getFileID("/photos/2023/b.jpg"));
+        assertSame(read.getFile(1).getDuplicateCluster(), read.getFile(2).getDuplicateCluster());
+        assertNull(read.getFile(5).getPotentialDuplicateCluster());
+    }
+
+    @Test
+    public void ReadMappedCatalog() throws Exception {
+        String filename = tempDir.resolve("photo.db").toString();
+        new DBCatalog(filename).write(mappedCatalogData(), 1L);
+
+        DBMappedCatalog catalog = new DBMappedCatalog(filename);
+        assertTrue(catalog.hasQueryIndexes());
+        assertEquals(List.of(2, 5, 1, 3, 4), catalog.getFileIDsInDateRange(DateRange.ALL));
+        assertEquals(List.of(5, 1, 3), catalog.getFileIDsInDateRange(DateRange.parse("2023")));
+        assertEquals(List.of(1, 3), catalog.getFileIDsInDateRange(DateRange.parse("1.7.2023")));
+        assertEquals(3, catalog.getFileCountInDateRange(DateRange.parse("2023")));
+        assertTrue(catalog.getFileIDsInDateRange(DateRange.parse("2025")).isEmpty());
+        assertEquals(0, catalog.getFileCountInDateRange(DateRange.parse("2025")));
+
+        assertEquals(List.of(2, 4, 3, 1), catalog.getFileIDsInSizeRange(100, 500));
+        assertEquals(2, catalog.getFileCountInSizeRange(200, 1000));
+        assertEquals(List.of(5, 1, 3), catalog.getFileIDsBySize(3, true));
+        assertEquals(List.of(2, 4, 3), catalog.getFileIDsBySize(3, false));
+        assertEquals(List.of(5, 1, 3, 2, 4), catalog.getFileIDsBySize(10, true));  // files of the same size ordered by ID
+        assertEquals(2000L, catalog.getFileSize(5));
+        assertEquals(-1L, catalog.getFileSize(6));
+        assertEquals(List.of(new DBData.DirectoryTotal("/photos/2023", 3, 900), new DBData.DirectoryTotal("/photos/2024", 2, 2100)),
+                     catalog.getDirectoryTotals());
+
+        assertEquals(IntBitmap.of(1, 2, 3, 4, 5), catalog.getFileIDsInTree("/photos"));
+        assertEquals(2, catalog.getFileCountInTree("/photos/2024"));
+        assertNull(catalog.getFileIDsInTree("/photo"));
+        assertEquals(List.of("JPG", "jpg"), catalog.getExtensions());
+        assertEquals(IntBitmap.of(1, 2, 3, 4), catalog.getFileIDsWithExtension("jpg"));
+        assertEquals(IntBitmap.of(3), catalog.getFileIDsWithFilename("f2"));
+        assertNull(catalog.getFileIDsWithFilename("f5"));
+
+        assertEquals(IntBitmap.of(1, 3, 5), catalog.getFileIDsWithMetadata("Exif IFD0", "Model", "Canon"));
+        assertEquals(IntBitmap.of(2, 4), catalog.getFileIDsWithMetadata(null, "Model", "Nikon"));
+        assertTrue(catalog.getFileIDsWithMetadata("Exif SubIFD", "Model", "Canon").isEmpty());
+        assertTrue(catalog.getFileIDsWithMetadata(null, "Make", "Canon").isEmpty());
+        assertNull(catalog.getFileIDsWithMetadata(null, "File Size", "100 bytes"));  // the tag is not indexed
+        assertEquals(IntBitmap.of(2, 3, 4), catalog.getFileIDsInMetadataRange(DBMetadataIndex.Column.ISO, 400, true, 800, true));
+        assertEquals(IntBitmap.of(3), catalog.getFileIDsInMetadataRange(DBMetadataIndex.Column.ISO, 400, false, 800, true));
+        assertEquals(4, catalog.getFileCountInMetadataRange(DBMetadataIndex.Column.ISO, 400, true, Double.POSITIVE_INFINITY, true));
+        assertEquals(0, catalog.getFileCountInMetadataRange(DBMetadataIndex.Column.ISO, 400, false, 400, true));
+        assertTrue(catalog.getFileIDsInMetadataRange(DBMetadataIndex.Column.F_NUMBER, 0, true, 100, true).isEmpty());
+    }
+
+    @Test
+    public void ConvertLegacyDatabase() throws Exception {
+        Path filename = tempDir.resolve("legacy.pdb");
+        try (InputStream in = DBCatalogTest.class.getResourceAsStream("/legacy_photo_db.pdb")) {
+            assertNotNull(in, "The legacy database fixture should be on the classpath.");
+            Files.copy(in, filename);
+        }
+        assertTrue(LegacyDBReader.isLegacyFormat(filename.toString()));
+
+        DBData data = LegacyDBReader.read(filename.toString());
+        assertEquals(Map.of("FILES", 5, "DIRS", 2, "KEYS", 3, "DUPS", 0, "DUP?S", 2), data.getDBStatistics());
+        assertEquals(IntBitmap.of(1, 2, 3, 4, 5), data.getFileIDs());
+        assertEquals(List.of("/p/d0", "/p/d1"), data.getDirectories());
+        assertEquals(IntBitmap.of(2), data.getFileIDsWithKeyword("HOLIDAY"));
+        assertEquals(IntBitmap.of(3), data.getFileIDsWithKeyword("CAT"));
+
+        DBFile file = data.getFile(1);
+        assertEquals("/p/d1/f1.jpg", file.getFullpath());
+        assertEquals("/p/d1", file.getLocation());
+        assertEquals("f1", file.getFilename());
+        assertEquals("jpg", file.getExtension());
+        assertEquals(100L, file.getSize());
+        assertEquals(7L, file.getChecksum());
+        assertEquals(HashAlgorithm.CRC32, file.getChecksumAlgorithm());
+        assertEquals(Set.of(new MetadataInfo("Exif IFD0", "Model", "Canon 1"), new MetadataInfo("File", "Size", "10")),
+                     file.getMetadata());
+        assertTrue(file.getPotentialDuplicates().isEmpty());
+        assertEquals(IntBitmap.of(3), data.getFile(2).getPotentialDuplicates());
+        assertEquals(Set.of("DUP?", "HOLIDAY"), data.getFile(2).getKeywords());
+
+        // the converted database is written and read in the current format
+        DBCatalog catalog = new DBCatalog(tempDir.resolve("photo.db").toString());
+        catalog.write(data, 1L);
+        assertFalse(LegacyDBReader.isLegacyFormat(tempDir.resolve("photo.db").toString()));
+        assertEquals(data.getDBStatistics(), catalog.read().getDBStatistics());
+    }
+}
@@ -0,0 +1,73 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DBCodeIndex;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBCodeIndexTest {
+    @Test
+    public void AddRemoveKeys() {
+        DBCodeIndex index = new DBCodeIndex();
+        index.add("jpg", 1);
+        index.add("png", 2);
+        index.add("jpg", 3);
+        assertEquals(2, index.size());
+        assertEquals(IntBitmap.of(1, 3), index.get("jpg"));
+        assertEquals(List.of("jpg", "png"), index.keys());
+        assertSame(index.keys(), index.keys(), "The sorted keys should be kept.");
+        assertNull(index.get("gif"));
+        assertNull(index.get(StringDictionary.NOT_FOUND));
+
+        index.remove("jpg", 1);
+        assertEquals(IntBitmap.of(3), index.get("jpg"));
+        index.remove("jpg", 3);
+        assertNull(index.get("jpg"));
+        assertEquals(List.of("png"), index.keys());
+        index.remove("gif", 3);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void CompareWithMap() {
+        Random random = new Random(7);
+        DBCodeIndex index = new DBCodeIndex();
+        Map<String, TreeSet<Integer>> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + random.nextInt(500);
+            int fileID = random.nextInt(20) + 1;
+            if (random.nextInt(3) == 0) {
+                index.remove(key, fileID);
+                if (expected.containsKey(key)) {
+                    expected.get(key).remove(fileID);
+                    if (expected.get(key).isEmpty()) {
+                        expected.remove(key);
+                    }
+                }
+            } else {
+                index.add(key, fileID);
+                expected.computeIfAbsent(key, k -> new TreeSet<>()).add(fileID);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(new ArrayList<>(new TreeSet<>(expected.keySet())), index.keys());
+        for (int k = 0; k < 500; k++) {
+            String key = "key" + k;
+            IntBitmap fileIDs = index.get(key);
+            if (expected.containsKey(key)) {
+                assertArrayEquals(expected.get(key).stream().mapToInt(Integer::intValue).toArray(), fileIDs.toIntArray());
+            } else {
+                assertNull(fileIDs, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DB;
+import cz.cuni.mff.stankoti.photo.db.DBCatalog;
+import cz.cuni.mff.stankoti.photo.db.DBFile;
+import cz.cuni.mff.stankoti.photo.db.DBJournal;
+import cz.cuni.mff.stankoti.photo.status.StatusCode;
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBJournalTest {
+    @TempDir
+    Path tempDir;
+
+    private static DBFile file(String name, long size, long checksum) {
+        // the ID is replaced by the next free file ID when the file is added to the database
+        return new DBFile(1, "/photos/" + name + ".jpg", "/photos", name, "jpg", "20230701 120000", size, checksum,
+                          null, Set.of(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5")));
+    }
+
+    private String newDatabase() {
+        String filename = tempDir.resolve("photo.db").toString();
+        DB db = new DB(filename);
+        assertEquals(StatusCode.DB_FILE_DOES_NOT_EXIST, db.getStatusCode());
+        db.addFile(file("a", 100, 1));
+        db.addFile(file("b", 200, 2));
+        db.SaveDB(); // the whole database file is written, the journal is empty
+        assertEquals(StatusCode.NO_ERROR, db.getStatusCode());
+        return filename;
+    }
+
+    @Test
+    public void ReplayRecords() {
+        String filename = newDatabase();
+        DB db = new DB(filename);
+        db.addKeyword("HOLIDAY", 1);
+        db.addFile(file("c", 300, 3));
+        db.addFile(file("d", 300, 3)); // potential duplicate of c
+        db.removeKeyword("HOLIDAY", 1);
+        db.addKeyword("SEA", 1);
+        db.removeFile(2);
+        db.setHashAlgorithm(HashAlgorithm.XXH64);
+        db.SaveDB();
+        assertEquals(StatusCode.NO_ERROR, db.getStatusCode());
+        assertTrue(db.getJournalSize() > 0);
+
+        DB read = new DB(filename);
+        assertEquals(StatusCode.NO_ERROR, read.getStatusCode());
+        assertEquals(0, read.getRecoveredChanges());
+        assertTrue(read.isSaved());
+        assertEquals(db.getDBStatistics(), read.getDBStatistics());
+        assertEquals(List.of("DUP?", "SEA"), read.getKeywords());
+        assertEquals(Set.of("SEA"), read.getFile(1).getKeywords());
+        assertNull(read.getFile(2));
+        assertEquals("/photos/d.jpg", read.getFile(4).getFullpath());
+        assertEquals(IntBitmap.of(3), read.getFile(4).getPotentialDuplicates());
+        assertEquals(HashAlgorithm.XXH64, read.getHashAlgorithm());
+        assertEquals(5, read.nextFileID());
+    }
+
+    @Test
+    public void IgnoreDamagedEnd() throws Exception {
+        String filename = newDatabase();
+        DB db = new DB(filename);
+        db.addKeyword("HOLIDAY", 1);
+        db.SaveDB();
+        long savedSize = db.getJournalSize();
+        db.addKeyword("SEA", 2);
+        db.SaveDB();
+
+        // damage the type of the first record after the first save (its CRC does not match any more)
+        try (RandomAccessFile journal = new RandomAccessFile(filename + DBJournal.FILE_SUFFIX, "rw")) {
+            journal.seek(savedSize + 4);
+            journal.write(0x7F);
+        }
+
+        DB read = new DB(filename);
+        assertEquals(StatusCode.NO_ERROR, read.getStatusCode());
+        assertEquals(Set.of("HOLIDAY"), read.getFile(1).getKeywords());
+        assertTrue(read.getFile(2).getKeywords().isEmpty());
+        assertEquals(savedSize, read.getJournalSize());
+
+        // the damaged end is overwritten by the next save
+        read.addKeyword("CAT", 2);
+        read.SaveDB();
+        DB again = new DB(filename);
+        assertEquals(Set.of("CAT"), again.getFile(2).getKeywords());
+        assertEquals(read.getJournalSize(), again.getJournalSize());
+    }
+
+    @Test
+    public void IgnoreJournalOfAnotherGeneration() throws Exception {
+        String filename = newDatabase();
+        DB db = new DB(filename);
+        db.addKeyword("HOLIDAY", 1);
+        db.SaveDB();
+
+        DBCatalog catalog = new DBCatalog(filename);
+        catalog.read();
+        long generation = catalog.getGeneration();
+        DBJournal journal = new DBJournal(filename + DBJournal.FILE_SUFFIX);
+        assertTrue(journal.hasRecords(generation));
+        assertFalse(journal.hasRecords(generation + 1));
+
+        DB other = new DB(tempDir.resolve("other.db").toString());
+        other.addFile(file("a", 100, 1));
+        assertEquals(0, journal.replay(other, generation + 1));
+        assertTrue(other.getFile(1).getKeywords().isEmpty());
+        assertEquals(1, journal.replay(other, generation));
+        assertEquals(Set.of("HOLIDAY"), other.getFile(1).getKeywords());
+
+        // the catalog is written again (new generation), the old journal records are not replayed on it
+        catalog.write(new DBCatalog(filename).read(), generation + 1);
+        assertTrue(new DB(filename).getFile(1).getKeywords().isEmpty());
+    }
+
+    @Test
+    public void RecoverUnsavedRecords() {
+        String filename = newDatabase();
+        DB db = new DB(filename);
+        db.addKeyword("HOLIDAY", 1);
+        db.SaveDB();
+        db.addKeyword("SEA", 1);
+        db.addKeyword("CAT", 2);
+        assertEquals(StatusCode.NO_ERROR, db.checkpoint());
+        assertEquals(2, db.getUnsavedChanges());
+
+        // the records after the last SAVED record are recovered, but stay unsaved
+        DB read = new DB(filename);
+        assertEquals(2, read.getRecoveredChanges());
+        assertTrue(read.isChanged());
+        assertEquals(Set.of("HOLIDAY", "SEA"), read.getFile(1).getKeywords());
+        assertEquals(Set.of("CAT"), read.getFile(2).getKeywords());
+
+        read.discardUnsavedChanges();
+        DB discarded = new DB(filename);
+        assertEquals(0, discarded.getRecoveredChanges());
+        assertEquals(Set.of("HOLIDAY"), discarded.getFile(1).getKeywords());
+        assertTrue(discarded.getFile(2).getKeywords().isEmpty());
+    }
+}
@@ -0,0 +1,99 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DBMetadataIndex;
+import cz.cuni.mff.stankoti.photo.db.DBMetadataIndex.Column;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBMetadataIndexTest {
+    @Test
+    public void ParseNumericValues() {
+        assertEquals(400.0, Column.parse("400"));
+        assertEquals(50.0, Column.parse("50 mm"));
+        assertEquals(0.005, Column.parse("1/200 sec"));
+        assertEquals(2.8, Column.parse("f/2.8"));
+        assertEquals(2.8, Column.parse("f/2,8"));
+        assertTrue(Double.isNaN(Column.parse("unknown")));
+        assertEquals(Column.FOCAL_LENGTH, Column.byName("focal"));
+        assertNull(Column.byName("SPEED"));
+    }
+
+    @Test
+    public void FindValuesAndRanges() {
+        DBMetadataIndex index = new DBMetadataIndex();
+        index.add(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"), 1);
+        index.add(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"), 2);
+        index.add(new MetadataInfo("Exif IFD0", "Model", "NIKON Z 6"), 3);
+        index.add(new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "ISO Speed Ratings", "100"), 1);
+        index.add(new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "ISO Speed Ratings", "800"), 2);
+        index.add(new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "ISO Speed Ratings", "3200"), 3);
+
+        assertEquals(IntBitmap.of(1, 2), index.get(null, "Model", "Canon EOS R5"));
+        assertEquals(IntBitmap.of(1, 2), index.get("Exif IFD0", "Model", "Canon EOS R5"));
+        assertTrue(index.get("Exif SubIFD", "Model", "Canon EOS R5").isEmpty());
+        assertTrue(index.get(null, "Model", "Canon").isEmpty());
+        assertTrue(index.get(null, "Lens Model", "Canon EOS R5").isEmpty());
+
+        assertEquals(IntBitmap.of(2, 3), index.range(Column.ISO, 800, true, Double.POSITIVE_INFINITY, true));
+        assertEquals(IntBitmap.of(3), index.range(Column.ISO, 800, false, Double.POSITIVE_INFINITY, true));
+        assertEquals(IntBitmap.of(2), index.range(Column.ISO, 800, true, 800, true));
+        assertTrue(index.range(Column.ISO, 800, true, 800, false).isEmpty());
+        assertTrue(index.range(Column.F_NUMBER, 0, true, 100, true).isEmpty());
+
+        index.remove(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"), 1);
+        index.remove(new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "ISO Speed Ratings", "800"), 2);
+        assertEquals(IntBitmap.of(2), index.get(null, "Model", "Canon EOS R5"));
+        assertEquals(IntBitmap.of(3), index.range(Column.ISO, 800, true, Double.POSITIVE_INFINITY, true));
+    }
+
+    @Test
+    public void SkipPerFileTags() {
+        DBMetadataIndex index = new DBMetadataIndex();
+        for (int fileID = 1; fileID <= 3; fileID++) {
+            // a tag set as read from a JPEG photo (most tags are shared, the file tags and offsets are unique per file)
+            List<MetadataInfo> tags = List.of(
+                new MetadataInfo("Exif IFD0", "Make", "Canon"),
+                new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"),
+                new MetadataInfo("Exif IFD0", "Orientation", "Top, left side (Horizontal / normal)"),
+                new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "ISO Speed Ratings", fileID == 3 ? "800" : "100"),
+                new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "Focal Length", "50 mm"),
+                new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "Exposure Time", "1/200 sec"),
+                new MetadataInfo(DBMetadataIndex.EXIF_DIRECTORY, "Components Configuration", "YCbCr"),
+                new MetadataInfo("Exif Thumbnail", "Compression", "JPEG (old-style)"),
+                new MetadataInfo("Exif Thumbnail", "Thumbnail Offset", (11000 + fileID * 17) + " bytes"),
+                new MetadataInfo("Exif Thumbnail", "Thumbnail Length", (5000 + fileID * 31) + " bytes"),
+                new MetadataInfo("Canon Makernote", "Sensor Info", "[17 values]"),
+                new MetadataInfo("ICC Profile", "Profile Data", "(3144 bytes binary data)"),
+                new MetadataInfo("File", "File Name", "IMG_000" + fileID + ".JPG"),
+                new MetadataInfo("File", "File Size", (4000000 + fileID) + " bytes"),
+                new MetadataInfo("File", "File Modified Date", "Sat Jul 01 12:00:0" + fileID + " +02:00 2023"));
+            for (MetadataInfo tag : tags) {
+                index.add(tag, fileID);
+            }
+        }
+
+        // only the shared values are indexed: 7 tags with a single value, ISO with two values, the thumbnail compression
+        assertEquals(9, index.size());
+        assertEquals(IntBitmap.of(1, 2, 3), index.get(null, "Model", "Canon EOS R5"));
+        assertEquals(IntBitmap.of(1, 2, 3), index.range(Column.FOCAL_LENGTH, 50, true, 50, true));
+        assertEquals(IntBitmap.of(3), index.range(Column.ISO, 800, true, Double.POSITIVE_INFINITY, true));
+        assertFalse(DBMetadataIndex.isIndexed("File", "File Name", "IMG_0001.JPG"));
+        assertFalse(DBMetadataIndex.isIndexed("Exif Thumbnail", "Thumbnail Offset", "11017 bytes"));
+        assertFalse(DBMetadataIndex.isIndexed("Exif IFD0", "Strip Byte Counts", "1024 bytes"));
+        assertTrue(DBMetadataIndex.isIndexed(DBMetadataIndex.EXIF_DIRECTORY, "Focal Length", "50 mm"));
+
+        // the tags which are not indexed cannot be looked up (the files must be checked)
+        assertNull(index.get("File", "File Name", "IMG_0001.JPG"));
+        assertNull(index.get(null, "File Name", "IMG_0001.JPG"));
+        assertNull(index.get("ICC Profile", "Profile Data", "(3144 bytes binary data)"));
+        assertTrue(index.get("Exif IFD0", "Model", "NIKON Z 6").isEmpty());
+
+        index.remove(new MetadataInfo("File", "File Name", "IMG_0001.JPG"), 1);
+        index.remove(new MetadataInfo("Exif IFD0", "Model", "Canon EOS R5"), 1);
+        assertEquals(IntBitmap.of(2, 3), index.get(null, "Model", "Canon EOS R5"));
+    }
+}
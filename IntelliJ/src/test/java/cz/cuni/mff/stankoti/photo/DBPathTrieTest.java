@@ -0,0 +1,56 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DBPathTrie;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBPathTrieTest {
+    @Test
+    public void PrefixLookups() {
+        DBPathTrie trie = new DBPathTrie();
+        trie.add("/photos/2019/summer", 1);
+        trie.add("/photos/2019/summer", 2);
+        trie.add("/photos/2019/winter", 3);
+        trie.add("/photos/2019-old", 4);
+        trie.add("/photos/2020", 5);
+        trie.add("/photos", 6);
+
+        assertEquals(List.of("/photos", "/photos/2019-old", "/photos/2019/summer", "/photos/2019/winter", "/photos/2020"),
+                     trie.getPaths(""));
+        assertEquals(IntBitmap.of(1, 2, 3), trie.getFileIDs("/photos/2019/"));
+        assertEquals(IntBitmap.of(1, 2, 3, 4), trie.getFileIDs("/photos/2019"));
+        assertEquals(IntBitmap.of(1, 2, 3, 4, 5, 6), trie.getFileIDs("/photos"));
+        assertEquals(List.of("/photos/2019/summer", "/photos/2019/winter"), trie.getPaths("/photos/2019/"));
+        assertEquals(2, trie.getPathCount("/photos/2019/"));
+        assertEquals(List.of("/photos/2019/summer"), trie.getPaths("/photos/2019/s"));  // the prefix ends inside a label
+        assertEquals(5, trie.size());
+        assertNull(trie.getFileIDs("/photos/2018"));
+        assertTrue(trie.getPaths("/video").isEmpty());
+    }
+
+    @Test
+    public void RemovePaths() {
+        DBPathTrie trie = new DBPathTrie();
+        trie.add("/photos/2019/summer", 1);
+        trie.add("/photos/2019/winter", 2);
+        trie.add("/photos/2020", 3);
+
+        trie.remove("/photos/2019/summer", 1);
+        trie.remove("/photos/2019/summer", 1);
+        trie.remove("/photos/2019", 2);
+        assertEquals(List.of("/photos/2019/winter", "/photos/2020"), trie.getPaths(""));
+        assertEquals(IntBitmap.of(2), trie.getFileIDs("/photos/2019/"));
+
+        trie.remove("/photos/2019/winter", 2);
+        assertNull(trie.getFileIDs("/photos/2019/"));
+        assertEquals(IntBitmap.of(3), trie.getFileIDs("/photos/"));
+        assertEquals(1, trie.size());
+
+        trie.add("/photos/2019/winter", 2);
+        assertEquals(List.of("/photos/2019/winter", "/photos/2020"), trie.getPaths("/photos/"));
+    }
+}
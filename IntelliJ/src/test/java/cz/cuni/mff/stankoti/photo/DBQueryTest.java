@@ -0,0 +1,140 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.db.DB;
+import cz.cuni.mff.stankoti.photo.db.DBFile;
+import cz.cuni.mff.stankoti.photo.db.DBQuery;
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DBQueryTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+      * Attributes of one test file.
+      */
+    private record Photo(int id, int year, int month, boolean raw, String extension, long size, int iso, String model,
+                         Set<String> keywords) {}
+
+    private final List<Photo> photos = new ArrayList<>();
+
+    private DB createDB() {
+        DB db = new DB(tempDir.resolve("photo.db").toString());
+        for (int i = 1; i <= 200; i++) {
+            int year = 2020 + i % 4;
+            int month = 1 + i % 12;
+            boolean raw = i % 3 == 0;
+            String location = "/p/" + year + (raw ? "/raw" : "");
+            String extension = i % 5 == 0 ? "PNG" : "jpg";
+            long size = i * 1000L;
+            int iso = 100 << (i % 6);
+            String model = i % 2 == 0 ? "Canon" : "Nikon";
+            Set<String> keywords = i % 7 == 0 ? Set.of("CAT") : i % 10 == 0 ? Set.of("SEA") : Set.of();
+            DBFile file = new DBFile(1, location + "/f" + i + "." + extension, location, "f" + i, extension,
+                                     String.format("%d%02d%02d 120000", year, month, 1 + i % 28), size, i,
+                                     null, Set.of(new MetadataInfo("Exif SubIFD", "ISO Speed Ratings", String.valueOf(iso)),
+                                                  new MetadataInfo("Exif IFD0", "Model", model),
+                                                  new MetadataInfo("File", "File Name", "f" + i + "." + extension)));
+            db.addFile(file);
+            for (String keyword : keywords) {
+                db.addKeyword(keyword, file.getID());
+            }
+            photos.add(new Photo(file.getID(), year, month, raw, extension, size, iso, model, keywords));
+        }
+        return db;
+    }
+
+    private IntBitmap expected(Predicate<Photo> predicate) {
+        IntBitmap fileIDs = new IntBitmap();
+        photos.stream().filter(predicate).forEach(photo -> fileIDs.add(photo.id()));
+        return fileIDs;
+    }
+
+    private static IntBitmap query(DB db, String... args) {
+        DBQuery query = DBQuery.parse(args);
+        assertNotNull(query, String.join(" ", args));
+        return db.query(query);
+    }
+
+    @Test
+    public void ParseQueries() {
+        assertNotNull(DBQuery.parse(new String[] {"KEY=cat"}));
+        assertNotNull(DBQuery.parse(new String[] {"(KEY=cat", "OR", "DIR=/p)", "AND", "NOT", "SIZE>=2MB"}));
+        assertNotNull(DBQuery.parse(new String[] {"DATE<1.1.2020", "ISO>=800", "EXPOSURE<1/200", "META=Exif IFD0:Model=Canon"}));
+        assertNull(DBQuery.parse(new String[] {}));
+        assertNull(DBQuery.parse(new String[] {"(KEY=cat"}));
+        assertNull(DBQuery.parse(new String[] {"KEY=cat)"}));
+        assertNull(DBQuery.parse(new String[] {"KEY=cat", "OR"}));
+        assertNull(DBQuery.parse(new String[] {"NOT"}));
+        assertNull(DBQuery.parse(new String[] {"KEY<cat"}));
+        assertNull(DBQuery.parse(new String[] {"SIZE>=big"}));
+        assertNull(DBQuery.parse(new String[] {"DATE=yesterday"}));
+        assertNull(DBQuery.parse(new String[] {"SPEED>100"}));
+        assertNull(DBQuery.parse(new String[] {"ISO>=high"}));
+        assertNull(DBQuery.parse(new String[] {"META==Canon"}));
+        assertNull(DBQuery.parse(new String[] {"cat"}));
+    }
+
+    @Test
+    public void OperatorPrecedence() {
+        DB db = createDB();
+        // NOT binds tighter than AND, AND binds tighter than OR
+        assertEquals(expected(p -> p.keywords().contains("CAT") || p.keywords().contains("SEA") && p.iso() < 400),
+                     query(db, "KEY=CAT", "OR", "KEY=SEA", "ISO<400"));
+        assertEquals(expected(p -> (p.keywords().contains("CAT") || p.keywords().contains("SEA")) && p.iso() < 400),
+                     query(db, "(KEY=CAT", "OR", "KEY=SEA)", "AND", "ISO<400"));
+        assertEquals(expected(p -> !p.keywords().contains("CAT") && p.size() <= 5000),
+                     query(db, "NOT", "KEY=CAT", "SIZE<=5000"));
+        assertEquals(expected(p -> !(p.keywords().contains("CAT") && p.size() <= 5000)),
+                     query(db, "NOT", "(KEY=CAT", "SIZE<=5000)"));
+        assertEquals(query(db, "NOT", "KEY=CAT", "SIZE<=5000"), query(db, "KEY!=CAT", "SIZE<=5000"));
+    }
+
+    @Test
+    public void PlanQueries() {
+        DB db = createDB();
+        // selective and unselective predicates in various orders: the result must not depend on the plan
+        assertEquals(expected(p -> p.year() == 2021 && p.size() >= 100 * 1024),
+                     query(db, "TREE=/p/2021", "SIZE>=100KB"));
+        assertEquals(expected(p -> p.year() == 2021 && p.size() >= 100 * 1024),
+                     query(db, "SIZE>=100KB", "TREE=/p/2021"));
+        assertEquals(expected(p -> p.year() == 2021 && p.raw()),
+                     query(db, "TREE=/p/2021/raw", "DIR=/p/2021/raw"));
+        assertEquals(expected(p -> p.iso() >= 1600 || p.keywords().contains("CAT")),
+                     query(db, "ISO>=1600", "OR", "KEY=CAT"));
+        assertEquals(expected(p -> p.year() != 2020 && p.extension().equals("PNG") && p.year() < 2022),
+                     query(db, "NOT", "TREE=/p/2020", "EXT=png", "DATE<1.1.2022"));
+        assertEquals(expected(p -> p.year() == 2021 && p.month() == 7 && p.model().equals("Canon") && p.size() < 50 * 1024),
+                     query(db, "DATE=7.2021", "META=Model=Canon", "SIZE<50KB"));
+        assertEquals(expected(p -> p.iso() == 800 && p.size() > 1000 && p.size() < 20000),
+                     query(db, "SIZE>1000", "ISO=800", "SIZE<20000"));
+        // the tags of the File directory are not indexed, the files are checked
+        assertEquals(IntBitmap.of(photos.get(41).id()), query(db, "META=File Name=f42.jpg"));
+        assertEquals(IntBitmap.of(photos.get(41).id()), query(db, "META=File:File Name=f42.jpg", "KEY=CAT"));
+        assertTrue(query(db, "SIZE>1MB", "KEY=CAT").isEmpty());
+        assertTrue(query(db, "TREE=/q", "OR", "KEY=DOG").isEmpty());
+    }
+
+    @Test
+    public void QueryMappedCatalog() {
+        DB db = createDB();
+        db.SaveDB();
+        // the read-only database answers the queries from the sections of the mapped catalog
+        DB readOnly = new DB(tempDir.resolve("photo.db").toString(), true);
+        String[][] queries = {{"TREE=/p/2021", "SIZE>=100KB"}, {"EXT=png", "NOT", "TREE=/p/2020"}, {"NAME=f42"},
+                              {"META=Model=Canon", "DATE=7.2021"}, {"META=Exif IFD0:Model=Nikon", "OR", "KEY=CAT"},
+                              {"ISO>=1600", "ISO<6400"}, {"META=File Name=f42.jpg"}};
+        for (String[] args : queries) {
+            assertEquals(query(db, args), query(readOnly, args), String.join(" ", args));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.DateRange;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DateRangeTest {
+    @Test
+    public void ParsePeriods() {
+        DateRange july = DateRange.parse("7.2023");
+        assertEquals(july, DateRange.parse("2023-07"));
+        assertTrue(july.contains(DateRange.toEpochSecond("20230701 000000")));
+        assertTrue(july.contains(DateRange.toEpochSecond("20230731 235959")));
+        assertFalse(july.contains(DateRange.toEpochSecond("20230630 235959")));
+        assertFalse(july.contains(DateRange.toEpochSecond("20230801 000000")));
+
+        DateRange day = DateRange.parse("15.7.2023");
+        assertEquals(day, DateRange.parse("2023-07-15"));
+        assertEquals(DateRange.toEpochSecond("20230715 000000"), day.from());
+        assertEquals(DateRange.toEpochSecond("20230715 235959"), day.to());
+
+        DateRange year = DateRange.parse("2023");
+        assertEquals(DateRange.toEpochSecond("20230101 000000"), year.from());
+        assertEquals(DateRange.toEpochSecond("20231231 235959"), year.to());
+        assertEquals(year.from(), year.through(july).from());
+        assertEquals(july.to(), year.through(july).to());
+
+        assertNull(DateRange.parse("July 2023"));
+        assertNull(DateRange.parse("13.2023"));
+    }
+
+    @Test
+    public void ConvertAndFormat() {
+        long timestamp = DateRange.toEpochSecond("20230715 103005");
+        assertEquals("15.07.2023 10:30:05", DateRange.format(timestamp));
+        assertEquals(timestamp + 1, DateRange.toEpochSecond("20230715 103006"));
+        assertEquals(0L, DateRange.toEpochSecond(""));
+        assertEquals(0L, DateRange.toEpochSecond("2023-07-15 10:30"));
+    }
+}
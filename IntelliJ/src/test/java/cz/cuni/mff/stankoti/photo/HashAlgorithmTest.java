@@ -0,0 +1,92 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.HashAlgorithm;
+import cz.cuni.mff.stankoti.photo.util.XXHash64;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashAlgorithmTest {
+    @Test
+    public void XXHash64KnownValues() {
+        assertEquals(0xEF46DB3751D8E999L, xxh64(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, xxh64("a"));
+        assertEquals(0x44BC2CF5AD770999L, xxh64("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, xxh64("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void ChunkedUpdates() {
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            Checksum whole = algorithm.newChecksum();
+            whole.update(data, 0, data.length);
+
+            Checksum chunked = algorithm.newChecksum();
+            int offset = 0;
+            for (int length = 1; offset < data.length; length = length * 3 % 61 + 1) {
+                int count = Math.min(length, data.length - offset);
+                chunked.update(data, offset, count);
+                offset += count;
+            }
+            assertEquals(whole.getValue(), chunked.getValue(), algorithm.getDisplayName() + " should not depend on the chunk size.");
+
+            Checksum single = algorithm.newChecksum();
+            single.update(data, 0, 3);
+            for (int i = 3; i < 200; i++) {
+                single.update(data[i]);
+            }
+            single.update(data, 200, data.length - 200);
+            assertEquals(whole.getValue(), single.getValue(), algorithm.getDisplayName() + " should accept single bytes.");
+
+            chunked.reset();
+            assertEquals(algorithm.newChecksum().getValue(), chunked.getValue(), "A reset checksum should equal a new one.");
+        }
+    }
+
+    @Test
+    public void DirectBufferUpdates() {
+        byte[] data = new byte[10000];
+        new Random(7).nextBytes(data);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            Checksum array = algorithm.newChecksum();
+            array.update(data, 0, data.length);
+
+            Checksum buffer = algorithm.newChecksum();
+            buffer.update(data, 0, 5);  // incomplete stripe before the buffer
+            direct.position(5);
+            while (direct.hasRemaining()) {
+                ByteBuffer chunk = direct.slice().limit(Math.min(999, direct.remaining()));
+                buffer.update(chunk);
+                assertFalse(chunk.hasRemaining(), "The whole buffer should be consumed.");
+                direct.position(direct.position() + chunk.limit());
+            }
+            assertEquals(array.getValue(), buffer.getValue(), algorithm.getDisplayName() + " should not depend on the buffer type.");
+        }
+    }
+
+    @Test
+    public void AlgorithmLookup() {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertEquals(algorithm, HashAlgorithm.fromId(algorithm.getId()));
+            assertEquals(algorithm, HashAlgorithm.fromName(algorithm.getDisplayName().toLowerCase()));
+        }
+        assertEquals(HashAlgorithm.SHA256, HashAlgorithm.fromName("sha256"));
+        assertNull(HashAlgorithm.fromId(0));
+        assertNull(HashAlgorithm.fromName("MD5"));
+    }
+
+    private static long xxh64(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        XXHash64 hash = new XXHash64();
+        hash.update(bytes, 0, bytes.length);
+        return hash.getValue();
+    }
+}
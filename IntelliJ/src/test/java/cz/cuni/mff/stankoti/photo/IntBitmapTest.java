@@ -0,0 +1,115 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.IntBitmap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntBitmapTest {
+    @Test
+    public void AddRemoveContains() {
+        IntBitmap bitmap = new IntBitmap();
+        assertTrue(bitmap.isEmpty(), "A new bitmap should be empty.");
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5), "The value 5 should already be in the bitmap.");
+        assertTrue(bitmap.add(70000)); // second container
+        assertEquals(2, bitmap.size());
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(Integer.valueOf(70000)));
+        assertFalse(bitmap.contains(6));
+        assertTrue(bitmap.remove(5));
+        assertFalse(bitmap.remove(5), "The value 5 should already be removed.");
+        assertArrayEquals(new int[] {70000}, bitmap.toIntArray());
+
+        // array container -> bitmap container -> array container
+        for (int i = 1; i <= 10000; i++) {
+            bitmap.add(i * 3);
+        }
+        assertEquals(10001, bitmap.size());
+        for (int i = 1; i <= 10000; i += 2) {
+            bitmap.remove(i * 3);
+        }
+        assertEquals(5001, bitmap.size());
+        assertTrue(bitmap.contains(6));
+        assertFalse(bitmap.contains(3));
+        assertEquals(6, bitmap.first());
+    }
+
+    @Test
+    public void SetOperations() {
+        Random random = new Random(42);
+        Set<Integer> a = new TreeSet<>();
+        Set<Integer> b = new TreeSet<>();
+        for (int i = 0; i < 20000; i++) {
+            a.add(random.nextInt(200000));
+            b.add(random.nextInt(i < 10000 ? 70000 : 300000)); // dense and sparse containers
+        }
+        IntBitmap bitmapA = new IntBitmap(a);
+        IntBitmap bitmapB = new IntBitmap(b);
+        assertEquals(a, bitmapA, "The bitmap should contain the same values as the set.");
+
+        Set<Integer> and = new TreeSet<>(a);
+        and.retainAll(b);
+        Set<Integer> or = new TreeSet<>(a);
+        or.addAll(b);
+        Set<Integer> andNot = new TreeSet<>(a);
+        andNot.removeAll(b);
+        assertEquals(new ArrayList<>(and), new ArrayList<>(IntBitmap.and(bitmapA, bitmapB)), "Invalid intersection.");
+        assertEquals(new ArrayList<>(or), new ArrayList<>(IntBitmap.or(bitmapA, bitmapB)), "Invalid union.");
+        assertEquals(new ArrayList<>(andNot), new ArrayList<>(IntBitmap.andNot(bitmapA, bitmapB)), "Invalid difference.");
+        assertEquals(and.size(), IntBitmap.and(bitmapA, bitmapB).size());
+        assertEquals(or.size(), IntBitmap.or(bitmapA, bitmapB).size());
+        assertEquals(andNot.size(), IntBitmap.andNot(bitmapA, bitmapB).size());
+    }
+
+    @Test
+    public void UnionOfManySets() {
+        Random random = new Random(3);
+        List<IntBitmap> sets = new ArrayList<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int s = 0; s < 50; s++) {
+            IntBitmap set = new IntBitmap();
+            int count = s % 10 == 0 ? 5000 : random.nextInt(200);  // some sets with bitmap containers
+            for (int i = 0; i < count; i++) {
+                int value = random.nextInt(200_000);
+                set.add(value);
+                expected.add(value);
+            }
+            sets.add(set);
+        }
+        sets.add(new IntBitmap());
+
+        IntBitmap union = IntBitmap.or(sets);
+        assertEquals(expected, union);
+        assertEquals(expected.size(), union.size());
+        assertTrue(IntBitmap.or(List.of()).isEmpty());
+        assertEquals(IntBitmap.of(1, 70000), IntBitmap.or(List.of(IntBitmap.of(1), IntBitmap.of(70000))));
+    }
+
+    @Test
+    public void IteratorRemove() {
+        IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(i);
+        }
+        bitmap.add(100000);
+        List<Integer> kept = new ArrayList<>();
+        Iterator<Integer> iterator = bitmap.iterator();
+        while (iterator.hasNext()) {
+            int value = iterator.next();
+            if (value % 10 != 0) {
+                iterator.remove();
+            } else {
+                kept.add(value);
+            }
+        }
+        assertEquals(1001, bitmap.size());
+        assertEquals(kept, new ArrayList<>(bitmap), "The iterator should visit every value once.");
+    }
+}
@@ -0,0 +1,32 @@
+package cz.cuni.mff.stankoti.photo;
+
+import cz.cuni.mff.stankoti.photo.util.MetadataInfo;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataInfoTest {
+    @Test
+    public void DigestAndDifference() {
+        Set<MetadataInfo> metadata = new HashSet<>(List.of(new MetadataInfo("Exif IFD0", "Make", "Canon"),
+                                                           new MetadataInfo("Exif IFD0", "Model", "EOS"),
+                                                           new MetadataInfo("Exif IFD0", "Make", "Canon")));
+        assertEquals(2, metadata.size(), "Equal tags should be stored only once.");
+
+        List<MetadataInfo> reordered = List.of(new MetadataInfo("Exif IFD0", "Model", "EOS"),
+                                               new MetadataInfo("Exif IFD0", "Make", "Canon"));
+        assertEquals(MetadataInfo.digest(metadata), MetadataInfo.digest(reordered), "The digest should not depend on the order of the tags.");
+
+        Set<MetadataInfo> changed = Set.of(new MetadataInfo("Exif IFD0", "Make", "Nikon"),
+                                           new MetadataInfo("Exif IFD0", "Model", "EOS"));
+        assertNotEquals(MetadataInfo.digest(metadata), MetadataInfo.digest(changed), "A changed value should change the digest.");
+        assertNotEquals(MetadataInfo.digest(List.of(new MetadataInfo("ab", "c", ""))),
+                        MetadataInfo.digest(List.of(new MetadataInfo("a", "bc", ""))), "The string boundaries should be part of the digest.");
+
+        assertEquals(List.of(new MetadataInfo("Exif IFD0", "Make", "Canon")), MetadataInfo.difference(metadata, changed));
+        assertEquals(List.of(new MetadataInfo("Exif IFD0", "Make", "Nikon")), MetadataInfo.difference(changed, metadata));
+    }
+}
@@ -36,20 +36,23 @@ public class PhotoTest {
         assertEquals("filename.ext", FileSystem.extractFilename("\\dir\\filename.ext")); // Windows
         assertEquals("filename.ext", FileSystem.extractFilename("/dir/subdir/filename.ext")); // folder + subfolder
 
+        FileSystem fileSystem = new FileSystem();
+
         // test for non-existent file
-        DBFile file = FileSystem.getFileInformation("not-existent-file");
-        assertEquals(StatusCode.FILE_SYSTEM_NOT_FILE, FileSystem.getStatusCode(), "The file 'not-existent-file' should not exist.");
+        FileSystem.FileResult result = fileSystem.getFileInformation("not-existent-file");
+        assertEquals(StatusCode.FILE_SYSTEM_NOT_FILE, result.statusCode(), "The file 'not-existent-file' should not exist.");
 
         // tests for existing file
         assertEquals('F', FileSystem.checkPath(YELLOW_DOG), YELLOW_DOG + " should be a file.");
-        file = FileSystem.getFileInformation(YELLOW_DOG);
-        assertEquals(StatusCode.NO_ERROR, FileSystem.getStatusCode(), "The file should exist: " + YELLOW_DOG);
+        result = fileSystem.getFileInformation(YELLOW_DOG);
+        assertEquals(StatusCode.NO_ERROR, result.statusCode(), "The file should exist: " + YELLOW_DOG);
+        DBFile file = result.file();
         assertEquals("yellow", file.getFilename(), "Invalid file name found.");
         assertEquals("png", file.getExtension(), "Invalid file extension found.");
 
         // compare files
-        assertTrue(FileSystem.compareFiles(YELLOW_DOG, YELLOW_DOG_COPY), YELLOW_DOG + " and " + YELLOW_DOG_COPY + " should be copies.");
-        assertFalse(FileSystem.compareFiles(YELLOW_DOG, BLACK_DOG), YELLOW_DOG + " and " + BLACK_DOG + " should not be the same.");
+        assertTrue(fileSystem.compareFiles(YELLOW_DOG, YELLOW_DOG_COPY).identical(), YELLOW_DOG + " and " + YELLOW_DOG_COPY + " should be copies.");
+        assertFalse(fileSystem.compareFiles(YELLOW_DOG, BLACK_DOG).identical(), YELLOW_DOG + " and " + BLACK_DOG + " should not be the same.");
     }
 
     @Test
@@ -150,7 +153,7 @@ public class PhotoTest {
         assertTrue(fileObj.getPotentialDuplicates().isEmpty(), "After removeFileDuplicateInformation(), the 'Black dog' image set of potential duplicates should be empty.");
 
         // now, find all duplicates of 'Black dog' image
-        Map<Integer, Integer> duplicates = db.processDuplicates(fileID);
+        Map<Integer, Integer> duplicates = db.processDuplicates(Set.of(fileID), 1);
         // Map 'duplicates' should contain all 'Black dog' duplicates file IDs (as keys) including 'black dog' fileID
         Set<Integer> duplicateKeys = duplicates.keySet(); // extract keys from the map
         duplicateKeys.remove(fileID); // remove 'Black dog' fileID, leaving only the fileIDs of its duplicates